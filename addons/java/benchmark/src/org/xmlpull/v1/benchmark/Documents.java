@@ -0,0 +1,99 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.benchmark;
+
+import java.io.IOException;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.perftest.CorpusGenerator;
+
+/**
+ * Documents used by benchmarks and creation of factory for implementation under test.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class Documents
+{
+    /** Document that was used by old wrapper perftest Driver. */
+    public final static String SMALL = "<hello>world!</hello>";
+
+    public final static String SOAP =
+        "<?xml version='1.0' encoding='UTF-8'?>\n"
+        +"<e:Envelope xmlns:e='http://schemas.xmlsoap.org/soap/envelope/'"
+        +" xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'>\n"
+        +" <e:Header><t:tx xmlns:t='urn:tx' e:mustUnderstand='1'>5</t:tx></e:Header>\n"
+        +" <e:Body>\n"
+        +"  <m:getQuote xmlns:m='urn:quotes'>\n"
+        +"   <m:symbol>XPL</m:symbol>\n"
+        +"   <m:note>price &lt; 100 &amp; volume &gt; 10</m:note>\n"
+        +"   <m:extra xsi:nil='true'/>\n"
+        +"  </m:getQuote>\n"
+        +" </e:Body>\n"
+        +"</e:Envelope>\n";
+
+    public final static int RECORD_COUNT = 100;
+
+    /**
+     * Records with structure that is read with nextTag()/nextText()/require() idioms:
+     * <pre>
+     * &lt;record id='N'>&lt;name>..&lt;/name>&lt;price>..&lt;/price>&lt;tags>&lt;tag>..&lt;/tag>..&lt;/tags>&lt;/record>
+     * </pre>
+     */
+    public final static String RECORDS = records(RECORD_COUNT);
+
+    /** Size of documents generated by CorpusGenerator. */
+    public final static int CORPUS_SIZE = 256 * 1024;
+
+    private static String records(int count)
+    {
+        final StringBuffer buf = new StringBuffer("<?xml version='1.0'?>\n<records>\n");
+        for (int i = 0; i < count; i++)
+        {
+            buf.append(" <record id='").append(i).append("'>\n");
+            buf.append("  <name>Item number ").append(i).append("</name>\n");
+            buf.append("  <price>").append(i).append(".50</price>\n");
+            buf.append("  <tags><tag>red</tag><tag>blue &amp; green</tag><tag>size ")
+                .append(i % 7).append("</tag></tags>\n");
+            buf.append(" </record>\n");
+        }
+        buf.append("</records>\n");
+        return buf.toString();
+    }
+
+    /**
+     * Return document for name used in benchmark parameter: small, soap, records
+     * or corpus:<i>profile</i> for document generated by CorpusGenerator with given profile
+     * (for example corpus:deep) and seed 1.
+     */
+    public static String get(String name) throws XmlPullParserException, IOException
+    {
+        if("small".equals(name)) return SMALL;
+        if("soap".equals(name)) return SOAP;
+        if("records".equals(name)) return RECORDS;
+        if(name.startsWith("corpus:")) {
+            final CorpusGenerator generator = new CorpusGenerator();
+            generator.setProfile(name.substring("corpus:".length()));
+            generator.setSeed(1);
+            generator.setTotalSize(CORPUS_SIZE);
+            return new String(generator.generate(), "UTF-8");
+        }
+        throw new IllegalArgumentException("unknown document "+name);
+    }
+
+    /**
+     * Create namespace aware factory for implementation (class name) under test
+     * or for implementation found by XmlPullParserFactory if it is empty.
+     */
+    public static XmlPullParserFactory newFactory(String impl) throws XmlPullParserException
+    {
+        final XmlPullParserFactory factory = impl == null || impl.length() == 0
+            ? XmlPullParserFactory.newInstance()
+            : XmlPullParserFactory.newInstance(impl, null);
+        factory.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        return factory;
+    }
+
+}
+
@@ -0,0 +1,86 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.sax2.Driver;
+import org.xmlpull.v1.sax2.DriverPool;
+
+/**
+ * Cost of getting SAX2 Driver for every parsed SOAP message: driver created with parser from
+ * newly found factory, driver created with default constructor and driver borrowed from pool.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DriverBenchmark
+{
+    private DriverPool pool;
+    private CountingHandler handler;
+
+    private static class CountingHandler extends DefaultHandler
+    {
+        int elements;
+
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            ++elements;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        pool = new DriverPool();
+        handler = new CountingHandler();
+    }
+
+    @Benchmark
+    public int factoryLookup() throws Exception
+    {
+        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return parse(new Driver(factory.newPullParser()));
+    }
+
+    @Benchmark
+    public int newDriver() throws Exception
+    {
+        return parse(new Driver());
+    }
+
+    @Benchmark
+    public int pooledDriver() throws Exception
+    {
+        final Driver driver = pool.getDriverFromPool();
+        try {
+            return parse(driver);
+        } finally {
+            pool.returnDriverToPool(driver);
+        }
+    }
+
+    private int parse(Driver driver) throws Exception
+    {
+        handler.elements = 0;
+        driver.setContentHandler(handler);
+        driver.parse(new InputSource(new StringReader(Documents.SOAP)));
+        return handler.elements;
+    }
+
+}
+
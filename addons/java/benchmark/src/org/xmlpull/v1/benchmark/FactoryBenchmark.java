@@ -0,0 +1,87 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.benchmark;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Cost of creating one parser: the way newPullParser() used to do it (Class.newInstance()
+ * and walking features Hashtable for every parser) compared with XmlPullParserFactory
+ * newPullParser() and newPullParser() of factory snapshot, and cost of newInstance()
+ * that finds factory (classes resolved once are cached).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FactoryBenchmark
+{
+    @Param({"org.xmlpull.v1.impl.XmlPullParserImpl"})
+    public String impl;
+
+    private XmlPullParserFactory factory;
+    private XmlPullParserFactory snapshot;
+    private Class ppClass;
+    private Hashtable features;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        factory = Documents.newFactory(impl);
+        factory.setFeature(XmlPullParser.FEATURE_PROCESS_DOCDECL, false);
+        factory.setFeature(XmlPullParser.FEATURE_VALIDATION, false);
+        snapshot = factory.snapshot();
+        ppClass = factory.newPullParser().getClass();
+        features = new Hashtable();
+        features.put(XmlPullParser.FEATURE_PROCESS_NAMESPACES, Boolean.TRUE);
+        features.put(XmlPullParser.FEATURE_PROCESS_DOCDECL, Boolean.FALSE);
+        features.put(XmlPullParser.FEATURE_VALIDATION, Boolean.FALSE);
+    }
+
+    @Benchmark
+    public XmlPullParser reflectionAndEnumeration() throws Exception
+    {
+        final XmlPullParser pp = (XmlPullParser) ppClass.newInstance();
+        for (Enumeration e = features.keys (); e.hasMoreElements ();) {
+            final String key = (String) e.nextElement();
+            final Boolean value = (Boolean) features.get(key);
+            if(value != null && value.booleanValue()) {
+                pp.setFeature(key, true);
+            }
+        }
+        return pp;
+    }
+
+    @Benchmark
+    public XmlPullParser newPullParser() throws Exception
+    {
+        return factory.newPullParser();
+    }
+
+    @Benchmark
+    public XmlPullParser snapshotNewPullParser() throws Exception
+    {
+        return snapshot.newPullParser();
+    }
+
+    @Benchmark
+    public XmlPullParserFactory newInstance() throws Exception
+    {
+        return XmlPullParserFactory.newInstance(impl, null);
+    }
+
+}
@@ -0,0 +1,87 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * Reading records (see {@link Documents#RECORDS}) with nextTag(), nextText() and require()
+ * compared with reading the same document with next() only.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IdiomBenchmark
+{
+    @Param({"org.xmlpull.v1.impl.XmlPullParserImpl"})
+    public String impl;
+
+    private XmlPullParser pp;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        pp = Documents.newFactory(impl).newPullParser();
+    }
+
+    @Benchmark
+    public int nextTagNextTextRequire(Blackhole bh) throws Exception
+    {
+        pp.setInput(new StringReader(Documents.RECORDS));
+        return readRecords(pp, bh);
+    }
+
+    @Benchmark
+    public int nextOnly(Blackhole bh) throws Exception
+    {
+        pp.setInput(new StringReader(Documents.RECORDS));
+        return ParseBenchmark.consume(pp, bh);
+    }
+
+    /** Read records using nextTag(), nextText() and require() and return how many were read. */
+    static int readRecords(XmlPullParser pp, Blackhole bh) throws Exception
+    {
+        pp.nextTag();
+        pp.require(XmlPullParser.START_TAG, null, "records");
+        int count = 0;
+        while(pp.nextTag() == XmlPullParser.START_TAG) {
+            pp.require(XmlPullParser.START_TAG, null, "record");
+            bh.consume(pp.getAttributeValue(null, "id"));
+            pp.nextTag();
+            pp.require(XmlPullParser.START_TAG, null, "name");
+            bh.consume(pp.nextText());
+            pp.nextTag();
+            pp.require(XmlPullParser.START_TAG, null, "price");
+            bh.consume(pp.nextText());
+            pp.nextTag();
+            pp.require(XmlPullParser.START_TAG, null, "tags");
+            while(pp.nextTag() == XmlPullParser.START_TAG) {
+                pp.require(XmlPullParser.START_TAG, null, "tag");
+                bh.consume(pp.nextText());
+            }
+            pp.require(XmlPullParser.END_TAG, null, "tags");
+            pp.nextTag();
+            pp.require(XmlPullParser.END_TAG, null, "record");
+            ++count;
+        }
+        pp.require(XmlPullParser.END_TAG, null, "records");
+        if(count != Documents.RECORD_COUNT) throw new IllegalStateException("read only "+count+" records");
+        return count;
+    }
+
+}
+
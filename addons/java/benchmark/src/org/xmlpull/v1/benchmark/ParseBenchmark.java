@@ -0,0 +1,101 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * Throughput of parsing whole document with next() and nextToken()
+ * from Reader and from UTF-8 InputStream. Besides fixed documents there are
+ * synthetic documents from CorpusGenerator (any of its profiles can be selected
+ * with JMH option <code>-p document=corpus:<i>profile</i></code>).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark
+{
+    @Param({"org.xmlpull.v1.impl.XmlPullParserImpl"})
+    public String impl;
+
+    @Param({"small", "soap", "records", "corpus:realistic", "corpus:deep", "corpus:attributes"})
+    public String document;
+
+    private XmlPullParser pp;
+    private String doc;
+    private byte[] docBytes;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        pp = Documents.newFactory(impl).newPullParser();
+        doc = Documents.get(document);
+        docBytes = doc.getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public int next(Blackhole bh) throws Exception
+    {
+        pp.setInput(new StringReader(doc));
+        return consume(pp, bh);
+    }
+
+    @Benchmark
+    public int nextUtf8Stream(Blackhole bh) throws Exception
+    {
+        pp.setInput(new ByteArrayInputStream(docBytes), "UTF-8");
+        return consume(pp, bh);
+    }
+
+    @Benchmark
+    public int nextToken(Blackhole bh) throws Exception
+    {
+        pp.setInput(new StringReader(doc));
+        int events = 0;
+        int eventType;
+        while((eventType = pp.nextToken()) != XmlPullParser.END_DOCUMENT) {
+            if(eventType == XmlPullParser.START_TAG) {
+                bh.consume(pp.getName());
+            } else if(eventType == XmlPullParser.TEXT) {
+                bh.consume(pp.getText());
+            }
+            ++events;
+        }
+        return events;
+    }
+
+    /** Read all events accessing what application usually accesses. */
+    static int consume(XmlPullParser pp, Blackhole bh) throws Exception
+    {
+        int events = 0;
+        int eventType;
+        while((eventType = pp.next()) != XmlPullParser.END_DOCUMENT) {
+            if(eventType == XmlPullParser.START_TAG) {
+                bh.consume(pp.getName());
+                bh.consume(pp.getNamespace());
+                for (int i = 0; i < pp.getAttributeCount(); i++) bh.consume(pp.getAttributeValue(i));
+            } else if(eventType == XmlPullParser.TEXT) {
+                bh.consume(pp.getText());
+            }
+            ++events;
+        }
+        return events;
+    }
+
+}
+
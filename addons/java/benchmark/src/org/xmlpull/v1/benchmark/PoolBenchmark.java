@@ -0,0 +1,142 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.benchmark;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.parser_pool.XmlPullParserPool;
+
+/**
+ * Throughput of borrowing and returning parser to XmlPullParserPool shared by 1, 4, 16 and 64
+ * threads compared with pool that keeps parsers in one list guarded by one lock (the way
+ * XmlPullParserPool used to work), selected with parameter <code>pool</code>.
+ * Borrowing to parse small document shows how much of parsing time is spent in pool.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PoolBenchmark
+{
+    @Param({"org.xmlpull.v1.impl.XmlPullParserImpl"})
+    public String impl;
+
+    @Param({"striped", "oneLock"})
+    public String pool;
+
+    private XmlPullParserPool parserPool;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        final XmlPullParserFactory factory = Documents.newFactory(impl);
+        parserPool = "oneLock".equals(pool) ? new LockedPool(factory) : new XmlPullParserPool(factory);
+    }
+
+    @Benchmark @Threads(1)
+    public XmlPullParser borrowReturn1() throws Exception
+    {
+        return borrowReturn();
+    }
+
+    @Benchmark @Threads(4)
+    public XmlPullParser borrowReturn4() throws Exception
+    {
+        return borrowReturn();
+    }
+
+    @Benchmark @Threads(16)
+    public XmlPullParser borrowReturn16() throws Exception
+    {
+        return borrowReturn();
+    }
+
+    @Benchmark @Threads(64)
+    public XmlPullParser borrowReturn64() throws Exception
+    {
+        return borrowReturn();
+    }
+
+    @Benchmark @Threads(1)
+    public int borrowParse1() throws Exception
+    {
+        return borrowParse();
+    }
+
+    @Benchmark @Threads(16)
+    public int borrowParse16() throws Exception
+    {
+        return borrowParse();
+    }
+
+    private XmlPullParser borrowReturn() throws Exception
+    {
+        final XmlPullParser pp = parserPool.getPullParserFromPool();
+        parserPool.returnPullParserToPool(pp);
+        return pp;
+    }
+
+    private int borrowParse() throws Exception
+    {
+        final XmlPullParser pp = parserPool.getPullParserFromPool();
+        try {
+            pp.setInput(new StringReader(Documents.SMALL));
+            int count = 0;
+            while(pp.next() != XmlPullParser.END_DOCUMENT) ++count;
+            return count;
+        } finally {
+            parserPool.returnPullParserToPool(pp);
+        }
+    }
+
+    /** Pool with one list guarded by one lock. */
+    private static class LockedPool extends XmlPullParserPool
+    {
+        private final List parsers = new ArrayList();
+
+        LockedPool(XmlPullParserFactory factory) {
+            super(factory);
+        }
+
+        public XmlPullParser getPullParserFromPool() throws XmlPullParserException
+        {
+            synchronized(parsers) {
+                if(parsers.size() > 0) {
+                    return (XmlPullParser) parsers.remove(parsers.size() - 1);
+                }
+            }
+            return newParser();
+        }
+
+        public void returnPullParserToPool(XmlPullParser pp)
+        {
+            try {
+                pp.setInput((Reader) null); // released as in XmlPullParserPool
+            } catch(XmlPullParserException ex) {
+                return;
+            }
+            synchronized(parsers) {
+                parsers.add(pp);
+            }
+        }
+    }
+
+}
+
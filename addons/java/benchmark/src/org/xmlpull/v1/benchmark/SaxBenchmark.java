@@ -0,0 +1,184 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.sax2.Driver;
+import org.xmlpull.v1.wrapper.classic.XmlPullParserDelegate;
+
+/**
+ * SAX2 Driver parsing text heavy documents with and without coalescing of character data.
+ * Handler reads text of every element: when characters are coalesced it creates String
+ * directly from characters() arguments otherwise it must join them in buffer first.
+ * Parser may report text whole (chunk=0) or in chunks of given size (as parsers that
+ * stream long text do). Number of characters() calls and characters copied by handler
+ * are reported as secondary results (counted per iteration).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SaxBenchmark
+{
+    @Param({"org.xmlpull.v1.impl.XmlPullParserImpl"})
+    public String impl;
+
+    @Param({"corpus:text", "corpus:entities"})
+    public String document;
+
+    @Param({"0", "64"})
+    public int chunk;
+
+    @Param({"false", "true"})
+    public boolean coalesce;
+
+    private String doc;
+    private Driver driver;
+    private TextHandler handler;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Callbacks
+    {
+        public long characters;
+        public long copiedChars;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            characters = copiedChars = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        doc = Documents.get(document);
+        XmlPullParser pp = Documents.newFactory(impl).newPullParser();
+        if(chunk > 0) pp = new ChunkedTextParser(pp, chunk);
+        driver = new Driver(pp);
+        driver.setFeature(Driver.COALESCE_CHARACTERS_FEATURE, coalesce);
+        handler = new TextHandler(coalesce);
+        driver.setContentHandler(handler);
+    }
+
+    @Benchmark
+    public void parse(Callbacks callbacks, Blackhole bh) throws Exception
+    {
+        handler.callbacks = callbacks;
+        handler.bh = bh;
+        driver.parse(new InputSource(new StringReader(doc)));
+    }
+
+    private static class TextHandler extends DefaultHandler
+    {
+        private final boolean coalesced;
+        private final StringBuffer text = new StringBuffer();
+        Callbacks callbacks;
+        Blackhole bh;
+
+        TextHandler(boolean coalesced) {
+            this.coalesced = coalesced;
+        }
+
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            text.setLength(0);
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            ++callbacks.characters;
+            callbacks.copiedChars += length;
+            if(coalesced) {
+                bh.consume(new String(ch, start, length));
+            } else {
+                text.append(ch, start, length);
+            }
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            if(!coalesced && text.length() > 0) {
+                callbacks.copiedChars += text.length();
+                bh.consume(text.toString());
+                text.setLength(0);
+            }
+        }
+    }
+
+    /** Parser that reports every TEXT event as many TEXT events with at most chunk characters. */
+    static class ChunkedTextParser extends XmlPullParserDelegate
+    {
+        private final int chunk;
+        private final int[] holder = new int[2];
+        private char[] text;
+        private int chunkStart;
+        private int chunkEnd;
+        private int textEnd;
+
+        ChunkedTextParser(XmlPullParser pp, int chunk) {
+            super(pp);
+            this.chunk = chunk;
+        }
+
+        public void setInput(Reader in) throws XmlPullParserException {
+            text = null;
+            super.setInput(in);
+        }
+
+        public void setInput(InputStream in, String encoding) throws XmlPullParserException {
+            text = null;
+            super.setInput(in, encoding);
+        }
+
+        public int next() throws XmlPullParserException, IOException {
+            if(text != null && chunkEnd < textEnd) {
+                chunkStart = chunkEnd;
+                chunkEnd = Math.min(textEnd, chunkStart + chunk);
+                return TEXT;
+            }
+            text = null;
+            final int type = pp.next();
+            if(type == TEXT) {
+                text = pp.getTextCharacters(holder);
+                chunkStart = holder[0];
+                textEnd = holder[0] + holder[1];
+                chunkEnd = Math.min(textEnd, chunkStart + chunk);
+            }
+            return type;
+        }
+
+        public char[] getTextCharacters(int[] holderForStartAndLength) {
+            if(text == null) return super.getTextCharacters(holderForStartAndLength);
+            holderForStartAndLength[0] = chunkStart;
+            holderForStartAndLength[1] = chunkEnd - chunkStart;
+            return text;
+        }
+
+        public String getText() {
+            return text != null ? new String(text, chunkStart, chunkEnd - chunkStart) : super.getText();
+        }
+    }
+
+}
+
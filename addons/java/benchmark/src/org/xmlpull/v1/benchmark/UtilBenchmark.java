@@ -0,0 +1,115 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.benchmark;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.XmlSerializer;
+import org.xmlpull.v1.util.XmlPullUtil;
+
+/**
+ * Throughput of XmlPullUtil helpers used on records (see {@link Documents#RECORDS}).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UtilBenchmark
+{
+    @Param({"org.xmlpull.v1.impl.XmlPullParserImpl"})
+    public String impl;
+
+    @Param({"org.xmlpull.v1.impl.XmlSerializerImpl"})
+    public String serializerImpl;
+
+    private XmlPullParser pp;
+    private XmlSerializer serializer;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        pp = Documents.newFactory(impl).newPullParser();
+        serializer = XmlPullParserFactory.newInstance(serializerImpl, null).newSerializer();
+    }
+
+    /** Read records with nextStartTag(), getAttributeValue(), nextText() and nextEndTag(). */
+    @Benchmark
+    public int readRecords(Blackhole bh) throws Exception
+    {
+        pp.setInput(new StringReader(Documents.RECORDS));
+        XmlPullUtil.nextStartTag(pp, "records");
+        int count = 0;
+        while(pp.nextTag() == XmlPullParser.START_TAG) {
+            bh.consume(XmlPullUtil.getAttributeValue(pp, "id"));
+            XmlPullUtil.nextStartTag(pp, "name");
+            bh.consume(XmlPullUtil.nextText(pp, null, "name"));
+            XmlPullUtil.nextStartTag(pp, "price");
+            bh.consume(XmlPullUtil.nextText(pp, null, "price"));
+            XmlPullUtil.nextStartTag(pp, "tags");
+            XmlPullUtil.skipSubTree(pp);
+            XmlPullUtil.nextEndTag(pp, null, "record");
+            ++count;
+        }
+        return count;
+    }
+
+    /** Skip every record with XmlPullUtil.skipSubTree() that reads events. */
+    @Benchmark
+    public int skipSubTree() throws Exception
+    {
+        pp.setInput(new StringReader(Documents.RECORDS));
+        XmlPullUtil.nextStartTag(pp, "records");
+        int count = 0;
+        while(pp.nextTag() == XmlPullParser.START_TAG) {
+            XmlPullUtil.skipSubTree(pp);
+            ++count;
+        }
+        return count;
+    }
+
+    /** Skip every record with parser skipSubTree(). */
+    @Benchmark
+    public int parserSkipSubTree() throws Exception
+    {
+        pp.setInput(new StringReader(Documents.RECORDS));
+        XmlPullUtil.nextStartTag(pp, "records");
+        int count = 0;
+        while(pp.nextTag() == XmlPullParser.START_TAG) {
+            pp.skipSubTree();
+            ++count;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int writeSimpleElements() throws Exception
+    {
+        final StringWriter sw = new StringWriter(8 * 1024);
+        serializer.setOutput(sw);
+        serializer.startTag(null, "records");
+        for (int i = 0; i < Documents.RECORD_COUNT; i++)
+        {
+            XmlPullUtil.writeSimpleElement(serializer, null, "name", "Item number");
+            XmlPullUtil.writeSimpleElement(serializer, null, "price", null);
+        }
+        serializer.endTag(null, "records");
+        serializer.flush();
+        return sw.getBuffer().length();
+    }
+
+}
+
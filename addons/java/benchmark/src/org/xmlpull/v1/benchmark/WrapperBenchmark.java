@@ -0,0 +1,85 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.util.XmlPullUtil;
+import org.xmlpull.v1.wrapper.XmlPullParserWrapper;
+import org.xmlpull.v1.wrapper.XmlPullWrapperFactory;
+
+/**
+ * Overhead of delegation in StaticXmlPullParserWrapper compared with calling parser
+ * directly (replaces old wrapper perftest Driver that timed loops on one small document).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WrapperBenchmark
+{
+    @Param({"org.xmlpull.v1.impl.XmlPullParserImpl"})
+    public String impl;
+
+    private XmlPullParser pp;
+    private XmlPullParserWrapper wrapper;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        final XmlPullParserFactory factory = Documents.newFactory(impl);
+        pp = factory.newPullParser();
+        wrapper = XmlPullWrapperFactory.newInstance(factory).newPullParserWrapper();
+    }
+
+    @Benchmark
+    public void smallDirect() throws Exception
+    {
+        pp.setInput(new StringReader(Documents.SMALL));
+        pp.nextTag();
+        pp.require(XmlPullParser.START_TAG, null, "hello");
+        pp.next();
+        XmlPullUtil.nextEndTag(pp);
+        pp.require(XmlPullParser.END_TAG, null, "hello");
+    }
+
+    @Benchmark
+    public void smallStaticWrapper() throws Exception
+    {
+        wrapper.setInput(new StringReader(Documents.SMALL));
+        wrapper.nextTag();
+        wrapper.require(XmlPullParser.START_TAG, null, "hello");
+        wrapper.next();
+        wrapper.nextEndTag();
+        wrapper.require(XmlPullParser.END_TAG, null, "hello");
+    }
+
+    @Benchmark
+    public int recordsDirect(Blackhole bh) throws Exception
+    {
+        pp.setInput(new StringReader(Documents.RECORDS));
+        return IdiomBenchmark.readRecords(pp, bh);
+    }
+
+    @Benchmark
+    public int recordsStaticWrapper(Blackhole bh) throws Exception
+    {
+        wrapper.setInput(new StringReader(Documents.RECORDS));
+        return IdiomBenchmark.readRecords(wrapper, bh);
+    }
+
+}
+
@@ -0,0 +1,324 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.parser_pool;
+
+import java.io.Reader;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Pool of parsers with different features and properties: parser is borrowed for
+ * configuration and it is returned with all features and properties set as in the configuration.
+ *
+ * <p>Parsers of every configuration are kept in their own XmlPullParserPool so parser
+ * borrowed for the same configuration as before does not need to be reconfigured.
+ * If there is no parser with requested configuration parser kept for other configuration
+ * is reconfigured before new parser is created. When parser is returned its input
+ * is reset and features and properties changed by user are set back: standard features and
+ * features and properties in configuration are set as in configuration and known optional
+ * features (such as names-interned or xml-roundtrip) and properties (location and
+ * entity-expansion-limit) are set back to their state in new parser created by factory.
+ * Parser that can not be set back (or that does not report state that was set) is not kept
+ * in pool. Other implementation specific features and properties are not tracked: parser
+ * with such changes must be given back with discardPullParser() and not returned.
+ * Example:
+ * <pre>
+ * XmlPullParserConfiguration NS_AWARE = new XmlPullParserConfiguration(
+ *     new String[]{XmlPullParser.FEATURE_PROCESS_NAMESPACES});
+ * KeyedXmlPullParserPool pool = new KeyedXmlPullParserPool();
+ * XmlPullParser parser = pool.getPullParserFromPool(NS_AWARE);
+ * // use parser ...
+ * pool.returnPullParserToPool(NS_AWARE, parser);
+ * </pre>
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class KeyedXmlPullParserPool
+{
+    // optional features that may be changed by user and are not in configuration
+    private final static String[] OPTIONAL_FEATURES = {
+        "http://xmlpull.org/v1/doc/features.html#names-interned",
+        "http://xmlpull.org/v1/doc/features.html#xml-roundtrip",
+        "http://xmlpull.org/v1/doc/features.html#detect-encoding",
+        "http://xmlpull.org/v1/doc/features.html#relaxed",
+        "http://xmlpull.org/v1/doc/features.html#expand-entity-ref"
+    };
+
+    // optional properties that may be changed by user and are not in configuration
+    private final static String[] OPTIONAL_PROPERTIES = {
+        "http://xmlpull.org/v1/doc/properties.html#location",
+        "http://xmlpull.org/v1/doc/properties.html#entity-expansion-limit"
+    };
+
+    protected XmlPullParserFactory factory;
+    private final boolean sharedMode;
+    // state of optional features and properties in new parser
+    // (recorded when first parser is created)
+    private volatile boolean[] initialFeatures;
+    private volatile Object[] initialProperties;
+
+    // replaced by bigger copy when pool for new configuration is created so it is read without lock
+    private volatile ConfiguredPool[] pools = new ConfiguredPool[0];
+
+    /** Pool of parsers with one configuration. */
+    private class ConfiguredPool extends XmlPullParserPool
+    {
+        final XmlPullParserConfiguration config;
+
+        ConfiguredPool(XmlPullParserConfiguration config) {
+            super(KeyedXmlPullParserPool.this.factory, KeyedXmlPullParserPool.this.sharedMode);
+            this.config = config;
+        }
+
+        protected XmlPullParser newParser() throws XmlPullParserException {
+            final XmlPullParser pp = takeFromOtherPools(this);
+            if(pp != null) {
+                try {
+                    config.configure(pp);
+                    restoreState(config, pp);
+                    return pp;
+                } catch(XmlPullParserException ex) {
+                    // parser can not be reconfigured and new one is created
+                }
+            }
+            final XmlPullParser created = KeyedXmlPullParserPool.this.newParser(config);
+            if(initialFeatures == null) {
+                // newParser() was overridden: state of new parser is taken from factory
+                recordInitialState(factory.newPullParser());
+            }
+            return created;
+        }
+
+        public void returnPullParserToPool(XmlPullParser pp) {
+            try {
+                pp.setInput((Reader) null);
+                config.configure(pp);
+                restoreState(config, pp);
+            } catch(XmlPullParserException ex) {
+                discardParser(pp);
+                return;
+            } catch(RuntimeException ex) {
+                // for example IllegalStateException from parser that was not reset
+                discardParser(pp);
+                return;
+            }
+            // input was already reset so XmlPullParserPool.returnPullParserToPool() is not used
+            returnObject(pp);
+        }
+    }
+
+    public KeyedXmlPullParserPool() throws XmlPullParserException {
+        this(XmlPullParserFactory.newInstance());
+    }
+
+    public KeyedXmlPullParserPool(XmlPullParserFactory factory) {
+        this(factory, false);
+    }
+
+    /** Create pool that keeps parsers of every configuration in pool in given mode. */
+    public KeyedXmlPullParserPool(XmlPullParserFactory factory, boolean sharedMode) {
+        if(factory == null) throw new IllegalArgumentException();
+        this.factory = factory;
+        this.sharedMode = sharedMode;
+    }
+
+    /** Create parser with given configuration. */
+    protected XmlPullParser newParser(XmlPullParserConfiguration config)
+        throws XmlPullParserException
+    {
+        final XmlPullParser pp = factory.newPullParser();
+        if(initialFeatures == null) recordInitialState(pp);
+        config.configure(pp);
+        return pp;
+    }
+
+    /** Record state of optional features and properties in new parser. */
+    private void recordInitialState(XmlPullParser pp) {
+        final Object[] properties = new Object[OPTIONAL_PROPERTIES.length];
+        for (int i = 0; i < properties.length; i++) {
+            properties[i] = pp.getProperty(OPTIONAL_PROPERTIES[i]);
+        }
+        initialProperties = properties;
+        final boolean[] initial = new boolean[OPTIONAL_FEATURES.length];
+        for (int i = 0; i < initial.length; i++) initial[i] = pp.getFeature(OPTIONAL_FEATURES[i]);
+        initialFeatures = initial;
+    }
+
+    /**
+     * Set optional features and properties that are not in configuration to their state
+     * in new parser (if no parser was created yet by newParser() features are set to false
+     * and properties to null) and check that parser reports that state.
+     *
+     * @throws XmlPullParserException if state of parser can not be set back
+     */
+    private void restoreState(XmlPullParserConfiguration config, XmlPullParser pp)
+        throws XmlPullParserException
+    {
+        final boolean[] initial = initialFeatures;
+        final Object[] properties = initialProperties;
+        for (int i = 0; i < OPTIONAL_FEATURES.length; i++)
+        {
+            final String name = OPTIONAL_FEATURES[i];
+            if(config.getFeature(name)) continue; // set by configuration
+            final boolean state = initial != null && initial[i];
+            if(pp.getFeature(name) != state) {
+                pp.setFeature(name, state);
+                if(pp.getFeature(name) != state) throw new XmlPullParserException(
+                        "feature "+name+" could not be set back to "+state);
+            }
+        }
+        for (int i = 0; i < OPTIONAL_PROPERTIES.length; i++)
+        {
+            final String name = OPTIONAL_PROPERTIES[i];
+            if(config.getProperty(name) != null) continue; // set by configuration
+            final Object value = properties != null ? properties[i] : null;
+            if(!same(value, pp.getProperty(name))) {
+                // throws XmlPullParserException if parser does not accept value (such as null)
+                pp.setProperty(name, value);
+                if(!same(value, pp.getProperty(name))) throw new XmlPullParserException(
+                        "property "+name+" could not be set back to "+value);
+            }
+        }
+    }
+
+    private static boolean same(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Called when pool for new configuration is created
+     * (for example to set its limits), by default it does nothing.
+     */
+    protected void initPool(XmlPullParserConfiguration config, XmlPullParserPool pool) {
+    }
+
+    public XmlPullParser getPullParserFromPool(XmlPullParserConfiguration config)
+        throws XmlPullParserException
+    {
+        return getPool(config).getPullParserFromPool();
+    }
+
+    public void returnPullParserToPool(XmlPullParserConfiguration config, XmlPullParser pp) {
+        if(pp == null) throw new IllegalArgumentException();
+        getPool(config).returnPullParserToPool(pp);
+    }
+
+    /**
+     * Forget borrowed parser instead of returning it to pool: it must be used for parser
+     * whose state was changed in way that pool can not set back (such as features or properties
+     * specific to parser implementation that are not in configuration).
+     */
+    public void discardPullParser(XmlPullParserConfiguration config, XmlPullParser pp) {
+        if(pp == null) throw new IllegalArgumentException();
+        ((ConfiguredPool) getPool(config)).discardParser(pp);
+    }
+
+    /** Return pool that keeps parsers for configuration. */
+    public XmlPullParserPool getPool(XmlPullParserConfiguration config) {
+        if(config == null) throw new IllegalArgumentException("configuration can not be null");
+        ConfiguredPool pool = findPool(pools, config);
+        if(pool != null) return pool;
+        synchronized(this) {
+            final ConfiguredPool[] oldPools = pools;
+            pool = findPool(oldPools, config);
+            if(pool != null) return pool;
+            pool = new ConfiguredPool(config);
+            initPool(config, pool);
+            final ConfiguredPool[] newPools = new ConfiguredPool[oldPools.length + 1];
+            System.arraycopy(oldPools, 0, newPools, 0, oldPools.length);
+            newPools[oldPools.length] = pool;
+            pools = newPools;
+            return pool;
+        }
+    }
+
+    private static ConfiguredPool findPool(ConfiguredPool[] pools, XmlPullParserConfiguration config) {
+        for (int i = 0; i < pools.length; i++)
+        {
+            if(pools[i].config == config) return pools[i];
+        }
+        for (int i = 0; i < pools.length; i++)
+        {
+            if(pools[i].config.equals(config)) return pools[i];
+        }
+        return null;
+    }
+
+    private XmlPullParser takeFromOtherPools(ConfiguredPool pool) {
+        final ConfiguredPool[] allPools = pools;
+        for (int i = 0; i < allPools.length; i++)
+        {
+            if(allPools[i] == pool) continue;
+            final XmlPullParser pp = allPools[i].takeIdleParser();
+            if(pp != null) return pp;
+        }
+        return null;
+    }
+
+
+    // simple inline test
+    public static void main(String[] args) throws Exception
+    {
+        final XmlPullParserConfiguration nsAware = new XmlPullParserConfiguration(
+            new String[]{XmlPullParser.FEATURE_PROCESS_NAMESPACES});
+        final XmlPullParserConfiguration plain = new XmlPullParserConfiguration(new String[0]);
+        KeyedXmlPullParserPool pool = new KeyedXmlPullParserPool();
+        XmlPullParser p1 = pool.getPullParserFromPool(nsAware);
+        if(!p1.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES)) throw new RuntimeException();
+        p1.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        pool.returnPullParserToPool(nsAware, p1);
+        XmlPullParser p2 = pool.getPullParserFromPool(nsAware);
+        if(p1 != p2) throw new RuntimeException();
+        if(!p2.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES)) throw new RuntimeException();
+        pool.returnPullParserToPool(nsAware, p2);
+        // parser kept for other configuration is reused
+        XmlPullParser p3 = pool.getPullParserFromPool(plain);
+        if(p3 != p1) throw new RuntimeException();
+        if(p3.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES)) throw new RuntimeException();
+        pool.returnPullParserToPool(plain, p3);
+        // optional feature changed by user is set back when parser is returned
+        final String NAMES_INTERNED = "http://xmlpull.org/v1/doc/features.html#names-interned";
+        p1 = pool.getPullParserFromPool(plain);
+        try {
+            p1.setFeature(NAMES_INTERNED, true);
+        } catch(XmlPullParserException ex) {
+            // not supported by this parser
+        }
+        pool.returnPullParserToPool(plain, p1);
+        p2 = pool.getPullParserFromPool(plain);
+        if(p1 != p2) throw new RuntimeException();
+        if(p2.getFeature(NAMES_INTERNED)) throw new RuntimeException("names-interned leaked to next user");
+        pool.returnPullParserToPool(plain, p2);
+        // and when parser is moved to other configuration
+        final XmlPullParserConfiguration interned = new XmlPullParserConfiguration(
+            new String[]{NAMES_INTERNED});
+        p1 = pool.getPullParserFromPool(plain);
+        if(p1.getFeature(NAMES_INTERNED)) throw new RuntimeException();
+        pool.returnPullParserToPool(plain, p1);
+        try {
+            p1 = pool.getPullParserFromPool(interned);
+            pool.returnPullParserToPool(interned, p1);
+            p2 = pool.getPullParserFromPool(nsAware);
+            if(p2.getFeature(NAMES_INTERNED)) throw new RuntimeException("names-interned kept in other pool");
+            pool.returnPullParserToPool(nsAware, p2);
+        } catch(XmlPullParserException ex) {
+            // names-interned not supported by this parser
+        }
+        // location property set by user is not given to next user
+        final String LOCATION = "http://xmlpull.org/v1/doc/properties.html#location";
+        p1 = pool.getPullParserFromPool(plain);
+        try {
+            p1.setProperty(LOCATION, "file:test.xml");
+        } catch(XmlPullParserException ex) {
+            // not supported by this parser
+        }
+        pool.returnPullParserToPool(plain, p1);
+        p2 = pool.getPullParserFromPool(plain);
+        if(p2.getProperty(LOCATION) != null) throw new RuntimeException("location leaked to next user");
+        pool.returnPullParserToPool(plain, p2);
+        System.out.println(pool.getClass()+" OK");
+    }
+}
+
@@ -0,0 +1,575 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.parser_pool;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Pooling shared by XmlPullParserPool and XmlSerializerPool.
+ *
+ * <p>Pool is designed to be used by many threads at the same time: every thread keeps
+ * one object it returned in its own slot and takes it back without waiting for other threads.
+ * Other objects are kept in number of stripes (each with its own lock) and thread
+ * uses stripe selected by its identity and looks into other stripes only when its
+ * stripe is empty so threads rarely wait for each other.
+ *
+ * <p>By default pool keeps every object returned to it. Following limits can be set
+ * (value 0 means no limit) so pool does not keep memory after burst of load:
+ * <ul>
+ * <li>maximum pool size - number of objects kept in pool (in thread slots and in stripes),
+ * <li>maximum uses - object that was borrowed that many times is not kept when returned,
+ * <li>maximum idle time - objects not used for longer time are removed from pool
+ *     when object is returned or when evictIdle() is called (for example from timer),
+ * <li>maximum buffer size - object that reports (using optional property
+ *     <a href="http://xmlpull.org/v1/doc/properties.html#buffer-size">buffer-size</a>)
+ *     that its internal buffers are bigger is not kept when returned.
+ * </ul>
+ * When buffer high water mark is set returned object with bigger buffers is trimmed
+ * (see {@link #trim(Object, int)}) before it is kept in pool.
+ *
+ * <p>Pool counts borrowed, created and discarded objects (see {@link #getStatistics()}),
+ * counters are kept by every thread separately so counting does not add contention.
+ * Time of borrowing can be also measured (it is disabled by default as reading clock
+ * costs more than taking object from thread slot).
+ *
+ * <p>Thread slots do not work well with virtual threads (there may be millions of them
+ * and each would keep its own object) and monitors pin virtual thread to its carrier thread.
+ * For virtual threads pool should be created in shared mode: idle objects are kept in
+ * lock free stacks, no monitors are used and total number of objects (idle and borrowed)
+ * can be bounded by maximum total size (thread that can not get object waits until
+ * other thread returns object or until maximum wait time passes).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public abstract class ObjectPool {
+    public final static String PROPERTY_BUFFER_SIZE =
+        "http://xmlpull.org/v1/doc/properties.html#buffer-size";
+
+    private final static int STRIPES = 16; // must be power of two
+
+    // policies (0 means no limit)
+    private int maxPoolSize;
+    private int maxUses;
+    private long maxIdleTime;
+    private int maxBufferSize;
+    private int bufferHighWaterMark;
+    private int maxTotal;
+    private long maxWaitTime;
+    private boolean borrowTimeMeasured;
+
+    private final SharedStore shared; // null if thread slots are used
+
+    private final ThreadLocal localSlot = new ThreadLocal();
+    private final Vector slots = new Vector(); // SlotReference to Slot of every thread
+    private final Counters retiredCounters = new Counters(); // counted by threads that are gone
+    private int slotsPurgeSize = 16;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    // borrowed entries if uses are limited (weak so objects that are never returned are not kept)
+    private final LentEntries[] lent = new LentEntries[STRIPES];
+    private long nextEviction; // read and written without lock as it is only a hint
+    private final AtomicInteger kept = new AtomicInteger(); // entries counted against maxPoolSize
+
+    /** Pooled object and its use count. */
+    private static class Entry {
+        Object object;
+        int uses;
+        long idleSince;
+        boolean counted; // included in kept
+    }
+
+    /** Stack of entries (oldest at bottom) guarded by its own lock. */
+    private static class Stripe {
+        Entry[] entries = new Entry[4];
+        int size;
+    }
+
+    /**
+     * Entry kept for one thread. Only owning thread puts entry into slot, other threads
+     * (in evictIdle()) may only take it out with compareAndSet() so both can not get it.
+     */
+    private static class Slot {
+        final AtomicReference entry = new AtomicReference();
+        Entry spare; // empty entry to be reused when object is returned (used only by owner)
+        final Counters counters = new Counters();
+    }
+
+    /**
+     * Entries of borrowed objects that are weakly referenced and compared by identity
+     * (pooled objects may override equals()) guarded by its own lock.
+     */
+    private static class LentEntries {
+        private final Hashtable entries = new Hashtable();
+        private final ReferenceQueue cleared = new ReferenceQueue();
+
+        synchronized void put(Object o, Entry entry) {
+            // forget entries of objects that were never returned
+            Reference ref;
+            while((ref = cleared.poll()) != null) entries.remove(ref);
+            entries.put(new LentKey(o, cleared), entry);
+        }
+
+        synchronized Entry remove(Object o) {
+            return (Entry) entries.remove(new LentKey(o, null));
+        }
+    }
+
+    /** Weak key that is equal only to key of the same object (also used by SharedStore). */
+    static class LentKey extends WeakReference {
+        private final int hash;
+
+        LentKey(Object o, ReferenceQueue queue) {
+            super(o, queue);
+            hash = System.identityHashCode(o);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            if(other == this) return true;
+            if(!(other instanceof LentKey)) return false;
+            final Object o = get();
+            return o != null && o == ((LentKey) other).get();
+        }
+    }
+
+    /** Slot of thread is weakly referenced so it is forgotten when thread is gone. */
+    private static class SlotReference extends WeakReference {
+        final AtomicReference entry;
+        final Counters counters;
+
+        SlotReference(Slot slot) {
+            super(slot);
+            entry = slot.entry;
+            counters = slot.counters;
+        }
+    }
+
+    /**
+     * Counters of one thread: only this thread changes them and other threads
+     * read them without lock so their values are only approximate.
+     */
+    private static class Counters {
+        long hits;
+        long misses;
+        long created;
+        long returned;
+        long discarded;
+        final long[] borrowTimes = new long[PoolStatistics.BORROW_TIME_BUCKETS];
+
+        void add(Counters c) {
+            hits += c.hits;
+            misses += c.misses;
+            created += c.created;
+            returned += c.returned;
+            discarded += c.discarded;
+            for (int i = 0; i < borrowTimes.length; i++) borrowTimes[i] += c.borrowTimes[i];
+        }
+    }
+
+    protected ObjectPool() {
+        this(false);
+    }
+
+    /** Create pool that uses thread slots or pool in shared mode (suitable for virtual threads). */
+    protected ObjectPool(boolean sharedMode) {
+        shared = sharedMode ? new SharedStore(this) : null;
+        for (int i = 0; i < STRIPES; i++)
+        {
+            stripes[i] = new Stripe();
+            lent[i] = new LentEntries();
+        }
+    }
+
+    /** Maximum number of objects kept in pool (including objects kept in thread slots). */
+    public void setMaxPoolSize(int maxPoolSize) {
+        if(maxPoolSize < 0) throw new IllegalArgumentException("maximum pool size can not be negative");
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /** Object borrowed that many times is not kept in pool. */
+    public void setMaxUses(int maxUses) {
+        if(maxUses < 0) throw new IllegalArgumentException("maximum uses can not be negative");
+        this.maxUses = maxUses;
+    }
+
+    public int getMaxUses() {
+        return maxUses;
+    }
+
+    /** Objects not used for that many milliseconds are removed from pool. */
+    public void setMaxIdleTime(long maxIdleTime) {
+        if(maxIdleTime < 0) throw new IllegalArgumentException("maximum idle time can not be negative");
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /** Object with internal buffers bigger than that many bytes is not kept in pool. */
+    public void setMaxBufferSize(int maxBufferSize) {
+        if(maxBufferSize < 0) throw new IllegalArgumentException("maximum buffer size can not be negative");
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /** Returned object with internal buffers bigger than that many bytes is trimmed. */
+    public void setBufferHighWaterMark(int bufferHighWaterMark) {
+        if(bufferHighWaterMark < 0) throw new IllegalArgumentException(
+                "buffer high water mark can not be negative");
+        this.bufferHighWaterMark = bufferHighWaterMark;
+    }
+
+    public int getBufferHighWaterMark() {
+        return bufferHighWaterMark;
+    }
+
+    /**
+     * Maximum number of objects created by pool and not yet discarded (borrowed and idle),
+     * it can be set only in shared mode.
+     */
+    public void setMaxTotal(int maxTotal) {
+        if(maxTotal < 0) throw new IllegalArgumentException("maximum total size can not be negative");
+        if(shared == null) throw new IllegalStateException("maximum total size requires shared mode");
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * How many milliseconds to wait for object when maximum total size is reached
+     * before XmlPullParserException is thrown (0 means wait as long as needed).
+     */
+    public void setMaxWaitTime(long maxWaitTime) {
+        if(maxWaitTime < 0) throw new IllegalArgumentException("maximum wait time can not be negative");
+        this.maxWaitTime = maxWaitTime;
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    public boolean isSharedMode() {
+        return shared != null;
+    }
+
+    /** Measure how long it takes to borrow object (histogram is in statistics). */
+    public void setBorrowTimeMeasured(boolean borrowTimeMeasured) {
+        this.borrowTimeMeasured = borrowTimeMeasured;
+    }
+
+    public boolean isBorrowTimeMeasured() {
+        return borrowTimeMeasured;
+    }
+
+    /** Create new object when pool is empty. */
+    protected abstract Object newObject() throws XmlPullParserException;
+
+    /** Return size of internal buffers of object in bytes or -1 if it is not known. */
+    protected abstract int sizeOf(Object o);
+
+    /**
+     * Shrink internal buffers of returned object that are bigger than maxSize bytes
+     * (by default it does nothing).
+     */
+    protected void trim(Object o, int maxSize) {
+    }
+
+    protected Object borrowObject()
+        throws XmlPullParserException
+    {
+        if(shared != null) return shared.borrow();
+        final long start = borrowTimeMeasured ? System.nanoTime() : 0;
+        final Slot slot = getSlot();
+        final Counters counters = slot.counters;
+        Entry entry = takeFromSlot(slot.entry);
+        if(entry == null) entry = takeFromStripes();
+        if(entry == null) {
+            ++counters.misses;
+            entry = new Entry();
+            entry.object = newObject();
+            ++counters.created;
+        } else {
+            ++counters.hits;
+        }
+        final Object o = entry.object;
+        if(maxUses > 0) {
+            ++entry.uses;
+            lent[indexOf(o)].put(o, entry);
+        } else {
+            entry.object = null;
+            slot.spare = entry;
+        }
+        if(start != 0) {
+            ++counters.borrowTimes[PoolStatistics.bucketOf(System.nanoTime() - start)];
+        }
+        return o;
+    }
+
+    protected void returnObject(Object o) {
+        if(o == null) throw new IllegalArgumentException();
+        if(shared != null) {
+            shared.giveBack(o);
+            return;
+        }
+        final Slot slot = getSlot();
+        final Counters counters = slot.counters;
+        ++counters.returned;
+        Entry entry = null;
+        if(maxUses > 0) {
+            entry = removeLent(o);
+            if(entry != null && entry.uses >= maxUses) {
+                ++counters.discarded;
+                return;
+            }
+        }
+        if(bufferHighWaterMark > 0 && sizeOf(o) > bufferHighWaterMark) trim(o, bufferHighWaterMark);
+        if(maxBufferSize > 0 && sizeOf(o) > maxBufferSize) {
+            ++counters.discarded;
+            return;
+        }
+        if(entry == null) {
+            entry = slot.spare;
+            if(entry != null) {
+                slot.spare = null;
+            } else {
+                entry = new Entry();
+            }
+            entry.object = o;
+        }
+        if(maxPoolSize > 0) {
+            if(kept.incrementAndGet() > maxPoolSize) {
+                kept.decrementAndGet();
+                ++counters.discarded;
+                return;
+            }
+            entry.counted = true;
+        }
+        long now = 0;
+        if(maxIdleTime > 0) {
+            now = System.currentTimeMillis();
+            entry.idleSince = now;
+        }
+        if(slot.entry.get() == null) {
+            // other threads never fill empty slot
+            slot.entry.lazySet(entry);
+        } else {
+            putToStripes(entry);
+        }
+        if(maxIdleTime > 0 && now >= nextEviction) {
+            nextEviction = now + Math.max(1, maxIdleTime / 2);
+            evictIdle();
+        }
+    }
+
+    /**
+     * Take object that is in pool without creating new one (return null if pool is empty).
+     */
+    Object takeIdleObject() {
+        if(shared != null) return shared.takeIdle();
+        Entry entry = takeFromSlot(getSlot().entry);
+        if(entry == null) entry = takeFromStripes();
+        return entry != null ? entry.object : null;
+    }
+
+    /**
+     * Forget borrowed object that will not be returned to pool.
+     */
+    protected void discardObject(Object o) {
+        if(shared != null) {
+            shared.discard(o);
+            return;
+        }
+        ++getSlot().counters.discarded;
+        if(maxUses > 0) removeLent(o);
+    }
+
+    /** Take entry out of slot, return null if it is empty or entry was just taken by other thread. */
+    private Entry takeFromSlot(AtomicReference slotEntry) {
+        final Entry entry = (Entry) slotEntry.get();
+        if(entry == null || !slotEntry.compareAndSet(entry, null)) return null;
+        release(entry);
+        return entry;
+    }
+
+    /** Entry left pool so it is no longer counted against maximum pool size. */
+    private void release(Entry entry) {
+        if(entry.counted) {
+            entry.counted = false;
+            kept.decrementAndGet();
+        }
+    }
+
+    private Entry removeLent(Object o) {
+        return lent[indexOf(o)].remove(o);
+    }
+
+    /**
+     * Remove objects that were not used for longer than maximum idle time
+     * (it is called automatically when objects are returned to pool).
+     */
+    public void evictIdle() {
+        if(maxIdleTime == 0) return;
+        if(shared != null) {
+            shared.evictIdle(maxIdleTime);
+            return;
+        }
+        final long oldest = System.currentTimeMillis() - maxIdleTime;
+        final Counters counters = getSlot().counters;
+        for (int i = 0; i < STRIPES; i++)
+        {
+            final Stripe stripe = stripes[i];
+            synchronized(stripe) {
+                int expired = 0;
+                while(expired < stripe.size && stripe.entries[expired].idleSince < oldest) ++expired;
+                if(expired > 0) {
+                    for (int j = 0; j < expired; j++) release(stripe.entries[j]);
+                    System.arraycopy(stripe.entries, expired, stripe.entries, 0, stripe.size - expired);
+                    for (int j = stripe.size - expired; j < stripe.size; j++) stripe.entries[j] = null;
+                    stripe.size -= expired;
+                    counters.discarded += expired;
+                }
+            }
+        }
+        synchronized(slots) {
+            for (int i = slots.size() - 1; i >= 0; --i)
+            {
+                final SlotReference ref = (SlotReference) slots.elementAt(i);
+                if(ref.get() == null) {
+                    removeSlot(i); // thread is gone
+                    continue;
+                }
+                final Entry entry = (Entry) ref.entry.get();
+                if(entry == null || entry.idleSince >= oldest) continue;
+                if(!ref.entry.compareAndSet(entry, null)) continue; // owner took it
+                // owner may have borrowed and returned the same entry after it was checked
+                if(entry.idleSince < oldest) {
+                    release(entry);
+                    ++counters.discarded;
+                } else {
+                    putToStripes(entry);
+                }
+            }
+        }
+    }
+
+    private Slot getSlot() {
+        Slot slot = (Slot) localSlot.get();
+        if(slot == null) {
+            slot = new Slot();
+            localSlot.set(slot);
+            synchronized(slots) {
+                if(slots.size() >= slotsPurgeSize) {
+                    // forget slots of threads that are gone
+                    for (int i = slots.size() - 1; i >= 0; --i)
+                    {
+                        if(((WeakReference) slots.elementAt(i)).get() == null) removeSlot(i);
+                    }
+                    slotsPurgeSize = Math.max(16, 2 * slots.size());
+                }
+                slots.addElement(new SlotReference(slot));
+            }
+        }
+        return slot;
+    }
+
+    /** Forget slot of thread that is gone and its object (must be called with lock on slots). */
+    private void removeSlot(int i) {
+        final SlotReference ref = (SlotReference) slots.elementAt(i);
+        retiredCounters.add(ref.counters);
+        final Entry entry = (Entry) ref.entry.getAndSet(null);
+        if(entry != null) {
+            release(entry);
+            ++retiredCounters.discarded;
+        }
+        slots.removeElementAt(i);
+    }
+
+    /**
+     * Return snapshot of pool counters (counters changed by other threads
+     * at the same time may be not included).
+     */
+    public PoolStatistics getStatistics() {
+        if(shared != null) return shared.getStatistics();
+        final Counters total = new Counters();
+        int idleSize = 0;
+        synchronized(slots) {
+            total.add(retiredCounters);
+            for (int i = 0; i < slots.size(); i++)
+            {
+                final SlotReference ref = (SlotReference) slots.elementAt(i);
+                total.add(ref.counters);
+                if(ref.entry.get() != null) ++idleSize;
+            }
+        }
+        for (int i = 0; i < STRIPES; i++)
+        {
+            idleSize += stripes[i].size;
+        }
+        return new PoolStatistics(total.hits, total.misses, total.created,
+                                  total.returned, total.discarded, idleSize, total.borrowTimes);
+    }
+
+    /** Put entry to stripe of current thread (pool size was already checked). */
+    private void putToStripes(Entry entry) {
+        final Stripe stripe = stripes[stripeIndex()];
+        synchronized(stripe) {
+            if(stripe.size == stripe.entries.length) {
+                final Entry[] newEntries = new Entry[stripe.size * 2];
+                System.arraycopy(stripe.entries, 0, newEntries, 0, stripe.size);
+                stripe.entries = newEntries;
+            }
+            stripe.entries[stripe.size++] = entry;
+        }
+    }
+
+    private Entry takeFromStripes() {
+        final int home = stripeIndex();
+        for (int i = 0; i < STRIPES; i++)
+        {
+            final Stripe stripe = stripes[(home + i) & (STRIPES - 1)];
+            // size of other stripes is read without lock only as a hint (checked again with lock)
+            if(i > 0 && stripe.size == 0) continue;
+            synchronized(stripe) {
+                if(stripe.size > 0) {
+                    final Entry entry = stripe.entries[--stripe.size];
+                    stripe.entries[stripe.size] = null;
+                    release(entry);
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int stripeIndex() {
+        return indexOf(Thread.currentThread());
+    }
+
+    private static int indexOf(Object o) {
+        int h = System.identityHashCode(o);
+        h ^= (h >>> 16);
+        return h & (STRIPES - 1);
+    }
+
+}
+
@@ -0,0 +1,70 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.parser_pool;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Standard MBean that exposes statistics of pool in JMX.
+ * Example:
+ * <pre>
+ * XmlPullParserPool pool = new XmlPullParserPool();
+ * ObjectPoolMonitor.register(pool, "org.xmlpull.v1.parser_pool:type=XmlPullParserPool,name=requests");
+ * </pre>
+ *
+ * <p>This class is separate from pool so pool can be used without JMX.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class ObjectPoolMonitor implements ObjectPoolMonitorMBean
+{
+    private final ObjectPool pool;
+
+    public ObjectPoolMonitor(ObjectPool pool) {
+        if(pool == null) throw new IllegalArgumentException();
+        this.pool = pool;
+    }
+
+    /** Register monitor of pool in platform MBean server under given name. */
+    public static ObjectName register(ObjectPool pool, String name) throws JMException {
+        final ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+            new ObjectPoolMonitor(pool), objectName);
+        return objectName;
+    }
+
+    public static void unregister(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    public long getHits() { return pool.getStatistics().getHits(); }
+
+    public long getMisses() { return pool.getStatistics().getMisses(); }
+
+    public long getCreated() { return pool.getStatistics().getCreated(); }
+
+    public long getReturned() { return pool.getStatistics().getReturned(); }
+
+    public long getDiscarded() { return pool.getStatistics().getDiscarded(); }
+
+    public int getIdleSize() { return pool.getStatistics().getIdleSize(); }
+
+    public long getBorrowed() { return pool.getStatistics().getBorrowed(); }
+
+    public long getBorrowTimeMedian() { return pool.getStatistics().getBorrowTimePercentile(0.5); }
+
+    public long getBorrowTime99thPercentile() {
+        return pool.getStatistics().getBorrowTimePercentile(0.99);
+    }
+
+    public boolean isBorrowTimeMeasured() { return pool.isBorrowTimeMeasured(); }
+
+    public void setBorrowTimeMeasured(boolean borrowTimeMeasured) {
+        pool.setBorrowTimeMeasured(borrowTimeMeasured);
+    }
+
+}
+
@@ -0,0 +1,28 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.parser_pool;
+
+/**
+ * Management interface of {@link ObjectPoolMonitor} (see {@link PoolStatistics} for meaning of values).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public interface ObjectPoolMonitorMBean
+{
+    long getHits();
+    long getMisses();
+    long getCreated();
+    long getReturned();
+    long getDiscarded();
+    int getIdleSize();
+    long getBorrowed();
+    /** Median borrow time in nanoseconds (upper bound of histogram bucket). */
+    long getBorrowTimeMedian();
+    /** 99th percentile of borrow time in nanoseconds (upper bound of histogram bucket). */
+    long getBorrowTime99thPercentile();
+
+    boolean isBorrowTimeMeasured();
+    void setBorrowTimeMeasured(boolean borrowTimeMeasured);
+}
+
@@ -0,0 +1,120 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.parser_pool;
+
+/**
+ * Snapshot of pool counters returned by {@link ObjectPool#getStatistics()}.
+ *
+ * <p>Borrow is a hit when object was taken from pool and a miss when new object
+ * had to be created. Objects are discarded when they are not kept in pool because
+ * of its limits (including objects evicted as idle).
+ *
+ * <p>Borrow time histogram (only if it was enabled in pool) has buckets with
+ * power of two bounds: bucket i counts borrows that took less than 2<sup>i+1</sup>
+ * nanoseconds (and at least 2<sup>i</sup> if i &gt; 0), the last bucket counts all longer borrows.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class PoolStatistics
+{
+    public final static int BORROW_TIME_BUCKETS = 40;
+
+    private final long hits;
+    private final long misses;
+    private final long created;
+    private final long returned;
+    private final long discarded;
+    private final int idleSize;
+    private final long[] borrowTimes;
+
+    PoolStatistics(long hits, long misses, long created, long returned, long discarded,
+                   int idleSize, long[] borrowTimes)
+    {
+        this.hits = hits;
+        this.misses = misses;
+        this.created = created;
+        this.returned = returned;
+        this.discarded = discarded;
+        this.idleSize = idleSize;
+        this.borrowTimes = borrowTimes;
+    }
+
+    /** Return histogram bucket for time in nanoseconds. */
+    static int bucketOf(long nanos)
+    {
+        int bucket = 0;
+        while(nanos > 1 && bucket < BORROW_TIME_BUCKETS - 1) {
+            nanos >>= 1;
+            ++bucket;
+        }
+        return bucket;
+    }
+
+    /** Number of borrows when object was taken from pool. */
+    public long getHits() { return hits; }
+
+    /** Number of borrows when pool was empty. */
+    public long getMisses() { return misses; }
+
+    /** Number of objects created by pool. */
+    public long getCreated() { return created; }
+
+    /** Number of objects returned to pool (including those that were discarded). */
+    public long getReturned() { return returned; }
+
+    /** Number of objects that were not kept in pool or were evicted. */
+    public long getDiscarded() { return discarded; }
+
+    /** Number of objects kept in pool. */
+    public int getIdleSize() { return idleSize; }
+
+    /** Number of objects borrowed and not yet returned. */
+    public long getBorrowed() { return Math.max(0, hits + created - returned); }
+
+    /** Number of borrows counted in given bucket of borrow time histogram. */
+    public long getBorrowTimeCount(int bucket) { return borrowTimes[bucket]; }
+
+    /** Upper bound in nanoseconds of given bucket of borrow time histogram. */
+    public static long getBorrowTimeBound(int bucket) {
+        return bucket < BORROW_TIME_BUCKETS - 1 ? 1L << (bucket + 1) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Return upper bound in nanoseconds of borrow time for given fraction (for example 0.99)
+     * of measured borrows or 0 if no borrows were measured.
+     */
+    public long getBorrowTimePercentile(double fraction)
+    {
+        long total = 0;
+        for (int i = 0; i < BORROW_TIME_BUCKETS; i++) total += borrowTimes[i];
+        if(total == 0) return 0;
+        final long limit = (long) Math.ceil(total * fraction);
+        long count = 0;
+        for (int i = 0; i < BORROW_TIME_BUCKETS; i++)
+        {
+            count += borrowTimes[i];
+            if(count >= limit) return getBorrowTimeBound(i);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public String toString()
+    {
+        final StringBuffer buf = new StringBuffer();
+        buf.append("hits=").append(hits);
+        buf.append(" misses=").append(misses);
+        buf.append(" created=").append(created);
+        buf.append(" returned=").append(returned);
+        buf.append(" discarded=").append(discarded);
+        buf.append(" idle=").append(idleSize);
+        final long median = getBorrowTimePercentile(0.5);
+        if(median > 0) {
+            buf.append(" borrowTime50%<").append(median).append("ns");
+            buf.append(" borrowTime99%<").append(getBorrowTimePercentile(0.99)).append("ns");
+        }
+        return buf.toString();
+    }
+
+}
+
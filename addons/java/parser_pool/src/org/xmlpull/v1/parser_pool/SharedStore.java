@@ -0,0 +1,291 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.parser_pool;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Objects of ObjectPool in shared mode: there are no thread slots and no monitors
+ * (so virtual threads are never pinned to carrier thread) - idle objects are kept in
+ * lock free stacks (one per stripe) and number of live objects (idle and borrowed)
+ * is bounded by counter used as non blocking semaphore. Thread that can not get
+ * object parks until other thread returns or discards object (or until maximum wait time
+ * passes), interrupted thread stops waiting with XmlPullParserException and its
+ * interrupted status is kept.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+final class SharedStore
+{
+    private final static int STRIPES = 16; // must be power of two
+
+    // counter indexes in stripe of counters
+    private final static int HITS = 0;
+    private final static int MISSES = 1;
+    private final static int CREATED = 2;
+    private final static int RETURNED = 3;
+    private final static int DISCARDED = 4;
+    private final static int BORROW_TIMES = 5;
+    private final static int COUNTERS = BORROW_TIMES + PoolStatistics.BORROW_TIME_BUCKETS;
+
+    // thread checks pool again after that time even if it was not woken up
+    private final static long MAX_PARK_NANOS = 10000000L;
+
+    private final ObjectPool pool;
+    private final AtomicReference[] tops = new AtomicReference[STRIPES];
+    private final AtomicInteger live = new AtomicInteger(); // created and not yet discarded
+    private final AtomicInteger idle = new AtomicInteger();
+    private final AtomicLongArray counters = new AtomicLongArray(STRIPES * COUNTERS);
+    // borrowed entries if uses are limited (keys compare objects by identity)
+    private final ConcurrentHashMap lent = new ConcurrentHashMap();
+    private volatile long nextEviction;
+    private final ConcurrentLinkedQueue waiters = new ConcurrentLinkedQueue(); // threads parked in borrow()
+
+    /** Pooled object in stack (entry is never pushed twice so compare and set is safe). */
+    private static class Entry {
+        final Object object;
+        int uses;
+        long idleSince;
+        Entry next;
+
+        Entry(Object object, int uses) {
+            this.object = object;
+            this.uses = uses;
+        }
+    }
+
+    SharedStore(ObjectPool pool) {
+        this.pool = pool;
+        for (int i = 0; i < STRIPES; i++) tops[i] = new AtomicReference();
+    }
+
+    Object borrow() throws XmlPullParserException {
+        final long start = pool.isBorrowTimeMeasured() ? System.nanoTime() : 0;
+        final int home = stripeIndex();
+        Entry entry = null;
+        long deadline = 0;
+        final Thread current = Thread.currentThread();
+        boolean waiting = false;
+        try {
+            while(entry == null) {
+                entry = pop(home);
+                if(entry != null) {
+                    idle.decrementAndGet();
+                    count(home, HITS);
+                    break;
+                }
+                if(tryAcquire()) {
+                    count(home, MISSES);
+                    boolean created = false;
+                    try {
+                        entry = new Entry(pool.newObject(), 0);
+                        created = true;
+                    } finally {
+                        if(!created) {
+                            live.decrementAndGet();
+                            signal();
+                        }
+                    }
+                    count(home, CREATED);
+                    break;
+                }
+                // all objects are borrowed: wait for one to be returned
+                if(!waiting) {
+                    // check pool again after thread is registered so returned object is not missed
+                    waiters.add(current);
+                    waiting = true;
+                    continue;
+                }
+                if(Thread.interrupted()) {
+                    current.interrupt();
+                    throw new XmlPullParserException("interrupted while waiting for object in pool of "
+                                                         +pool.getMaxTotal()+" objects");
+                }
+                final long now = System.currentTimeMillis();
+                final long maxWaitTime = pool.getMaxWaitTime();
+                if(deadline == 0) {
+                    deadline = maxWaitTime > 0 ? now + maxWaitTime : Long.MAX_VALUE;
+                } else if(now >= deadline) {
+                    throw new XmlPullParserException("no object available in pool of "
+                                                         +pool.getMaxTotal()+" objects after "+maxWaitTime+" ms");
+                }
+                final long remaining = deadline - now;
+                LockSupport.parkNanos(this, remaining < MAX_PARK_NANOS / 1000000L
+                                          ? remaining * 1000000L : MAX_PARK_NANOS);
+                // thread was woken up (and removed) by other thread or it registers again
+                waiters.remove(current);
+                waiting = false;
+            }
+        } finally {
+            if(waiting) waiters.remove(current);
+        }
+        final Object o = entry.object;
+        if(pool.getMaxUses() > 0) {
+            ++entry.uses;
+            lent.put(new ObjectPool.LentKey(o, null), entry);
+        }
+        if(start != 0) {
+            count(home, BORROW_TIMES + PoolStatistics.bucketOf(System.nanoTime() - start));
+        }
+        return o;
+    }
+
+    void giveBack(Object o) {
+        final int home = stripeIndex();
+        count(home, RETURNED);
+        int uses = 0;
+        final int maxUses = pool.getMaxUses();
+        if(maxUses > 0) {
+            final Entry entry = (Entry) lent.remove(new ObjectPool.LentKey(o, null));
+            if(entry != null) {
+                if(entry.uses >= maxUses) {
+                    drop(home);
+                    return;
+                }
+                uses = entry.uses;
+            }
+        }
+        final int highWaterMark = pool.getBufferHighWaterMark();
+        if(highWaterMark > 0 && pool.sizeOf(o) > highWaterMark) pool.trim(o, highWaterMark);
+        final int maxBufferSize = pool.getMaxBufferSize();
+        if((maxBufferSize > 0 && pool.sizeOf(o) > maxBufferSize) || !tryKeepIdle()) {
+            drop(home);
+            return;
+        }
+        final Entry entry = new Entry(o, uses);
+        final long maxIdleTime = pool.getMaxIdleTime();
+        long now = 0;
+        if(maxIdleTime > 0) {
+            now = System.currentTimeMillis();
+            entry.idleSince = now;
+        }
+        push(home, entry);
+        if(maxIdleTime > 0 && now >= nextEviction) {
+            nextEviction = now + Math.max(1, maxIdleTime / 2);
+            evictIdle(maxIdleTime);
+        }
+    }
+
+    Object takeIdle() {
+        final Entry entry = pop(stripeIndex());
+        if(entry == null) return null;
+        idle.decrementAndGet();
+        live.decrementAndGet(); // object leaves this pool
+        signal();
+        return entry.object;
+    }
+
+    void discard(Object o) {
+        if(pool.getMaxUses() > 0) lent.remove(new ObjectPool.LentKey(o, null));
+        drop(stripeIndex());
+    }
+
+    void evictIdle(long maxIdleTime) {
+        final long oldest = System.currentTimeMillis() - maxIdleTime;
+        final int home = stripeIndex();
+        for (int i = 0; i < STRIPES; i++)
+        {
+            // take whole stack and put back entries that are not expired
+            Entry entry = (Entry) tops[i].getAndSet(null);
+            while(entry != null) {
+                final Entry next = entry.next;
+                entry.next = null;
+                if(entry.idleSince < oldest) {
+                    idle.decrementAndGet();
+                    drop(home);
+                } else {
+                    // new entry as other thread may still try to pop old one
+                    final Entry kept = new Entry(entry.object, entry.uses);
+                    kept.idleSince = entry.idleSince;
+                    push(i, kept);
+                }
+                entry = next;
+            }
+        }
+    }
+
+    PoolStatistics getStatistics() {
+        final long[] total = new long[COUNTERS];
+        for (int i = 0; i < counters.length(); i++) total[i % COUNTERS] += counters.get(i);
+        final long[] borrowTimes = new long[PoolStatistics.BORROW_TIME_BUCKETS];
+        System.arraycopy(total, BORROW_TIMES, borrowTimes, 0, borrowTimes.length);
+        return new PoolStatistics(total[HITS], total[MISSES], total[CREATED],
+                                  total[RETURNED], total[DISCARDED], idle.get(), borrowTimes);
+    }
+
+    private void drop(int home) {
+        live.decrementAndGet();
+        count(home, DISCARDED);
+        signal(); // waiting thread can create new object
+    }
+
+    /** Wake up one thread waiting in borrow(). */
+    private void signal() {
+        final Thread waiter = (Thread) waiters.poll();
+        if(waiter != null) LockSupport.unpark(waiter);
+    }
+
+    /** Count returned object as idle unless maximum pool size was reached. */
+    private boolean tryKeepIdle() {
+        final int maxPoolSize = pool.getMaxPoolSize();
+        while(true) {
+            final int n = idle.get();
+            if(maxPoolSize > 0 && n >= maxPoolSize) return false;
+            if(idle.compareAndSet(n, n + 1)) return true;
+        }
+    }
+
+    private boolean tryAcquire() {
+        final int maxTotal = pool.getMaxTotal();
+        while(true) {
+            final int n = live.get();
+            if(maxTotal > 0 && n >= maxTotal) return false;
+            if(live.compareAndSet(n, n + 1)) return true;
+        }
+    }
+
+    private Entry pop(int home) {
+        for (int i = 0; i < STRIPES; i++)
+        {
+            final AtomicReference top = tops[(home + i) & (STRIPES - 1)];
+            while(true) {
+                final Entry entry = (Entry) top.get();
+                if(entry == null) break;
+                if(top.compareAndSet(entry, entry.next)) {
+                    entry.next = null;
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void push(int home, Entry entry) {
+        final AtomicReference top = tops[home];
+        while(true) {
+            final Entry next = (Entry) top.get();
+            entry.next = next;
+            if(top.compareAndSet(next, entry)) break;
+        }
+        signal();
+    }
+
+    private void count(int home, int counter) {
+        counters.incrementAndGet(home * COUNTERS + counter);
+    }
+
+    private static int stripeIndex() {
+        int h = System.identityHashCode(Thread.currentThread());
+        h ^= (h >>> 16);
+        return h & (STRIPES - 1);
+    }
+
+}
+
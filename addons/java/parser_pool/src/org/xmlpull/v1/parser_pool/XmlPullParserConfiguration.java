@@ -0,0 +1,132 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.parser_pool;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Immutable set of features and properties of parser used as key in KeyedXmlPullParserPool.
+ * Standard features that are not set in configuration are false.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class XmlPullParserConfiguration
+{
+    private final static String[] STANDARD_FEATURES = {
+        XmlPullParser.FEATURE_PROCESS_NAMESPACES,
+        XmlPullParser.FEATURE_REPORT_NAMESPACE_ATTRIBUTES,
+        XmlPullParser.FEATURE_PROCESS_DOCDECL,
+        XmlPullParser.FEATURE_VALIDATION
+    };
+
+    private final Hashtable features = new Hashtable();
+    private final Hashtable properties = new Hashtable();
+    private final String[] featureNames; // standard features and all features in configuration
+    private final int hashCode;
+
+    /** Configuration with given features enabled and no properties. */
+    public XmlPullParserConfiguration(String[] enabledFeatures)
+    {
+        this(toTable(enabledFeatures), null);
+    }
+
+    /**
+     * Configuration with features (names mapped to Boolean values) and properties
+     * (names mapped to values), passed tables are copied and may be null.
+     */
+    public XmlPullParserConfiguration(Hashtable features, Hashtable properties)
+    {
+        if(features != null) {
+            for (Enumeration e = features.keys(); e.hasMoreElements(); ) {
+                final String name = (String) e.nextElement();
+                final Object value = features.get(name);
+                if(!(value instanceof Boolean)) throw new IllegalArgumentException(
+                        "value of feature "+name+" must be Boolean and not "+value);
+                // false is default so only enabled features are kept
+                if(((Boolean) value).booleanValue()) this.features.put(name, value);
+            }
+        }
+        if(properties != null) {
+            for (Enumeration e = properties.keys(); e.hasMoreElements(); ) {
+                final String name = (String) e.nextElement();
+                this.properties.put(name, properties.get(name));
+            }
+        }
+        final Hashtable names = new Hashtable();
+        for (int i = 0; i < STANDARD_FEATURES.length; i++) names.put(STANDARD_FEATURES[i], STANDARD_FEATURES[i]);
+        for (Enumeration e = this.features.keys(); e.hasMoreElements(); ) {
+            final Object name = e.nextElement();
+            names.put(name, name);
+        }
+        featureNames = new String[names.size()];
+        int i = 0;
+        for (Enumeration e = names.keys(); e.hasMoreElements(); ) {
+            featureNames[i++] = (String) e.nextElement();
+        }
+        hashCode = this.features.hashCode() * 31 + this.properties.hashCode();
+    }
+
+    private static Hashtable toTable(String[] enabledFeatures)
+    {
+        final Hashtable table = new Hashtable();
+        for (int i = 0; enabledFeatures != null && i < enabledFeatures.length; i++)
+        {
+            table.put(enabledFeatures[i], Boolean.TRUE);
+        }
+        return table;
+    }
+
+    public boolean getFeature(String name)
+    {
+        return features.get(name) != null;
+    }
+
+    public Object getProperty(String name)
+    {
+        return properties.get(name);
+    }
+
+    /**
+     * Set features and properties of parser (that must not be parsing input) to this configuration
+     * changing only those that are different.
+     */
+    public void configure(XmlPullParser pp) throws XmlPullParserException
+    {
+        for (int i = 0; i < featureNames.length; i++)
+        {
+            final String name = featureNames[i];
+            final boolean state = features.get(name) != null;
+            if(pp.getFeature(name) != state) pp.setFeature(name, state);
+        }
+        for (Enumeration e = properties.keys(); e.hasMoreElements(); ) {
+            final String name = (String) e.nextElement();
+            final Object value = properties.get(name);
+            if(!value.equals(pp.getProperty(name))) pp.setProperty(name, value);
+        }
+    }
+
+    public boolean equals(Object o)
+    {
+        if(o == this) return true;
+        if(!(o instanceof XmlPullParserConfiguration)) return false;
+        final XmlPullParserConfiguration other = (XmlPullParserConfiguration) o;
+        return hashCode == other.hashCode
+            && features.equals(other.features) && properties.equals(other.properties);
+    }
+
+    public int hashCode()
+    {
+        return hashCode;
+    }
+
+    public String toString()
+    {
+        return "features="+features.keySet()+" properties="+properties;
+    }
+
+}
+
@@ -3,60 +3,188 @@
 
 package org.xmlpull.v1.parser_pool;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Hashtable;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
-// add aging so parser used more than X times is not resused ...
-
 /**
  * Very simple utility to make pooling of XmlPull parsers easy.
  *
+ * <p>Pool can be used by many threads at the same time and it can be configured
+ * with limits described in {@link ObjectPool}.
+ *
+ * <p>Returned parser is reset so it does not keep reference to its input and when
+ * buffer high water mark is set its buffers are shrunk using optional property
+ * <a href="http://xmlpull.org/v1/doc/properties.html#buffer-size">buffer-size</a>.
+ *
+ * <p>To avoid slow first requests pool can be warmed up: parsers are created before
+ * they are needed and they parse representative documents so parsing code is compiled
+ * by JIT (number of iterations should be big enough for JIT, usually thousands of parsed tags).
+ *
  * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
  */
-public class XmlPullParserPool {
-    protected List pool = new ArrayList();
-    protected XmlPullParserFactory factory;
+public class XmlPullParserPool extends ObjectPool {
 
+    protected XmlPullParserFactory factory;
+    private long warmUpTime;
 
     public XmlPullParserPool() throws XmlPullParserException {
         this(XmlPullParserFactory.newInstance());
     }
 
     public XmlPullParserPool(XmlPullParserFactory factory) {
+        this(factory, false);
+    }
+
+    /**
+     * Create pool that uses thread slots or pool in shared mode
+     * that is suitable for virtual threads (see {@link ObjectPool}).
+     */
+    public XmlPullParserPool(XmlPullParserFactory factory, boolean sharedMode) {
+        super(sharedMode);
         if(factory == null) throw new IllegalArgumentException();
         this.factory = factory;
     }
 
-    protected XmlPullParser newParser() throws XmlPullParserException {
-        return factory.newPullParser();
+    /**
+     * Create pool that is warmed up (see {@link #warmUp(int, String[], int)}).
+     */
+    public XmlPullParserPool(XmlPullParserFactory factory,
+                             int warmUpParsers, String[] warmUpDocuments, int warmUpIterations)
+        throws XmlPullParserException
+    {
+        this(factory, false);
+        warmUp(warmUpParsers, warmUpDocuments, warmUpIterations);
     }
 
-    public XmlPullParser getPullParserFromPool()
+    /**
+     * Create given number of parsers (if pool limits allow it) and let every parser
+     * parse all documents given number of times, then parsers are returned to pool.
+     * Return how long it took in milliseconds.
+     */
+    public long warmUp(int parsers, String[] documents, int iterations)
         throws XmlPullParserException
     {
-        XmlPullParser pp = null;
-        if(pool.size() > 0) {
-            synchronized(pool) {
-                if(pool.size() > 0) {
-                    pp = (XmlPullParser) pool.remove(pool.size() - 1);
+        if(parsers < 0) throw new IllegalArgumentException("number of parsers can not be negative");
+        if(iterations < 0) throw new IllegalArgumentException("number of iterations can not be negative");
+        if(documents == null) documents = new String[0];
+        if(getMaxTotal() > 0) parsers = Math.min(parsers, getMaxTotal());
+        final long start = System.currentTimeMillis();
+        final XmlPullParser[] pps = new XmlPullParser[parsers];
+        try {
+            for (int i = 0; i < parsers; i++)
+            {
+                pps[i] = getPullParserFromPool();
+            }
+            for (int n = 0; n < iterations; n++)
+            {
+                for (int i = 0; i < parsers; i++)
+                {
+                    for (int j = 0; j < documents.length; j++)
+                    {
+                        parse(pps[i], documents[j]);
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < parsers; i++)
+            {
+                if(pps[i] != null) returnPullParserToPool(pps[i]);
+            }
+        }
+        warmUpTime = System.currentTimeMillis() - start;
+        return warmUpTime;
+    }
+
+    /** How long last warm up took in milliseconds. */
+    public long getWarmUpTime() {
+        return warmUpTime;
+    }
+
+    private static void parse(XmlPullParser pp, String doc) throws XmlPullParserException
+    {
+        try {
+            pp.setInput(new StringReader(doc));
+            int eventType;
+            while((eventType = pp.next()) != XmlPullParser.END_DOCUMENT) {
+                // access what is usually accessed so it is compiled too
+                if(eventType == XmlPullParser.START_TAG) {
+                    pp.getName();
+                    pp.getNamespace();
+                    for (int i = 0; i < pp.getAttributeCount(); i++) pp.getAttributeValue(i);
+                } else if(eventType == XmlPullParser.TEXT) {
+                    pp.getText();
                 }
             }
+            pp.setInput((Reader) null);
+        } catch(IOException ex) {
+            throw new XmlPullParserException("could not read warm up document", pp, ex);
         }
-        if(pp == null) {
-            pp = newParser();
-            //System.err.println("new parser instance created pp="+pp);
+    }
+
+    protected XmlPullParser newParser() throws XmlPullParserException {
+        return factory.newPullParser();
+    }
+
+    /**
+     * Return size of internal buffers of parser in bytes or -1 if it is not known
+     * (by default optional property buffer-size is used).
+     */
+    protected int getBufferSize(XmlPullParser pp) {
+        final Object size = pp.getProperty(PROPERTY_BUFFER_SIZE);
+        return size instanceof Integer ? ((Integer) size).intValue() : -1;
+    }
+
+    protected Object newObject() throws XmlPullParserException {
+        return newParser();
+    }
+
+    protected int sizeOf(Object o) {
+        return getBufferSize((XmlPullParser) o);
+    }
+
+    /** Shrink buffers by setting optional property buffer-size (if parser supports it). */
+    protected void trim(Object o, int maxSize) {
+        try {
+            ((XmlPullParser) o).setProperty(PROPERTY_BUFFER_SIZE, new Integer(maxSize));
+        } catch(XmlPullParserException ex) {
+            // parser can not be trimmed (it may be discarded if maximum buffer size is set)
         }
-        return pp;
+    }
+
+    public XmlPullParser getPullParserFromPool()
+        throws XmlPullParserException
+    {
+        return (XmlPullParser) borrowObject();
     }
 
     public void returnPullParserToPool(XmlPullParser pp) {
         if(pp == null) throw new IllegalArgumentException();
-        synchronized(pool) {
-            pool.add(pp);
+        try {
+            pp.setInput((Reader) null);
+        } catch(XmlPullParserException ex) {
+            discardParser(pp);
+            return;
         }
+        returnObject(pp);
+    }
+
+    /**
+     * Take parser that is in pool without creating new one (return null if pool is empty).
+     */
+    XmlPullParser takeIdleParser() {
+        return (XmlPullParser) takeIdleObject();
+    }
+
+    /**
+     * Forget borrowed parser that will not be returned to pool.
+     */
+    void discardParser(XmlPullParser pp) {
+        discardObject(pp);
     }
 
 
@@ -72,6 +200,137 @@ public class XmlPullParserPool {
         //assert p1 == p2;
         if(p1 != p2) throw new RuntimeException();
         pool.returnPullParserToPool(p2);
+
+        pool.setMaxUses(2);
+        p1 = pool.getPullParserFromPool();
+        pool.returnPullParserToPool(p1);
+        p2 = pool.getPullParserFromPool();
+        if(p1 != p2) throw new RuntimeException();
+        pool.returnPullParserToPool(p2);
+        p2 = pool.getPullParserFromPool();
+        if(p1 == p2) throw new RuntimeException("parser used more than maximum uses");
+        pool.returnPullParserToPool(p2);
+        final PoolStatistics stats = pool.getStatistics();
+        if(stats.getHits() != 3 || stats.getMisses() != 2 || stats.getCreated() != 2
+               || stats.getReturned() != 5 || stats.getDiscarded() != 1 || stats.getIdleSize() != 1)
+        {
+            throw new RuntimeException("unexpected statistics "+stats);
+        }
+
+        pool = new XmlPullParserPool(XmlPullParserFactory.newInstance(), 3, new String[]{"<a b='c'>d</a>"}, 2);
+        if(pool.getStatistics().getCreated() != 3) throw new RuntimeException("pool was not warmed up");
+
+        pool = new XmlPullParserPool();
+        pool.setBufferHighWaterMark(64 * 1024);
+        p1 = pool.getPullParserFromPool();
+        if(pool.getBufferSize(p1) >= 0) {
+            final StringBuffer big = new StringBuffer("<big>");
+            for (int i = 0; i < 100000; i++) big.append("text "); // one big token
+            big.append("</big>");
+            parse(p1, big.toString());
+            if(pool.getBufferSize(p1) <= 64 * 1024) throw new RuntimeException();
+            pool.returnPullParserToPool(p1);
+            p2 = pool.getPullParserFromPool();
+            if(p1 != p2) throw new RuntimeException();
+            if(pool.getBufferSize(p2) > 64 * 1024) throw new RuntimeException("parser was not trimmed");
+            pool.returnPullParserToPool(p2);
+        }
+
+        // parsers kept in thread slots are counted against maximum pool size
+        final XmlPullParserPool limited = new XmlPullParserPool();
+        limited.setMaxPoolSize(2);
+        for (int i = 0; i < 3; i++) {
+            final Thread t = new Thread() {
+                public void run() {
+                    try {
+                        limited.returnPullParserToPool(limited.getPullParserFromPool());
+                    } catch(XmlPullParserException ex) {
+                        throw new RuntimeException(ex.toString());
+                    }
+                }
+            };
+            t.start();
+            t.join();
+        }
+        if(limited.getStatistics().getIdleSize() != 2 || limited.getStatistics().getDiscarded() != 1) {
+            throw new RuntimeException("maximum pool size exceeded "+limited.getStatistics());
+        }
+        // idle parser in slot of other thread is evicted
+        limited.setMaxIdleTime(1);
+        Thread.sleep(10);
+        limited.evictIdle();
+        if(limited.getStatistics().getIdleSize() != 0) {
+            throw new RuntimeException("idle parsers were not evicted "+limited.getStatistics());
+        }
+        // parser is never given to two threads when slots are evicted at the same time
+        final Hashtable inUse = new Hashtable();
+        final Throwable[] failure = new Throwable[1];
+        final Thread[] workers = new Thread[4];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 20000; j++) {
+                            final XmlPullParser pp = limited.getPullParserFromPool();
+                            if(inUse.put(pp, pp) != null) throw new RuntimeException("parser shared");
+                            inUse.remove(pp);
+                            limited.returnPullParserToPool(pp);
+                        }
+                    } catch(Throwable ex) {
+                        failure[0] = ex;
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for (int i = 0; i < workers.length; i++) {
+            while(workers[i].isAlive()) limited.evictIdle();
+        }
+        if(failure[0] != null) throw new RuntimeException(failure[0].toString());
+        if(limited.getStatistics().getIdleSize() > 2) {
+            throw new RuntimeException("maximum pool size exceeded "+limited.getStatistics());
+        }
+
+        pool = new XmlPullParserPool(XmlPullParserFactory.newInstance(), true);
+        pool.setMaxTotal(1);
+        pool.setMaxWaitTime(10);
+        p1 = pool.getPullParserFromPool();
+        try {
+            pool.getPullParserFromPool();
+            throw new RuntimeException("maximum total size exceeded");
+        } catch(XmlPullParserException ex) {
+        }
+        pool.returnPullParserToPool(p1);
+        p2 = pool.getPullParserFromPool();
+        if(p1 != p2) throw new RuntimeException();
+        // waiting thread is woken up when parser is returned and stops waiting when interrupted
+        pool.setMaxWaitTime(0);
+        final XmlPullParserPool bounded = pool;
+        final Object[] result = new Object[1];
+        final Thread waiter = new Thread() {
+            public void run() {
+                try {
+                    result[0] = bounded.getPullParserFromPool();
+                } catch(XmlPullParserException ex) {
+                    result[0] = Thread.currentThread().isInterrupted() ? "interrupted" : ex.toString();
+                }
+            }
+        };
+        waiter.start();
+        Thread.sleep(50);
+        pool.returnPullParserToPool(p2);
+        waiter.join(5000);
+        if(result[0] != p2) throw new RuntimeException("waiting thread did not get parser "+result[0]);
+        final Thread interrupted = new Thread(waiter);
+        result[0] = null;
+        interrupted.start();
+        Thread.sleep(50);
+        interrupted.interrupt();
+        interrupted.join(5000);
+        if(!"interrupted".equals(result[0])) {
+            throw new RuntimeException("interrupted thread did not stop waiting "+result[0]);
+        }
+        pool.returnPullParserToPool(p2);
         System.out.println(pool.getClass()+" OK");
     }
 }
@@ -0,0 +1,137 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.parser_pool;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.XmlSerializer;
+
+/**
+ * Very simple utility to make pooling of XmlPull serializers easy.
+ *
+ * <p>Returned serializer is detached from its output (output that was not flushed
+ * is lost) and reset so it does not keep reference to Writer or OutputStream
+ * and it starts new document when it is borrowed again. Serializer that can not be
+ * detached is not kept in pool.
+ *
+ * <p>Pool can be used by many threads at the same time and it can be configured
+ * with limits described in {@link ObjectPool}.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class XmlSerializerPool extends ObjectPool {
+
+    // used when serializer does not accept null output
+    private final static Writer NULL_WRITER = new Writer() {
+        public void write(char[] cbuf, int off, int len) {}
+        public void write(int c) {}
+        public void write(String str, int off, int len) {}
+        public void flush() {}
+        public void close() {}
+    };
+
+    protected XmlPullParserFactory factory;
+
+    public XmlSerializerPool() throws XmlPullParserException {
+        this(XmlPullParserFactory.newInstance());
+    }
+
+    public XmlSerializerPool(XmlPullParserFactory factory) {
+        this(factory, false);
+    }
+
+    /**
+     * Create pool that uses thread slots or pool in shared mode
+     * that is suitable for virtual threads (see {@link ObjectPool}).
+     */
+    public XmlSerializerPool(XmlPullParserFactory factory, boolean sharedMode) {
+        super(sharedMode);
+        if(factory == null) throw new IllegalArgumentException();
+        this.factory = factory;
+    }
+
+    protected XmlSerializer newSerializer() throws XmlPullParserException {
+        return factory.newSerializer();
+    }
+
+    /**
+     * Return size of internal buffers of serializer in bytes or -1 if it is not known
+     * (by default optional property buffer-size is used).
+     */
+    protected int getBufferSize(XmlSerializer ser) {
+        final Object size = ser.getProperty(PROPERTY_BUFFER_SIZE);
+        return size instanceof Integer ? ((Integer) size).intValue() : -1;
+    }
+
+    protected Object newObject() throws XmlPullParserException {
+        return newSerializer();
+    }
+
+    protected int sizeOf(Object o) {
+        return getBufferSize((XmlSerializer) o);
+    }
+
+    public XmlSerializer getSerializerFromPool()
+        throws XmlPullParserException
+    {
+        return (XmlSerializer) borrowObject();
+    }
+
+    public void returnSerializerToPool(XmlSerializer ser) {
+        if(ser == null) throw new IllegalArgumentException();
+        if(!detach(ser)) {
+            discardObject(ser);
+            return;
+        }
+        returnObject(ser);
+    }
+
+    /**
+     * Reset serializer and remove reference to its output, return false if it is not possible.
+     */
+    protected boolean detach(XmlSerializer ser) {
+        try {
+            ser.setOutput((Writer) null);
+            return true;
+        } catch(IllegalArgumentException ex) {
+        } catch(IllegalStateException ex) {
+        } catch(IOException ex) {
+        }
+        // serializer requires output so it is replaced with output that writes nothing
+        try {
+            ser.setOutput(NULL_WRITER);
+            return true;
+        } catch(RuntimeException ex) {
+        } catch(IOException ex) {
+        }
+        return false;
+    }
+
+
+    // simple inline test
+    public static void main(String[] args) throws Exception
+    {
+        XmlSerializerPool pool = new XmlSerializerPool();
+        XmlSerializer s1 = pool.getSerializerFromPool();
+        StringWriter sw = new StringWriter();
+        s1.setOutput(sw);
+        s1.startDocument(null, null);
+        s1.startTag("uri", "unfinished");
+        pool.returnSerializerToPool(s1);
+        XmlSerializer s2 = pool.getSerializerFromPool();
+        if(s1 != s2) throw new RuntimeException();
+        sw = new StringWriter();
+        s2.setOutput(sw);
+        s2.startTag(null, "doc").endTag(null, "doc");
+        s2.flush();
+        if(!"<doc />".equals(sw.toString())) throw new RuntimeException(
+                "serializer was not reset: "+sw);
+        pool.returnSerializerToPool(s2);
+        System.out.println(pool.getClass()+" OK");
+    }
+}
+
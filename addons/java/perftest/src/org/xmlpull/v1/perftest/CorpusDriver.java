@@ -0,0 +1,103 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.perftest;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Measure parsing throughput of synthetic corpus from CorpusGenerator.
+ * Corpus is generated in memory (16MB unless other size is given) or, if file is given,
+ * it is generated into file (if file does not exist yet) and parser reads it from disk
+ * so corpus can be bigger than memory:
+ * <pre>
+ * java org.xmlpull.v1.perftest.CorpusDriver [generator options] [file]
+ * java org.xmlpull.v1.perftest.CorpusDriver -profile deep -size 64M
+ * java org.xmlpull.v1.perftest.CorpusDriver -profile realistic -size 4G /tmp/corpus.xml
+ * </pre>
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class CorpusDriver
+{
+    private final static int PASSES = 3;
+
+    public static void main (String[] args) throws Exception
+    {
+        final CorpusGenerator generator = new CorpusGenerator();
+        generator.setTotalSize(16 * 1024 * 1024);
+        final int i = generator.configure(args);
+        final File file = i < args.length ? new File(args[i]) : null;
+
+        byte[] corpus = null;
+        long size;
+        if(file == null) {
+            corpus = generator.generate();
+            size = corpus.length;
+        } else if(!file.exists()) {
+            size = generator.generate(file.getPath());
+        } else {
+            size = file.length();
+        }
+        final double mb = size / (1024.0 * 1024.0);
+        System.err.println("starting tests with PASSES="+PASSES+" profile "+generator.getProfile()
+                               +" seed "+generator.getSeed()+" corpus size "+size+" bytes"
+                               +(file != null ? " in "+file : ""));
+        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance(
+            System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+        factory.setNamespaceAware(true);
+        final XmlPullParser pp = factory.newPullParser();
+        System.err.println("parser class "+pp.getClass().getName());
+
+        double mbs = 0;
+        double elementsPerSecond = 0;
+        for (int count = 0; count < PASSES; count++)
+        {
+            final InputStream is = corpus != null
+                ? (InputStream) new ByteArrayInputStream(corpus)
+                : new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+            final long start = System.currentTimeMillis();
+            long elements = 0;
+            try {
+                pp.setInput(is, "UTF-8");
+                elements = parse(pp);
+            } finally {
+                is.close();
+            }
+            final long end = System.currentTimeMillis();
+            mbs = mb * 1000.0 / Math.max(1, end - start);
+            elementsPerSecond = elements * 1000.0 / Math.max(1, end - start);
+            System.err.println("pass "+(count+1)+" of "+PASSES+" "+mbs+" MB/s "
+                                   +elementsPerSecond+" elements/s ("+elements+" elements)");
+        }
+        System.out.println("corpus,"+pp.getClass().getName()+","+generator.getProfile()+","+size
+                               +","+mbs+","+elementsPerSecond);
+    }
+
+    /** Parse whole document touching names, attributes and text and return number of elements. */
+    private static long parse(XmlPullParser pp) throws Exception
+    {
+        final int[] holder = new int[2];
+        long elements = 0;
+        int eventType;
+        while((eventType = pp.next()) != XmlPullParser.END_DOCUMENT) {
+            if(eventType == XmlPullParser.START_TAG) {
+                ++elements;
+                pp.getName();
+                pp.getNamespace();
+                for (int i = 0; i < pp.getAttributeCount(); i++) pp.getAttributeValue(i);
+            } else if(eventType == XmlPullParser.TEXT) {
+                pp.getTextCharacters(holder);
+            }
+        }
+        return elements;
+    }
+
+}
+
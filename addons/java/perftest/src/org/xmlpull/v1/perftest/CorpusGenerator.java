@@ -0,0 +1,454 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.perftest;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.XmlSerializer;
+
+/**
+ * Deterministic generator of synthetic XML documents for performance tests.
+ * Document is written through XmlSerializer directly into stream so its size is
+ * limited only by disk (it can be many GB) and the same seed and shape parameters
+ * always give the same sequence of serializer calls.
+ *
+ * <p>Under root element <code>corpus</code> subtrees are written until total size is reached:
+ * <ul>
+ * <li>depth - maximum nesting of elements under root (elements on this level are leaves)</li>
+ * <li>fan-out - average number of children of element (exact if it is 0 or 1)</li>
+ * <li>attributes - average number of attributes of element</li>
+ * <li>text - average length (in characters) of text in leaf element</li>
+ * <li>namespaces - probability that element is in namespace (and declares its prefix)</li>
+ * <li>entities - probability that word in text is replaced by entity or character reference</li>
+ * <li>cdata - probability that text in leaf element is written as CDATA section</li>
+ * <li>size - total size of document in bytes (it is reached within size of serializer buffer)</li>
+ * </ul>
+ * Averages are varied by +/- 50%. Predefined profiles set all parameters for typical
+ * (<code>realistic</code>) and pathological workloads; use as:
+ * <pre>
+ * java org.xmlpull.v1.perftest.CorpusGenerator [-profile realistic|deep|wide|attributes|text|namespaces|entities]
+ *   [-seed n] [-depth n] [-fanout n] [-attributes n] [-text n] [-namespaces p] [-entities p] [-cdata p]
+ *   [-size n[K|M|G]] [-noindent] file
+ * </pre>
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class CorpusGenerator
+{
+    public final static String[] PROFILES = {
+        "realistic", "deep", "wide", "attributes", "text", "namespaces", "entities" };
+
+    private final static String NAMESPACE = "http://www.xmlpull.org/v1/corpus/ns";
+    private final static int NAMESPACES = 8;
+    private final static int MAX_INDENT = 16;
+    private final static int TEXT_CHUNK = 8 * 1024;
+
+    private final static String[] ELEMENT_NAMES = {
+        "item", "record", "entry", "name", "value", "title", "description", "group",
+        "node", "field", "price", "author", "date", "link", "note", "data" };
+    private final static String[] ATTRIBUTE_NAMES = {
+        "id", "type", "name", "ref", "lang", "class", "status", "version", "key", "unit" };
+    private final static String[] WORDS = {
+        "lorem", "ipsum", "dolor", "sit", "amet", "pull", "parser", "event", "token", "stream",
+        "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "a", "of", "and",
+        "1999", "42", "3.14", "caf\u00e9", "na\u00efve", "\u017c\u00f3\u0142w", "\u65e5\u672c\u8a9e",
+        "\u20ac" };
+    private final static String[] ENTITIES = {
+        "amp", "lt", "gt", "quot", "apos", "#160", "#x20AC" };
+    // characters that serializer must escape in attribute value
+    private final static String[] ESCAPED = { " & ", " < ", " > ", "\"", "'" };
+
+    private String profile;
+    private long seed;
+    private int depth;
+    private int fanOut;
+    private int attributes;
+    private int textSize;
+    private double namespaceDensity;
+    private double entityFrequency;
+    private double cdataFrequency;
+    private long totalSize;
+    private boolean indent;
+
+    // state of generation
+    private Random random;
+    private XmlSerializer ser;
+    private CountingOutputStream counter;
+    // nesting is kept in arrays as recursion would overflow stack for deep documents
+    private String[] namespaces;
+    private String[] names;
+    private int[] remaining;
+    private boolean[] container;
+    private final StringBuffer buf = new StringBuffer();
+    private long elementCount;
+
+    /** Create generator with <code>realistic</code> profile, seed 0 and size 1MB. */
+    public CorpusGenerator()
+    {
+        setProfile("realistic");
+        totalSize = 1024 * 1024;
+    }
+
+    /**
+     * Set all shape parameters (except seed and total size) from predefined profile:
+     * <ul>
+     * <li>realistic - records of few levels with some attributes, namespaces and entities</li>
+     * <li>deep - chain of 5000 nested elements</li>
+     * <li>wide - elements with 10000 children</li>
+     * <li>attributes - elements with 200 attributes</li>
+     * <li>text - elements with 100000 characters of text, some of it in CDATA sections</li>
+     * <li>namespaces - almost every element in namespace</li>
+     * <li>entities - text where most words are replaced by entity references</li>
+     * </ul>
+     */
+    public void setProfile(String name)
+    {
+        if("realistic".equals(name)) {
+            setShape(4, 4, 2, 40, 0.1, 0.02, 0.01);
+        } else if("deep".equals(name)) {
+            setShape(5000, 1, 1, 8, 0.0, 0.0, 0.0);
+        } else if("wide".equals(name)) {
+            setShape(2, 10000, 1, 8, 0.0, 0.0, 0.0);
+        } else if("attributes".equals(name)) {
+            setShape(2, 4, 200, 8, 0.0, 0.05, 0.0);
+        } else if("text".equals(name)) {
+            setShape(1, 2, 0, 100000, 0.0, 0.02, 0.2);
+        } else if("namespaces".equals(name)) {
+            setShape(5, 3, 2, 16, 0.9, 0.0, 0.0);
+        } else if("entities".equals(name)) {
+            setShape(3, 4, 2, 200, 0.0, 0.5, 0.0);
+        } else {
+            throw new IllegalArgumentException("unknown corpus profile "+name);
+        }
+        profile = name;
+        indent = true;
+    }
+
+    private void setShape(int depth, int fanOut, int attributes, int textSize,
+                          double namespaceDensity, double entityFrequency, double cdataFrequency)
+    {
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.attributes = attributes;
+        this.textSize = textSize;
+        this.namespaceDensity = namespaceDensity;
+        this.entityFrequency = entityFrequency;
+        this.cdataFrequency = cdataFrequency;
+    }
+
+    /** Name of profile that was used to set shape parameters. */
+    public String getProfile() { return profile; }
+
+    public void setSeed(long seed) { this.seed = seed; }
+    public long getSeed() { return seed; }
+
+    public void setDepth(int depth) {
+        if(depth < 1) throw new IllegalArgumentException("depth must be at least 1");
+        this.depth = depth;
+    }
+    public int getDepth() { return depth; }
+
+    public void setFanOut(int fanOut) { this.fanOut = Math.max(0, fanOut); }
+    public int getFanOut() { return fanOut; }
+
+    public void setAttributes(int attributes) { this.attributes = Math.max(0, attributes); }
+    public int getAttributes() { return attributes; }
+
+    public void setTextSize(int textSize) { this.textSize = Math.max(0, textSize); }
+    public int getTextSize() { return textSize; }
+
+    public void setNamespaceDensity(double p) { namespaceDensity = p; }
+    public double getNamespaceDensity() { return namespaceDensity; }
+
+    public void setEntityFrequency(double p) { entityFrequency = p; }
+    public double getEntityFrequency() { return entityFrequency; }
+
+    public void setCdataFrequency(double p) { cdataFrequency = p; }
+    public double getCdataFrequency() { return cdataFrequency; }
+
+    public void setTotalSize(long totalSize) { this.totalSize = totalSize; }
+    public long getTotalSize() { return totalSize; }
+
+    /** Should elements be on separate (indented) lines (default true). */
+    public void setIndent(boolean indent) { this.indent = indent; }
+    public boolean getIndent() { return indent; }
+
+    /** Number of elements written by last generate(). */
+    public long getElementCount() { return elementCount; }
+
+    /**
+     * Set parameters from command line options (see class description)
+     * and return index of first argument that is not option.
+     */
+    public int configure(String[] args)
+    {
+        int i = 0;
+        // profile must be set first as it overrides other parameters
+        for (int j = 0; j < args.length - 1; j++)
+        {
+            if("-profile".equals(args[j])) setProfile(args[j + 1]);
+        }
+        while(i < args.length && args[i].startsWith("-")) {
+            final String option = args[i++];
+            if("-noindent".equals(option)) {
+                indent = false;
+                continue;
+            }
+            if(i == args.length) throw new IllegalArgumentException("missing value of "+option);
+            final String value = args[i++];
+            if("-profile".equals(option)) {
+                // already set
+            } else if("-seed".equals(option)) {
+                setSeed(Long.parseLong(value));
+            } else if("-depth".equals(option)) {
+                setDepth(Integer.parseInt(value));
+            } else if("-fanout".equals(option)) {
+                setFanOut(Integer.parseInt(value));
+            } else if("-attributes".equals(option)) {
+                setAttributes(Integer.parseInt(value));
+            } else if("-text".equals(option)) {
+                setTextSize(Integer.parseInt(value));
+            } else if("-namespaces".equals(option)) {
+                setNamespaceDensity(Double.valueOf(value).doubleValue());
+            } else if("-entities".equals(option)) {
+                setEntityFrequency(Double.valueOf(value).doubleValue());
+            } else if("-cdata".equals(option)) {
+                setCdataFrequency(Double.valueOf(value).doubleValue());
+            } else if("-size".equals(option)) {
+                setTotalSize(parseSize(value));
+            } else {
+                throw new IllegalArgumentException("unknown option "+option);
+            }
+        }
+        return i;
+    }
+
+    /** Parse size in bytes with optional suffix K, M or G. */
+    public static long parseSize(String value)
+    {
+        long unit = 1;
+        final char last = Character.toUpperCase(value.charAt(value.length() - 1));
+        if(last == 'K') unit = 1024L;
+        else if(last == 'M') unit = 1024L * 1024L;
+        else if(last == 'G') unit = 1024L * 1024L * 1024L;
+        if(unit > 1) value = value.substring(0, value.length() - 1);
+        return Long.parseLong(value) * unit;
+    }
+
+    /** Generate document in memory (total size must be less than 2GB). */
+    public byte[] generate() throws XmlPullParserException, IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(
+            (int) Math.min(totalSize + 64 * 1024, Integer.MAX_VALUE - 8));
+        generate(out);
+        return out.toByteArray();
+    }
+
+    /** Generate document into file and return its size. */
+    public long generate(String fileName) throws XmlPullParserException, IOException
+    {
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName), 64 * 1024);
+        try {
+            return generate(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Generate UTF-8 document into stream using serializer found by XmlPullParserFactory
+     * and return number of bytes written.
+     */
+    public long generate(OutputStream out) throws XmlPullParserException, IOException
+    {
+        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance(
+            System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+        return generate(factory.newSerializer(), out);
+    }
+
+    /** Generate UTF-8 document into stream with given serializer and return number of bytes written. */
+    public long generate(XmlSerializer serializer, OutputStream out) throws IOException
+    {
+        random = new Random(seed);
+        ser = serializer;
+        counter = new CountingOutputStream(out);
+        elementCount = 0;
+        namespaces = new String[depth + 1];
+        names = new String[depth + 1];
+        remaining = new int[depth + 1];
+        container = new boolean[depth + 1];
+        try {
+            ser.setOutput(counter, "UTF-8");
+            ser.startDocument("UTF-8", null);
+            newLine(0);
+            ser.startTag("", "corpus");
+            ser.attribute("", "profile", profile);
+            ser.attribute("", "seed", Long.toString(seed));
+            ++elementCount;
+            while(counter.count < totalSize) {
+                writeSubtree();
+            }
+            newLine(0);
+            ser.endTag("", "corpus");
+            ser.endDocument();
+            ser.flush();
+            return counter.count;
+        } finally {
+            ser = null;
+            counter = null;
+            namespaces = names = null;
+        }
+    }
+
+    private void writeSubtree() throws IOException
+    {
+        int level = 1;
+        startElement(level);
+        while(level > 0) {
+            if(remaining[level] > 0 && counter.count < totalSize) {
+                --remaining[level];
+                ++level;
+                startElement(level);
+            } else {
+                if(container[level]) newLine(level);
+                ser.endTag(namespaces[level], names[level]);
+                --level;
+            }
+        }
+    }
+
+    private void startElement(int level) throws IOException
+    {
+        newLine(level);
+        String namespace = "";
+        if(namespaceDensity > 0 && random.nextDouble() < namespaceDensity) {
+            final int n = random.nextInt(NAMESPACES);
+            namespace = NAMESPACE + n;
+            ser.setPrefix("n" + n, namespace);
+        }
+        final String name = ELEMENT_NAMES[random.nextInt(ELEMENT_NAMES.length)];
+        ser.startTag(namespace, name);
+        ++elementCount;
+        final int attributeCount = vary(attributes);
+        for (int i = 0; i < attributeCount; i++)
+        {
+            ser.attribute("", i < ATTRIBUTE_NAMES.length ? ATTRIBUTE_NAMES[i] : "a" + i,
+                          attributeValue());
+        }
+        namespaces[level] = namespace;
+        names[level] = name;
+        remaining[level] = level < depth ? vary(fanOut) : 0;
+        container[level] = remaining[level] > 0;
+        if(!container[level]) writeText(vary(textSize));
+    }
+
+    private String attributeValue()
+    {
+        buf.setLength(0);
+        final int words = 1 + random.nextInt(3);
+        for (int i = 0; i < words; i++)
+        {
+            if(i > 0) buf.append(' ');
+            buf.append(WORDS[random.nextInt(WORDS.length)]);
+            if(entityFrequency > 0 && random.nextDouble() < entityFrequency) {
+                buf.append(ESCAPED[random.nextInt(ESCAPED.length)]);
+            }
+        }
+        return buf.toString();
+    }
+
+    private void writeText(int size) throws IOException
+    {
+        if(size == 0) return;
+        final boolean cdata = cdataFrequency > 0 && random.nextDouble() < cdataFrequency;
+        buf.setLength(0);
+        int written = 0;
+        while(written + buf.length() < size) {
+            if(written + buf.length() > 0) buf.append(' ');
+            if(!cdata && entityFrequency > 0 && random.nextDouble() < entityFrequency) {
+                written += flushText(false);
+                final String entity = ENTITIES[random.nextInt(ENTITIES.length)];
+                ser.entityRef(entity);
+                written += entity.length() + 2;
+            } else {
+                buf.append(WORDS[random.nextInt(WORDS.length)]);
+                // CDATA section is written whole
+                if(!cdata && buf.length() >= TEXT_CHUNK) written += flushText(false);
+            }
+        }
+        flushText(cdata);
+    }
+
+    private int flushText(boolean cdata) throws IOException
+    {
+        final int length = buf.length();
+        if(length > 0) {
+            if(cdata) ser.cdsect(buf.toString()); else ser.text(buf.toString());
+            buf.setLength(0);
+        }
+        return length;
+    }
+
+    private void newLine(int level) throws IOException
+    {
+        if(indent) {
+            buf.setLength(0);
+            buf.append('\n');
+            for (int i = Math.min(level, MAX_INDENT); i > 0; i--) buf.append(' ');
+            ser.ignorableWhitespace(buf.toString());
+        }
+    }
+
+    /** Random number within +/- 50% of average. */
+    private int vary(int average)
+    {
+        if(average <= 1) return average;
+        final int low = average - average / 2;
+        return low + random.nextInt(average + average / 2 - low + 1);
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream
+    {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    public static void main (String[] args) throws Exception
+    {
+        final CorpusGenerator generator = new CorpusGenerator();
+        final int i = generator.configure(args);
+        if(i != args.length - 1) {
+            System.err.println("usage: java "+CorpusGenerator.class.getName()+" [options] file");
+            System.exit(1);
+        }
+        final long start = System.currentTimeMillis();
+        final long size = generator.generate(args[i]);
+        final long end = System.currentTimeMillis();
+        System.err.println("generated "+args[i]+" profile "+generator.getProfile()
+                               +" seed "+generator.getSeed()+" size "+size+" bytes "
+                               +generator.getElementCount()+" elements in "+(end - start)+" ms");
+    }
+
+}
+
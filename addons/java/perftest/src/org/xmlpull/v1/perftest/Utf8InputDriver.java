@@ -0,0 +1,96 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.perftest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Measure parsing of large UTF-8 feed given to parser as InputStream with encoding
+ * (parser may decode bytes itself) compared with the same bytes wrapped in InputStreamReader.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class Utf8InputDriver
+{
+
+    public static void main (String[] args) throws Exception
+    {
+        final int PASSES = 10;
+        final int RECORDS = args.length > 0 ? Integer.parseInt(args[0]) : 50 * 1000;
+
+        final byte[] feed = generateFeed(RECORDS);
+        final double mb = feed.length / (1024.0 * 1024.0);
+        System.err.println("starting tests with PASSES="+PASSES+" RECORDS="+RECORDS
+                               +" feed size "+feed.length+" bytes");
+        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance(
+            System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+        factory.setNamespaceAware(true);
+        final XmlPullParser pp = factory.newPullParser();
+        System.err.println("parser class "+pp.getClass().getName());
+
+        double streamMbs = 0;
+        double readerMbs = 0;
+        int sink = 0;
+        // multiple passes necessary to do some warmup to remove HotSpot influences ...
+        for (int count = 0; count < PASSES; count++)
+        {
+            long start = System.currentTimeMillis();
+            pp.setInput(new ByteArrayInputStream(feed), "UTF-8");
+            sink += parse(pp);
+            long end = System.currentTimeMillis();
+            streamMbs = mb * 1000.0 / Math.max(1, end - start);
+
+            start = System.currentTimeMillis();
+            pp.setInput(new InputStreamReader(new ByteArrayInputStream(feed), "UTF-8"));
+            sink += parse(pp);
+            end = System.currentTimeMillis();
+            readerMbs = mb * 1000.0 / Math.max(1, end - start);
+            System.err.println("pass "+(count+1)+" of "+PASSES
+                                   +" InputStream "+streamMbs+" MB/s"
+                                   +" InputStreamReader "+readerMbs+" MB/s");
+        }
+        System.out.println("utf8input,"+pp.getClass().getName()+","+feed.length
+                               +","+streamMbs+","+readerMbs);
+        System.err.println("finished ("+sink+")");
+    }
+
+    private static int parse(XmlPullParser pp) throws Exception
+    {
+        final int[] holder = new int[2];
+        int sink = 0;
+        int eventType;
+        while((eventType = pp.next()) != XmlPullParser.END_DOCUMENT) {
+            if(eventType == XmlPullParser.START_TAG) {
+                sink += pp.getAttributeCount();
+            } else if(eventType == XmlPullParser.TEXT) {
+                pp.getTextCharacters(holder);
+                sink += holder[1];
+            }
+        }
+        return sink;
+    }
+
+    /** Feed of records with mostly ASCII markup and some non-ASCII text. */
+    private static byte[] generateFeed(int records) throws Exception
+    {
+        final StringBuffer sb = new StringBuffer(records * 200);
+        sb.append("<?xml version='1.0' encoding='UTF-8'?>\n<feed xmlns='http://example.com/feed'>\n");
+        for (int i = 0; i < records; i++)
+        {
+            sb.append("  <entry id='").append(i).append("' type='item'>\n");
+            sb.append("    <title>Entry number ").append(i).append("</title>\n");
+            sb.append("    <author>Jos\u00e9 M\u00fcller</author>\n");
+            sb.append("    <price currency='EUR'>").append(i % 100).append(".99 \u20ac</price>\n");
+            sb.append("    <summary>Plain ASCII text &amp; some more text to make record bigger"
+                          +" than its markup</summary>\n");
+            sb.append("  </entry>\n");
+        }
+        sb.append("</feed>\n");
+        return sb.toString().getBytes("UTF-8");
+    }
+
+}
@@ -0,0 +1,129 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.perftest;
+
+import java.io.StringReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.parser_pool.PoolStatistics;
+import org.xmlpull.v1.parser_pool.XmlPullParserPool;
+
+/**
+ * Load test of XmlPullParserPool: every task parses small document with parser
+ * borrowed from pool and all tasks are started at the same time in their own virtual
+ * thread (if Java runtime supports them, otherwise tasks are run by platform threads).
+ * Pool in shared mode with bounded total size is compared with pool that uses thread slots.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class VirtualThreadDriver
+{
+    private final static String DOC =
+        "<order id='42'><item qty='2'>pen</item><item qty='1'>paper</item><note/></order>";
+    private final static int TAGS = 4;
+
+    public static void main (String[] args) throws Exception
+    {
+        final int TASKS = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int MAX_TOTAL = args.length > 1 ? Integer.parseInt(args[1])
+            : 2 * Runtime.getRuntime().availableProcessors();
+
+        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance(
+            System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+        System.err.println("starting tests with TASKS="+TASKS+" MAX_TOTAL="+MAX_TOTAL
+                               +" virtual threads "+(newVirtualThreadExecutor() != null));
+        // first pass is warmup
+        for (int pass = 0; pass < 2; pass++)
+        {
+            final XmlPullParserPool sharedPool = new XmlPullParserPool(factory, true);
+            sharedPool.setMaxTotal(MAX_TOTAL);
+            final long sharedMillis = run(sharedPool, TASKS);
+            final PoolStatistics sharedStats = sharedPool.getStatistics();
+            if(sharedStats.getCreated() > MAX_TOTAL) throw new RuntimeException(
+                    "pool created more than "+MAX_TOTAL+" parsers: "+sharedStats);
+
+            final XmlPullParserPool slotsPool = new XmlPullParserPool(factory);
+            final long slotsMillis = run(slotsPool, TASKS);
+            final PoolStatistics slotsStats = slotsPool.getStatistics();
+
+            System.err.println("shared mode "+sharedMillis+" ms "+sharedStats);
+            System.err.println("thread slots "+slotsMillis+" ms "+slotsStats);
+            if(pass > 0) {
+                System.out.println("virtual,"+TASKS+","+sharedMillis+","+sharedStats.getCreated()
+                                       +","+slotsMillis+","+slotsStats.getCreated());
+            }
+        }
+    }
+
+    /** Run all tasks and return how many milliseconds it took. */
+    private static long run(final XmlPullParserPool pool, int tasks) throws Exception
+    {
+        ExecutorService executor = newVirtualThreadExecutor();
+        final boolean virtual = executor != null;
+        if(!virtual) {
+            executor = Executors.newFixedThreadPool(4 * Runtime.getRuntime().availableProcessors());
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        final Exception[] error = new Exception[1];
+        for (int i = 0; i < tasks; i++)
+        {
+            executor.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                // platform threads can not all wait at the same time
+                                if(virtual) start.await();
+                                parse(pool);
+                            } catch(Exception ex) {
+                                if(failures.getAndIncrement() == 0) error[0] = ex;
+                            }
+                        }
+                    });
+        }
+        final long begin = System.currentTimeMillis();
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        final long end = System.currentTimeMillis();
+        if(failures.get() > 0) {
+            System.err.println(failures.get()+" tasks failed");
+            throw error[0];
+        }
+        return end - begin;
+    }
+
+    private static void parse(XmlPullParserPool pool) throws Exception
+    {
+        final XmlPullParser pp = pool.getPullParserFromPool();
+        try {
+            pp.setInput(new StringReader(DOC));
+            int tags = 0;
+            int eventType;
+            while((eventType = pp.next()) != XmlPullParser.END_DOCUMENT) {
+                if(eventType == XmlPullParser.START_TAG) ++tags;
+            }
+            if(tags != TAGS) throw new RuntimeException("expected "+TAGS+" tags and not "+tags);
+        } finally {
+            pool.returnPullParserToPool(pp);
+        }
+    }
+
+    /** Return executor that starts virtual thread for every task or null if they are not supported. */
+    private static ExecutorService newVirtualThreadExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class.getMethod(
+                "newVirtualThreadPerTaskExecutor", new Class[0]).invoke(null, new Object[0]);
+        } catch(Exception ex) {
+            return null; // Java runtime older than 21
+        }
+    }
+
+}
+
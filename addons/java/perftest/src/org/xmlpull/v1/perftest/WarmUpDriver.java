@@ -0,0 +1,85 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.perftest;
+
+import java.io.StringReader;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.parser_pool.XmlPullParserPool;
+
+/**
+ * Measure latency of first requests served with parsers from XmlPullParserPool
+ * that was warmed up compared with pool that creates parsers lazily.
+ * As JIT compilation can not be undone it must be run in new JVM for every mode:
+ * <pre>
+ * java org.xmlpull.v1.perftest.WarmUpDriver cold
+ * java org.xmlpull.v1.perftest.WarmUpDriver warm [parsers] [iterations]
+ * </pre>
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class WarmUpDriver
+{
+    private final static int REQUESTS = 100;
+
+    public static void main (String[] args) throws Exception
+    {
+        final boolean warm = args.length == 0 || "warm".equals(args[0]);
+        final int PARSERS = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        final int ITERATIONS = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        System.err.println("starting tests with "+(warm ? "warm" : "cold")+" pool PARSERS="+PARSERS
+                               +" ITERATIONS="+ITERATIONS);
+        final String[] docs = documents();
+        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance(
+            System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+        factory.setNamespaceAware(true);
+        final XmlPullParserPool pool = warm
+            ? new XmlPullParserPool(factory, PARSERS, docs, ITERATIONS)
+            : new XmlPullParserPool(factory);
+
+        final long[] nanos = new long[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++)
+        {
+            final long start = System.nanoTime();
+            final XmlPullParser pp = pool.getPullParserFromPool();
+            pp.setInput(new StringReader(docs[i % docs.length]));
+            while(pp.next() != XmlPullParser.END_DOCUMENT) {
+                if(pp.getEventType() == XmlPullParser.START_TAG) pp.getAttributeCount();
+            }
+            pool.returnPullParserToPool(pp);
+            nanos[i] = System.nanoTime() - start;
+        }
+        long total = 0;
+        for (int i = 0; i < REQUESTS; i++) total += nanos[i];
+        final double firstMicros = nanos[0] / 1000.0;
+        final double averageMicros = total / 1000.0 / REQUESTS;
+        System.err.println((warm ? "warm" : "cold")+" pool warm up "+pool.getWarmUpTime()+" ms"
+                               +" first request "+firstMicros+" us"
+                               +" average of first "+REQUESTS+" requests "+averageMicros+" us");
+        System.out.println("warmup,"+(warm ? "warm" : "cold")+","+pool.getWarmUpTime()
+                               +","+firstMicros+","+averageMicros);
+    }
+
+    /** Representative documents: small message, namespaced message with entities and bigger list. */
+    private static String[] documents()
+    {
+        final StringBuffer list = new StringBuffer("<list>\n");
+        for (int i = 0; i < 200; i++)
+        {
+            list.append("  <item id='").append(i).append("' price=\"").append(i * 3 / 2.0)
+                .append("\">item ").append(i).append("</item>\n");
+        }
+        list.append("</list>");
+        return new String[] {
+            "<order id='42'><item qty='2'>pen</item><item qty='1'>paper</item><note/></order>",
+            "<?xml version='1.0'?>\n<e:Envelope xmlns:e='http://schemas.xmlsoap.org/soap/envelope/'>"
+                +"<e:Body><m:get xmlns:m='urn:m'><m:q>a &amp; b &lt; &#99;</m:q><![CDATA[<x>]]>"
+                +"<!-- comment --></m:get></e:Body></e:Envelope>",
+            list.toString()
+        };
+    }
+
+}
+
@@ -0,0 +1,29 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.sax2;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Receives documents parsed by {@link BatchParser}. Both methods are called
+ * in worker thread that parses the document so they may be called by many threads
+ * at the same time: handler can return new ContentHandler for every document
+ * or handler that is confined to worker thread (for example kept in ThreadLocal).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public interface BatchHandler
+{
+    /** Return ContentHandler that will receive SAX2 events of document. */
+    ContentHandler getContentHandler(InputSource source) throws SAXException;
+
+    /**
+     * Called when document was parsed (error is null) or when its parsing failed
+     * (with exception that stopped parsing), handler is the one that received its events.
+     */
+    void documentParsed(InputSource source, ContentHandler handler, Exception error);
+}
+
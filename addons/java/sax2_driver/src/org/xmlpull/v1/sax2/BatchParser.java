@@ -0,0 +1,387 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.sax2;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.parser_pool.PoolStatistics;
+
+/**
+ * Parse many documents at the same time with SAX2 drivers from {@link DriverPool}.
+ * Batch is parsed by workers (by default one for every processor) that run in executor
+ * (or in new threads if there is no executor): every worker borrows one driver and
+ * takes documents one by one from shared iterator so sources can be created lazily
+ * while batch is parsed. Events of every document go to ContentHandler given by
+ * {@link BatchHandler} that is also told when document was parsed or failed.
+ *
+ * <p>Failed document does not stop the batch: exception thrown while it was parsed
+ * (including RuntimeException thrown by its ContentHandler) or SAXException thrown by
+ * BatchHandler.getContentHandler() is given to BatchHandler.documentParsed() and document
+ * is counted as failed in returned {@link BatchStatistics}. Driver that can not be reset
+ * after document is discarded and worker continues with new driver from pool.
+ * Batch is stopped when methods of BatchHandler or iterator throw RuntimeException (or
+ * when driver could not be borrowed) and this exception is thrown from parse().
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class BatchParser
+{
+    protected DriverPool pool;
+    protected Executor executor;
+    protected int parallelism;
+    protected EntityResolver entityResolver;
+
+    /** Create batch parser with new pool and one worker thread for every processor. */
+    public BatchParser() throws XmlPullParserException {
+        this(new DriverPool(), null, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create batch parser that runs given number of workers in executor,
+     * when executor is null every worker gets new thread.
+     */
+    public BatchParser(DriverPool pool, Executor executor, int parallelism) {
+        if(pool == null || parallelism < 1) throw new IllegalArgumentException();
+        this.pool = pool;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    public DriverPool getPool() { return pool; }
+
+    public int getParallelism() { return parallelism; }
+
+    /** Set resolver used by all drivers (such as shared {@link CachingEntityResolver}). */
+    public void setEntityResolver(EntityResolver resolver) { this.entityResolver = resolver; }
+
+    public EntityResolver getEntityResolver() { return entityResolver; }
+
+    public BatchStatistics parse(Collection sources, BatchHandler handler)
+        throws XmlPullParserException, InterruptedException
+    {
+        return parse(sources.iterator(), handler);
+    }
+
+    /**
+     * Parse all InputSources returned by iterator and wait until they are parsed.
+     * If waiting thread is interrupted workers are stopped after documents
+     * they are parsing.
+     */
+    public BatchStatistics parse(Iterator sources, BatchHandler handler)
+        throws XmlPullParserException, InterruptedException
+    {
+        if(sources == null || handler == null) throw new IllegalArgumentException();
+        final Batch batch = new Batch(sources, handler);
+        try {
+            for (int i = 0; i < parallelism; i++)
+            {
+                final Worker worker = new Worker(batch);
+                batch.workerStarted();
+                try {
+                    if(executor != null) {
+                        executor.execute(worker);
+                    } else {
+                        new Thread(worker, "BatchParser-worker-"+i).start();
+                    }
+                } catch(RuntimeException ex) {
+                    batch.workerDone();
+                    batch.fail(ex);
+                }
+            }
+            batch.await();
+        } catch(InterruptedException ex) {
+            batch.stop();
+            throw ex;
+        }
+        final Throwable failure = batch.failure;
+        if(failure instanceof XmlPullParserException) throw (XmlPullParserException) failure;
+        if(failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if(failure instanceof Error) throw (Error) failure;
+        return batch.getStatistics();
+    }
+
+    // state of one batch shared by its workers
+    private static class Batch
+    {
+        private final Iterator sources;
+        final BatchHandler handler;
+        private final long start = System.nanoTime();
+        private long end;
+        private int running;
+        private boolean stopped;
+        Throwable failure;
+        private long documents;
+        private long failed;
+        private long bytes;
+        private long busyNanos;
+
+        Batch(Iterator sources, BatchHandler handler) {
+            this.sources = sources;
+            this.handler = handler;
+        }
+
+        synchronized InputSource next() {
+            if(stopped || !sources.hasNext()) return null;
+            return (InputSource) sources.next();
+        }
+
+        synchronized void documentDone(boolean ok, long documentBytes, long nanos) {
+            ++documents;
+            if(!ok) ++failed;
+            bytes += documentBytes;
+            busyNanos += nanos;
+        }
+
+        synchronized void fail(Throwable ex) {
+            if(failure == null) failure = ex;
+            stopped = true;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+        }
+
+        synchronized void workerStarted() {
+            ++running;
+        }
+
+        synchronized void workerDone() {
+            if(--running == 0) {
+                end = System.nanoTime();
+                notifyAll();
+            }
+        }
+
+        synchronized void await() throws InterruptedException {
+            while(running > 0) wait();
+        }
+
+        synchronized BatchStatistics getStatistics() {
+            return new BatchStatistics(documents, failed, bytes, end - start, busyNanos);
+        }
+    }
+
+    private class Worker implements Runnable
+    {
+        private final Batch batch;
+
+        Worker(Batch batch) {
+            this.batch = batch;
+        }
+
+        public void run() {
+            Driver driver = null;
+            try {
+                driver = pool.getDriverFromPool();
+                InputSource source;
+                while((source = batch.next()) != null) {
+                    if(!parseDocument(driver, source, batch)) {
+                        // only driver that could not be reset is discarded
+                        final Driver discarded = driver;
+                        driver = null;
+                        pool.discardDriver(discarded);
+                        driver = pool.getDriverFromPool();
+                    }
+                }
+            } catch(Throwable ex) {
+                batch.fail(ex);
+            } finally {
+                if(driver != null) pool.returnDriverToPool(driver);
+                batch.workerDone();
+            }
+        }
+    }
+
+    /**
+     * Parse one document, RuntimeException thrown by BatchHandler stops the batch.
+     *
+     * @return false if driver could not be reset and must not be used again
+     */
+    private boolean parseDocument(Driver driver, InputSource source, Batch batch) {
+        final long start = System.nanoTime();
+        final ContentHandler handler;
+        try {
+            handler = batch.handler.getContentHandler(source);
+        } catch(SAXException ex) {
+            batch.documentDone(false, 0, System.nanoTime() - start);
+            batch.handler.documentParsed(source, null, ex);
+            return true;
+        }
+        CountingInputStream counter = null;
+        Exception error = null;
+        try {
+            InputSource input = source;
+            // count bytes of documents that are not given as characters
+            if(source.getCharacterStream() == null
+                   && (source.getByteStream() != null || source.getSystemId() != null))
+            {
+                final InputStream stream = source.getByteStream() != null
+                    ? source.getByteStream() : Driver.openSystemId(source.getSystemId());
+                counter = new CountingInputStream(stream);
+                input = new InputSource(counter);
+                input.setPublicId(source.getPublicId());
+                input.setSystemId(source.getSystemId());
+                input.setEncoding(source.getEncoding());
+            }
+            driver.setContentHandler(handler);
+            if(handler instanceof ErrorHandler) driver.setErrorHandler((ErrorHandler) handler);
+            if(entityResolver != null) driver.setEntityResolver(entityResolver);
+            driver.parse(input);
+        } catch(RuntimeException ex) {
+            error = ex;
+        } catch(SAXException ex) {
+            error = ex;
+        } catch(IOException ex) {
+            error = ex;
+        } finally {
+            if(counter != null && source.getByteStream() == null) {
+                try {
+                    counter.close();
+                } catch(IOException ex) {
+                }
+            }
+        }
+        boolean reusable = true;
+        try {
+            driver.reset();
+        } catch(XmlPullParserException ex) {
+            reusable = false;
+        }
+        batch.documentDone(error == null, counter != null ? counter.count : 0,
+                           System.nanoTime() - start);
+        batch.handler.documentParsed(source, handler, error);
+        return reusable;
+    }
+
+    private static class CountingInputStream extends FilterInputStream
+    {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            final int b = in.read();
+            if(b >= 0) ++count;
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = in.read(b, off, len);
+            if(n > 0) count += n;
+            return n;
+        }
+
+        public long skip(long n) throws IOException {
+            final long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+
+    // simple inline test
+    public static void main(String[] args) throws Exception
+    {
+        final int DOCUMENTS = 200;
+        final Vector sources = new Vector();
+        long expectedBytes = 0;
+        int expectedElements = 0;
+        for (int i = 0; i < DOCUMENTS; i++) {
+            final StringBuffer doc = new StringBuffer("<doc>");
+            for (int j = 0; j < i % 10; j++) doc.append("<item n='").append(j).append("'/>");
+            doc.append("</doc>");
+            final byte[] bytes = doc.toString().getBytes("UTF-8");
+            expectedBytes += bytes.length;
+            expectedElements += 1 + i % 10;
+            sources.addElement(new InputSource(new ByteArrayInputStream(bytes)));
+        }
+        sources.addElement(new InputSource(new ByteArrayInputStream("<doc><bad></doc>".getBytes())));
+
+        final int[] totals = new int[3]; // elements, documents, errors
+        final BatchHandler handler = new BatchHandler() {
+            public ContentHandler getContentHandler(InputSource source) {
+                return new ElementCounter();
+            }
+            public void documentParsed(InputSource source, ContentHandler handler, Exception error) {
+                synchronized(totals) {
+                    if(error == null) {
+                        totals[0] += ((ElementCounter) handler).elements;
+                        ++totals[1];
+                    } else {
+                        ++totals[2];
+                    }
+                }
+            }
+        };
+
+        final DriverPool pool = new DriverPool();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final BatchParser parser = new BatchParser(pool, executor, 4);
+            final BatchStatistics stats = parser.parse(sources, handler);
+            if(stats.getDocuments() != DOCUMENTS + 1 || stats.getFailed() != 1) {
+                throw new RuntimeException("unexpected statistics "+stats);
+            }
+            if(totals[0] != expectedElements || totals[1] != DOCUMENTS || totals[2] != 1) {
+                throw new RuntimeException("unexpected totals "+totals[0]+" "+totals[1]+" "+totals[2]);
+            }
+            if(stats.getBytes() < expectedBytes) {
+                throw new RuntimeException("bytes not counted "+stats);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        final PoolStatistics poolStats = pool.getStatistics();
+        if(poolStats.getCreated() > 4 || poolStats.getBorrowed() != 0) {
+            throw new RuntimeException("unexpected pool statistics "+poolStats);
+        }
+
+        // batch is stopped when handler fails
+        final BatchParser threads = new BatchParser(pool, null, 2);
+        try {
+            final Vector one = new Vector();
+            one.addElement(new InputSource(new ByteArrayInputStream("<doc/>".getBytes())));
+            threads.parse(one, new BatchHandler() {
+                        public ContentHandler getContentHandler(InputSource source) {
+                            return new DefaultHandler();
+                        }
+                        public void documentParsed(InputSource source, ContentHandler handler,
+                                                   Exception error) {
+                            throw new IllegalStateException("handler failed");
+                        }
+                    });
+            throw new RuntimeException("handler failure was not reported");
+        } catch(IllegalStateException ex) {
+        }
+        System.out.println(BatchParser.class+" OK");
+    }
+
+    private static class ElementCounter extends DefaultHandler
+    {
+        int elements;
+
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            ++elements;
+        }
+    }
+}
+
@@ -0,0 +1,75 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.sax2;
+
+/**
+ * Aggregate counters of one batch parsed by {@link BatchParser}.
+ *
+ * <p>Bytes are counted only for documents read from byte streams or system ids
+ * (documents given as character streams are not counted). Busy time is sum of
+ * times when workers were parsing so busy time divided by elapsed time
+ * is average number of documents parsed at the same time.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class BatchStatistics
+{
+    private final long documents;
+    private final long failed;
+    private final long bytes;
+    private final long elapsedNanos;
+    private final long busyNanos;
+
+    BatchStatistics(long documents, long failed, long bytes, long elapsedNanos, long busyNanos)
+    {
+        this.documents = documents;
+        this.failed = failed;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+        this.busyNanos = busyNanos;
+    }
+
+    /** Number of parsed documents (including failed). */
+    public long getDocuments() { return documents; }
+
+    /** Number of documents that could not be parsed. */
+    public long getFailed() { return failed; }
+
+    /** Number of bytes read from byte streams and system ids. */
+    public long getBytes() { return bytes; }
+
+    /** Time from start of batch until last document was parsed. */
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /** Sum of times that workers spent parsing documents. */
+    public long getBusyNanos() { return busyNanos; }
+
+    public double getDocumentsPerSecond() {
+        return elapsedNanos > 0 ? documents * 1e9 / elapsedNanos : 0;
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos > 0 ? bytes * 1e9 / elapsedNanos / (1024 * 1024) : 0;
+    }
+
+    /** Average number of workers that were parsing at the same time. */
+    public double getParallelism() {
+        return elapsedNanos > 0 ? (double) busyNanos / elapsedNanos : 0;
+    }
+
+    public String toString()
+    {
+        final StringBuffer buf = new StringBuffer();
+        buf.append("documents=").append(documents);
+        buf.append(" failed=").append(failed);
+        buf.append(" bytes=").append(bytes);
+        buf.append(" elapsed=").append(elapsedNanos / 1000000).append("ms");
+        buf.append(" documents/s=").append((long) getDocumentsPerSecond());
+        if(bytes > 0) buf.append(" MB/s=").append((long) (getMegabytesPerSecond() * 100) / 100.0);
+        buf.append(" parallelism=").append((long) (getParallelism() * 100) / 100.0);
+        return buf.toString();
+    }
+
+}
+
@@ -0,0 +1,284 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.sax2;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Hashtable;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Entity resolver that keeps text of resolved DTDs and entities in memory so
+ * documents that use the same DTD (such as XHTML or SOAP documents with DOCTYPE)
+ * do not read it again for every parsed document. Entities are first looked up
+ * in catalog (for example {@link EntityCatalog} with local copies of DTDs).
+ * Resolver is offline by default: only entities in catalog and local files can be read
+ * and parsing never goes to network, other system ids are read only after setOffline(false).
+ *
+ * <p>Cache is bounded by number of entries and by their size (in characters) and when
+ * it is full least recently used entries are evicted. It can be shared by many drivers
+ * and threads, entities are keyed by public id (if they have it) or by system id.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class CachingEntityResolver implements EntityResolver
+{
+    public final static int DEFAULT_MAX_ENTRIES = 128;
+    public final static int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    protected EntityResolver catalog;
+    protected int maxEntries;
+    protected int maxSize;
+    protected boolean offline = true;
+
+    private final Hashtable entries = new Hashtable();
+    // most recently used entry is first
+    private Entry first;
+    private Entry last;
+    private int size;
+    private long hits;
+    private long misses;
+
+    private static class Entry
+    {
+        String key;
+        String text;
+        String publicId;
+        String systemId;
+        Entry previous;
+        Entry next;
+    }
+
+    /** Create offline resolver that reads entities from local files. */
+    public CachingEntityResolver() {
+        this(null);
+    }
+
+    /** Create resolver that looks up entities in catalog (it may be null). */
+    public CachingEntityResolver(EntityResolver catalog) {
+        this(catalog, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_SIZE);
+    }
+
+    public CachingEntityResolver(EntityResolver catalog, int maxEntries, int maxSize) {
+        if(maxEntries < 0 || maxSize < 0) throw new IllegalArgumentException();
+        this.catalog = catalog;
+        this.maxEntries = maxEntries;
+        this.maxSize = maxSize;
+    }
+
+    public EntityResolver getCatalog() { return catalog; }
+
+    /**
+     * When resolver is offline (default) entities that are not in catalog can be read
+     * only from local files, other system ids are refused with SAXException.
+     */
+    public void setOffline(boolean offline) { this.offline = offline; }
+
+    public boolean isOffline() { return offline; }
+
+    public InputSource resolveEntity(String publicId, String systemId)
+        throws SAXException, IOException
+    {
+        final String key = publicId != null ? "P:" + publicId : "S:" + systemId;
+        Entry entry = get(key);
+        if(entry == null) {
+            // entity is read without lock (the same entity may be read by two threads)
+            InputSource source = catalog != null ? catalog.resolveEntity(publicId, systemId) : null;
+            if(source == null) {
+                if(offline && !isLocal(systemId)) {
+                    throw new SAXException("resolver is offline and entity "
+                                               +(publicId != null ? publicId+" " : "")
+                                               +systemId+" is not in catalog");
+                }
+                source = new InputSource(systemId);
+            }
+            entry = new Entry();
+            entry.key = key;
+            entry.text = DtdEntities.readText(source);
+            entry.publicId = publicId;
+            entry.systemId = source.getSystemId() != null ? source.getSystemId() : systemId;
+            put(entry);
+        }
+        final InputSource source = new InputSource(new StringReader(entry.text));
+        source.setPublicId(entry.publicId);
+        source.setSystemId(entry.systemId);
+        return source;
+    }
+
+    /** Return true if system id is file name or file URL. */
+    protected boolean isLocal(String systemId) {
+        if(systemId == null) return false;
+        try {
+            final URL url = new URL(systemId);
+            return "file".equals(url.getProtocol())
+                || ("jar".equals(url.getProtocol()) && url.getFile().startsWith("file:"));
+        } catch(MalformedURLException ex) {
+            return true;
+        }
+    }
+
+    private synchronized Entry get(String key) {
+        final Entry entry = (Entry) entries.get(key);
+        if(entry == null) {
+            ++misses;
+            return null;
+        }
+        ++hits;
+        unlink(entry);
+        link(entry);
+        return entry;
+    }
+
+    private synchronized void put(Entry entry) {
+        final int entrySize = entry.text.length();
+        if(maxEntries == 0 || entrySize > maxSize) return;
+        final Entry old = (Entry) entries.remove(entry.key);
+        if(old != null) {
+            unlink(old);
+            size -= old.text.length();
+        }
+        while(last != null && (entries.size() >= maxEntries || size + entrySize > maxSize)) {
+            final Entry evicted = last;
+            entries.remove(evicted.key);
+            unlink(evicted);
+            size -= evicted.text.length();
+        }
+        entries.put(entry.key, entry);
+        link(entry);
+        size += entrySize;
+    }
+
+    private void link(Entry entry) {
+        entry.previous = null;
+        entry.next = first;
+        if(first != null) first.previous = entry;
+        first = entry;
+        if(last == null) last = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if(entry.previous != null) entry.previous.next = entry.next; else first = entry.next;
+        if(entry.next != null) entry.next.previous = entry.previous; else last = entry.previous;
+        entry.previous = entry.next = null;
+    }
+
+    /** Number of entities that were found in cache. */
+    public synchronized long getHits() { return hits; }
+
+    /** Number of entities that had to be read. */
+    public synchronized long getMisses() { return misses; }
+
+    public synchronized int getEntryCount() { return entries.size(); }
+
+    /** Size of cached entities in characters. */
+    public synchronized int getSize() { return size; }
+
+    public synchronized void clear() {
+        entries.clear();
+        first = last = null;
+        size = 0;
+    }
+
+
+    // simple inline test
+    public static void main(String[] args) throws Exception
+    {
+        final File dir = new File(System.getProperty("java.io.tmpdir"),
+                                  "xmlpull-entities-"+System.currentTimeMillis());
+        dir.mkdirs();
+        final File dtd = write(dir, "doc.dtd",
+                               "<?xml version='1.0' encoding='UTF-8'?>\n"
+                                   +"<!ENTITY % mod PUBLIC '-//XMLPULL//ENTITIES Test//EN' 'mod.ent'>\n"
+                                   +"<!ENTITY % ignored 'IGNORE'>\n"
+                                   +"<![%ignored;[ <!ENTITY product 'ignored'> ]]>\n"
+                                   +"%mod;\n"
+                                   +"<!ELEMENT doc (#PCDATA)>\n");
+        write(dir, "mod.ent", "<!ENTITY product 'XmlPull'>\n"
+                  +"<!ENTITY copy '&#169;'>\n<!ENTITY notice '&copy; &product;'>\n");
+        final EntityCatalog catalog = new EntityCatalog();
+        catalog.addPublicId("-//XMLPULL//DTD Test//EN", dtd.getPath());
+        final CachingEntityResolver resolver = new CachingEntityResolver(catalog);
+
+        final String doc = "<!DOCTYPE doc PUBLIC '-//XMLPULL//DTD Test//EN'"
+            +" 'http://www.xmlpull.org/test/doc.dtd' [<!ENTITY local 'internal'>]>"
+            +"<doc>&local; &notice;</doc>";
+        final StringBuffer text = new StringBuffer();
+        final DefaultHandler handler = new DefaultHandler() {
+            public void characters(char[] ch, int start, int length) {
+                text.append(ch, start, length);
+            }
+        };
+        final Driver driver = new Driver();
+        driver.setFeature(Driver.EXPAND_INTERNAL_SUBSET_FEATURE, true);
+        driver.setEntityResolver(resolver);
+        for (int i = 0; i < 2; i++) {
+            text.setLength(0);
+            driver.setContentHandler(handler);
+            driver.parse(new InputSource(new StringReader(doc)));
+            if(!"internal \u00A9 XmlPull".equals(text.toString())) {
+                throw new RuntimeException("unexpected text "+text);
+            }
+        }
+        if(resolver.getEntryCount() != 2 || resolver.getMisses() != 2 || resolver.getHits() != 2) {
+            throw new RuntimeException("unexpected cache counters "+resolver.getEntryCount()
+                                           +" "+resolver.getMisses()+" "+resolver.getHits());
+        }
+
+        // offline resolver must not go to network
+        try {
+            resolver.resolveEntity(null, "http://www.xmlpull.org/test/other.dtd");
+            throw new RuntimeException("offline resolver read entity from network");
+        } catch(SAXException ex) {
+        }
+
+        // least recently used entry is evicted
+        final File a = write(dir, "a.ent", "a"), b = write(dir, "b.ent", "b");
+        final File c = write(dir, "c.ent", "c");
+        final CachingEntityResolver lru = new CachingEntityResolver(null, 2, 1024);
+        lru.resolveEntity(null, a.getPath());
+        lru.resolveEntity(null, b.getPath());
+        lru.resolveEntity(null, a.getPath());
+        lru.resolveEntity(null, c.getPath());
+        lru.resolveEntity(null, a.getPath());
+        lru.resolveEntity(null, b.getPath());
+        if(lru.getHits() != 2 || lru.getMisses() != 4 || lru.getEntryCount() != 2) {
+            throw new RuntimeException("unexpected LRU counters "+lru.getHits()+" "+lru.getMisses());
+        }
+
+        // recursive entities are refused
+        try {
+            driver.setContentHandler(handler);
+            driver.parse(new InputSource(new StringReader(
+                                             "<!DOCTYPE r [<!ENTITY x '&y;'><!ENTITY y '&x;'>]><r>&x;</r>")));
+            throw new RuntimeException("recursive entity was accepted");
+        } catch(SAXException ex) {
+            if(ex.getMessage().indexOf("recursive") < 0) throw ex;
+        }
+
+        final File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; i++) files[i].delete();
+        dir.delete();
+        System.out.println(CachingEntityResolver.class+" OK");
+    }
+
+    private static File write(File dir, String name, String content) throws IOException {
+        final File file = new File(dir, name);
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
+
@@ -6,6 +6,8 @@ package org.xmlpull.v1.sax2;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Enumeration;
+import java.util.Hashtable;
 
 // not J2ME classes -- remove if you want to run in MIDP devices
 import java.net.URL;
@@ -38,6 +40,10 @@ import org.xmlpull.v1.XmlPullParserFactory;
  * SAX2 Driver that pulls events from XmlPullParser
  * and comverts them into SAX2 callbacks.
  *
+ * <p>Driver can be used to parse many documents one after another (but not at the same time
+ * from many threads). Call {@link #reset()} before giving driver to other code (for example
+ * {@link DriverPool} does it) so it does not keep references to handlers and input.
+ *
  * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
  */
 
@@ -65,96 +71,310 @@ public class Driver implements Locator, XMLReader, Attributes
     protected static final String APACHE_DYNAMIC_VALIDATION_FEATURE =
         "http://apache.org/xml/features/validation/dynamic";
 
-    protected ContentHandler contentHandler = new DefaultHandler();
-    protected ErrorHandler errorHandler = new DefaultHandler();;
+    /**
+     * When this feature is true all adjacent character data (TEXT events) is delivered
+     * in one characters() call (from buffer of driver) so handler does not need to join it.
+     * Default is false: characters() is called for every TEXT event with parser buffer.
+     */
+    public static final String COALESCE_CHARACTERS_FEATURE =
+        "http://xmlpull.org/v1/sax2/features/coalesce-characters";
+
+    /**
+     * When this feature is true entities declared in internal DTD subset of document
+     * are defined in parser (parser must support property entity-expansion-limit,
+     * see {@link #setEntityResolver(EntityResolver)}). Default is false: internal subset
+     * is ignored so document can not make driver expand entities it declares itself.
+     */
+    public static final String EXPAND_INTERNAL_SUBSET_FEATURE =
+        "http://xmlpull.org/v1/sax2/features/expand-internal-subset";
+
+    // handlers used when they are not set (DefaultHandler has no state)
+    private final static DefaultHandler DEFAULT_HANDLER = new DefaultHandler();
+
+    // factory is found only once as it is costly (its newPullParser() is thread safe)
+    private static XmlPullParserFactory defaultFactory;
+
+    protected ContentHandler contentHandler = DEFAULT_HANDLER;
+    protected ErrorHandler errorHandler = DEFAULT_HANDLER;
+    protected EntityResolver entityResolver;
 
     protected String systemId;
 
     protected XmlPullParser pp;
 
+    // parser features changed by setFeature() -> Boolean state they had before first change
+    private final Hashtable changedFeatures = new Hashtable();
+    // parser properties changed by setProperty() -> value before first change (or NO_VALUE)
+    private final Hashtable changedProperties = new Hashtable();
+    private final static Object NO_VALUE = new Object();
+
+    // input stream opened by driver for systemId that must be closed after parsing
+    private InputStream openedStream;
+
+    // qNames of elements and attributes: (prefix, localName) -> qName (entries are replaced
+    // when there is hash collision so cache stays small)
+    private final static int QNAME_CACHE_SIZE = 64; // must be power of two
+    private final String[] qNameCachePrefix = new String[QNAME_CACHE_SIZE];
+    private final String[] qNameCacheLocalName = new String[QNAME_CACHE_SIZE];
+    private final String[] qNameCache = new String[QNAME_CACHE_SIZE];
+
+    private boolean expandInternalSubset;
+    private boolean coalesceCharacters;
+    // character data not yet delivered when coalescing (buffer is reused)
+    private final static int CHARACTERS_BUF_SIZE = 256;
+    private final static int MAX_KEPT_CHARACTERS_BUF_SIZE = 64 * 1024;
+    private char[] charactersBuf = new char[CHARACTERS_BUF_SIZE];
+    private int charactersLength;
+
+    // below this number of attributes linear scan is faster than hashing
+    private final static int MIN_INDEXED_ATTRIBUTES = 8;
+
+    // names of attributes of current start tag with hash tables of their indexes (index + 1)
+    // built lazily and only once for start tag (storage is reused for next start tags)
+    private boolean attributesIndexed;
+    private int attributeCount;
+    private String[] attributeUris = new String[MIN_INDEXED_ATTRIBUTES];
+    private String[] attributeLocalNames = new String[MIN_INDEXED_ATTRIBUTES];
+    private String[] attributeQNames = new String[MIN_INDEXED_ATTRIBUTES];
+    private int[] qNameIndex = new int[4 * MIN_INDEXED_ATTRIBUTES];
+    private int[] nameIndex = new int[4 * MIN_INDEXED_ATTRIBUTES];
+
     //private final static boolean DEBUG = false;
 
     /**
+     * Create driver with namespace aware parser from factory that is found
+     * by XmlPullParserFactory.newInstance() when first driver is created.
      */
     public Driver() throws XmlPullParserException {
-        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        pp = factory.newPullParser();
+        pp = getDefaultFactory().newPullParser();
     }
 
     public Driver(XmlPullParser pp) throws XmlPullParserException {
         this.pp = pp;
     }
 
+    private static synchronized XmlPullParserFactory getDefaultFactory()
+        throws XmlPullParserException
+    {
+        if(defaultFactory == null) {
+            final XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            defaultFactory = factory;
+        }
+        return defaultFactory;
+    }
+
+    /**
+     * Prepare driver to parse next document: parser input (and stream opened by driver)
+     * is released, handlers are set to defaults and state of last parsing is cleared.
+     * Features and properties changed by {@link #setFeature(String, boolean)} and
+     * {@link #setProperty(String, Object)} (and entity-expansion-limit set when entities
+     * declared in DOCTYPE are defined) are set back to their state in new driver
+     * (exception is thrown if parser does not allow it) and parser is kept.
+     * Property that had no value in new driver is not set to null (most parsers do not
+     * accept it): if it still has value exception is thrown after everything else was
+     * reset so DriverPool discards only such driver.
+     */
+    public void reset() throws XmlPullParserException {
+        contentHandler = DEFAULT_HANDLER;
+        errorHandler = DEFAULT_HANDLER;
+        entityResolver = null;
+        systemId = null;
+        attributesIndexed = false;
+        attributeCount = 0;
+        charactersLength = 0;
+        if(charactersBuf.length > MAX_KEPT_CHARACTERS_BUF_SIZE) {
+            charactersBuf = new char[CHARACTERS_BUF_SIZE];
+        }
+        closeOpenedStream();
+        pp.setInput((Reader) null);
+        coalesceCharacters = false;
+        expandInternalSubset = false;
+        for (Enumeration e = changedFeatures.keys(); e.hasMoreElements(); )
+        {
+            final String name = (String) e.nextElement();
+            final boolean state = ((Boolean) changedFeatures.get(name)).booleanValue();
+            if(pp.getFeature(name) != state) pp.setFeature(name, state);
+        }
+        changedFeatures.clear();
+        String notReset = null;
+        for (Enumeration e = changedProperties.keys(); e.hasMoreElements(); )
+        {
+            final String name = (String) e.nextElement();
+            final Object value = changedProperties.get(name);
+            if(value != NO_VALUE) {
+                if(!value.equals(pp.getProperty(name))) pp.setProperty(name, value);
+            } else if(pp.getProperty(name) != null) {
+                notReset = name;
+            }
+        }
+        changedProperties.clear();
+        if(notReset != null) throw new XmlPullParserException(
+                "property "+notReset+" had no value in new driver and can not be set back");
+    }
+
+    private void closeOpenedStream() {
+        if(openedStream != null) {
+            try {
+                openedStream.close();
+            } catch(IOException ex) {
+            }
+            openedStream = null;
+        }
+    }
+
+    /** Return prefix:localName (qName is cached so repeated names are not created again). */
+    private String qName(String prefix, String localName) {
+        if(prefix == null) return localName;
+        int h = 31 * prefix.hashCode() + localName.hashCode();
+        h = (h ^ (h >>> 16)) & (QNAME_CACHE_SIZE - 1);
+        final String cachedLocalName = qNameCacheLocalName[h];
+        final String cachedPrefix = qNameCachePrefix[h];
+        if((cachedLocalName == localName || localName.equals(cachedLocalName))
+           && (cachedPrefix == prefix || prefix.equals(cachedPrefix)))
+        {
+            return qNameCache[h];
+        }
+        final String qName = prefix+':'+localName;
+        qNameCachePrefix[h] = prefix;
+        qNameCacheLocalName[h] = localName;
+        qNameCache[h] = qName;
+        return qName;
+    }
+
     // -- Attributes interface
 
+    // methods with index return null when index is out of range (as required by Attributes)
     public int getLength() { return pp.getAttributeCount(); }
-    public String getURI(int index) { return pp.getAttributeNamespace(index); }
-    public String getLocalName(int index) { return pp.getAttributeName(index); }
+    public String getURI(int index) {
+        return isAttributeIndex(index) ? pp.getAttributeNamespace(index) : null;
+    }
+    public String getLocalName(int index) {
+        return isAttributeIndex(index) ? pp.getAttributeName(index) : null;
+    }
     public String getQName(int index) {
-        final String prefix = pp.getAttributePrefix(index);
-        if(prefix != null) {
-            return prefix+':'+pp.getAttributeName(index);
-        } else {
-            return pp.getAttributeName(index);
-        }
+        if(!attributesIndexed) indexAttributes();
+        return index >= 0 && index < attributeCount ? attributeQNames[index] : null;
+    }
+    public String getType(int index) {
+        return isAttributeIndex(index) ? pp.getAttributeType(index) : null;
+    }
+    public String getValue(int index) {
+        return isAttributeIndex(index) ? pp.getAttributeValue(index) : null;
+    }
+
+    private boolean isAttributeIndex(int index) {
+        return index >= 0 && index < pp.getAttributeCount();
     }
-    public String getType(int index) { return pp.getAttributeType(index); }
-    public String getValue(int index) { return pp.getAttributeValue(index); }
 
     public int getIndex(String uri, String localName) {
-        for (int i = 0; i < pp.getAttributeCount(); i++)
-        {
-            if(pp.getAttributeNamespace(i).equals(uri)
-               && pp.getAttributeName(i).equals(localName))
+        if(uri == null || localName == null) return -1;
+        if(!attributesIndexed) indexAttributes();
+        if(attributeCount < MIN_INDEXED_ATTRIBUTES) {
+            for (int i = 0; i < attributeCount; i++)
             {
+                if(attributeLocalNames[i].equals(localName) && attributeUris[i].equals(uri)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        final int mask = nameIndex.length - 1;
+        for (int h = hash(uri, localName) & mask; nameIndex[h] != 0; h = (h + 1) & mask)
+        {
+            final int i = nameIndex[h] - 1;
+            if(attributeLocalNames[i].equals(localName) && attributeUris[i].equals(uri)) {
                 return i;
             }
-
         }
         return -1;
     }
 
     public int getIndex(String qName) {
-        for (int i = 0; i < pp.getAttributeCount(); i++)
-        {
-            if(pp.getAttributeName(i).equals(qName))
+        if(qName == null) return -1;
+        if(!attributesIndexed) indexAttributes();
+        if(attributeCount < MIN_INDEXED_ATTRIBUTES) {
+            for (int i = 0; i < attributeCount; i++)
             {
-                return i;
+                if(attributeQNames[i].equals(qName)) return i;
             }
-
+            return -1;
+        }
+        final int mask = qNameIndex.length - 1;
+        for (int h = qName.hashCode() & mask; qNameIndex[h] != 0; h = (h + 1) & mask)
+        {
+            final int i = qNameIndex[h] - 1;
+            if(attributeQNames[i].equals(qName)) return i;
         }
         return -1;
     }
 
     public String getType(String uri, String localName) {
-        for (int i = 0; i < pp.getAttributeCount(); i++)
-        {
-            if(pp.getAttributeNamespace(i).equals(uri)
-               && pp.getAttributeName(i).equals(localName))
-            {
-                return pp.getAttributeType(i);
-            }
-
-        }
-        return null;
+        final int index = getIndex(uri, localName);
+        return index >= 0 ? pp.getAttributeType(index) : null;
     }
     public String getType(String qName) {
-        for (int i = 0; i < pp.getAttributeCount(); i++)
+        final int index = getIndex(qName);
+        return index >= 0 ? pp.getAttributeType(index) : null;
+    }
+    public String getValue(String uri, String localName) {
+        final int index = getIndex(uri, localName);
+        return index >= 0 ? pp.getAttributeValue(index) : null;
+    }
+    public String getValue(String qName) {
+        final int index = getIndex(qName);
+        return index >= 0 ? pp.getAttributeValue(index) : null;
+    }
+
+    /**
+     * Read names of all attributes of current start tag (so they are no longer requested
+     * from parser and qNames are created only once) and for many attributes build hash
+     * tables (open addressing) to find attribute index in constant time.
+     */
+    private void indexAttributes() {
+        final int count = Math.max(0, pp.getAttributeCount());
+        if(count > attributeQNames.length) {
+            final int capacity = Math.max(count, 2 * attributeQNames.length);
+            attributeUris = new String[capacity];
+            attributeLocalNames = new String[capacity];
+            attributeQNames = new String[capacity];
+        }
+        for (int i = 0; i < count; i++)
         {
-            if(pp.getAttributeName(i).equals(qName))
+            final String localName = pp.getAttributeName(i);
+            final String prefix = pp.getAttributePrefix(i);
+            attributeUris[i] = pp.getAttributeNamespace(i);
+            attributeLocalNames[i] = localName;
+            attributeQNames[i] = qName(prefix, localName);
+        }
+        attributeCount = count;
+        if(count >= MIN_INDEXED_ATTRIBUTES) {
+            // keep tables at most half full so probe sequences are short
+            int size = qNameIndex.length;
+            while(size < 2 * count) size *= 2;
+            if(size > qNameIndex.length) {
+                qNameIndex = new int[size];
+                nameIndex = new int[size];
+            } else {
+                for (int h = 0; h < size; h++) qNameIndex[h] = nameIndex[h] = 0;
+            }
+            final int mask = size - 1;
+            for (int i = 0; i < count; i++)
             {
-                return pp.getAttributeType(i);
+                int h = attributeQNames[i].hashCode() & mask;
+                while(qNameIndex[h] != 0) h = (h + 1) & mask;
+                qNameIndex[h] = i + 1;
+                h = hash(attributeUris[i], attributeLocalNames[i]) & mask;
+                while(nameIndex[h] != 0) h = (h + 1) & mask;
+                nameIndex[h] = i + 1;
             }
-
         }
-        return null;
-    }
-    public String getValue(String uri, String localName) {
-        return pp.getAttributeValue(uri, localName);
+        attributesIndexed = true;
     }
-    public String getValue(String qName) {
-        return pp.getAttributeValue(null, qName);
+
+    private static int hash(String uri, String localName) {
+        final int h = 31 * uri.hashCode() + localName.hashCode();
+        return h ^ (h >>> 16);
     }
 
     // -- Locator interface
@@ -175,6 +395,10 @@ public class Driver implements Locator, XMLReader, Attributes
             return pp.getFeature(XmlPullParser.FEATURE_REPORT_NAMESPACE_ATTRIBUTES);
         } else if(VALIDATION_FEATURE.equals(name)) {
             return pp.getFeature(XmlPullParser.FEATURE_VALIDATION);
+        } else if(COALESCE_CHARACTERS_FEATURE.equals(name)) {
+            return coalesceCharacters;
+        } else if(EXPAND_INTERNAL_SUBSET_FEATURE.equals(name)) {
+            return expandInternalSubset;
             //        } else if(APACHE_SCHEMA_VALIDATION_FEATURE.equals(name)) {
             //            return false;  //TODO
             //        } else if(APACHE_DYNAMIC_VALIDATION_FEATURE.equals(name)) {
@@ -190,13 +414,17 @@ public class Driver implements Locator, XMLReader, Attributes
     {
         try {
             if(NAMESPACES_FEATURE.equals(name)) {
-                pp.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, value);
+                setParserFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, value);
             } else if(NAMESPACE_PREFIXES_FEATURE.equals(name)) {
                 if(pp.getFeature(XmlPullParser.FEATURE_REPORT_NAMESPACE_ATTRIBUTES) != value) {
-                    pp.setFeature(XmlPullParser.FEATURE_REPORT_NAMESPACE_ATTRIBUTES, value);
+                    setParserFeature(XmlPullParser.FEATURE_REPORT_NAMESPACE_ATTRIBUTES, value);
                 }
             } else if(VALIDATION_FEATURE.equals(name)) {
-                pp.setFeature(XmlPullParser.FEATURE_VALIDATION, value);
+                setParserFeature(XmlPullParser.FEATURE_VALIDATION, value);
+            } else if(COALESCE_CHARACTERS_FEATURE.equals(name)) {
+                coalesceCharacters = value;
+            } else if(EXPAND_INTERNAL_SUBSET_FEATURE.equals(name)) {
+                expandInternalSubset = value;
                 //          } else if(APACHE_SCHEMA_VALIDATION_FEATURE.equals(name)) {
                 //              // can ignore as validation must be false ...
                 //              //              if(true == value) {
@@ -207,7 +435,7 @@ public class Driver implements Locator, XMLReader, Attributes
                 //                  throw new SAXNotSupportedException("dynamic validation is not supported");
                 //              }
             } else {
-                pp.setFeature(name, value);
+                setParserFeature(name, value);
                 //throw new SAXNotRecognizedException("unrecognized feature "+name);
             }
         } catch(XmlPullParserException ex) {
@@ -215,6 +443,22 @@ public class Driver implements Locator, XMLReader, Attributes
         }
     }
 
+    /** Set feature of parser and remember its previous state so reset() can set it back. */
+    private void setParserFeature(String name, boolean value) throws XmlPullParserException {
+        final boolean state = pp.getFeature(name);
+        pp.setFeature(name, value);
+        if(!changedFeatures.containsKey(name)) changedFeatures.put(name, new Boolean(state));
+    }
+
+    /** Set property of parser and remember its previous value so reset() can set it back. */
+    void setParserProperty(String name, Object value) throws XmlPullParserException {
+        final Object previous = pp.getProperty(name);
+        pp.setProperty(name, value);
+        if(!changedProperties.containsKey(name)) {
+            changedProperties.put(name, previous != null ? previous : NO_VALUE);
+        }
+    }
+
     public Object getProperty (String name)
         throws SAXNotRecognizedException, SAXNotSupportedException
     {
@@ -238,7 +482,7 @@ public class Driver implements Locator, XMLReader, Attributes
             throw new SAXNotSupportedException("not supported setting property "+name);//+" to "+value);
         } else {
             try {
-                pp.setProperty(name, value);
+                setParserProperty(name, value);
             } catch(XmlPullParserException ex) {
                 throw new SAXNotSupportedException("not supported set property "+name+": "+ ex);
             }
@@ -246,9 +490,21 @@ public class Driver implements Locator, XMLReader, Attributes
         }
     }
 
-    public void setEntityResolver (EntityResolver resolver) {}
+    /**
+     * Set resolver used to read external DTD subset, parameter entities it references
+     * and external text entities (they are not read when there is no resolver, entities
+     * declared in internal subset are defined only when {@link #EXPAND_INTERNAL_SUBSET_FEATURE}
+     * is true). Resolver may return null and then entity is read from its system id
+     * (from any URL, also from network): {@link CachingEntityResolver} that is offline
+     * by default can be used instead. Entities are defined only in parser that supports
+     * property http://xmlpull.org/v1/doc/properties.html#entity-expansion-limit
+     * and if it is not set driver sets it to 1M characters.
+     */
+    public void setEntityResolver (EntityResolver resolver) {
+        this.entityResolver = resolver;
+    }
 
-    public EntityResolver getEntityResolver () { return null; }
+    public EntityResolver getEntityResolver () { return entityResolver; }
 
     public void setDTDHandler (DTDHandler handler) {}
 
@@ -268,6 +524,15 @@ public class Driver implements Locator, XMLReader, Attributes
     public ErrorHandler getErrorHandler() { return errorHandler; }
 
     public void parse(InputSource source) throws SAXException, IOException
+    {
+        try {
+            parseInputSource(source);
+        } finally {
+            closeOpenedStream();
+        }
+    }
+
+    private void parseInputSource(InputSource source) throws SAXException, IOException
     {
 
         systemId = source.getSystemId();
@@ -287,19 +552,13 @@ public class Driver implements Locator, XMLReader, Attributes
                         errorHandler.fatalError(saxException);
                         return;
                     }
-                    // NOTE: replace with Connection to run in J2ME environment
                     try {
-                        final URL url = new URL(systemId);
-                        stream = url.openStream();
-                    } catch (MalformedURLException nue) {
-                        try {
-                            stream = new FileInputStream(systemId);
-                        } catch (FileNotFoundException fnfe) {
-                            final SAXParseException saxException = new SAXParseException(
-                                "could not open file with systemId "+systemId, this, fnfe);
-                            errorHandler.fatalError(saxException);
-                            return;
-                        }
+                        stream = openedStream = openSystemId(systemId);
+                    } catch (FileNotFoundException fnfe) {
+                        final SAXParseException saxException = new SAXParseException(
+                            "could not open file with systemId "+systemId, this, fnfe);
+                        errorHandler.fatalError(saxException);
+                        return;
                     }
                 }
                 pp.setInput(stream, encoding);
@@ -317,8 +576,20 @@ public class Driver implements Locator, XMLReader, Attributes
         // start parsing - move to first start tag
         try {
             contentHandler.startDocument();
-            // get first event
-            pp.next();
+            // move to first start tag (DOCTYPE may declare entities)
+            int type;
+            while((type = pp.nextToken()) != XmlPullParser.START_TAG
+                  && type != XmlPullParser.END_DOCUMENT)
+            {
+                if(type == XmlPullParser.DOCDECL
+                       && (expandInternalSubset || entityResolver != null))
+                {
+                    final DtdEntities entities =
+                        new DtdEntities(entityResolver, expandInternalSubset);
+                    entities.readDoctype(pp.getText(), systemId);
+                    entities.define(this);
+                }
+            }
             // it should be start tag...
             if(pp.getEventType() != XmlPullParser.START_TAG) {
                 final SAXParseException saxException = new SAXParseException(
@@ -344,13 +615,37 @@ public class Driver implements Locator, XMLReader, Attributes
         contentHandler.endDocument();
     }
 
+    /** Open stream to read from URL or from file (when system id is not URL). */
+    static InputStream openSystemId(String systemId) throws IOException {
+        // NOTE: replace with Connection to run in J2ME environment
+        try {
+            return new URL(systemId).openStream();
+        } catch (MalformedURLException nue) {
+            return new FileInputStream(systemId);
+        }
+    }
+
     public void parse(String systemId) throws SAXException, IOException {
         parse(new InputSource(systemId));
     }
 
 
+    /**
+     * Report events of element on which given parser is positioned (and of its content)
+     * to handlers, parser is left on event after end tag of element.
+     * Given parser is used by driver (for example as Locator) only during this call.
+     */
     public void parseSubTree(XmlPullParser pp) throws SAXException, IOException {
+        final XmlPullParser driverParser = this.pp;
         this.pp = pp;
+        try {
+            parseEvents(pp);
+        } finally {
+            this.pp = driverParser;
+        }
+    }
+
+    private void parseEvents(XmlPullParser pp) throws SAXException, IOException {
         final boolean namespaceAware = pp.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES);
         try {
             if(pp.getEventType() != XmlPullParser.START_TAG) {
@@ -358,16 +653,17 @@ public class Driver implements Locator, XMLReader, Attributes
                     "start tag must be read before skiping subtree"+pp.getPositionDescription());
             }
             final int[] holderForStartAndLength = new int[2];
-            final StringBuffer rawName = new StringBuffer(16);
-            String prefix = null;
             String name = null;
             int level = pp.getDepth() - 1;
             int type = XmlPullParser.START_TAG;
+            charactersLength = 0;
 
             LOOP:
             do {
+                if(charactersLength > 0 && type != XmlPullParser.TEXT) flushCharacters();
                 switch(type) {
                     case XmlPullParser.START_TAG:
+                        attributesIndexed = false;
                         if(namespaceAware) {
                             final int depth = pp.getDepth() - 1;
                             final int countPrev =
@@ -382,16 +678,9 @@ public class Driver implements Locator, XMLReader, Attributes
                                 );
                             }
                             name = pp.getName();
-                            prefix = pp.getPrefix();
-                            if(prefix != null) {
-                                rawName.setLength(0);
-                                rawName.append(prefix);
-                                rawName.append(':');
-                                rawName.append(name);
-                            }
                             startElement(pp.getNamespace(),
                                          name,
-                                         prefix != null ? rawName.toString() : name );
+                                         qName(pp.getPrefix(), name));
                         } else {
                             startElement(pp.getNamespace(),
                                          pp.getName(),
@@ -402,25 +691,24 @@ public class Driver implements Locator, XMLReader, Attributes
                         break;
                     case XmlPullParser.TEXT:
                         final char[] chars = pp.getTextCharacters(holderForStartAndLength);
-                        contentHandler.characters(chars,
-                                                  holderForStartAndLength[0], //start
-                                                  holderForStartAndLength[1] //len
-                                                 );
+                        if(coalesceCharacters) {
+                            appendCharacters(chars,
+                                             holderForStartAndLength[0],
+                                             holderForStartAndLength[1]);
+                        } else {
+                            contentHandler.characters(chars,
+                                                      holderForStartAndLength[0], //start
+                                                      holderForStartAndLength[1] //len
+                                                     );
+                        }
                         break;
                     case XmlPullParser.END_TAG:
                         //--level;
                         if(namespaceAware) {
                             name = pp.getName();
-                            prefix = pp.getPrefix();
-                            if(prefix != null) {
-                                rawName.setLength(0);
-                                rawName.append(prefix);
-                                rawName.append(':');
-                                rawName.append(name);
-                            }
                             contentHandler.endElement(pp.getNamespace(),
                                                       name,
-                                                      prefix != null ? rawName.toString() : name
+                                                      qName(pp.getPrefix(), name)
                                                      );
                             // when entering show prefixes for all levels!!!!
                             final int depth = pp.getDepth();
@@ -447,6 +735,7 @@ public class Driver implements Locator, XMLReader, Attributes
                 }
                 type = pp.next();
             } while(pp.getDepth() > level);
+            if(charactersLength > 0) flushCharacters();
         } catch (XmlPullParserException ex)  {
             final SAXParseException saxException = new SAXParseException("parsing error: "+ex, this, ex);
             ex.printStackTrace();
@@ -454,6 +743,23 @@ public class Driver implements Locator, XMLReader, Attributes
         }
     }
 
+    private void appendCharacters(char[] chars, int start, int length) {
+        final int needed = charactersLength + length;
+        if(needed > charactersBuf.length) {
+            final char[] newBuf = new char[Math.max(needed, 2 * charactersBuf.length)];
+            System.arraycopy(charactersBuf, 0, newBuf, 0, charactersLength);
+            charactersBuf = newBuf;
+        }
+        System.arraycopy(chars, start, charactersBuf, charactersLength, length);
+        charactersLength = needed;
+    }
+
+    private void flushCharacters() throws SAXException {
+        final int length = charactersLength;
+        charactersLength = 0;
+        contentHandler.characters(charactersBuf, 0, length);
+    }
+
     /**
      * Calls {@link ContentHandler.startElement(String, String, String, Attributes) startElement}
      * on the <code>ContentHandler</code> with <code>this</code> driver object as the
@@ -0,0 +1,166 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.sax2;
+
+import java.io.StringReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.parser_pool.ObjectPool;
+import org.xmlpull.v1.parser_pool.PoolStatistics;
+
+/**
+ * Pool of SAX2 drivers (each with its own parser) so SAX2 API can be used
+ * without finding factory and creating parser for every parsed document.
+ *
+ * <p>Returned driver is reset (see {@link Driver#reset()}) so it does not keep
+ * references to handlers and input and features set on borrowed driver are set back,
+ * driver that can not be reset is not kept in pool (override newDriver() to configure drivers).
+ *
+ * <p>Pool can be used by many threads at the same time and it can be configured
+ * with limits described in {@link ObjectPool} (including shared mode for virtual threads).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class DriverPool extends ObjectPool {
+
+    protected XmlPullParserFactory factory;
+
+    /** Create pool of drivers with namespace aware parsers. */
+    public DriverPool() throws XmlPullParserException {
+        this(newNamespaceAwareFactory());
+    }
+
+    public DriverPool(XmlPullParserFactory factory) {
+        this(factory, false);
+    }
+
+    /**
+     * Create pool that uses thread slots or pool in shared mode
+     * that is suitable for virtual threads (see {@link ObjectPool}).
+     */
+    public DriverPool(XmlPullParserFactory factory, boolean sharedMode) {
+        super(sharedMode);
+        if(factory == null) throw new IllegalArgumentException();
+        this.factory = factory;
+    }
+
+    private static XmlPullParserFactory newNamespaceAwareFactory() throws XmlPullParserException {
+        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+
+    protected Driver newDriver() throws XmlPullParserException {
+        return new Driver(factory.newPullParser());
+    }
+
+    protected Object newObject() throws XmlPullParserException {
+        return newDriver();
+    }
+
+    /** Size of parser buffers (by default optional property buffer-size is used). */
+    protected int sizeOf(Object o) {
+        final Object size = ((Driver) o).pp.getProperty(PROPERTY_BUFFER_SIZE);
+        return size instanceof Integer ? ((Integer) size).intValue() : -1;
+    }
+
+    /** Shrink parser buffers by setting optional property buffer-size (if parser supports it). */
+    protected void trim(Object o, int maxSize) {
+        try {
+            ((Driver) o).pp.setProperty(PROPERTY_BUFFER_SIZE, new Integer(maxSize));
+        } catch(XmlPullParserException ex) {
+            // parser can not be trimmed (it may be discarded if maximum buffer size is set)
+        }
+    }
+
+    public Driver getDriverFromPool()
+        throws XmlPullParserException
+    {
+        return (Driver) borrowObject();
+    }
+
+    public void returnDriverToPool(Driver driver) {
+        if(driver == null) throw new IllegalArgumentException();
+        try {
+            driver.reset();
+        } catch(XmlPullParserException ex) {
+            discardObject(driver);
+            return;
+        }
+        returnObject(driver);
+    }
+
+    /** Forget borrowed driver that can not be used again instead of returning it to pool. */
+    public void discardDriver(Driver driver) {
+        if(driver == null) throw new IllegalArgumentException();
+        discardObject(driver);
+    }
+
+
+    // simple inline test
+    public static void main(String[] args) throws Exception
+    {
+        final DriverPool pool = new DriverPool();
+        final StringBuffer events = new StringBuffer();
+        final DefaultHandler handler = new DefaultHandler() {
+            public void startElement(String uri, String localName, String qName, Attributes atts) {
+                events.append('<').append(qName);
+                for (int i = 0; i < atts.getLength(); i++) events.append(' ').append(atts.getQName(i));
+                events.append('>');
+            }
+            public void endElement(String uri, String localName, String qName) {
+                events.append("</").append(qName).append('>');
+            }
+        };
+        final String doc = "<p:a xmlns:p='urn:p' p:x='1'><p:a/><b p:x='2'/></p:a>";
+        final String expected = "<p:a p:x><p:a></p:a><b p:x></b></p:a>";
+        final Driver d1 = pool.getDriverFromPool();
+        d1.setContentHandler(handler);
+        d1.parse(new InputSource(new StringReader(doc)));
+        if(!expected.equals(events.toString())) throw new RuntimeException("events "+events);
+        pool.returnDriverToPool(d1);
+        if(d1.getContentHandler() == handler) throw new RuntimeException("handler was not reset");
+
+        final Driver d2 = pool.getDriverFromPool();
+        if(d1 != d2) throw new RuntimeException("driver was not reused");
+        events.setLength(0);
+        d2.setContentHandler(handler);
+        d2.parse(new InputSource(new StringReader(doc)));
+        if(!expected.equals(events.toString())) throw new RuntimeException("events "+events);
+        // parser was given input again and qNames come from cache
+        d2.setContentHandler(new DefaultHandler() {
+                    String first;
+                    public void startElement(String uri, String localName, String qName,
+                                             Attributes atts) {
+                        if(localName.equals("a")) {
+                            if(first == null) first = qName;
+                            else if(first != qName) throw new RuntimeException("qName not cached");
+                        }
+                    }
+                });
+        d2.parse(new InputSource(new StringReader(doc)));
+        pool.returnDriverToPool(d2);
+
+        // features set by borrower are set back when driver is returned
+        final Driver d3 = pool.getDriverFromPool();
+        d3.setFeature(Driver.NAMESPACE_PREFIXES_FEATURE, true);
+        d3.setFeature(Driver.COALESCE_CHARACTERS_FEATURE, true);
+        d3.parse(new InputSource(new StringReader(doc)));
+        pool.returnDriverToPool(d3);
+        if(d3.getFeature(Driver.NAMESPACE_PREFIXES_FEATURE)
+               || d3.getFeature(Driver.COALESCE_CHARACTERS_FEATURE))
+        {
+            throw new RuntimeException("features were not reset");
+        }
+        final PoolStatistics stats = pool.getStatistics();
+        if(stats.getCreated() != 1 || stats.getHits() != 2 || stats.getReturned() != 3) {
+            throw new RuntimeException("unexpected statistics "+stats);
+        }
+        System.out.println(pool.getClass()+" OK");
+    }
+}
+
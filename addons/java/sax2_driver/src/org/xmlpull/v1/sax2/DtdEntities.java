@@ -0,0 +1,329 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.sax2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * General entities declared in DOCTYPE that are defined in parser with
+ * defineEntityReplacementText(). Internal subset is read only when it is enabled,
+ * external DTD subset, external parameter entities (DTD modules) and external text entities
+ * only when there is entity resolver (it decides from where they are read).
+ * Replacement text is fully expanded and limited to MAX_REPLACEMENT_LENGTH characters.
+ * That does not limit memory used for document that references big entity many times
+ * ("billion laughs") so entities are defined only in parser that supports property
+ * entity-expansion-limit (if it is not set it is set to MAX_EXPANSION characters).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+final class DtdEntities
+{
+    private final static int MAX_NESTING = 16;
+    private final static int MAX_REPLACEMENT_LENGTH = 1024 * 1024;
+    private final static int MAX_EXPANSION = 1024 * 1024; // in one document
+    private final static String PROPERTY_ENTITY_EXPANSION_LIMIT =
+        "http://xmlpull.org/v1/doc/properties.html#entity-expansion-limit";
+
+    private final EntityResolver resolver;
+    private final boolean internalSubset;
+    // first declaration is binding so names already declared are not replaced
+    private final Hashtable values = new Hashtable();
+    private final Hashtable externals = new Hashtable(); // name -> {publicId, systemId}
+    private final Hashtable parameterValues = new Hashtable();
+    private final Hashtable parameterExternals = new Hashtable();
+    private final Hashtable expanded = new Hashtable();
+
+    DtdEntities(EntityResolver resolver, boolean internalSubset) {
+        this.resolver = resolver;
+        this.internalSubset = internalSubset;
+    }
+
+    /** Read declarations from DOCTYPE (text after &lt;!DOCTYPE) of document with given system id. */
+    void readDoctype(String docdecl, String documentSystemId) throws SAXException, IOException {
+        final String[] doctype = DtdScanner.parseDoctype(docdecl);
+        if(doctype[3] != null && internalSubset) scan(doctype[3], documentSystemId, 0);
+        if(doctype[2] != null && resolver != null) {
+            final String[] dtd = readEntity(doctype[1], absolute(doctype[2], documentSystemId));
+            scan(dtd[0], dtd[1], 0);
+        }
+    }
+
+    /** Define all read entities in parser of driver. */
+    void define(Driver driver) throws SAXException, IOException, XmlPullParserException {
+        if(values.isEmpty() && (resolver == null || externals.isEmpty())) return;
+        final XmlPullParser pp = driver.pp;
+        limitExpansion(driver);
+        for (Enumeration e = values.keys(); e.hasMoreElements(); )
+        {
+            final String name = (String) e.nextElement();
+            if(!isPredefined(name)) pp.defineEntityReplacementText(name, expand(name, 0));
+        }
+        if(resolver == null) return;
+        for (Enumeration e = externals.keys(); e.hasMoreElements(); )
+        {
+            final String name = (String) e.nextElement();
+            if(isPredefined(name)) continue;
+            final String[] id = (String[]) externals.get(name);
+            final String text = stripTextDecl(readEntity(id[0], id[1])[0]);
+            // only text can be defined as replacement (entities with markup stay undefined)
+            if(text.indexOf('<') < 0) {
+                final StringBuffer buf = new StringBuffer(text.length());
+                expandReferences(text, buf, 0);
+                pp.defineEntityReplacementText(name, buf.toString());
+            }
+        }
+    }
+
+    /**
+     * Make sure parser limits number of characters replaced for references in document
+     * (limit is set through driver so it is set back when driver is reset).
+     */
+    private static void limitExpansion(Driver driver) throws SAXException {
+        final Object limit = driver.pp.getProperty(PROPERTY_ENTITY_EXPANSION_LIMIT);
+        if(limit instanceof Integer && ((Integer) limit).intValue() >= 0) return;
+        try {
+            driver.setParserProperty(PROPERTY_ENTITY_EXPANSION_LIMIT, new Integer(MAX_EXPANSION));
+        } catch(XmlPullParserException ex) {
+            throw new SAXException(
+                "entities declared in DOCTYPE are not defined as parser can not limit their expansion"
+                    +" (property "+PROPERTY_ENTITY_EXPANSION_LIMIT+" is not supported)");
+        }
+    }
+
+    private void scan(String dtd, String baseSystemId, int nesting) throws SAXException, IOException {
+        if(nesting > MAX_NESTING) throw new SAXException(
+                "parameter entities nested deeper than "+MAX_NESTING+" in "+baseSystemId);
+        final DtdScanner s = new DtdScanner(dtd, parameterValues);
+        int event;
+        while((event = s.next()) != DtdScanner.END) {
+            if(event == DtdScanner.ENTITY_DECL) {
+                final Hashtable declaredValues = s.parameter ? parameterValues : values;
+                final Hashtable declaredExternals = s.parameter ? parameterExternals : externals;
+                if(s.unparsed || declaredValues.containsKey(s.name)
+                   || declaredExternals.containsKey(s.name))
+                {
+                    continue;
+                }
+                if(s.value != null) {
+                    declaredValues.put(s.name, expandParameterReferences(s.value));
+                } else {
+                    declaredExternals.put(s.name, new String[] {
+                                s.publicId, absolute(s.systemId, baseSystemId) });
+                }
+            } else if(event == DtdScanner.PARAMETER_ENTITY_REF) {
+                final String value = (String) parameterValues.get(s.name);
+                if(value != null) {
+                    scan(value, baseSystemId, nesting + 1);
+                } else if(resolver != null && parameterExternals.containsKey(s.name)) {
+                    final String[] id = (String[]) parameterExternals.get(s.name);
+                    final String[] module = readEntity(id[0], id[1]);
+                    scan(module[0], module[1], nesting + 1);
+                }
+            }
+        }
+    }
+
+    private String expand(String name, int nesting) throws SAXException {
+        String text = (String) expanded.get(name);
+        if(text == null) {
+            if(nesting > MAX_NESTING) throw new SAXException(
+                    "entity "+name+" is recursive or nested deeper than "+MAX_NESTING);
+            final String value = (String) values.get(name);
+            final StringBuffer buf = new StringBuffer(value.length());
+            expandReferences(value, buf, nesting);
+            text = buf.toString();
+            expanded.put(name, text);
+        }
+        return text;
+    }
+
+    // replace character references and references to general entities that have value
+    private void expandReferences(String value, StringBuffer buf, int nesting) throws SAXException {
+        int start = 0;
+        int amp;
+        while((amp = value.indexOf('&', start)) >= 0) {
+            final int semicolon = value.indexOf(';', amp);
+            if(semicolon < 0) break;
+            buf.append(value.substring(start, amp));
+            final String ref = value.substring(amp + 1, semicolon);
+            start = semicolon + 1;
+            if(ref.startsWith("#")) {
+                appendCharacter(ref, buf);
+            } else if(isPredefined(ref)) {
+                buf.append(predefined(ref));
+            } else if(values.containsKey(ref)) {
+                buf.append(expand(ref, nesting + 1));
+            } else {
+                buf.append('&').append(ref).append(';');
+            }
+            if(buf.length() > MAX_REPLACEMENT_LENGTH) throw new SAXException(
+                    "replacement text of entity is longer than "+MAX_REPLACEMENT_LENGTH+" characters");
+        }
+        buf.append(value.substring(start));
+    }
+
+    private String expandParameterReferences(String value) {
+        if(value.indexOf('%') < 0) return value;
+        final StringBuffer buf = new StringBuffer(value.length());
+        int start = 0;
+        int percent;
+        while((percent = value.indexOf('%', start)) >= 0) {
+            final int semicolon = value.indexOf(';', percent);
+            final String ref = semicolon > 0 ? value.substring(percent + 1, semicolon) : null;
+            final String replacement = ref != null ? (String) parameterValues.get(ref) : null;
+            if(replacement == null) {
+                buf.append(value.substring(start, percent + 1));
+                start = percent + 1;
+            } else {
+                buf.append(value.substring(start, percent)).append(replacement);
+                start = semicolon + 1;
+            }
+        }
+        buf.append(value.substring(start));
+        return buf.toString();
+    }
+
+    private static void appendCharacter(String ref, StringBuffer buf) throws SAXException {
+        try {
+            final int ch = ref.startsWith("#x")
+                ? Integer.parseInt(ref.substring(2), 16) : Integer.parseInt(ref.substring(1));
+            if(ch > 0xFFFF) {
+                buf.append((char) (0xD800 + ((ch - 0x10000) >> 10)));
+                buf.append((char) (0xDC00 + ((ch - 0x10000) & 0x3FF)));
+            } else {
+                buf.append((char) ch);
+            }
+        } catch(NumberFormatException ex) {
+            throw new SAXException("invalid character reference &"+ref+";");
+        }
+    }
+
+    private static boolean isPredefined(String name) {
+        return predefined(name) != 0;
+    }
+
+    private static char predefined(String name) {
+        if("amp".equals(name)) return '&';
+        if("lt".equals(name)) return '<';
+        if("gt".equals(name)) return '>';
+        if("quot".equals(name)) return '"';
+        if("apos".equals(name)) return '\'';
+        return 0;
+    }
+
+    /** Return text and system id (base for relative references) of external entity. */
+    private String[] readEntity(String publicId, String systemId) throws SAXException, IOException {
+        InputSource source = resolver.resolveEntity(publicId, systemId);
+        if(source == null) source = new InputSource(systemId);
+        final String resolvedSystemId = source.getSystemId() != null ? source.getSystemId() : systemId;
+        return new String[] { readText(source), resolvedSystemId };
+    }
+
+    /** Resolve relative system id against base (URL or file name). */
+    static String absolute(String systemId, String base) {
+        if(systemId == null || base == null) return systemId;
+        try {
+            new URL(systemId);
+            return systemId;
+        } catch(MalformedURLException ex) {
+        }
+        try {
+            return new URL(new URL(base), systemId).toString();
+        } catch(MalformedURLException ex) {
+        }
+        if(new File(systemId).isAbsolute()) return systemId;
+        final File parent = new File(base).getParentFile();
+        return parent != null ? new File(parent, systemId).getPath() : systemId;
+    }
+
+    /**
+     * Read whole content of input source: from character stream, from byte stream
+     * or from system id (bytes are decoded with given encoding or with encoding
+     * detected from byte order mark or text declaration, default is UTF-8).
+     */
+    static String readText(InputSource source) throws IOException {
+        final Reader reader = source.getCharacterStream();
+        if(reader != null) {
+            try {
+                final StringBuffer buf = new StringBuffer();
+                final char[] chars = new char[4096];
+                int n;
+                while((n = reader.read(chars)) > 0) buf.append(chars, 0, n);
+                return buf.toString();
+            } finally {
+                reader.close();
+            }
+        }
+        InputStream stream = source.getByteStream();
+        if(stream == null) {
+            if(source.getSystemId() == null) throw new IOException("entity without system id");
+            stream = Driver.openSystemId(source.getSystemId());
+        }
+        final byte[] bytes;
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] chunk = new byte[4096];
+            int n;
+            while((n = stream.read(chunk)) > 0) out.write(chunk, 0, n);
+            bytes = out.toByteArray();
+        } finally {
+            stream.close();
+        }
+        String encoding = source.getEncoding();
+        if(encoding == null) encoding = detectEncoding(bytes);
+        String text = new String(bytes, encoding);
+        if(text.length() > 0 && text.charAt(0) == '\uFEFF') text = text.substring(1);
+        return text;
+    }
+
+    private static String detectEncoding(byte[] bytes) {
+        if(bytes.length >= 2) {
+            if((bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) return "UTF-16BE";
+            if((bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) return "UTF-16LE";
+        }
+        // encoding in text declaration (it is in ASCII)
+        final int length = Math.min(bytes.length, 200);
+        final StringBuffer decl = new StringBuffer(length);
+        for (int i = 0; i < length; i++) decl.append((char) (bytes[i] & 0x7F));
+        final String s = decl.toString();
+        final int start = s.indexOf("<?xml");
+        final int end = s.indexOf("?>");
+        if(start >= 0 && start <= 3 && end > start) {
+            final int e = s.indexOf("encoding", start);
+            if(e > 0 && e < end) {
+                final int q = e + s.substring(e).indexOf('=') + 1;
+                final String rest = s.substring(q, end).trim();
+                if(rest.length() > 1) {
+                    final char quote = rest.charAt(0);
+                    final int close = rest.indexOf(quote, 1);
+                    if(close > 0) return rest.substring(1, close);
+                }
+            }
+        }
+        return "UTF-8";
+    }
+
+    private static String stripTextDecl(String text) {
+        if(text.startsWith("<?xml")) {
+            final int end = text.indexOf("?>");
+            if(end > 0) return text.substring(end + 2);
+        }
+        return text;
+    }
+
+}
+
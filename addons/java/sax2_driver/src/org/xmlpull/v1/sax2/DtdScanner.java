@@ -0,0 +1,221 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.sax2;
+
+import java.util.Hashtable;
+
+/**
+ * Minimal scanner of DTD text that finds only what is needed to define entities:
+ * entity declarations and references to parameter entities (other markup declarations,
+ * comments and processing instructions are skipped). Conditional sections are included
+ * unless their keyword is (or is parameter entity with value) IGNORE.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+final class DtdScanner
+{
+    static final int END = 0;
+    static final int ENTITY_DECL = 1;
+    static final int PARAMETER_ENTITY_REF = 2;
+
+    private final String dtd;
+    private final Hashtable parameterValues;
+    private int pos;
+    private int openSections;
+
+    // declaration or reference that was scanned
+    boolean parameter;
+    boolean unparsed;
+    String name;
+    String value;
+    String publicId;
+    String systemId;
+
+    /**
+     * Create scanner for DTD text, parameterValues maps names of internal parameter
+     * entities to their values (it is used to evaluate conditional sections).
+     */
+    DtdScanner(String dtd, Hashtable parameterValues) {
+        this.dtd = dtd;
+        this.parameterValues = parameterValues;
+    }
+
+    /**
+     * Parse content of DOCTYPE declaration (text after &lt;!DOCTYPE) and return
+     * array with root element name, public id, system id and internal subset (or nulls).
+     */
+    static String[] parseDoctype(String docdecl) {
+        final DtdScanner s = new DtdScanner(docdecl, null);
+        final String[] doctype = new String[4];
+        s.skipWhitespace();
+        doctype[0] = s.readName();
+        s.skipWhitespace();
+        if(s.startsWith("PUBLIC")) {
+            s.pos += 6;
+            doctype[1] = s.readQuoted();
+            doctype[2] = s.readQuoted();
+        } else if(s.startsWith("SYSTEM")) {
+            s.pos += 6;
+            doctype[2] = s.readQuoted();
+        }
+        final int start = docdecl.indexOf('[', s.pos);
+        final int end = docdecl.lastIndexOf(']');
+        if(start >= 0 && end > start) doctype[3] = docdecl.substring(start + 1, end);
+        return doctype;
+    }
+
+    /** Move to next entity declaration or parameter entity reference. */
+    int next() {
+        final int length = dtd.length();
+        while(pos < length) {
+            final char ch = dtd.charAt(pos);
+            if(ch == '<') {
+                if(startsWith("<!--")) {
+                    skipPast("-->");
+                } else if(startsWith("<?")) {
+                    skipPast("?>");
+                } else if(startsWith("<!ENTITY")) {
+                    pos += 8;
+                    if(readEntityDecl()) return ENTITY_DECL;
+                } else if(startsWith("<![")) {
+                    pos += 3;
+                    readConditionalSection();
+                } else {
+                    skipDeclaration();
+                }
+            } else if(ch == '%') {
+                ++pos;
+                name = readName();
+                if(pos < length && dtd.charAt(pos) == ';') ++pos;
+                if(name.length() > 0) return PARAMETER_ENTITY_REF;
+            } else if(ch == ']' && openSections > 0 && startsWith("]]>")) {
+                pos += 3;
+                --openSections;
+            } else {
+                ++pos;
+            }
+        }
+        return END;
+    }
+
+    private boolean readEntityDecl() {
+        parameter = unparsed = false;
+        value = publicId = systemId = null;
+        skipWhitespace();
+        if(pos < dtd.length() && dtd.charAt(pos) == '%') {
+            parameter = true;
+            ++pos;
+            skipWhitespace();
+        }
+        name = readName();
+        skipWhitespace();
+        if(pos < dtd.length() && (dtd.charAt(pos) == '"' || dtd.charAt(pos) == '\'')) {
+            value = readQuoted();
+        } else if(startsWith("PUBLIC")) {
+            pos += 6;
+            publicId = readQuoted();
+            systemId = readQuoted();
+        } else if(startsWith("SYSTEM")) {
+            pos += 6;
+            systemId = readQuoted();
+        }
+        skipWhitespace();
+        if(startsWith("NDATA")) unparsed = true;
+        skipDeclaration();
+        return name.length() > 0 && (value != null || systemId != null);
+    }
+
+    private void readConditionalSection() {
+        skipWhitespace();
+        String keyword;
+        if(pos < dtd.length() && dtd.charAt(pos) == '%') {
+            ++pos;
+            final String ref = readName();
+            if(pos < dtd.length() && dtd.charAt(pos) == ';') ++pos;
+            final Object v = parameterValues != null ? parameterValues.get(ref) : null;
+            keyword = v instanceof String ? ((String) v).trim() : "INCLUDE";
+        } else {
+            keyword = readName();
+        }
+        skipWhitespace();
+        if(pos < dtd.length() && dtd.charAt(pos) == '[') ++pos;
+        if("IGNORE".equals(keyword)) {
+            // skip content including nested sections
+            int nesting = 1;
+            while(nesting > 0 && pos < dtd.length()) {
+                if(startsWith("<![")) {
+                    pos += 3;
+                    ++nesting;
+                } else if(startsWith("]]>")) {
+                    pos += 3;
+                    --nesting;
+                } else {
+                    ++pos;
+                }
+            }
+        } else {
+            ++openSections;
+        }
+    }
+
+    // skip to end of markup declaration (quoted strings may contain '>')
+    private void skipDeclaration() {
+        final int length = dtd.length();
+        char quote = 0;
+        while(pos < length) {
+            final char ch = dtd.charAt(pos++);
+            if(quote != 0) {
+                if(ch == quote) quote = 0;
+            } else if(ch == '"' || ch == '\'') {
+                quote = ch;
+            } else if(ch == '>') {
+                return;
+            }
+        }
+    }
+
+    private void skipPast(String end) {
+        final int i = dtd.indexOf(end, pos);
+        pos = i < 0 ? dtd.length() : i + end.length();
+    }
+
+    private boolean startsWith(String s) {
+        return dtd.startsWith(s, pos);
+    }
+
+    private void skipWhitespace() {
+        while(pos < dtd.length() && dtd.charAt(pos) <= ' ') ++pos;
+    }
+
+    private String readName() {
+        final int start = pos;
+        while(pos < dtd.length()) {
+            final char ch = dtd.charAt(pos);
+            if(ch <= ' ' || ch == ';' || ch == '>' || ch == '[' || ch == '"' || ch == '\''
+               || ch == '%')
+            {
+                break;
+            }
+            ++pos;
+        }
+        return dtd.substring(start, pos);
+    }
+
+    private String readQuoted() {
+        skipWhitespace();
+        if(pos >= dtd.length()) return null;
+        final char quote = dtd.charAt(pos);
+        if(quote != '"' && quote != '\'') return null;
+        final int end = dtd.indexOf(quote, pos + 1);
+        if(end < 0) {
+            pos = dtd.length();
+            return null;
+        }
+        final String s = dtd.substring(pos + 1, end);
+        pos = end + 1;
+        return s;
+    }
+
+}
+
@@ -0,0 +1,56 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.sax2;
+
+import java.io.IOException;
+import java.util.Hashtable;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Simple catalog that maps public ids and system ids of DTDs and entities
+ * to local copies (file names or URLs, for example resources in jar files).
+ * Public id is looked up first (as recommended by OASIS catalogs) and entities
+ * that are not in catalog are not resolved (null is returned).
+ *
+ * <p>Catalog can be changed only before it is used by many threads.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class EntityCatalog implements EntityResolver
+{
+    protected Hashtable publicIds = new Hashtable();
+    protected Hashtable systemIds = new Hashtable();
+
+    public void addPublicId(String publicId, String location) {
+        if(publicId == null || location == null) throw new IllegalArgumentException();
+        publicIds.put(publicId, location);
+    }
+
+    public void addSystemId(String systemId, String location) {
+        if(systemId == null || location == null) throw new IllegalArgumentException();
+        systemIds.put(systemId, location);
+    }
+
+    /** Return location of local copy of entity or null if entity is not in catalog. */
+    public String lookup(String publicId, String systemId) {
+        String location = publicId != null ? (String) publicIds.get(publicId) : null;
+        if(location == null && systemId != null) location = (String) systemIds.get(systemId);
+        return location;
+    }
+
+    public InputSource resolveEntity(String publicId, String systemId)
+        throws SAXException, IOException
+    {
+        final String location = lookup(publicId, systemId);
+        if(location == null) return null;
+        final InputSource source = new InputSource(location);
+        source.setPublicId(publicId);
+        source.setByteStream(Driver.openSystemId(location));
+        return source;
+    }
+
+}
+
@@ -12,6 +12,11 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserFactory;
 import org.xmlpull.v1.XmlSerializer;
 import org.xmlpull.v1.dom2_builder.TestDOM2XmlPullBuilder;
+import org.xmlpull.v1.parser_pool.TestKeyedXmlPullParserPool;
+import org.xmlpull.v1.parser_pool.TestObjectPool;
+import org.xmlpull.v1.parser_pool.TestSharedStore;
+import org.xmlpull.v1.sax2.TestBatchParser;
+import org.xmlpull.v1.sax2.TestDriver;
 import org.xmlpull.v1.tests.UtilTestCase;
 import org.xmlpull.v1.wrapper.TestXmlPullWrapper;
 
@@ -39,6 +44,11 @@ public class AllXmlPullAddonsTests extends TestRunner {
         
         suite.addTestSuite(TestDOM2XmlPullBuilder.class);
         suite.addTestSuite(TestXmlPullWrapper.class);
+        suite.addTestSuite(TestDriver.class);
+        suite.addTestSuite(TestBatchParser.class);
+        suite.addTestSuite(TestObjectPool.class);
+        suite.addTestSuite(TestSharedStore.class);
+        suite.addTestSuite(TestKeyedXmlPullParserPool.class);
         return suite;
     }
     
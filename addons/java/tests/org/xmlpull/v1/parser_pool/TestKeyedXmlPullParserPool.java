@@ -0,0 +1,143 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.parser_pool;
+
+import java.io.Reader;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.wrapper.classic.XmlPullParserDelegate;
+
+/**
+ * Test KeyedXmlPullParserPool: features and properties changed by user are set back
+ * when parser is returned, parser whose state can not be set back is discarded and
+ * returned parser is reset only once.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class TestKeyedXmlPullParserPool extends TestCase {
+    private final static String LOCATION =
+        "http://xmlpull.org/v1/doc/properties.html#location";
+    private final static String ENTITY_EXPANSION_LIMIT =
+        "http://xmlpull.org/v1/doc/properties.html#entity-expansion-limit";
+
+    private final static XmlPullParserConfiguration NS_AWARE = new XmlPullParserConfiguration(
+        new String[]{XmlPullParser.FEATURE_PROCESS_NAMESPACES});
+    private final static XmlPullParserConfiguration PLAIN =
+        new XmlPullParserConfiguration(new String[0]);
+
+    private XmlPullParserFactory factory;
+
+    public static void main (String[] args) {
+        junit.textui.TestRunner.run (new TestSuite(TestKeyedXmlPullParserPool.class));
+    }
+
+    public TestKeyedXmlPullParserPool(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws XmlPullParserException {
+        factory = XmlPullParserFactory.newInstance();
+    }
+
+    public void testFeaturesSetBack() throws Exception {
+        final KeyedXmlPullParserPool pool = new KeyedXmlPullParserPool(factory);
+        final XmlPullParser pp = pool.getPullParserFromPool(NS_AWARE);
+        pp.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        pool.returnPullParserToPool(NS_AWARE, pp);
+        assertSame(pp, pool.getPullParserFromPool(NS_AWARE));
+        assertTrue(pp.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+    }
+
+    public void testPropertiesSetBack() throws Exception {
+        final KeyedXmlPullParserPool pool = new KeyedXmlPullParserPool(factory);
+        final XmlPullParser pp = pool.getPullParserFromPool(PLAIN);
+        final Object limit = pp.getProperty(ENTITY_EXPANSION_LIMIT);
+        try {
+            pp.setProperty(LOCATION, "file:test.xml");
+            pp.setProperty(ENTITY_EXPANSION_LIMIT, new Integer(10));
+        } catch(XmlPullParserException ex) {
+            return; // properties not supported by this parser
+        }
+        pool.returnPullParserToPool(PLAIN, pp);
+        assertSame(pp, pool.getPullParserFromPool(PLAIN));
+        assertNull(pp.getProperty(LOCATION));
+        assertEquals(limit, pp.getProperty(ENTITY_EXPANSION_LIMIT));
+    }
+
+    public void testParserThatCanNotBeSetBackIsDiscarded() throws Exception {
+        final KeyedXmlPullParserPool pool = new StrictPool(factory);
+        final XmlPullParser pp = pool.getPullParserFromPool(PLAIN);
+        pool.returnPullParserToPool(PLAIN, pp);
+        assertSame("unchanged parser is kept", pp, pool.getPullParserFromPool(PLAIN));
+        // null location is rejected by this parser so it can not be set back
+        pp.setProperty(LOCATION, "file:test.xml");
+        pool.returnPullParserToPool(PLAIN, pp);
+        final PoolStatistics stats = pool.getPool(PLAIN).getStatistics();
+        assertEquals(1, stats.getDiscarded());
+        assertEquals(0, stats.getIdleSize());
+        assertNotSame(pp, pool.getPullParserFromPool(PLAIN));
+    }
+
+    public void testDiscardPullParser() throws Exception {
+        final KeyedXmlPullParserPool pool = new KeyedXmlPullParserPool(factory);
+        final XmlPullParser pp = pool.getPullParserFromPool(PLAIN);
+        pool.discardPullParser(PLAIN, pp);
+        final PoolStatistics stats = pool.getPool(PLAIN).getStatistics();
+        assertEquals(1, stats.getDiscarded());
+        assertNotSame(pp, pool.getPullParserFromPool(PLAIN));
+    }
+
+    public void testInputResetOnce() throws Exception {
+        final StrictPool pool = new StrictPool(factory);
+        final StrictParser pp = (StrictParser) pool.getPullParserFromPool(PLAIN);
+        pool.returnPullParserToPool(PLAIN, pp);
+        assertEquals(1, pp.resets);
+    }
+
+    /** Pool of parsers that reject null location. */
+    private static class StrictPool extends KeyedXmlPullParserPool {
+        StrictPool(XmlPullParserFactory factory) {
+            super(factory);
+        }
+
+        protected XmlPullParser newParser(XmlPullParserConfiguration config)
+            throws XmlPullParserException
+        {
+            final XmlPullParser pp = new StrictParser(factory.newPullParser());
+            config.configure(pp);
+            return pp;
+        }
+    }
+
+    /** Parser that rejects null location and counts input resets. */
+    private static class StrictParser extends XmlPullParserDelegate {
+        int resets;
+        Object location;
+
+        StrictParser(XmlPullParser pp) {
+            super(pp);
+        }
+
+        public void setInput(Reader in) throws XmlPullParserException {
+            if(in == null) ++resets;
+            super.setInput(in);
+        }
+
+        public void setProperty(String name, Object value) throws XmlPullParserException {
+            if(LOCATION.equals(name)) {
+                if(value == null) throw new XmlPullParserException("location can not be null");
+                location = value;
+            } else {
+                super.setProperty(name, value);
+            }
+        }
+
+        public Object getProperty(String name) {
+            return LOCATION.equals(name) ? location : super.getProperty(name);
+        }
+    }
+}
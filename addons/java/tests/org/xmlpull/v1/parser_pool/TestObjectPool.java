@@ -0,0 +1,272 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.parser_pool;
+
+import java.io.StringReader;
+import java.util.Hashtable;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Test ObjectPool with XmlPullParserPool: parsers borrowed and returned by many threads
+ * at the same time (with thread slots and in shared mode) must never be given to two threads
+ * and statistics must add up, borrowed objects are tracked by identity. Limits of pool
+ * (maximum pool size, uses, idle time and buffer size) are checked with and without shared mode.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class TestObjectPool extends TestCase {
+    private final static int THREADS = 8;
+    private final static int ITERATIONS = 2000;
+
+    private XmlPullParserFactory factory;
+
+    public static void main (String[] args) {
+        junit.textui.TestRunner.run (new TestSuite(TestObjectPool.class));
+    }
+
+    public TestObjectPool(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws XmlPullParserException {
+        factory = XmlPullParserFactory.newInstance();
+    }
+
+    public void testConcurrentBorrowAndReturn() throws Exception {
+        final XmlPullParserPool pool = new XmlPullParserPool(factory);
+        runConcurrently(pool);
+        final PoolStatistics stats = pool.getStatistics();
+        assertEquals(0, stats.getDiscarded());
+        assertEquals(stats.getCreated(), stats.getIdleSize());
+    }
+
+    public void testConcurrentBorrowAndReturnShared() throws Exception {
+        final XmlPullParserPool pool = new XmlPullParserPool(factory, true);
+        runConcurrently(pool);
+        final PoolStatistics stats = pool.getStatistics();
+        assertEquals(0, stats.getDiscarded());
+        assertEquals(stats.getCreated(), stats.getIdleSize());
+    }
+
+    public void testConcurrentMaxPoolSize() throws Exception {
+        final XmlPullParserPool pool = new XmlPullParserPool(factory);
+        pool.setMaxPoolSize(2);
+        runConcurrently(pool);
+        final PoolStatistics stats = pool.getStatistics();
+        assertTrue("too many idle parsers "+stats, stats.getIdleSize() <= 2);
+    }
+
+    public void testBorrowedObjectsComparedByIdentity() throws Exception {
+        for (int shared = 0; shared < 2; shared++) {
+            final EqualObjectPool pool = new EqualObjectPool(shared == 1);
+            pool.setMaxUses(1);
+            final Object a = pool.borrowObject();
+            final Object b = pool.borrowObject();
+            assertTrue(a != b);
+            assertEquals(a, b);
+            // both were used once so neither can be kept
+            pool.returnObject(a);
+            pool.returnObject(b);
+            final PoolStatistics stats = pool.getStatistics();
+            assertEquals("shared="+(shared == 1), 2, stats.getDiscarded());
+            assertEquals("shared="+(shared == 1), 0, stats.getIdleSize());
+        }
+    }
+
+    public void testMaxPoolSize() throws Exception {
+        for (int shared = 0; shared < 2; shared++) {
+            final SizedObjectPool pool = new SizedObjectPool(shared == 1);
+            pool.setMaxPoolSize(2);
+            final Object[] objects = new Object[4];
+            for (int i = 0; i < objects.length; i++) objects[i] = pool.borrowObject();
+            for (int i = 0; i < objects.length; i++) pool.returnObject(objects[i]);
+            PoolStatistics stats = pool.getStatistics();
+            assertEquals(2, stats.getIdleSize());
+            assertEquals(2, stats.getDiscarded());
+            // only kept objects are reused
+            for (int i = 0; i < 3; i++) objects[i] = pool.borrowObject();
+            stats = pool.getStatistics();
+            assertEquals(2, stats.getHits());
+            assertEquals(5, stats.getCreated());
+            // taking objects out of pool makes room for returned objects
+            for (int i = 0; i < 3; i++) pool.returnObject(objects[i]);
+            stats = pool.getStatistics();
+            assertEquals(2, stats.getIdleSize());
+            assertEquals(3, stats.getDiscarded());
+        }
+    }
+
+    public void testMaxUses() throws Exception {
+        for (int shared = 0; shared < 2; shared++) {
+            final SizedObjectPool pool = new SizedObjectPool(shared == 1);
+            pool.setMaxUses(3);
+            final Object first = pool.borrowObject();
+            pool.returnObject(first);
+            for (int i = 1; i < 3; i++) {
+                final Object o = pool.borrowObject();
+                assertSame(first, o);
+                pool.returnObject(o);
+            }
+            // object used three times was not kept
+            assertEquals(0, pool.getStatistics().getIdleSize());
+            assertEquals(1, pool.getStatistics().getDiscarded());
+            final Object o = pool.borrowObject();
+            assertNotSame(first, o);
+            pool.returnObject(o);
+            assertEquals(1, pool.getStatistics().getIdleSize());
+            // borrowed object that is discarded is forgotten
+            pool.discardObject(pool.borrowObject());
+            assertEquals(0, pool.getStatistics().getIdleSize());
+        }
+    }
+
+    public void testMaxIdleTime() throws Exception {
+        for (int shared = 0; shared < 2; shared++) {
+            final SizedObjectPool pool = new SizedObjectPool(shared == 1);
+            pool.setMaxIdleTime(200);
+            final Object a = pool.borrowObject();
+            final Object b = pool.borrowObject();
+            pool.returnObject(a);
+            pool.evictIdle();
+            assertEquals("object evicted before maximum idle time",
+                         1, pool.getStatistics().getIdleSize());
+            Thread.sleep(400);
+            // expired object is evicted when other object is returned
+            pool.returnObject(b);
+            PoolStatistics stats = pool.getStatistics();
+            assertEquals(1, stats.getIdleSize());
+            assertEquals(1, stats.getDiscarded());
+            assertSame(b, pool.borrowObject());
+            pool.returnObject(b);
+            Thread.sleep(400);
+            pool.evictIdle();
+            stats = pool.getStatistics();
+            assertEquals(0, stats.getIdleSize());
+            assertEquals(2, stats.getDiscarded());
+        }
+    }
+
+    public void testMaxBufferSize() throws Exception {
+        for (int shared = 0; shared < 2; shared++) {
+            final SizedObjectPool pool = new SizedObjectPool(shared == 1);
+            pool.setMaxBufferSize(100);
+            final SizedObject big = (SizedObject) pool.borrowObject();
+            final SizedObject small = (SizedObject) pool.borrowObject();
+            big.size = 101;
+            small.size = 100;
+            pool.returnObject(big);
+            pool.returnObject(small);
+            PoolStatistics stats = pool.getStatistics();
+            assertEquals(1, stats.getIdleSize());
+            assertEquals(1, stats.getDiscarded());
+            assertSame(small, pool.borrowObject());
+
+            // object above high water mark is trimmed and kept
+            pool.setBufferHighWaterMark(50);
+            small.size = 80;
+            pool.returnObject(small);
+            assertEquals(50, small.size);
+            assertEquals(1, pool.getStatistics().getIdleSize());
+        }
+    }
+
+    /**
+     * Borrow, use and return parsers from many threads and check statistics
+     * (every created parser is idle or discarded when all were returned).
+     */
+    private void runConcurrently(final XmlPullParserPool pool) throws Exception {
+        final Hashtable inUse = new Hashtable();
+        final Throwable[] failure = new Throwable[1];
+        final Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < ITERATIONS; j++) {
+                            final XmlPullParser pp = pool.getPullParserFromPool();
+                            synchronized(inUse) {
+                                assertNull("parser borrowed by two threads", inUse.put(pp, pp));
+                            }
+                            pp.setInput(new StringReader("<doc>"+j+"</doc>"));
+                            pp.nextTag();
+                            assertEquals(""+j, pp.nextText());
+                            synchronized(inUse) {
+                                inUse.remove(pp);
+                            }
+                            pool.returnPullParserToPool(pp);
+                        }
+                    } catch(Throwable ex) {
+                        synchronized(failure) {
+                            if(failure[0] == null) failure[0] = ex;
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < THREADS; i++) threads[i].join();
+        if(failure[0] instanceof Error) throw (Error) failure[0];
+        if(failure[0] != null) throw (Exception) failure[0];
+        final PoolStatistics stats = pool.getStatistics();
+        final long borrows = THREADS * ITERATIONS;
+        assertEquals(stats.toString(), borrows, stats.getHits() + stats.getMisses());
+        assertEquals(stats.toString(), stats.getMisses(), stats.getCreated());
+        assertEquals(stats.toString(), borrows, stats.getReturned());
+        assertEquals(stats.toString(), 0, stats.getBorrowed());
+        assertEquals(stats.toString(),
+                     stats.getCreated(), stats.getIdleSize() + stats.getDiscarded());
+    }
+
+    /** Object that reports size of its buffers. */
+    private static class SizedObject {
+        int size;
+    }
+
+    private static class SizedObjectPool extends ObjectPool {
+        SizedObjectPool(boolean sharedMode) {
+            super(sharedMode);
+        }
+
+        protected Object newObject() {
+            return new SizedObject();
+        }
+
+        protected int sizeOf(Object o) {
+            return ((SizedObject) o).size;
+        }
+
+        protected void trim(Object o, int maxSize) {
+            ((SizedObject) o).size = maxSize;
+        }
+    }
+
+    /** Object that is equal to any other such object. */
+    private static class EqualObject {
+        public boolean equals(Object o) {
+            return o instanceof EqualObject;
+        }
+
+        public int hashCode() {
+            return 1;
+        }
+    }
+
+    private static class EqualObjectPool extends ObjectPool {
+        EqualObjectPool(boolean sharedMode) {
+            super(sharedMode);
+        }
+
+        protected Object newObject() {
+            return new EqualObject();
+        }
+
+        protected int sizeOf(Object o) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.parser_pool;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Test ObjectPool in shared mode: total number of objects is bounded, thread waiting
+ * for object is woken up when object is returned or discarded, gives up after maximum
+ * wait time or when interrupted (and keeps its interrupted status).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class TestSharedStore extends TestCase {
+    private final static long TIMEOUT = 10000;
+
+    private CountingPool pool;
+
+    public static void main (String[] args) {
+        junit.textui.TestRunner.run (new TestSuite(TestSharedStore.class));
+    }
+
+    public TestSharedStore(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        pool = new CountingPool();
+    }
+
+    public void testMaxTotalRequiresSharedMode() throws XmlPullParserException {
+        try {
+            new XmlPullParserPool().setMaxTotal(1);
+            fail("maximum total size can be set only in shared mode");
+        } catch(IllegalStateException ex) {
+        }
+    }
+
+    public void testMaxWaitTime() throws Exception {
+        pool.setMaxTotal(2);
+        pool.setMaxWaitTime(100);
+        final Object a = pool.borrowObject();
+        pool.borrowObject();
+        final long start = System.currentTimeMillis();
+        try {
+            pool.borrowObject();
+            fail("no object can be created when maximum total size was reached");
+        } catch(XmlPullParserException ex) {
+        }
+        final long waited = System.currentTimeMillis() - start;
+        assertTrue("gave up after "+waited+" ms", waited >= 100 && waited < TIMEOUT);
+        assertEquals(2, pool.created);
+        // returned object is given to next thread
+        pool.returnObject(a);
+        assertSame(a, pool.borrowObject());
+        assertEquals(2, pool.getStatistics().getCreated());
+    }
+
+    public void testWaiterWokenUpWhenObjectReturned() throws Exception {
+        pool.setMaxTotal(1);
+        final Object a = pool.borrowObject();
+        final Borrower borrower = new Borrower();
+        borrower.start();
+        borrower.awaitWaiting();
+        final long start = System.currentTimeMillis();
+        pool.returnObject(a);
+        borrower.join(TIMEOUT);
+        assertTrue("waiting thread was not woken up", !borrower.isAlive());
+        assertTrue(System.currentTimeMillis() - start < TIMEOUT);
+        assertNull(borrower.failure);
+        assertSame(a, borrower.borrowed);
+        assertEquals(1, pool.created);
+    }
+
+    public void testWaiterWokenUpWhenObjectDiscarded() throws Exception {
+        pool.setMaxTotal(1);
+        final Object a = pool.borrowObject();
+        final Borrower borrower = new Borrower();
+        borrower.start();
+        borrower.awaitWaiting();
+        // waiting thread can create new object
+        pool.discardObject(a);
+        borrower.join(TIMEOUT);
+        assertTrue("waiting thread was not woken up", !borrower.isAlive());
+        assertNull(borrower.failure);
+        assertNotNull(borrower.borrowed);
+        assertNotSame(a, borrower.borrowed);
+        assertEquals(2, pool.created);
+    }
+
+    public void testInterruptedWaiter() throws Exception {
+        pool.setMaxTotal(1);
+        final Object a = pool.borrowObject();
+        final Borrower borrower = new Borrower();
+        borrower.start();
+        borrower.awaitWaiting();
+        borrower.interrupt();
+        borrower.join(TIMEOUT);
+        assertTrue("interrupted thread is still waiting", !borrower.isAlive());
+        assertTrue(borrower.failure instanceof XmlPullParserException);
+        assertTrue("interrupted status was cleared", borrower.interruptedAfterFailure);
+        assertNull(borrower.borrowed);
+        // pool still works after waiter left
+        pool.returnObject(a);
+        assertSame(a, pool.borrowObject());
+    }
+
+    public void testConcurrentMaxTotalAndPoolSize() throws Exception {
+        pool.setMaxTotal(3);
+        pool.setMaxPoolSize(2);
+        final int[] borrowed = new int[1];
+        final Throwable[] failure = new Throwable[1];
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 2000; j++) {
+                            final Object o = pool.borrowObject();
+                            synchronized(borrowed) {
+                                assertTrue("too many objects borrowed", ++borrowed[0] <= 3);
+                            }
+                            synchronized(borrowed) {
+                                --borrowed[0];
+                            }
+                            pool.returnObject(o);
+                        }
+                    } catch(Throwable ex) {
+                        synchronized(failure) {
+                            if(failure[0] == null) failure[0] = ex;
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) threads[i].join();
+        if(failure[0] instanceof Error) throw (Error) failure[0];
+        if(failure[0] != null) throw (Exception) failure[0];
+        final PoolStatistics stats = pool.getStatistics();
+        assertTrue("too many idle objects "+stats, stats.getIdleSize() <= 2);
+        assertEquals(stats.toString(),
+                     stats.getCreated(), stats.getIdleSize() + stats.getDiscarded());
+    }
+
+    /** Pool in shared mode that counts created objects. */
+    private static class CountingPool extends ObjectPool {
+        int created;
+
+        CountingPool() {
+            super(true);
+        }
+
+        protected synchronized Object newObject() {
+            ++created;
+            return new Object();
+        }
+
+        protected int sizeOf(Object o) {
+            return -1;
+        }
+    }
+
+    /** Thread that borrows one object from pool. */
+    private class Borrower extends Thread {
+        volatile Object borrowed;
+        volatile Throwable failure;
+        volatile boolean interruptedAfterFailure;
+
+        public void run() {
+            try {
+                borrowed = pool.borrowObject();
+            } catch(Throwable ex) {
+                failure = ex;
+                interruptedAfterFailure = isInterrupted();
+            }
+        }
+
+        /** Wait until thread is parked in pool. */
+        void awaitWaiting() throws InterruptedException {
+            final long end = System.currentTimeMillis() + TIMEOUT;
+            while(getState() != Thread.State.TIMED_WAITING && getState() != Thread.State.WAITING) {
+                assertTrue("thread did not start waiting", System.currentTimeMillis() < end);
+                Thread.sleep(1);
+            }
+            Thread.sleep(50); // thread may be parked and checking pool again
+            assertTrue(isAlive());
+            assertNull(borrowed);
+        }
+    }
+}
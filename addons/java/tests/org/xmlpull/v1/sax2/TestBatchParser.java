@@ -0,0 +1,231 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.sax2;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.parser_pool.PoolStatistics;
+import org.xmlpull.v1.wrapper.classic.XmlPullParserDelegate;
+
+/**
+ * Test BatchParser: documents are taken from iterator in order and every one is parsed once,
+ * failed documents are counted and do not stop the batch, RuntimeException from BatchHandler
+ * or iterator stops it, drivers are reused and driver that can not be reset is discarded.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class TestBatchParser extends TestCase {
+    private DriverPool pool;
+
+    public static void main (String[] args) {
+        junit.textui.TestRunner.run (new TestSuite(TestBatchParser.class));
+    }
+
+    public TestBatchParser(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws XmlPullParserException {
+        pool = new DriverPool();
+    }
+
+    public void testDocumentsParsedInOrder() throws Exception {
+        final Vector sources = documents(20);
+        final RecordingHandler handler = new RecordingHandler();
+        final BatchStatistics stats = new BatchParser(pool, null, 1).parse(sources, handler);
+        assertEquals(20, stats.getDocuments());
+        assertEquals(0, stats.getFailed());
+        // single worker takes documents in order of iterator
+        assertEquals(sources, handler.parsed);
+    }
+
+    public void testEveryDocumentParsedOnce() throws Exception {
+        final Vector sources = documents(200);
+        final RecordingHandler handler = new RecordingHandler();
+        final BatchStatistics stats = new BatchParser(pool, null, 4).parse(sources, handler);
+        assertEquals(200, stats.getDocuments());
+        assertEquals(200, handler.parsed.size());
+        for (int i = 0; i < sources.size(); i++) {
+            assertTrue("not parsed "+i, handler.parsed.contains(sources.elementAt(i)));
+        }
+    }
+
+    public void testFailedDocumentsCounted() throws Exception {
+        final Vector sources = documents(10);
+        sources.insertElementAt(new InputSource(new StringReader("<doc><bad></doc>")), 3);
+        sources.addElement(new InputSource(new StringReader("not xml")));
+        final RecordingHandler handler = new RecordingHandler();
+        // handler of document may fail too (it is not BatchHandler)
+        handler.failingDocument = 5;
+        final BatchStatistics stats = new BatchParser(pool, null, 1).parse(sources, handler);
+        assertEquals(12, stats.getDocuments());
+        assertEquals(3, stats.getFailed());
+        assertEquals(12, handler.parsed.size());
+        assertEquals(3, handler.errors.size());
+    }
+
+    public void testContentHandlerNotAvailable() throws Exception {
+        final Vector sources = documents(5);
+        final RecordingHandler handler = new RecordingHandler() {
+                public ContentHandler getContentHandler(InputSource source) throws SAXException {
+                    if(source == sources.elementAt(2)) throw new SAXException("no handler");
+                    return super.getContentHandler(source);
+                }
+            };
+        final BatchStatistics stats = new BatchParser(pool, null, 1).parse(sources, handler);
+        assertEquals(5, stats.getDocuments());
+        assertEquals(1, stats.getFailed());
+        assertEquals(sources, handler.parsed);
+    }
+
+    public void testBatchStoppedWhenHandlerFails() throws Exception {
+        final Vector sources = documents(50);
+        final RecordingHandler handler = new RecordingHandler() {
+                public void documentParsed(InputSource source, ContentHandler h, Exception error) {
+                    super.documentParsed(source, h, error);
+                    if(parsed.size() == 3) throw new IllegalStateException("handler failed");
+                }
+            };
+        try {
+            new BatchParser(pool, null, 1).parse(sources, handler);
+            fail("handler failure must stop batch");
+        } catch(IllegalStateException ex) {
+            assertEquals("handler failed", ex.getMessage());
+        }
+        assertEquals(3, handler.parsed.size());
+
+        final RecordingHandler noHandler = new RecordingHandler() {
+                public ContentHandler getContentHandler(InputSource source) throws SAXException {
+                    if(parsed.size() == 2) throw new IllegalStateException("no handler");
+                    return super.getContentHandler(source);
+                }
+            };
+        try {
+            new BatchParser(pool, null, 1).parse(sources, noHandler);
+            fail("RuntimeException from getContentHandler() must stop batch");
+        } catch(IllegalStateException ex) {
+            assertEquals("no handler", ex.getMessage());
+        }
+        assertEquals(2, noHandler.parsed.size());
+        assertEquals(0, pool.getStatistics().getBorrowed());
+    }
+
+    public void testBatchStoppedWhenIteratorFails() throws Exception {
+        final Iterator sources = new Iterator() {
+                int n;
+                public boolean hasNext() { return true; }
+                public Object next() {
+                    if(++n > 4) throw new IllegalStateException("iterator failed");
+                    return new InputSource(new StringReader("<doc/>"));
+                }
+                public void remove() { throw new UnsupportedOperationException(); }
+            };
+        final RecordingHandler handler = new RecordingHandler();
+        try {
+            new BatchParser(pool, null, 2).parse(sources, handler);
+            fail("iterator failure must stop batch");
+        } catch(IllegalStateException ex) {
+        }
+        assertEquals(4, handler.parsed.size());
+    }
+
+    public void testDriversReused() throws Exception {
+        // drivers are kept in slots of executor threads
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertDriversReused(pool, new BatchParser(pool, executor, 2));
+        } finally {
+            executor.shutdown();
+        }
+        // new thread for every worker needs pool in shared mode
+        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        final DriverPool shared = new DriverPool(factory, true);
+        assertDriversReused(shared, new BatchParser(shared, null, 2));
+    }
+
+    private static void assertDriversReused(DriverPool pool, BatchParser parser) throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(20, parser.parse(documents(20), new RecordingHandler()).getDocuments());
+        }
+        final PoolStatistics stats = pool.getStatistics();
+        assertTrue("too many drivers created "+stats, stats.getCreated() <= 2);
+        assertEquals(0, stats.getBorrowed());
+        assertEquals(0, stats.getDiscarded());
+    }
+
+    public void testDriverThatCanNotBeResetDiscarded() throws Exception {
+        final int[] created = new int[1];
+        final DriverPool brokenPool = new DriverPool() {
+                protected Driver newDriver() throws XmlPullParserException {
+                    // first driver can not be reset
+                    final boolean broken = created[0]++ == 0;
+                    return new Driver(new XmlPullParserDelegate(factory.newPullParser()) {
+                            public void setInput(Reader in) throws XmlPullParserException {
+                                if(in == null && broken) {
+                                    throw new XmlPullParserException("can not reset");
+                                }
+                                super.setInput(in);
+                            }
+                        });
+                }
+            };
+        final Vector sources = documents(5);
+        final RecordingHandler handler = new RecordingHandler();
+        final BatchStatistics stats = new BatchParser(brokenPool, null, 1).parse(sources, handler);
+        assertEquals(5, stats.getDocuments());
+        assertEquals(0, stats.getFailed());
+        assertEquals(sources, handler.parsed);
+        final PoolStatistics poolStats = brokenPool.getStatistics();
+        assertEquals(2, poolStats.getCreated());
+        assertEquals(1, poolStats.getDiscarded());
+        assertEquals(1, poolStats.getIdleSize());
+    }
+
+    private static Vector documents(int count) {
+        final Vector sources = new Vector();
+        for (int i = 0; i < count; i++) {
+            sources.addElement(new InputSource(new StringReader("<doc n='"+i+"'/>")));
+        }
+        return sources;
+    }
+
+    /** Records parsed documents and errors, handler of one document may fail. */
+    private static class RecordingHandler implements BatchHandler {
+        final Vector parsed = new Vector();
+        final Vector errors = new Vector();
+        int failingDocument = -1;
+
+        public ContentHandler getContentHandler(InputSource source) throws SAXException {
+            return new DefaultHandler() {
+                    public void startDocument() {
+                        synchronized(parsed) {
+                            if(parsed.size() == failingDocument) {
+                                throw new IllegalStateException("content handler failed");
+                            }
+                        }
+                    }
+                };
+        }
+
+        public void documentParsed(InputSource source, ContentHandler handler, Exception error) {
+            synchronized(parsed) {
+                parsed.addElement(source);
+                if(error != null) errors.addElement(error);
+            }
+        }
+    }
+}
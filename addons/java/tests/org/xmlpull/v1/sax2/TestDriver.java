@@ -0,0 +1,630 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.sax2;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.Vector;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.parser_pool.PoolStatistics;
+import org.xmlpull.v1.wrapper.classic.XmlPullParserDelegate;
+
+/**
+ * Test SAX2 Driver: attributes of start tags, coalescing of characters, reset of driver
+ * and entities declared in internal DTD subset.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class TestDriver extends TestCase {
+    private final static String TEST_PROPERTY = "http://xmlpull.org/v1/tests/properties#test";
+    private final static String ENTITY_EXPANSION_LIMIT_PROPERTY =
+        "http://xmlpull.org/v1/doc/properties.html#entity-expansion-limit";
+
+    public static void main (String[] args) {
+        junit.textui.TestRunner.run (new TestSuite(TestDriver.class));
+    }
+
+    public TestDriver(String name) {
+        super(name);
+    }
+
+    public void testPrefixedAttributes() throws Exception {
+        final AttributesChecker checker = new AttributesChecker();
+        checker.expect(new String[][] {
+                           {"urn:p", "a", "p:a", "1"},
+                           {"urn:q", "a", "q:a", "2"},
+                           {"", "a", "a", "3"},
+                           {"urn:p", "b", "p:b", "4"},
+                       });
+        parse(checker, "<r xmlns:p='urn:p'><e xmlns:q='urn:q' p:a='1' q:a='2' a='3' p:b='4'/></r>");
+        checker.assertAllChecked();
+    }
+
+    public void testFewAndManyAttributes() throws Exception {
+        // below and above number of attributes when driver builds hash tables
+        final int[] counts = { 1, 7, 8, 9, 40 };
+        final AttributesChecker checker = new AttributesChecker();
+        final StringBuffer doc = new StringBuffer("<r xmlns:p='urn:p'>");
+        for (int i = 0; i < counts.length; i++) {
+            doc.append(element(checker, "e", counts[i]));
+        }
+        doc.append("</r>");
+        parse(checker, doc.toString());
+        checker.assertAllChecked();
+    }
+
+    public void testAttributesOfNextStartTag() throws Exception {
+        // storage of attributes (and hash tables) are reused: names of previous start tag
+        // must not be found and attributes with the same names must have new indexes
+        final AttributesChecker checker = new AttributesChecker();
+        final StringBuffer doc = new StringBuffer("<r xmlns:p='urn:p'>");
+        doc.append(element(checker, "e", 20));
+        checker.expect(new String[][] {
+                           {"urn:p", "a19", "p:a19", "x"},
+                           {"", "a0", "a0", "y"},
+                       });
+        doc.append("<f p:a19='x' a0='y'/>");
+        checker.expect(new String[0][]);
+        doc.append("<g/>");
+        doc.append(element(checker, "h", 9));
+        doc.append(element(checker, "i", 3));
+        doc.append("</r>");
+        parse(checker, doc.toString());
+        checker.assertAllChecked();
+    }
+
+    public void testAttributesNotFound() throws Exception {
+        final int[] counts = { 2, 12 };
+        for (int n = 0; n < counts.length; n++) {
+            final int count = counts[n];
+            final boolean[] checked = new boolean[1];
+            final DefaultHandler handler = new DefaultHandler() {
+                public void startElement(String uri, String localName, String qName, Attributes atts) {
+                    if(!"e".equals(localName)) return;
+                    assertEquals(count, atts.getLength());
+                    final int[] outOfRange = { -1, count, count + 1, Integer.MAX_VALUE };
+                    for (int i = 0; i < outOfRange.length; i++) {
+                        final int index = outOfRange[i];
+                        assertNull(atts.getURI(index));
+                        assertNull(atts.getLocalName(index));
+                        assertNull(atts.getQName(index));
+                        assertNull(atts.getType(index));
+                        assertNull(atts.getValue(index));
+                    }
+                    assertEquals(-1, atts.getIndex("missing"));
+                    assertEquals(-1, atts.getIndex("p:missing"));
+                    assertEquals(-1, atts.getIndex("q:a0")); // unknown prefix
+                    assertEquals(-1, atts.getIndex("urn:p", "missing"));
+                    assertEquals(-1, atts.getIndex("urn:other", "a0"));
+                    assertEquals(-1, atts.getIndex("a1")); // it is p:a1
+                    assertEquals(-1, atts.getIndex("", "a1"));
+                    assertEquals(-1, atts.getIndex(null));
+                    assertEquals(-1, atts.getIndex(null, "a0"));
+                    assertEquals(-1, atts.getIndex("", null));
+                    assertNull(atts.getValue("missing"));
+                    assertNull(atts.getValue("urn:p", "missing"));
+                    assertNull(atts.getType("missing"));
+                    assertNull(atts.getType("urn:p", "missing"));
+                    checked[0] = true;
+                }
+            };
+            final AttributesChecker ignored = new AttributesChecker();
+            parse(handler, "<r xmlns:p='urn:p'>"+element(ignored, "e", count)+"</r>");
+            assertTrue(checked[0]);
+        }
+    }
+
+    public void testCoalescedCharacters() throws Exception {
+        final String doc = "<r>abcdefgh<a>ij&amp;klmnop</a>qrstuvwxyz<b/>tail text<!-- c -->more</r>";
+        final Driver driver = new Driver(new SplittingParser(newParser(), 3));
+        final EventRecorder recorder = new EventRecorder();
+        driver.setContentHandler(recorder);
+        driver.parse(new InputSource(new StringReader(doc)));
+        // parser really splits text
+        assertTrue(recorder.events.toString(), recorder.charactersCalls > 8);
+
+        recorder.events.setLength(0);
+        recorder.charactersCalls = 0;
+        driver.setFeature(Driver.COALESCE_CHARACTERS_FEATURE, true);
+        assertTrue(driver.getFeature(Driver.COALESCE_CHARACTERS_FEATURE));
+        driver.parse(new InputSource(new StringReader(doc)));
+        assertEquals("<r>[abcdefgh]<a>[ij&klmnop]</a>[qrstuvwxyz]<b></b>[tail textmore]</r>",
+                     recorder.events.toString());
+        assertEquals(4, recorder.charactersCalls);
+    }
+
+    public void testCoalescedCharactersOfSubTree() throws Exception {
+        final XmlPullParser pp = new SplittingParser(newParser(), 2);
+        pp.setInput(new StringReader("<r>before<s>one <t>two</t> three four</s>after</r>"));
+        pp.nextTag();
+        while(pp.next() != XmlPullParser.START_TAG) {
+            // skip text before subtree
+        }
+        pp.require(XmlPullParser.START_TAG, null, "s");
+        final Driver driver = new Driver(newParser());
+        driver.setFeature(Driver.COALESCE_CHARACTERS_FEATURE, true);
+        final EventRecorder recorder = new EventRecorder();
+        driver.setContentHandler(recorder);
+        driver.parseSubTree(pp);
+        assertEquals("<s>[one ]<t>[two]</t>[ three four]</s>", recorder.events.toString());
+        assertEquals(3, recorder.charactersCalls);
+        // parser is left on event after subtree and its text is not reported
+        assertEquals(XmlPullParser.TEXT, pp.getEventType());
+        assertEquals(1, pp.getDepth());
+    }
+
+    public void testResetShrinksCharactersBuffer() throws Exception {
+        final Driver driver = new Driver(newParser());
+        final EventRecorder recorder = new EventRecorder();
+        final StringBuffer big = new StringBuffer("<r>");
+        for (int i = 0; i < 100 * 1024; i++) big.append((char) ('a' + i % 26));
+        big.append("<x/></r>");
+        final StringBuffer medium = new StringBuffer("<r>");
+        for (int i = 0; i < 10 * 1024; i++) medium.append('m');
+        medium.append("<x/></r>");
+
+        // buffer that is not too big is kept
+        parseCoalesced(driver, recorder, medium.toString());
+        final char[] mediumBuf = recorder.lastCharacters;
+        assertTrue(mediumBuf.length >= 10 * 1024);
+        driver.reset();
+        parseCoalesced(driver, recorder, "<r>small<x/></r>");
+        assertSame(mediumBuf, recorder.lastCharacters);
+
+        // big buffer is not kept after reset
+        parseCoalesced(driver, recorder, big.toString());
+        assertEquals(100 * 1024, recorder.lastLength);
+        assertTrue(recorder.lastCharacters.length >= 100 * 1024);
+        driver.reset();
+        parseCoalesced(driver, recorder, "<r>small<x/></r>");
+        assertEquals("small", new String(recorder.lastCharacters, 0, recorder.lastLength));
+        assertTrue("buffer of "+recorder.lastCharacters.length+" characters kept after reset",
+                   recorder.lastCharacters.length < 64 * 1024);
+    }
+
+    public void testResetRestoresFeatures() throws Exception {
+        final Driver driver = new Driver(newParser());
+        driver.setFeature(Driver.NAMESPACES_FEATURE, false);
+        driver.setFeature(Driver.NAMESPACE_PREFIXES_FEATURE, true);
+        driver.setFeature(Driver.COALESCE_CHARACTERS_FEATURE, true);
+        final EventRecorder recorder = new EventRecorder();
+        driver.setContentHandler(recorder);
+        driver.parse(new InputSource(new StringReader("<p:r xmlns:p='urn:p'>a<p:x/>b</p:r>")));
+        assertEquals("<p:r>[a]<p:x></p:x>[b]</p:r>", recorder.events.toString());
+        driver.reset();
+        assertTrue(driver.getFeature(Driver.NAMESPACES_FEATURE));
+        assertTrue(!driver.getFeature(Driver.NAMESPACE_PREFIXES_FEATURE));
+        assertTrue(!driver.getFeature(Driver.COALESCE_CHARACTERS_FEATURE));
+
+        // next borrower gets events of namespace aware parser
+        final StringBuffer uris = new StringBuffer();
+        driver.setContentHandler(new DefaultHandler() {
+                public void startElement(String uri, String localName, String qName,
+                                         Attributes atts) {
+                    uris.append('{').append(uri).append('}').append(localName);
+                    uris.append(' ').append(atts.getLength());
+                }
+            });
+        driver.parse(new InputSource(new StringReader("<p:r xmlns:p='urn:p'/>")));
+        assertEquals("{urn:p}r 0", uris.toString());
+    }
+
+    public void testParseSubTreeKeepsDriverParser() throws Exception {
+        final XmlPullParser other = newParser();
+        other.setInput(new StringReader("<r><s>text</s>after</r>"));
+        other.nextTag();
+        other.nextTag();
+        final Driver driver = new Driver(newParser());
+        final EventRecorder recorder = new EventRecorder();
+        driver.setContentHandler(recorder);
+        driver.parseSubTree(other);
+        assertEquals("<s>[text]</s>", recorder.events.toString());
+
+        // parser given to parseSubTree() is not used to parse document of driver
+        driver.reset();
+        recorder.events.setLength(0);
+        driver.setContentHandler(recorder);
+        driver.parse(new InputSource(new StringReader("<d>doc</d>")));
+        assertEquals("<d>[doc]</d>", recorder.events.toString());
+        assertEquals(XmlPullParser.TEXT, other.getEventType());
+        assertEquals("after", other.getText());
+        assertEquals(XmlPullParser.END_TAG, other.next());
+    }
+
+    public void testInternalSubsetIgnoredByDefault() throws Exception {
+        final String doc = "<!DOCTYPE r [<!ENTITY e 'declared'>]><r>&e;</r>";
+        final Driver driver = new Driver(newParser());
+        assertTrue(!driver.getFeature(Driver.EXPAND_INTERNAL_SUBSET_FEATURE));
+        try {
+            parse(new EventRecorder(), doc);
+            fail("entity declared in internal subset must not be defined by default");
+        } catch(SAXException ex) {
+        }
+
+        driver.setFeature(Driver.EXPAND_INTERNAL_SUBSET_FEATURE, true);
+        final EventRecorder recorder = new EventRecorder();
+        driver.setContentHandler(recorder);
+        driver.parse(new InputSource(new StringReader(doc)));
+        assertEquals("<r>[declared]</r>", recorder.events.toString());
+        driver.reset();
+        assertTrue(!driver.getFeature(Driver.EXPAND_INTERNAL_SUBSET_FEATURE));
+    }
+
+    public void testBillionLaughs() throws Exception {
+        final StringBuffer doc = new StringBuffer("<!DOCTYPE r [<!ENTITY l0 'lol'>");
+        for (int i = 1; i <= 5; i++) {
+            doc.append("<!ENTITY l").append(i).append(" '");
+            for (int j = 0; j < 10; j++) doc.append("&l").append(i - 1).append(';');
+            doc.append("'>");
+        }
+        doc.append("]><r>");
+        for (int i = 0; i < 1000; i++) doc.append("&l5;"); // 300M characters
+        doc.append("</r>");
+        final Driver driver = new Driver(newParser());
+        driver.setFeature(Driver.EXPAND_INTERNAL_SUBSET_FEATURE, true);
+        final EventRecorder recorder = new EventRecorder();
+        driver.setContentHandler(recorder);
+        try {
+            driver.parse(new InputSource(new StringReader(doc.toString())));
+            fail("expansion of entities must be limited");
+        } catch(SAXException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("entities replaced with more than") >= 0);
+        }
+        assertEquals(0, recorder.charactersCalls);
+
+        // limit set in parser is used
+        final String small = "<!DOCTYPE r [<!ENTITY e 'four'>]><r>&e;&e;&e;</r>";
+        driver.reset();
+        driver.setFeature(Driver.EXPAND_INTERNAL_SUBSET_FEATURE, true);
+        driver.setProperty(ENTITY_EXPANSION_LIMIT_PROPERTY, new Integer(8));
+        try {
+            driver.parse(new InputSource(new StringReader(small)));
+            fail("expected limit of 8 characters");
+        } catch(SAXException ex) {
+        }
+        driver.reset();
+        driver.setFeature(Driver.EXPAND_INTERNAL_SUBSET_FEATURE, true);
+        driver.setProperty(ENTITY_EXPANSION_LIMIT_PROPERTY, new Integer(12));
+        recorder.events.setLength(0);
+        driver.setContentHandler(recorder);
+        driver.parse(new InputSource(new StringReader(small)));
+        assertEquals("<r>[fourfourfour]</r>", recorder.events.toString());
+        // limit set by borrower of driver is set back by reset()
+        driver.reset();
+        assertEquals(new Integer(-1), driver.getProperty(ENTITY_EXPANSION_LIMIT_PROPERTY));
+    }
+
+    public void testResetRestoresLimitSetForDoctype() throws Exception {
+        final Driver driver = new Driver(newParser());
+        final Object initial = driver.getProperty(ENTITY_EXPANSION_LIMIT_PROPERTY);
+        driver.setFeature(Driver.EXPAND_INTERNAL_SUBSET_FEATURE, true);
+        driver.parse(new InputSource(new StringReader(
+                                         "<!DOCTYPE r [<!ENTITY e 'declared'>]><r>&e;</r>")));
+        assertEquals(new Integer(1024 * 1024), driver.getProperty(ENTITY_EXPANSION_LIMIT_PROPERTY));
+        driver.reset();
+        assertEquals(initial, driver.getProperty(ENTITY_EXPANSION_LIMIT_PROPERTY));
+    }
+
+    public void testResetDoesNotSetNullProperty() throws Exception {
+        final Driver driver = new Driver(newNullRejectingParser());
+        // property without value that was not changed does not prevent reset
+        driver.reset();
+        driver.setProperty(TEST_PROPERTY, "file:test.xml");
+        try {
+            driver.reset();
+            fail("property with no value in new driver can not be set back");
+        } catch(XmlPullParserException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf(TEST_PROPERTY) >= 0);
+        }
+        // everything else was reset and driver is not reported again
+        driver.reset();
+
+        // pool discards only driver that can not be reset
+        final DriverPool pool = new DriverPool() {
+                protected Driver newDriver() throws XmlPullParserException {
+                    return new Driver(newNullRejectingParser());
+                }
+            };
+        final Driver changed = pool.getDriverFromPool();
+        final Driver unchanged = pool.getDriverFromPool();
+        changed.setProperty(TEST_PROPERTY, "file:test.xml");
+        pool.returnDriverToPool(changed);
+        pool.returnDriverToPool(unchanged);
+        final PoolStatistics stats = pool.getStatistics();
+        assertEquals(1, stats.getDiscarded());
+        assertEquals(1, stats.getIdleSize());
+        assertSame(unchanged, pool.getDriverFromPool());
+    }
+
+    public void testCachingEntityResolverEvictsLeastRecentlyUsed() throws Exception {
+        final File a = tempFile("a"), b = tempFile("b"), c = tempFile("c");
+        try {
+            final CachingEntityResolver lru = new CachingEntityResolver(null, 2, 1024);
+            lru.resolveEntity(null, a.getPath());
+            lru.resolveEntity(null, b.getPath());
+            lru.resolveEntity(null, a.getPath()); // b is now least recently used
+            lru.resolveEntity(null, c.getPath());
+            assertEquals(2, lru.getEntryCount());
+            assertEquals(1, lru.getHits());
+            lru.resolveEntity(null, a.getPath());
+            assertEquals(2, lru.getHits());
+            lru.resolveEntity(null, b.getPath());
+            assertEquals(2, lru.getHits());
+            assertEquals(4, lru.getMisses());
+            assertEquals(2, lru.getSize());
+
+            // entity bigger than cache is read but not kept
+            final CachingEntityResolver small = new CachingEntityResolver(null, 2, 0);
+            small.resolveEntity(null, a.getPath());
+            assertEquals(0, small.getEntryCount());
+        } finally {
+            a.delete();
+            b.delete();
+            c.delete();
+        }
+    }
+
+    public void testCachingEntityResolverOfflineByDefault() throws Exception {
+        final String remote = "http://xmlpull.invalid/doc.dtd";
+        final CachingEntityResolver resolver = new CachingEntityResolver();
+        assertTrue(resolver.isOffline());
+        try {
+            resolver.resolveEntity(null, remote);
+            fail("offline resolver must not read entity from network");
+        } catch(SAXException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("offline") >= 0);
+        }
+        // driver does not fall back to system id when resolver refuses entity
+        final Driver driver = new Driver(newParser());
+        driver.setEntityResolver(resolver);
+        try {
+            driver.parse(new InputSource(new StringReader(
+                                             "<!DOCTYPE r SYSTEM '"+remote+"'><r/>")));
+            fail("offline resolver must not read DTD from network");
+        } catch(SAXException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("offline") >= 0);
+        }
+        assertEquals(0, resolver.getEntryCount());
+
+        // entities in catalog and local files are read when offline
+        final File local = tempFile("<!ENTITY e 'local'>");
+        try {
+            final EntityCatalog catalog = new EntityCatalog();
+            catalog.addSystemId(remote, local.getPath());
+            final CachingEntityResolver cataloged = new CachingEntityResolver(catalog);
+            final EventRecorder recorder = new EventRecorder();
+            driver.reset();
+            driver.setEntityResolver(cataloged);
+            driver.setContentHandler(recorder);
+            driver.parse(new InputSource(new StringReader(
+                                             "<!DOCTYPE r SYSTEM '"+remote+"'><r>&e;</r>")));
+            assertEquals("<r>[local]</r>", recorder.events.toString());
+            assertNotNull(resolver.resolveEntity(null, local.getPath()));
+        } finally {
+            local.delete();
+        }
+    }
+
+    public void testEntitiesNotDefinedWithoutLimit() throws Exception {
+        // parser that can not limit expansion of entities
+        final XmlPullParser pp = new XmlPullParserDelegate(newParser()) {
+                public void setProperty(String name, Object value) throws XmlPullParserException {
+                    if(ENTITY_EXPANSION_LIMIT_PROPERTY.equals(name)) {
+                        throw new XmlPullParserException("unsupported property: '"+name+"'");
+                    }
+                    super.setProperty(name, value);
+                }
+                public Object getProperty(String name) {
+                    return ENTITY_EXPANSION_LIMIT_PROPERTY.equals(name) ? null : super.getProperty(name);
+                }
+            };
+        final Driver driver = new Driver(pp);
+        driver.setFeature(Driver.EXPAND_INTERNAL_SUBSET_FEATURE, true);
+        try {
+            driver.parse(new InputSource(new StringReader(
+                                             "<!DOCTYPE r [<!ENTITY e 'declared'>]><r>&e;</r>")));
+            fail("entities must not be defined when their expansion can not be limited");
+        } catch(SAXException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("can not limit") >= 0);
+        }
+    }
+
+    private static void parseCoalesced(Driver driver, EventRecorder recorder, String doc)
+        throws Exception
+    {
+        driver.setFeature(Driver.COALESCE_CHARACTERS_FEATURE, true);
+        driver.setContentHandler(recorder);
+        driver.parse(new InputSource(new StringReader(doc)));
+    }
+
+    private static File tempFile(String content) throws IOException {
+        final File file = File.createTempFile("xmlpull-test", ".ent");
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /** Parser with TEST_PROPERTY that has no value and can not be set to null. */
+    private static XmlPullParser newNullRejectingParser() throws XmlPullParserException {
+        return new XmlPullParserDelegate(newParser()) {
+                private Object testValue;
+                public void setProperty(String name, Object value) throws XmlPullParserException {
+                    if(value == null) {
+                        throw new XmlPullParserException("property can not be null: '"+name+"'");
+                    }
+                    if(TEST_PROPERTY.equals(name)) {
+                        testValue = value;
+                    } else {
+                        super.setProperty(name, value);
+                    }
+                }
+                public Object getProperty(String name) {
+                    return TEST_PROPERTY.equals(name) ? testValue : super.getProperty(name);
+                }
+            };
+    }
+
+    private static XmlPullParser newParser() throws XmlPullParserException {
+        final XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newPullParser();
+    }
+
+    /**
+     * Parser that returns every text longer than chunk as many TEXT events
+     * (as parsers that return text in pieces limited by size of their buffer).
+     */
+    private static class SplittingParser extends XmlPullParserDelegate {
+        private final int chunk;
+        private boolean inText; // wrapped parser is on TEXT returned by next()
+        private int offset; // start of current piece in text of wrapped parser
+        private int length;
+
+        SplittingParser(XmlPullParser pp, int chunk) {
+            super(pp);
+            this.chunk = chunk;
+        }
+
+        public int next() throws XmlPullParserException, IOException {
+            if(inText && offset + length < pp.getText().length()) {
+                offset += length;
+                length = Math.min(chunk, pp.getText().length() - offset);
+                return TEXT;
+            }
+            final int type = pp.next();
+            inText = type == TEXT;
+            if(inText) {
+                offset = 0;
+                length = Math.min(chunk, pp.getText().length());
+            }
+            return type;
+        }
+
+        public int nextTag() throws XmlPullParserException, IOException {
+            inText = false;
+            return pp.nextTag();
+        }
+
+        public String getText() {
+            final String text = pp.getText();
+            return inText ? text.substring(offset, offset + length) : text;
+        }
+
+        public char[] getTextCharacters(int[] holderForStartAndLength) {
+            final char[] chars = pp.getTextCharacters(holderForStartAndLength);
+            if(inText) {
+                holderForStartAndLength[0] += offset;
+                holderForStartAndLength[1] = length;
+            }
+            return chars;
+        }
+    }
+
+    /** Records elements as tags and every characters() call in brackets. */
+    private static class EventRecorder extends DefaultHandler {
+        final StringBuffer events = new StringBuffer();
+        int charactersCalls;
+        char[] lastCharacters;
+        int lastLength;
+
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            events.append('<').append(qName).append('>');
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            events.append("</").append(qName).append('>');
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            ++charactersCalls;
+            events.append('[').append(ch, start, length).append(']');
+            lastCharacters = ch;
+            lastLength = length;
+        }
+    }
+
+    /** Return element with count attributes (every odd one is prefixed) and expect them. */
+    private static String element(AttributesChecker checker, String name, int count) {
+        final StringBuffer buf = new StringBuffer("<").append(name);
+        final String[][] expected = new String[count][];
+        for (int i = 0; i < count; i++) {
+            final boolean prefixed = i % 2 == 1;
+            final String qName = (prefixed ? "p:a" : "a") + i;
+            final String value = name + " value " + i;
+            buf.append(' ').append(qName).append("='").append(value).append('\'');
+            expected[i] = new String[] {prefixed ? "urn:p" : "", "a" + i, qName, value};
+        }
+        checker.expect(expected);
+        return buf.append("/>").toString();
+    }
+
+    private static void parse(DefaultHandler handler, String doc) throws Exception {
+        final Driver driver = new Driver();
+        driver.setContentHandler(handler);
+        driver.parse(new InputSource(new StringReader(doc)));
+    }
+
+    /** Checks attributes of every start tag (except root) against expected in document order. */
+    private static class AttributesChecker extends DefaultHandler {
+        private final Vector expected = new Vector();
+        private int depth;
+        private int checked;
+
+        void expect(String[][] attributes) {
+            expected.addElement(attributes);
+        }
+
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            if(depth++ == 0) return;
+            assertTrue("unexpected element "+qName, checked < expected.size());
+            final String[][] attributes = (String[][]) expected.elementAt(checked++);
+            assertEquals(qName, attributes.length, atts.getLength());
+            for (int i = 0; i < attributes.length; i++) {
+                final String attUri = attributes[i][0];
+                final String attLocalName = attributes[i][1];
+                final String attQName = attributes[i][2];
+                final String value = attributes[i][3];
+                assertEquals(attUri, atts.getURI(i));
+                assertEquals(attLocalName, atts.getLocalName(i));
+                assertEquals(attQName, atts.getQName(i));
+                assertEquals("CDATA", atts.getType(i));
+                assertEquals(value, atts.getValue(i));
+                assertEquals(attQName, i, atts.getIndex(attQName));
+                assertEquals(attQName, i, atts.getIndex(attUri, attLocalName));
+                assertEquals(value, atts.getValue(attQName));
+                assertEquals(value, atts.getValue(attUri, attLocalName));
+                assertEquals("CDATA", atts.getType(attQName));
+                assertEquals("CDATA", atts.getType(attUri, attLocalName));
+            }
+            // second lookup uses names that were already read
+            for (int i = attributes.length - 1; i >= 0; --i) {
+                assertEquals(i, atts.getIndex(attributes[i][2]));
+            }
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            --depth;
+        }
+
+        void assertAllChecked() {
+            assertEquals(expected.size(), checked);
+        }
+    }
+}
+
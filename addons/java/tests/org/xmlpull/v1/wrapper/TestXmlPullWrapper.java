@@ -13,9 +13,11 @@ import junit.framework.TestSuite;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.util.XmlPullUtil;
 import org.xmlpull.v1.wrapper.XmlPullParserWrapper;
 import org.xmlpull.v1.wrapper.XmlPullWrapperFactory;
 import org.xmlpull.v1.wrapper.XmlSerializerWrapper;
+import org.xmlpull.v1.wrapper.classic.XmlPullParserDelegate;
 
 /**
  * Test some wrapper utility operations.
@@ -75,6 +77,31 @@ public class TestXmlPullWrapper extends TestCase {
 
 
 
+    public void testSkipSubTree() throws IOException, XmlPullParserException {
+        final String XML = "<root><skip><a><b/></a>text</skip><next/></root>";
+        XmlPullParserWrapper pw = wrappedFactory.newPullParserWrapper();
+        pw.setInput(new StringReader(XML));
+        pw.nextStartTag("root");
+        pw.nextStartTag("skip");
+        pw.skipSubTree();
+        assertTrue(pw.matches(XmlPullParser.END_TAG, null, "skip"));
+        pw.nextStartTag("next");
+
+        // parser that implements skipSubTree() with XmlPullUtil must not call itself again
+        XmlPullParser pp = new XmlPullParserDelegate(wrappedFactory.getFactory().newPullParser()) {
+            public void skipSubTree() throws XmlPullParserException, IOException {
+                XmlPullUtil.skipSubTree(this);
+            }
+        };
+        pp.setInput(new StringReader(XML));
+        pp.nextTag();
+        pp.nextTag();
+        pp.skipSubTree();
+        pp.require(XmlPullParser.END_TAG, null, "skip");
+        pp.nextTag();
+        pp.require(XmlPullParser.START_TAG, null, "next");
+    }
+
     public void testSerializeEvent() throws IOException, XmlPullParserException
     {
 
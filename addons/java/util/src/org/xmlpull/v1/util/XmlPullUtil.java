@@ -107,6 +107,8 @@ public class XmlPullUtil {
      * Skip sub tree that is currently porser positioned on.
      * <br>NOTE: parser must be on START_TAG and when funtion returns
      * parser will be positioned on corresponding END_TAG
+     * <br>NOTE: it reads events with next() so parser skipSubTree() can be implemented
+     * by calling it (call parser skipSubTree() directly to use its faster implementation)
      */
     public static void skipSubTree(XmlPullParser pp)
         throws XmlPullParserException, IOException
@@ -4,9 +4,18 @@
 package org.xmlpull.v1;
 
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 /**
  * This class is used to create implementations of XML Pull Parser defined in XMPULL V1 API.
@@ -54,6 +63,15 @@ public class XmlPullParserFactory {
         "/META-INF/services/" + PROPERTY_NAME;
 
 
+    /**
+     * Classes resolved by newInstance() kept by context class (it determines class loader
+     * used to find RESOURCE_NAME) and then by class names (or RESOURCE_NAME when default
+     * list was used) so only the first call pays for reading resource and loading classes.
+     * Context classes and resolved classes are referenced weakly so cache does not keep
+     * their class loaders alive. Guarded by itself.
+     */
+    private static final WeakHashMap classCache = new WeakHashMap();
+
     // public static final String DEFAULT_PROPERTY =
     //    "org.xmlpull.xpp3.XmlPullParser,org.kxml2.io.KXmlParser";
 
@@ -65,7 +83,149 @@ public class XmlPullParserFactory {
 
 
     // features are kept there
-    protected Hashtable features = new Hashtable();
+    protected Hashtable features = new FeatureTable();
+
+    // names of features that are set to true - recomputed when features change
+    private volatile String[] enabledFeatures;
+
+    /**
+     * Features Hashtable that forgets computed enabled features whenever it is modified
+     * (also through its keySet(), entrySet() and values() views and their iterators)
+     * so factory implementations can still put features directly into it.
+     * Java 8 methods that take functions (compute(), merge(), replaceAll()) are not
+     * detected: factory implementation that uses them must call featuresChanged().
+     */
+    private final class FeatureTable extends Hashtable {
+        public synchronized Object put(Object key, Object value) {
+            enabledFeatures = null;
+            return super.put(key, value);
+        }
+
+        public synchronized Object remove(Object key) {
+            enabledFeatures = null;
+            return super.remove(key);
+        }
+
+        public synchronized void clear() {
+            enabledFeatures = null;
+            super.clear();
+        }
+
+        public synchronized Object putIfAbsent(Object key, Object value) {
+            enabledFeatures = null;
+            final Object old = super.get(key);
+            return old != null ? old : super.put(key, value);
+        }
+
+        public synchronized boolean remove(Object key, Object value) {
+            enabledFeatures = null;
+            final Object old = super.get(key);
+            if (old == null || !old.equals(value)) return false;
+            super.remove(key);
+            return true;
+        }
+
+        public synchronized Object replace(Object key, Object value) {
+            enabledFeatures = null;
+            return super.containsKey(key) ? super.put(key, value) : null;
+        }
+
+        public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+            enabledFeatures = null;
+            final Object old = super.get(key);
+            if (old == null || !old.equals(oldValue)) return false;
+            super.put(key, newValue);
+            return true;
+        }
+
+        public Set keySet() {
+            return new FeatureSet(super.keySet(), false);
+        }
+
+        public Set entrySet() {
+            return new FeatureSet(super.entrySet(), true);
+        }
+
+        public Collection values() {
+            return new FeatureValues(super.values());
+        }
+
+        Iterator iterator(final Iterator it, final boolean entries) {
+            return new Iterator() {
+                    public boolean hasNext() { return it.hasNext(); }
+                    public Object next() {
+                        final Object next = it.next();
+                        return entries ? new FeatureEntry((Map.Entry) next) : next;
+                    }
+                    public void remove() {
+                        enabledFeatures = null;
+                        it.remove();
+                    }
+                };
+        }
+
+        /** View of keys or entries, changes made through it forget enabled features. */
+        private final class FeatureSet extends AbstractSet {
+            private final Set view;
+            private final boolean entries;
+
+            FeatureSet(Set view, boolean entries) {
+                this.view = view;
+                this.entries = entries;
+            }
+
+            public int size() { return view.size(); }
+            public boolean contains(Object o) { return view.contains(o); }
+            public Iterator iterator() { return FeatureTable.this.iterator(view.iterator(), entries); }
+            public boolean remove(Object o) {
+                enabledFeatures = null;
+                return view.remove(o);
+            }
+            public void clear() {
+                enabledFeatures = null;
+                view.clear();
+            }
+        }
+
+        private final class FeatureValues extends AbstractCollection {
+            private final Collection view;
+
+            FeatureValues(Collection view) {
+                this.view = view;
+            }
+
+            public int size() { return view.size(); }
+            public boolean contains(Object o) { return view.contains(o); }
+            public Iterator iterator() { return FeatureTable.this.iterator(view.iterator(), false); }
+            public void clear() {
+                enabledFeatures = null;
+                view.clear();
+            }
+        }
+
+        /** Entry that forgets enabled features when its value is set. */
+        private final class FeatureEntry implements Map.Entry {
+            private final Map.Entry entry;
+
+            FeatureEntry(Map.Entry entry) {
+                this.entry = entry;
+            }
+
+            public Object getKey() { return entry.getKey(); }
+            public Object getValue() { return entry.getValue(); }
+            public Object setValue(Object value) {
+                enabledFeatures = null;
+                return entry.setValue(value);
+            }
+            public boolean equals(Object o) { return entry.equals(o); }
+            public int hashCode() { return entry.hashCode(); }
+            public String toString() { return entry.toString(); }
+        }
+    }
+
+    // creators of classes that were successfully instantiated last time
+    private volatile ParserCreator workingParser;
+    private volatile Creator workingSerializer;
 
 
     /**
@@ -88,7 +248,53 @@ public class XmlPullParserFactory {
     public void setFeature(String name,
                            boolean state) throws XmlPullParserException {
 
-        features.put(name, new Boolean(state));
+        putFeature(name, state);
+    }
+
+    private void putFeature(String name, boolean state) {
+        synchronized (features) {
+            features.put(name, new Boolean(state));
+            enabledFeatures = null;
+        }
+    }
+
+    /**
+     * Forget enabled features computed for new parsers. Direct changes of <code>features</code>
+     * are detected so it is only needed when factory implementation replaced
+     * <code>features</code> Hashtable with its own one and changes it or when it changed
+     * features with compute(), merge() or replaceAll().
+     */
+    protected void featuresChanged() {
+        synchronized (features) {
+            enabledFeatures = null;
+        }
+    }
+
+    /**
+     * Return names of features that are set to true. Array is computed once after
+     * features were changed and then shared so it must not be modified.
+     */
+    private String[] getEnabledFeatures() {
+        final Hashtable table = features;
+        // features replaced by factory implementation are not tracked so they are not cached
+        final boolean tracked = table instanceof FeatureTable;
+        String[] enabled = tracked ? enabledFeatures : null;
+        if (enabled == null) {
+            synchronized (table) {
+                final Vector names = new Vector (table.size ());
+                for (Enumeration e = table.keys (); e.hasMoreElements ();) {
+                    final String key = (String) e.nextElement();
+                    final Boolean value = (Boolean) table.get(key);
+                    if(value != null && value.booleanValue()) {
+                        names.addElement (key);
+                    }
+                }
+                enabled = new String[ names.size () ];
+                names.copyInto (enabled);
+                if (tracked) enabledFeatures = enabled;
+            }
+        }
+        return enabled;
     }
 
 
@@ -116,7 +322,7 @@ public class XmlPullParserFactory {
      */
 
     public void setNamespaceAware(boolean awareness) {
-        features.put (XmlPullParser.FEATURE_PROCESS_NAMESPACES, new Boolean (awareness));
+        putFeature (XmlPullParser.FEATURE_PROCESS_NAMESPACES, awareness);
     }
 
     /**
@@ -143,7 +349,7 @@ public class XmlPullParserFactory {
      */
 
     public void setValidating(boolean validating) {
-        features.put (XmlPullParser.FEATURE_VALIDATION, new Boolean (validating));
+        putFeature (XmlPullParser.FEATURE_VALIDATION, validating);
     }
 
     /**
@@ -172,6 +378,16 @@ public class XmlPullParserFactory {
         if (parserClasses == null) throw new XmlPullParserException
                 ("Factory initialization was incomplete - has not tried "+classNamesLocation);
 
+        // fast path: use constructor of class that worked before and features computed once
+        final ParserCreator working = workingParser;
+        if (working != null) {
+            try {
+                return working.newParser(getEnabledFeatures());
+            } catch(Exception ex) {
+                // try all classes again to collect description of what went wrong
+            }
+        }
+
         if (parserClasses.size() == 0) throw new XmlPullParserException
                 ("No valid parser classes found in "+classNamesLocation);
 
@@ -180,18 +396,9 @@ public class XmlPullParserFactory {
         for (int i = 0; i < parserClasses.size (); i++) {
             final Class ppClass = (Class) parserClasses.elementAt (i);
             try {
-                final XmlPullParser pp = (XmlPullParser) ppClass.newInstance();
-                //            if( ! features.isEmpty() ) {
-                //Enumeration keys = features.keys();
-                // while(keys.hasMoreElements()) {
-
-                for (Enumeration e = features.keys (); e.hasMoreElements ();) {
-                    final String key = (String) e.nextElement();
-                    final Boolean value = (Boolean) features.get(key);
-                    if(value != null && value.booleanValue()) {
-                        pp.setFeature(key, true);
-                    }
-                }
+                final ParserCreator creator = new ParserCreator(ppClass);
+                final XmlPullParser pp = creator.newParser(getEnabledFeatures());
+                workingParser = creator;
                 return pp;
 
             } catch(Exception ex) {
@@ -219,6 +426,15 @@ public class XmlPullParserFactory {
             throw new XmlPullParserException
                 ("Factory initialization incomplete - has not tried "+classNamesLocation);
         }
+
+        final Creator working = workingSerializer;
+        if (working != null) {
+            try {
+                return (XmlSerializer) working.newInstance();
+            } catch(Exception ex) {
+                // try all classes again to collect description of what went wrong
+            }
+        }
         if(serializerClasses.size() == 0) {
             throw new XmlPullParserException
                 ("No valid serializer classes found in "+classNamesLocation);
@@ -229,7 +445,8 @@ public class XmlPullParserFactory {
         for (int i = 0; i < serializerClasses.size (); i++) {
             final Class ppClass = (Class) serializerClasses.elementAt (i);
             try {
-                final XmlSerializer ser = (XmlSerializer) ppClass.newInstance();
+                final Creator creator = new Creator(ppClass);
+                final XmlSerializer ser = (XmlSerializer) creator.newInstance();
 
                 //                for (Enumeration e = features.keys (); e.hasMoreElements ();) {
                 //                    String key = (String) e.nextElement();
@@ -238,6 +455,7 @@ public class XmlPullParserFactory {
                 //                        ser.setFeature(key, true);
                 //                    }
                 //                }
+                workingSerializer = creator;
                 return ser;
 
             } catch(Exception ex) {
@@ -248,6 +466,23 @@ public class XmlPullParserFactory {
         throw new XmlPullParserException ("could not create serializer: "+issues);
     }
 
+    /**
+     * Return immutable copy of this factory: it has the same parser and serializer
+     * classes and current values of features but any attempt to change features will fail.
+     * Snapshot can be shared by many threads and its newPullParser() and newSerializer()
+     * do not take any locks (except what parser constructor and setFeature() may do).
+     * Changes made to this factory later are not visible in snapshot.
+     *
+     * <p><b>NOTE:</b> factory implementations that override newPullParser() or
+     * newSerializer() should override this method too as returned snapshot only
+     * instantiates parser and serializer classes listed in this factory.
+     *
+     * @return immutable factory - calling snapshot() on it returns the same object
+     */
+    public XmlPullParserFactory snapshot() {
+        return new FrozenFactory(this);
+    }
+
     /**
      * Create a new instance of a PullParserFactory that can be used
      * to create XML pull parsers (see class description for more
@@ -269,9 +504,92 @@ public class XmlPullParserFactory {
             context = referenceContextClass;
         }
 
+        final boolean useResource =
+            classNames == null || classNames.length() == 0 || "DEFAULT".equals(classNames);
+        final String cacheKey = useResource ? RESOURCE_NAME : classNames;
+
+        ResolvedClasses resolved;
+        synchronized (classCache) {
+            final Hashtable resolvedForContext = (Hashtable) classCache.get(context);
+            resolved = resolvedForContext != null
+                ? (ResolvedClasses) resolvedForContext.get(cacheKey) : null;
+        }
+        // strong references to classes are taken before they are used
+        Vector parsers = resolved != null ? resolved.parserClasses() : null;
+        Vector serializers = resolved != null ? resolved.serializerClasses() : null;
+        Class factoryClass = resolved != null ? resolved.factoryClass() : null;
+        if (parsers == null || serializers == null
+                || (resolved.factoryClass != null && factoryClass == null)) {
+            // not resolved yet or some class was unloaded
+            resolved = resolveClasses(useResource ? null : classNames, context);
+            parsers = resolved.parserClasses();
+            serializers = resolved.serializerClasses();
+            factoryClass = resolved.factoryClass();
+            synchronized (classCache) {
+                Hashtable resolvedForContext = (Hashtable) classCache.get(context);
+                if (resolvedForContext == null) {
+                    resolvedForContext = new Hashtable();
+                    classCache.put(context, resolvedForContext);
+                }
+                resolvedForContext.put(cacheKey, resolved);
+            }
+        }
+
+        XmlPullParserFactory factory = null;
+        if (factoryClass != null) {
+            try {
+                factory = (XmlPullParserFactory) factoryClass.newInstance ();
+            }
+            catch (Exception e) {
+                throw new XmlPullParserException ("could not create factory "
+                                                      +factoryClass.getName (), null, e);
+            }
+        } else {
+            factory = new XmlPullParserFactory ();
+        }
+        // each factory gets its own vectors as subclasses are free to modify them
+        factory.parserClasses = parsers;
+        factory.serializerClasses = serializers;
+        factory.classNamesLocation = resolved.classNamesLocation;
+        return factory;
+    }
+
+    /**
+     * Forget all parser, serializer and factory classes that were resolved
+     * by previous calls to newInstance(). Next call to newInstance() will
+     * read again META-INF/services resource and load listed classes.
+     * Use it when the set of available implementations changes at runtime
+     * (for example when an application class loader is discarded).
+     */
+    public static void clearCache () {
+        synchronized (classCache) {
+            classCache.clear ();
+        }
+    }
+
+    /**
+     * Forget classes resolved by newInstance() for given context class
+     * (see clearCache() for details).
+     *
+     * @param context class that was passed to newInstance(); null means
+     *    the default context used by newInstance()
+     */
+    public static void clearCache (Class context) {
+        synchronized (classCache) {
+            classCache.remove (context != null ? context : referenceContextClass);
+        }
+    }
+
+    /**
+     * Read list of class names (from RESOURCE_NAME if classNames is null) and
+     * load and sort classes into parsers, serializers and factory.
+     */
+    private static ResolvedClasses resolveClasses (String classNames, Class context)
+        throws XmlPullParserException {
+
         String  classNamesLocation = null;
 
-        if (classNames == null || classNames.length() == 0 || "DEFAULT".equals(classNames)) {
+        if (classNames == null) {
             try {
                 InputStream is = context.getResourceAsStream (RESOURCE_NAME);
 
@@ -279,12 +597,16 @@ public class XmlPullParserFactory {
                         ("resource not found: "+RESOURCE_NAME
                              +" make sure that parser implementing XmlPull API is available");
                 final StringBuffer sb = new StringBuffer();
+                final byte[] buf = new byte[256];
 
                 while (true) {
-                    final int ch = is.read();
-                    if (ch < 0) break;
-                    else if (ch > ' ')
-                        sb.append((char) ch);
+                    final int len = is.read(buf);
+                    if (len < 0) break;
+                    for (int i = 0; i < len; i++) {
+                        final int ch = buf[i] & 0xff;
+                        if (ch > ' ')
+                            sb.append((char) ch);
+                    }
                 }
                 is.close ();
 
@@ -299,9 +621,8 @@ public class XmlPullParserFactory {
                 "parameter classNames to newInstance() that contained '"+classNames+"'";
         }
 
-        XmlPullParserFactory factory = null;
-        final Vector parserClasses = new Vector ();
-        final Vector serializerClasses = new Vector ();
+        final ResolvedClasses resolved = new ResolvedClasses ();
+        resolved.classNamesLocation = classNamesLocation;
         int pos = 0;
 
         while (pos < classNames.length ()) {
@@ -323,16 +644,16 @@ public class XmlPullParserFactory {
             if (candidate != null) {
                 boolean recognized = false;
                 if (instance instanceof XmlPullParser) {
-                    parserClasses.addElement (candidate);
+                    resolved.parserClasses.addElement (new WeakReference (candidate));
                     recognized = true;
                 }
                 if (instance instanceof XmlSerializer) {
-                    serializerClasses.addElement (candidate);
+                    resolved.serializerClasses.addElement (new WeakReference (candidate));
                     recognized = true;
                 }
                 if (instance instanceof XmlPullParserFactory) {
-                    if (factory == null) {
-                        factory = (XmlPullParserFactory) instance;
+                    if (resolved.factoryClass == null) {
+                        resolved.factoryClass = new WeakReference (candidate);
                     }
                     recognized = true;
                 }
@@ -342,15 +663,264 @@ public class XmlPullParserFactory {
             }
             pos = cut + 1;
         }
+        return resolved;
+    }
 
-        if (factory == null) {
-            factory = new XmlPullParserFactory ();
+    /**
+     * Factory returned by snapshot(): all state is copied into arrays in constructor
+     * and never modified later so it can be read without synchronization.
+     */
+    private static final class FrozenFactory extends XmlPullParserFactory {
+        private final Class[] ppClasses;
+        private final Class[] serClasses;
+        private final String[] enabled;
+        // creators are thread safe so they are shared with source factory
+        private volatile ParserCreator parserCreator;
+        private volatile Creator serializerCreator;
+
+        FrozenFactory(XmlPullParserFactory source) {
+            classNamesLocation = source.classNamesLocation;
+            enabled = source.getEnabledFeatures();
+            for (int i = 0; i < enabled.length; i++) {
+                features.put(enabled[i], Boolean.TRUE);
+            }
+            final ParserCreator parser = source.workingParser;
+            final Creator serializer = source.workingSerializer;
+            ppClasses = copyClasses(source.parserClasses, parser != null ? parser.type : null);
+            serClasses = copyClasses(source.serializerClasses,
+                                     serializer != null ? serializer.type : null);
+            if (ppClasses != null && ppClasses.length > 0 && parser != null
+                    && ppClasses[0] == parser.type) parserCreator = parser;
+            if (serClasses != null && serClasses.length > 0 && serializer != null
+                    && serClasses[0] == serializer.type) serializerCreator = serializer;
+            if (ppClasses != null) {
+                parserClasses = new Vector(ppClasses.length);
+                for (int i = 0; i < ppClasses.length; i++) parserClasses.addElement(ppClasses[i]);
+            }
+            if (serClasses != null) {
+                serializerClasses = new Vector(serClasses.length);
+                for (int i = 0; i < serClasses.length; i++) serializerClasses.addElement(serClasses[i]);
+            }
+        }
+
+        /** copy classes putting the one that is known to work first */
+        private static Class[] copyClasses(Vector classes, Class working) {
+            if (classes == null) return null;
+            synchronized (classes) {
+                final Class[] copy = new Class[ classes.size() ];
+                classes.copyInto(copy);
+                for (int i = 1; i < copy.length; i++) {
+                    if (copy[i] == working) {
+                        System.arraycopy(copy, 0, copy, 1, i);
+                        copy[0] = working;
+                        break;
+                    }
+                }
+                return copy;
+            }
+        }
+
+        public void setFeature(String name, boolean state) throws XmlPullParserException {
+            throw new XmlPullParserException(
+                "factory snapshot can not be modified (feature "+name+")");
+        }
+
+        public boolean getFeature(String name) {
+            for (int i = 0; i < enabled.length; i++) {
+                if (enabled[i].equals(name)) return true;
+            }
+            return false;
+        }
+
+        public void setNamespaceAware(boolean awareness) {
+            throw new IllegalStateException("factory snapshot can not be modified");
+        }
+
+        public void setValidating(boolean validating) {
+            throw new IllegalStateException("factory snapshot can not be modified");
+        }
+
+        protected void featuresChanged() {
+            throw new IllegalStateException("factory snapshot can not be modified");
+        }
+
+        public XmlPullParser newPullParser() throws XmlPullParserException {
+            if (ppClasses == null) throw new XmlPullParserException
+                    ("Factory initialization was incomplete - has not tried "+classNamesLocation);
+
+            if (ppClasses.length == 0) throw new XmlPullParserException
+                    ("No valid parser classes found in "+classNamesLocation);
+
+            final ParserCreator working = parserCreator;
+            if (working != null) {
+                try {
+                    return working.newParser(enabled);
+                } catch(Exception ex) {
+                    // try all classes again to collect description of what went wrong
+                }
+            }
+            StringBuffer issues = null;
+            for (int i = 0; i < ppClasses.length; i++) {
+                try {
+                    final ParserCreator creator = new ParserCreator(ppClasses[i]);
+                    final XmlPullParser pp = creator.newParser(enabled);
+                    parserCreator = creator;
+                    return pp;
+                } catch(Exception ex) {
+                    if (issues == null) issues = new StringBuffer ();
+                    issues.append (ppClasses[i].getName () + ": "+ ex.toString ()+"; ");
+                }
+            }
+            throw new XmlPullParserException ("could not create parser: "+issues);
+        }
+
+        public XmlSerializer newSerializer() throws XmlPullParserException {
+            if (serClasses == null) throw new XmlPullParserException
+                    ("Factory initialization incomplete - has not tried "+classNamesLocation);
+
+            if (serClasses.length == 0) throw new XmlPullParserException
+                    ("No valid serializer classes found in "+classNamesLocation);
+
+            final Creator working = serializerCreator;
+            if (working != null) {
+                try {
+                    return (XmlSerializer) working.newInstance();
+                } catch(Exception ex) {
+                    // try all classes again to collect description of what went wrong
+                }
+            }
+            StringBuffer issues = null;
+            for (int i = 0; i < serClasses.length; i++) {
+                try {
+                    final Creator creator = new Creator(serClasses[i]);
+                    final XmlSerializer ser = (XmlSerializer) creator.newInstance();
+                    serializerCreator = creator;
+                    return ser;
+                } catch(Exception ex) {
+                    if (issues == null) issues = new StringBuffer ();
+                    issues.append (serClasses[i].getName () + ": "+ ex.toString ()+"; ");
+                }
+            }
+            throw new XmlPullParserException ("could not create serializer: "+issues);
+        }
+
+        public XmlPullParserFactory snapshot() {
+            return this;
         }
-        factory.parserClasses = parserClasses;
-        factory.serializerClasses = serializerClasses;
-        factory.classNamesLocation = classNamesLocation;
-        return factory;
     }
-}
 
+    /**
+     * Creates instances of one class with its public no-argument constructor that is
+     * looked up only once (Class.newInstance() is used where reflection API is missing).
+     */
+    private static class Creator {
+        // false after java.lang.reflect was found to be missing (as in J2ME)
+        private static boolean reflection = true;
+
+        final Class type;
+        private final Object constructor;
+
+        Creator(Class type) {
+            this.type = type;
+            Object constructor = null;
+            if (reflection) {
+                try {
+                    constructor = Reflection.constructor(type);
+                } catch(LinkageError e) {
+                    reflection = false;
+                }
+            }
+            this.constructor = constructor;
+        }
+
+        Object newInstance() throws Exception {
+            return constructor != null ? Reflection.newInstance(constructor) : type.newInstance();
+        }
+    }
+
+    /**
+     * Creates parsers with features set: features that are already set in new parser
+     * are found once for every array of enabled features and not set again.
+     */
+    private static final class ParserCreator extends Creator {
+        // {enabled features, those of them that must be set} replaced together
+        private volatile String[][] features;
 
+        ParserCreator(Class type) {
+            super(type);
+        }
+
+        XmlPullParser newParser(String[] enabled) throws Exception {
+            final XmlPullParser pp = (XmlPullParser) newInstance();
+            final String[][] known = features;
+            String[] toSet;
+            if (known != null && known[0] == enabled) {
+                toSet = known[1];
+            } else {
+                final Vector names = new Vector (enabled.length);
+                for (int i = 0; i < enabled.length; i++) {
+                    if (!pp.getFeature(enabled[i])) names.addElement (enabled[i]);
+                }
+                toSet = new String[ names.size () ];
+                names.copyInto (toSet);
+                features = new String[][] { enabled, toSet };
+            }
+            for (int i = 0; i < toSet.length; i++) {
+                pp.setFeature(toSet[i], true);
+            }
+            return pp;
+        }
+    }
+
+    /** Only this class uses java.lang.reflect so factory can be loaded where it is missing. */
+    private static final class Reflection {
+        private static final Object[] NO_ARGS = new Object[0];
+
+        static Object constructor(Class type) {
+            try {
+                return type.getConstructor(new Class[0]);
+            } catch(Exception ex) {
+                return null; // Class.newInstance() reports why instance can not be created
+            }
+        }
+
+        static Object newInstance(Object constructor) throws Exception {
+            return ((Constructor) constructor).newInstance(NO_ARGS);
+        }
+    }
+
+    /**
+     * Result of looking up classes listed in classNames or RESOURCE_NAME: classes are
+     * referenced weakly (they stay loaded while their class loader is reachable).
+     * Not modified after it is put into classCache.
+     */
+    private static class ResolvedClasses {
+        final Vector parserClasses = new Vector ();
+        final Vector serializerClasses = new Vector ();
+        WeakReference factoryClass;
+        String classNamesLocation;
+
+        Vector parserClasses() {
+            return classes (parserClasses);
+        }
+
+        Vector serializerClasses() {
+            return classes (serializerClasses);
+        }
+
+        Class factoryClass() {
+            return factoryClass != null ? (Class) factoryClass.get () : null;
+        }
+
+        /** Return new Vector with classes or null if some of them was unloaded. */
+        private static Vector classes(Vector references) {
+            final Vector classes = new Vector (references.size ());
+            for (int i = 0; i < references.size (); i++) {
+                final Object c = ((WeakReference) references.elementAt (i)).get ();
+                if (c == null) return null;
+                classes.addElement (c);
+            }
+            return classes;
+        }
+    }
+}
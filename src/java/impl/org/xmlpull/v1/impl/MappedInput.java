@@ -0,0 +1,156 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Set memory mapped file (or any ByteBuffer) as input of XmlPull parser
+ * (this class requires JDK 1.4 NIO, parser itself does not).
+ *
+ * <p>File is mapped in windows of limited size (so files bigger than 2GB can be parsed)
+ * and parser pulls bytes from mapping in small chunks into its own fixed size buffer
+ * so heap used does not depend on file size - OS page cache is the input buffer.
+ * Any XmlPullParser can be used, with XmlPullParserImpl UTF-8 input is decoded directly
+ * into parser buffer. Example:
+ * <pre>
+ * FileChannel channel = new FileInputStream(file).getChannel();
+ * MappedInput.setInput(parser, channel, null);
+ * </pre>
+ *
+ * <p>ByteBuffer chunks received from non-blocking channel can be given to
+ * XmlPullParserImpl in push mode with {@link #feedInput}.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class MappedInput
+{
+    /** Maximum size of file region that is mapped at one time. */
+    public final static int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private MappedInput() {}
+
+    /**
+     * Use whole file as parser input (if encoding is null it is detected from content).
+     */
+    public static void setInput(XmlPullParser pp, FileChannel channel, String inputEncoding)
+        throws IOException, XmlPullParserException
+    {
+        setInput(pp, channel, 0, channel.size(), inputEncoding);
+    }
+
+    /**
+     * Use region of file starting at position as parser input.
+     */
+    public static void setInput(XmlPullParser pp,
+                                FileChannel channel,
+                                long position,
+                                long size,
+                                String inputEncoding)
+        throws IOException, XmlPullParserException
+    {
+        if(channel == null) throw new IllegalArgumentException("channel can not be null");
+        if(position < 0 || size < 0 || position + size > channel.size()) {
+            throw new IllegalArgumentException(
+                "region "+position+"+"+size+" is outside of file of size "+channel.size());
+        }
+        pp.setInput(new MappedStream(channel, position, size, DEFAULT_WINDOW_SIZE), inputEncoding);
+    }
+
+    /**
+     * Use remaining content of buffer (for example MappedByteBuffer) as parser input.
+     * Position of passed buffer is not modified.
+     */
+    public static void setInput(XmlPullParser pp, ByteBuffer buffer, String inputEncoding)
+        throws XmlPullParserException
+    {
+        if(buffer == null) throw new IllegalArgumentException("buffer can not be null");
+        pp.setInput(new MappedStream(buffer.duplicate()), inputEncoding);
+    }
+
+    /**
+     * Feed remaining content of buffer to parser in push mode (see XmlPullParserImpl.setPushInput())
+     * and move buffer position to its limit.
+     */
+    public static void feedInput(XmlPullParserImpl pp, ByteBuffer chunk)
+        throws XmlPullParserException
+    {
+        pp.feedInput(chunk);
+    }
+
+    /**
+     * InputStream that reads from ByteBuffer and maps next window of channel
+     * when current one was read.
+     */
+    static class MappedStream extends InputStream
+    {
+        private final FileChannel channel;
+        private final int windowSize;
+        private long position;
+        private final long end;
+        private ByteBuffer window;
+
+        MappedStream(ByteBuffer buffer) {
+            this.channel = null;
+            this.windowSize = 0;
+            this.end = 0;
+            this.window = buffer;
+        }
+
+        MappedStream(FileChannel channel, long position, long size, int windowSize) {
+            this.channel = channel;
+            this.windowSize = windowSize;
+            this.position = position;
+            this.end = position + size;
+        }
+
+        /** Return false if all input was read. */
+        private boolean ensureWindow() throws IOException
+        {
+            if(window != null && window.hasRemaining()) return true;
+            if(channel == null || position >= end) return false;
+            final long len = Math.min(windowSize, end - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, len);
+            position += len;
+            return true;
+        }
+
+        public int read() throws IOException
+        {
+            if(!ensureWindow()) return -1;
+            return window.get() & 0xFF;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if(len == 0) return 0;
+            if(!ensureWindow()) return -1;
+            final int n = Math.min(len, window.remaining());
+            window.get(b, off, n);
+            return n;
+        }
+
+        public long skip(long n) throws IOException
+        {
+            long skipped = 0;
+            while(skipped < n && ensureWindow()) {
+                final int step = (int) Math.min(n - skipped, window.remaining());
+                window.position(window.position() + step);
+                skipped += step;
+            }
+            return skipped;
+        }
+
+        public int available() throws IOException
+        {
+            return window != null ? window.remaining() : 0;
+        }
+    }
+}
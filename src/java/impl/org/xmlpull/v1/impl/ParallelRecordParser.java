@@ -0,0 +1,766 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+import java.util.concurrent.Executor;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Parse document that is root element with many "record" children using multiple threads
+ * (this class requires JDK 5: NIO and java.util.concurrent.Executor).
+ *
+ * <p>Splitter scans bytes of input (file mapped in windows or any ByteBuffer) to find where
+ * children of root element start and end (only nesting of tags, quotes, comments,
+ * CDATA sections and PIs are recognized) and workers parse found records
+ * concurrently. Every worker has its own parser (created by factory) that reads
+ * record wrapped in element with the same name and namespace declarations as root
+ * element so namespace prefixes declared on root element can be used in records.
+ * Results returned by RecordHandler are pulled in document order or in order in which
+ * records were parsed. Example:
+ * <pre>
+ * ParallelRecordParser prp = new ParallelRecordParser(factory, 4, handler);
+ * prp.setInput(new FileInputStream(file).getChannel(), null, true);
+ * while(prp.hasNextResult()) {
+ *     Object result = prp.nextResult();
+ * }
+ * </pre>
+ *
+ * <p>File is mapped in windows of limited size (see {@link #setWindowSize}) so files bigger
+ * than 2GB can be parsed, record that crosses end of window is read by worker from its own
+ * mapping.
+ *
+ * <p>Splitter and workers run as tasks in new daemon threads or in executor given to constructor.
+ * Tasks in executor never wait for each other or for caller: worker task finishes when there
+ * is no record to parse and splitter task finishes when too many results are waiting to be pulled
+ * (and is started again by nextResult()) so any executor can be used, even one with single thread.
+ *
+ * <p>Input must be in UTF-8, US-ASCII or ISO-8859-1 and entities declared in
+ * DOCTYPE are not available in records. Text, comments and PIs that are directly
+ * in root element are ignored. Number of records that were found and which results
+ * were not yet pulled is limited so input is not scanned much ahead of caller.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class ParallelRecordParser
+{
+    private final static int MAX_RECORDS_IN_FLIGHT_PER_THREAD = 64;
+
+    private final XmlPullParserFactory factory;
+    private final int threads;
+    private final RecordHandler handler;
+    private final Executor executor;
+    private int windowSize = MappedInput.DEFAULT_WINDOW_SIZE;
+
+    // shared by caller, splitter and worker tasks (guarded by this)
+    private int generation; // changed when parsing is stopped so old tasks finish
+    private boolean ordered;
+    private String inputEncoding;
+    private Source source;
+    private byte[] recordPrefix; // start tag of root element with namespace declarations
+    private byte[] recordSuffix;
+    private Vector idleParsers = new Vector(); // parsers not used by running worker task
+    private Vector queue = new Vector(); // records waiting for worker
+    private Vector inFlight = new Vector(); // records which results were not pulled in document order
+    private Vector completed = new Vector(); // parsed records in order of completion (if not ordered)
+    private long splitPosition; // where splitter continues when it is started again
+    private int splitIndex;
+    private boolean splitting; // splitter task was started and did not finish or pause
+    private boolean splitDone;
+    private XmlPullParserException splitError;
+    private boolean closed = true;
+
+    private static class Record
+    {
+        int index;
+        long offset;
+        InputStream content;
+        boolean done;
+        Object result;
+        Throwable error;
+    }
+
+    public ParallelRecordParser(XmlPullParserFactory factory, int threads, RecordHandler handler)
+    {
+        this(factory, threads, handler, null);
+    }
+
+    /**
+     * Create parser that runs splitter and workers in executor
+     * (if executor is null new threads are started for them).
+     */
+    public ParallelRecordParser(XmlPullParserFactory factory, int threads, RecordHandler handler,
+                                Executor executor)
+    {
+        if(factory == null) throw new IllegalArgumentException("factory can not be null");
+        if(threads < 1) throw new IllegalArgumentException("at least one thread is required");
+        if(handler == null) throw new IllegalArgumentException("handler can not be null");
+        this.factory = factory;
+        this.threads = threads;
+        this.handler = handler;
+        this.executor = executor;
+    }
+
+    /**
+     * Set maximum size of file region that is mapped at one time
+     * (default is MappedInput.DEFAULT_WINDOW_SIZE), it is used for next FileChannel input.
+     */
+    public void setWindowSize(int windowSize)
+    {
+        if(windowSize < 1) throw new IllegalArgumentException("window size must be positive");
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Start parsing remaining content of buffer (if encoding is null UTF-8 is used).
+     * When ordered is true results are returned in document order otherwise
+     * they are returned as soon as record is parsed.
+     * Parsing of previous input is stopped.
+     */
+    public void setInput(ByteBuffer buffer, String inputEncoding, boolean ordered)
+        throws XmlPullParserException
+    {
+        if(buffer == null) throw new IllegalArgumentException("buffer can not be null");
+        startParsing(new Source(buffer.duplicate()), inputEncoding, ordered);
+    }
+
+    /**
+     * Start parsing whole file (see setInput with file region).
+     */
+    public void setInput(FileChannel channel, String inputEncoding, boolean ordered)
+        throws IOException, XmlPullParserException
+    {
+        if(channel == null) throw new IllegalArgumentException("channel can not be null");
+        setInput(channel, 0, channel.size(), inputEncoding, ordered);
+    }
+
+    /**
+     * Start parsing region of file starting at position, file is mapped in windows
+     * when splitter and workers read it. Byte offsets in errors are offsets in file.
+     */
+    public void setInput(FileChannel channel,
+                         long position,
+                         long size,
+                         String inputEncoding,
+                         boolean ordered)
+        throws IOException, XmlPullParserException
+    {
+        if(channel == null) throw new IllegalArgumentException("channel can not be null");
+        if(position < 0 || size < 0 || position + size > channel.size()) {
+            throw new IllegalArgumentException(
+                "region "+position+"+"+size+" is outside of file of size "+channel.size());
+        }
+        startParsing(new Source(channel, position, size, windowSize), inputEncoding, ordered);
+    }
+
+    private void startParsing(Source in, String inputEncoding, boolean ordered)
+        throws XmlPullParserException
+    {
+        if(inputEncoding == null) {
+            inputEncoding = "UTF-8";
+        } else if(!isAsciiCompatible(inputEncoding)) {
+            throw new XmlPullParserException("records can not be found in input with encoding "
+                                                 +inputEncoding+" (use UTF-8, US-ASCII or ISO-8859-1)");
+        }
+        close();
+        // parsers are created by caller as factory does not need to be thread safe
+        final Vector parsers = new Vector(threads);
+        for (int i = 0; i < threads; i++)
+        {
+            parsers.addElement(factory.newPullParser());
+        }
+        final int gen;
+        synchronized(this) {
+            gen = generation;
+            this.ordered = ordered;
+            this.inputEncoding = inputEncoding;
+            source = in;
+            recordPrefix = recordSuffix = null;
+            idleParsers = parsers;
+            queue = new Vector();
+            inFlight = new Vector();
+            completed = new Vector();
+            splitPosition = in.start;
+            splitIndex = 0;
+            splitting = true;
+            splitDone = false;
+            splitError = null;
+            closed = false;
+        }
+        // workers are started by splitter when it finds records
+        try {
+            startSplitter(gen);
+        } catch(RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    private void execute(String name, Runnable task)
+    {
+        if(executor != null) {
+            executor.execute(task);
+        } else {
+            final Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void startSplitter(final int gen)
+    {
+        execute("ParallelRecordParser splitter", new Runnable() {
+                public void run() {
+                    splitInput(gen);
+                }
+            });
+    }
+
+    private void startWorker(final int gen, final XmlPullParser pp)
+    {
+        try {
+            execute("ParallelRecordParser worker", new Runnable() {
+                    public void run() {
+                        work(gen, pp);
+                    }
+                });
+        } catch(RuntimeException ex) {
+            synchronized(this) {
+                idleParsers.addElement(pp);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Return true if there is result of another record (or error) to be returned by nextResult().
+     * It blocks until next record is found or end of input is reached.
+     */
+    public synchronized boolean hasNextResult() throws IOException
+    {
+        try {
+            while(inFlight.isEmpty() && !splitDone && !closed) wait();
+        } catch(InterruptedException ex) {
+            throw new InterruptedIOException("interrupted while waiting for next record");
+        }
+        return !closed && (!inFlight.isEmpty() || splitError != null);
+    }
+
+    /**
+     * Return result of next record waiting until it is parsed. If record could not be parsed
+     * its exception is thrown (and results of following records can still be pulled).
+     * Error in structure of document outside of records is thrown after all results
+     * of records before it were returned.
+     */
+    public Object nextResult() throws XmlPullParserException, IOException
+    {
+        final Record r;
+        final int gen;
+        boolean resumeSplitter = false;
+        synchronized(this) {
+            try {
+                while(true) {
+                    if(closed) throw new NoSuchElementException("parsing was stopped");
+                    if(ordered) {
+                        if(!inFlight.isEmpty() && ((Record) inFlight.elementAt(0)).done) {
+                            r = (Record) inFlight.elementAt(0);
+                            inFlight.removeElementAt(0);
+                            break;
+                        }
+                    } else if(!completed.isEmpty()) {
+                        r = (Record) completed.elementAt(0);
+                        completed.removeElementAt(0);
+                        inFlight.removeElement(r);
+                        break;
+                    }
+                    if(inFlight.isEmpty() && splitDone) {
+                        final XmlPullParserException ex = splitError;
+                        if(ex == null) throw new NoSuchElementException("no more records");
+                        splitError = null;
+                        throw ex;
+                    }
+                    wait();
+                }
+            } catch(InterruptedException ex) {
+                throw new InterruptedIOException("interrupted while waiting for record result");
+            }
+            // paused splitter continues when half of results waiting to be pulled were pulled
+            if(!splitting && !splitDone
+                   && inFlight.size() <= threads * MAX_RECORDS_IN_FLIGHT_PER_THREAD / 2)
+            {
+                splitting = resumeSplitter = true;
+            }
+            gen = generation;
+        }
+        if(resumeSplitter) {
+            try {
+                startSplitter(gen);
+            } catch(RuntimeException ex) {
+                finishSplit(gen, new XmlPullParserException("could not start splitter", null, ex));
+            }
+        }
+        if(r.error != null) {
+            if(r.error instanceof XmlPullParserException) {
+                throw new XmlPullParserException(
+                    "could not parse record "+r.index+" at byte offset "+r.offset, null, r.error);
+            } else if(r.error instanceof IOException) {
+                throw (IOException) r.error;
+            } else if(r.error instanceof RuntimeException) {
+                throw (RuntimeException) r.error;
+            }
+            throw (Error) r.error;
+        }
+        return r.result;
+    }
+
+    /**
+     * Stop parsing current input (tasks finish after records they parse).
+     */
+    public synchronized void close()
+    {
+        closed = true;
+        ++generation;
+        queue.removeAllElements();
+        notifyAll();
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // worker tasks
+
+    private void work(int gen, XmlPullParser pp)
+    {
+        while(true) {
+            final Record r;
+            final byte[] prefix;
+            final byte[] suffix;
+            final String enc;
+            synchronized(this) {
+                try {
+                    // only own threads wait for splitter, task in executor finishes
+                    // and splitter starts new one when it finds more records
+                    while(executor == null && queue.isEmpty() && splitting && gen == generation) {
+                        wait();
+                    }
+                } catch(InterruptedException ex) {
+                }
+                if(gen != generation) return;
+                if(queue.isEmpty()) {
+                    idleParsers.addElement(pp);
+                    return;
+                }
+                r = (Record) queue.elementAt(0);
+                queue.removeElementAt(0);
+                prefix = recordPrefix;
+                suffix = recordSuffix;
+                enc = inputEncoding;
+            }
+            try {
+                final InputStream in = new SequenceInputStream(
+                    new ByteArrayInputStream(prefix),
+                    new SequenceInputStream(r.content, new ByteArrayInputStream(suffix)));
+                pp.setInput(in, enc);
+                pp.nextTag();
+                pp.nextTag();
+                r.result = handler.processRecord(pp);
+            } catch(Throwable ex) {
+                r.error = ex;
+            }
+            r.content = null;
+            synchronized(this) {
+                if(gen != generation) return;
+                r.done = true;
+                if(!ordered) completed.addElement(r);
+                notifyAll();
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // splitter task
+
+    private void splitInput(int gen)
+    {
+        XmlPullParserException error = null;
+        try {
+            if(!split(gen)) return; // stopped or paused until results are pulled
+        } catch(XmlPullParserException ex) {
+            error = ex;
+        } catch(IOException ex) {
+            error = new XmlPullParserException("could not read input", null, ex);
+        } catch(RuntimeException ex) {
+            error = new XmlPullParserException("could not start worker", null, ex);
+        }
+        finishSplit(gen, error);
+    }
+
+    private synchronized void finishSplit(int gen, XmlPullParserException error)
+    {
+        if(gen != generation) return;
+        splitting = false;
+        splitDone = true;
+        splitError = error;
+        if(idleParsers.size() == threads) {
+            // no worker is running to parse queued records (worker task could not be started)
+            for (int i = 0; i < queue.size(); i++) inFlight.removeElement(queue.elementAt(i));
+            queue.removeAllElements();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Queue record for workers (and start worker if some parser is idle),
+     * return false if parsing was stopped or splitter paused.
+     */
+    private boolean submit(int gen, Record r, long next, int nextIndex)
+    {
+        XmlPullParser pp = null;
+        synchronized(this) {
+            if(gen != generation) return false;
+            inFlight.addElement(r);
+            queue.addElement(r);
+            notifyAll();
+            if(!idleParsers.isEmpty()) {
+                pp = (XmlPullParser) idleParsers.lastElement();
+                idleParsers.removeElementAt(idleParsers.size() - 1);
+            }
+        }
+        if(pp != null) startWorker(gen, pp);
+        synchronized(this) {
+            if(gen != generation) return false;
+            if(inFlight.size() >= threads * MAX_RECORDS_IN_FLIGHT_PER_THREAD) {
+                // task finishes instead of waiting for caller, nextResult() starts it again
+                splitPosition = next;
+                splitIndex = nextIndex;
+                splitting = false;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true if all input was split, false if parsing was stopped or splitter paused. */
+    private boolean split(int gen) throws XmlPullParserException, IOException
+    {
+        final Source in;
+        long p;
+        int index;
+        final boolean started;
+        synchronized(this) {
+            if(gen != generation) return false;
+            in = source;
+            p = splitPosition;
+            index = splitIndex;
+            started = recordPrefix != null;
+        }
+        final long end = in.end;
+        if(!started) {
+            p = splitRoot(gen, in, p);
+            if(p < 0) return p == -1; // empty root element or parsing was stopped
+        }
+        // every child element of root element is record
+        while(true) {
+            while(p < end && in.get(p) != '<') ++p;
+            if(p == end) throw error("unexpected end of input, expected end of root element", p);
+            if(startsWith(in, p, end, "</")) {
+                return true;
+            } else if(startsWith(in, p, end, "<!--")) {
+                p = skipPast(in, p + 4, end, "-->");
+            } else if(startsWith(in, p, end, "<![CDATA[")) {
+                p = skipPast(in, p + 9, end, "]]>");
+            } else if(startsWith(in, p, end, "<?")) {
+                p = skipPast(in, p + 2, end, "?>");
+            } else {
+                final Record r = new Record();
+                r.index = index++;
+                r.offset = p;
+                final long start = p;
+                p = skipElement(in, p, end);
+                r.content = in.open(start, p);
+                if(!submit(gen, r, p, index)) return false;
+            }
+        }
+    }
+
+    /**
+     * Skip prolog and root start tag and set record prefix and suffix. Return position after
+     * root start tag, -1 if root element is empty or -2 if parsing was stopped.
+     */
+    private long splitRoot(int gen, Source in, long p) throws XmlPullParserException, IOException
+    {
+        final long end = in.end;
+        if(end - p >= 3 && in.get(p) == (byte)0xEF && in.get(p + 1) == (byte)0xBB
+               && in.get(p + 2) == (byte)0xBF)
+        {
+            p += 3;
+        }
+        // XML declaration, comments, PIs and DOCTYPE before root element
+        while(true) {
+            p = skipWhitespace(in, p, end);
+            if(p == end) throw error("no root element found", p);
+            if(in.get(p) != '<') throw error("only whitespace content allowed before root element", p);
+            if(startsWith(in, p, end, "<?")) {
+                p = skipPast(in, p + 2, end, "?>");
+            } else if(startsWith(in, p, end, "<!--")) {
+                p = skipPast(in, p + 4, end, "-->");
+            } else if(startsWith(in, p, end, "<!DOCTYPE")) {
+                p = skipDocdecl(in, p + 9, end);
+            } else {
+                break;
+            }
+        }
+        // start tag of root element is copied without attributes other than namespace declarations
+        final ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        final ByteArrayOutputStream suffix = new ByteArrayOutputStream();
+        final long nameStart = p + 1;
+        p = nameStart;
+        while(p < end && !isWhitespace(in.get(p)) && in.get(p) != '>' && in.get(p) != '/') ++p;
+        if(p == nameStart) throw error("root element name expected", p);
+        prefix.write('<');
+        copy(in, nameStart, p, prefix);
+        suffix.write('<');
+        suffix.write('/');
+        copy(in, nameStart, p, suffix);
+        suffix.write('>');
+        while(true) {
+            p = skipWhitespace(in, p, end);
+            if(p == end) throw error("unexpected end of input in root start tag", p);
+            if(in.get(p) == '>') {
+                ++p;
+                break;
+            } else if(in.get(p) == '/') {
+                return -1; // empty root element
+            }
+            final long attrStart = p;
+            while(p < end && !isWhitespace(in.get(p)) && in.get(p) != '=') ++p;
+            final boolean nsDecl = startsWith(in, attrStart, end, "xmlns")
+                && (p - attrStart == 5 || in.get(attrStart + 5) == ':');
+            p = skipWhitespace(in, p, end);
+            if(p == end || in.get(p) != '=') throw error("expected = after attribute name", p);
+            p = skipWhitespace(in, p + 1, end);
+            if(p == end || (in.get(p) != '"' && in.get(p) != '\'')) {
+                throw error("expected quote to start attribute value", p);
+            }
+            final byte quote = in.get(p);
+            ++p;
+            while(p < end && in.get(p) != quote) ++p;
+            if(p == end) throw error("unexpected end of input in attribute value", p);
+            ++p;
+            if(nsDecl) {
+                prefix.write(' ');
+                copy(in, attrStart, p, prefix);
+            }
+        }
+        prefix.write('>');
+        synchronized(this) {
+            if(gen != generation) return -2;
+            recordPrefix = prefix.toByteArray();
+            recordSuffix = suffix.toByteArray();
+        }
+        return p;
+    }
+
+    /** Return position after end of element that starts at p. */
+    private long skipElement(Source in, long p, long end)
+        throws XmlPullParserException, IOException
+    {
+        int level = 0;
+        while(true) {
+            if(p + 1 >= end) throw error("unexpected end of input in record", p);
+            final byte b = in.get(p + 1);
+            if(b == '/') {
+                p = skipTag(in, p + 2, end);
+                if(--level == 0) return p;
+            } else if(b == '!') {
+                if(startsWith(in, p, end, "<!--")) {
+                    p = skipPast(in, p + 4, end, "-->");
+                } else if(startsWith(in, p, end, "<![CDATA[")) {
+                    p = skipPast(in, p + 9, end, "]]>");
+                } else {
+                    p = skipTag(in, p + 2, end);
+                }
+            } else if(b == '?') {
+                p = skipPast(in, p + 2, end, "?>");
+            } else {
+                p = skipTag(in, p + 1, end);
+                if(in.get(p - 2) != '/') {
+                    ++level;
+                } else if(level == 0) {
+                    return p;
+                }
+            }
+            while(p < end && in.get(p) != '<') ++p;
+        }
+    }
+
+    /** Return position after '>' that ends tag (byte before '>' is '/' for empty tag). */
+    private long skipTag(Source in, long p, long end)
+        throws XmlPullParserException, IOException
+    {
+        byte quote = 0;
+        for (; p < end; ++p)
+        {
+            final byte b = in.get(p);
+            if(quote != 0) {
+                if(b == quote) quote = 0;
+            } else if(b == '"' || b == '\'') {
+                quote = b;
+            } else if(b == '>') {
+                return p + 1;
+            }
+        }
+        throw error("unexpected end of input in tag", p);
+    }
+
+    /** Return position after '>' that ends DOCTYPE (internal subset may contain '>'). */
+    private long skipDocdecl(Source in, long p, long end)
+        throws XmlPullParserException, IOException
+    {
+        byte quote = 0;
+        boolean internalSubset = false;
+        for (; p < end; ++p)
+        {
+            final byte b = in.get(p);
+            if(quote != 0) {
+                if(b == quote) quote = 0;
+            } else if(b == '"' || b == '\'') {
+                quote = b;
+            } else if(internalSubset) {
+                if(b == ']') internalSubset = false;
+                else if(startsWith(in, p, end, "<!--")) p = skipPast(in, p + 4, end, "-->") - 1;
+            } else if(b == '[') {
+                internalSubset = true;
+            } else if(b == '>') {
+                return p + 1;
+            }
+        }
+        throw error("unexpected end of input in DOCTYPE", p);
+    }
+
+    private long skipPast(Source in, long p, long end, String s)
+        throws XmlPullParserException, IOException
+    {
+        final byte first = (byte) s.charAt(0);
+        for (; p < end; ++p)
+        {
+            if(in.get(p) == first && startsWith(in, p, end, s)) return p + s.length();
+        }
+        throw error("unexpected end of input, expected "+s, p);
+    }
+
+    private static boolean startsWith(Source in, long p, long end, String s) throws IOException
+    {
+        final int len = s.length();
+        if(end - p < len) return false;
+        for (int i = 0; i < len; i++)
+        {
+            if(in.get(p + i) != (byte) s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static long skipWhitespace(Source in, long p, long end) throws IOException
+    {
+        while(p < end && isWhitespace(in.get(p))) ++p;
+        return p;
+    }
+
+    private static boolean isWhitespace(byte b)
+    {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static void copy(Source in, long start, long end, ByteArrayOutputStream out)
+        throws IOException
+    {
+        for (long i = start; i < end; i++)
+        {
+            out.write(in.get(i));
+        }
+    }
+
+    /**
+     * Input bytes addressed by offset, file is mapped in windows when bytes
+     * outside of current window are needed.
+     */
+    private static class Source
+    {
+        private final FileChannel channel;
+        private final int windowSize;
+        final long start;
+        final long end;
+        private ByteBuffer window;
+        private long windowStart;
+        private long windowEnd;
+
+        Source(ByteBuffer buffer) {
+            this.channel = null;
+            this.windowSize = 0;
+            this.start = buffer.position();
+            this.end = buffer.limit();
+            this.window = buffer;
+            this.windowEnd = end;
+        }
+
+        Source(FileChannel channel, long position, long size, int windowSize) {
+            this.channel = channel;
+            this.windowSize = windowSize;
+            this.start = position;
+            this.end = position + size;
+            this.windowStart = this.windowEnd = position;
+        }
+
+        byte get(long p) throws IOException
+        {
+            if(p < windowStart || p >= windowEnd) map(p);
+            return window.get((int) (p - windowStart));
+        }
+
+        private void map(long p) throws IOException
+        {
+            // window starts a bit before p as splitter looks back at end of tag
+            final long from = Math.max(start, p - windowSize / 4);
+            final long len = Math.min(windowSize, end - from);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, from, len);
+            windowStart = from;
+            windowEnd = from + len;
+        }
+
+        /** Return stream of bytes of record, record outside of current window is mapped again. */
+        InputStream open(long from, long to)
+        {
+            if(from >= windowStart && to <= windowEnd) {
+                final ByteBuffer content = window.duplicate();
+                content.limit((int) (to - windowStart));
+                content.position((int) (from - windowStart));
+                return new MappedInput.MappedStream(content);
+            }
+            return new MappedInput.MappedStream(channel, from, to - from, windowSize);
+        }
+    }
+
+    private static boolean isAsciiCompatible(String enc)
+    {
+        return XmlPullParserImpl.isUtf8(enc)
+            || "US-ASCII".equalsIgnoreCase(enc) || "ASCII".equalsIgnoreCase(enc)
+            || "ISO-8859-1".equalsIgnoreCase(enc) || "ISO8859_1".equalsIgnoreCase(enc);
+    }
+
+    private static XmlPullParserException error(String msg, long offset)
+    {
+        return new XmlPullParserException(msg+" (at byte offset "+offset+")");
+    }
+
+}
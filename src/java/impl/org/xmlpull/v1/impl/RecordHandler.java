@@ -0,0 +1,26 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.impl;
+
+import java.io.IOException;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Process one record found by {@link ParallelRecordParser}.
+ * It is called concurrently from multiple threads, each thread with its own parser.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public interface RecordHandler
+{
+    /**
+     * Parser is positioned on START_TAG of record element that is inside of
+     * element with the same name and namespace declarations as document root element.
+     * Returned object is result of the record (handler does not need to read
+     * whole record).
+     */
+    public Object processRecord(XmlPullParser pp) throws XmlPullParserException, IOException;
+}
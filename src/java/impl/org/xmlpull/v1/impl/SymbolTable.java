@@ -0,0 +1,94 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.impl;
+
+/**
+ * Table of interned names shared by all parsers that have feature
+ * <a href="http://xmlpull.org/v1/doc/features.html#names-interned">names-interned</a> enabled.
+ *
+ * <p>Every String returned is String.intern()'ed so names returned by
+ * parser can be compared with == to String constants.
+ * Table is only a cache in front of String.intern() and it is read much more often
+ * than modified so it is not synchronized: new symbols are stored in empty slots
+ * and table is replaced with bigger copy when half full. When two threads add
+ * symbols at the same time one of them may be lost (or stored twice) which only
+ * means that it will be looked up again - returned instance is always the
+ * same as it comes from String.intern().
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+final class SymbolTable
+{
+    // protection against unbounded growth for documents with random names
+    private final static int MAX_SYMBOLS = 64 * 1024;
+
+    private static final SymbolTable shared = new SymbolTable();
+
+    // hash of symbol is String.hashCode() so no separate array of hashes is needed
+    private volatile String[] symbols = new String[1024];
+    private int symbolCount; // approximate when modified concurrently
+
+    private SymbolTable() {}
+
+    static SymbolTable getShared() {
+        return shared;
+    }
+
+    /**
+     * Return interned String for characters in buffer.
+     * Hash must be computed in the same way as String.hashCode().
+     */
+    String symbol(char[] b, int start, int len, int h) {
+        final String[] table = symbols;
+        final int mask = table.length - 1;
+        int i = h & mask;
+        String s;
+        // lost updates of symbolCount could make table full so number of probes is limited
+        for (int probes = 0; probes < table.length; probes++)
+        {
+            s = table[i];
+            if(s == null) {
+                s = new String(b, start, len).intern();
+                if(symbolCount < MAX_SYMBOLS) {
+                    table[i] = s;
+                    if(++symbolCount * 2 > table.length) rehash(table);
+                }
+                return s;
+            }
+            if(s.hashCode() == h && s.length() == len && matches(s, b, start, len)) {
+                return s;
+            }
+            i = (i + 1) & mask;
+        }
+        return new String(b, start, len).intern();
+    }
+
+    private static boolean matches(String s, char[] b, int start, int len) {
+        for (int i = 0; i < len; i++)
+        {
+            if(s.charAt(i) != b[start + i]) return false;
+        }
+        return true;
+    }
+
+    private void rehash(String[] oldSymbols) {
+        if(oldSymbols != symbols) return; // already replaced by other thread
+        final int size = oldSymbols.length * 2;
+        final int mask = size - 1;
+        final String[] table = new String[size];
+        int count = 0;
+        for (int j = 0; j < oldSymbols.length; j++)
+        {
+            final String s = oldSymbols[j];
+            if(s == null) continue;
+            int i = s.hashCode() & mask;
+            while(table[i] != null) i = (i + 1) & mask;
+            table[i] = s;
+            ++count;
+        }
+        symbolCount = count;
+        symbols = table; // table is published only after it was filled
+    }
+
+}
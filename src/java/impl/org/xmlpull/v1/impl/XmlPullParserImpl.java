@@ -0,0 +1,2689 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Reference implementation of XmlPull API designed for throughput.
+ *
+ * <p>All input is kept in one growable <code>char[]</code> buffer.
+ * Text, CDATA, comments, processing instructions and attribute values are
+ * normalized in place (end-of-line handling and entity replacement) so
+ * {@link #getTextCharacters} returns the parser buffer itself and String
+ * is only created when getText() or getAttributeValue() is called.
+ * Element, attribute and prefix names and namespace URIs are taken from
+ * a per parser symbol table so after parser "warmed up" on given
+ * vocabulary no objects are allocated per event.
+ * When feature names-interned is enabled symbol table shared by all parsers
+ * is used instead and all names, prefixes and namespace URIs are
+ * String.intern()'ed so they can be compared with == (for example
+ * <code>pp.getName() == "item"</code>).
+ *
+ * <p>Buffer is compacted only between events so all positions recorded
+ * for current event stay valid until next() or nextToken() is called.
+ *
+ * <p>When input stream is in UTF-8 (declared, detected or default) bytes are
+ * decoded by parser directly into its buffer (ASCII bytes are just copied)
+ * instead of going through InputStreamReader.
+ *
+ * <p>Parser can also be used without blocking: after setPushInput() input is
+ * given to parser in chunks with feedInput() and next() returns
+ * {@link #NEED_MORE_INPUT} until whole next event was received
+ * (call endOfInput() when there is no more input).
+ *
+ * <p>Supported features: process-namespaces, report-namespace-prefixes and names-interned.
+ * Supported properties: xmldecl-version, xmldecl-standalone, xmldecl-content,
+ * location, buffer-size (setting it resets parser and shrinks its buffers
+ * if they are bigger than given number of bytes) and entity-expansion-limit (maximal number
+ * of characters replaced for references to defined entities in one document). DOCDECL is reported by nextToken() but internal subset
+ * is not processed (use defineEntityReplacementText() for entities).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class XmlPullParserImpl implements XmlPullParser
+{
+    /**
+     * Returned by next() and nextToken() when input is fed with feedInput()
+     * and whole next event is not available yet (it is not an event type -
+     * getEventType() still returns previous event that can be accessed as usual).
+     */
+    public final static int NEED_MORE_INPUT = -1;
+
+    private final static String XML_URI = "http://www.w3.org/XML/1998/namespace";
+    private final static String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+    private final static String FEATURE_NAMES_INTERNED =
+        "http://xmlpull.org/v1/doc/features.html#names-interned";
+
+    private final static String PROPERTY_XMLDECL_VERSION =
+        "http://xmlpull.org/v1/doc/properties.html#xmldecl-version";
+    private final static String PROPERTY_XMLDECL_STANDALONE =
+        "http://xmlpull.org/v1/doc/properties.html#xmldecl-standalone";
+    private final static String PROPERTY_XMLDECL_CONTENT =
+        "http://xmlpull.org/v1/doc/properties.html#xmldecl-content";
+    private final static String PROPERTY_LOCATION =
+        "http://xmlpull.org/v1/doc/properties.html#location";
+    private final static String PROPERTY_BUFFER_SIZE =
+        "http://xmlpull.org/v1/doc/properties.html#buffer-size";
+    private final static String PROPERTY_ENTITY_EXPANSION_LIMIT =
+        "http://xmlpull.org/v1/doc/properties.html#entity-expansion-limit";
+
+    private final static int BUF_SIZE = 8 * 1024;
+    // protection against unbounded growth of symbol table for documents with random names
+    private final static int MAX_SYMBOLS = 8 * 1024;
+
+    // character classes for ASCII (non ASCII chars are accepted in names)
+    private final static byte NAME_START = 1;
+    private final static byte NAME = 2;
+    private final static byte WS = 4;
+    private final static byte[] CHAR_CLASS = new byte[128];
+    static {
+        for (char ch = 'a'; ch <= 'z'; ++ch) CHAR_CLASS[ch] = NAME_START | NAME;
+        for (char ch = 'A'; ch <= 'Z'; ++ch) CHAR_CLASS[ch] = NAME_START | NAME;
+        for (char ch = '0'; ch <= '9'; ++ch) CHAR_CLASS[ch] = NAME;
+        CHAR_CLASS['_'] = NAME_START | NAME;
+        CHAR_CLASS[':'] = NAME_START | NAME;
+        CHAR_CLASS['-'] = NAME;
+        CHAR_CLASS['.'] = NAME;
+        CHAR_CLASS[' '] = WS;
+        CHAR_CLASS['\t'] = WS;
+        CHAR_CLASS['\n'] = WS;
+        CHAR_CLASS['\r'] = WS;
+    }
+
+    // kinds of entity references
+    private final static int ENTITY_UNRESOLVED = 0;
+    private final static int ENTITY_CHAR = 1;
+    private final static int ENTITY_TEXT = 2;
+
+    // features
+    private boolean processNamespaces;
+    private boolean reportNsAttribs;
+    private SymbolTable sharedSymbols; // set when names are interned
+
+    // input
+    private Reader reader;
+    private InputStream inputStream; // set until encoding is detected
+    private InputStream utf8Input; // used instead of reader for UTF-8 input
+    private byte[] byteBuf;
+    private int byteStart;
+    private int byteEnd;
+    private boolean pushInput; // input is fed by feedInput()
+    private boolean pushClosed;
+
+    // state of isEventAvailable() kept while more input is needed so fed input is scanned once
+    private int scanStart = -1; // pos for which state was kept (-1 if there is no state)
+    private boolean scanTokenize;
+    private int scanPos; // where scanning continues
+    private boolean scanSeenText;
+    private int scanMarkup = -1; // start of markup or reference that is not complete yet
+    private boolean scanXmlDecl; // markup is XML declaration (it is not an event)
+    private int scanMarkupPos; // where scanning of markup continues
+    private char scanQuote;
+    private int scanBrackets; // level of '[' in DOCTYPE
+    private int scanNested; // in DOCTYPE internal subset: 1 inside comment, 2 inside PI
+    private String inputEncoding;
+    private String location;
+
+    private char[] buf = new char[BUF_SIZE];
+    private int bufEnd;
+    private int pos;
+    private boolean eof;
+    private int lineNumber;
+    private int lineStart;
+
+    // current event
+    private int eventType;
+    private boolean atDocumentStart;
+    private boolean seenRoot;
+    private boolean seenDocdecl;
+    private boolean emptyElementTag;
+    private int posStart;
+    private int posEnd;
+    private String text;
+
+    // element stack
+    private int depth;
+    private String[] elRawName = new String[16];
+    private String[] elName = new String[16];
+    private String[] elPrefix = new String[16];
+    private String[] elUri = new String[16];
+    private int[] elNsCount = new int[16];
+
+    // namespace stack
+    private int nsEnd;
+    private String[] nsPrefix = new String[8];
+    private String[] nsUri = new String[8];
+
+    // attributes of current start tag (values are kept in buffer)
+    private int attrCount;
+    private String[] attrRawName = new String[8];
+    private String[] attrName = new String[8];
+    private String[] attrPrefix = new String[8];
+    private String[] attrUri = new String[8];
+    private String[] attrValue = new String[8];
+    private int[] attrNameStart = new int[8];
+    private int[] attrValueStart = new int[8];
+    private int[] attrValueEnd = new int[8];
+
+    // entities
+    private int entityEnd;
+    private String[] entityName = new String[4];
+    private String[] entityReplacement = new String[4];
+    private int entityKind;
+    private String entityValue;
+    private String entityRefName;
+    private char[] charRef = new char[2];
+    private int charRefLen;
+    private int maxEntityExpansion = -1; // no limit
+    private long entityExpansion; // characters of defined entities replaced in this document
+
+    // XML declaration
+    private String xmlDeclVersion;
+    private Boolean xmlDeclStandalone;
+    private String xmlDeclContent;
+
+    // symbol table
+    private String[] symbols = new String[256];
+    private int[] symbolHashes = new int[256];
+    private int symbolCount;
+    private int nameHash;
+
+    public XmlPullParserImpl() {
+        reset();
+    }
+
+    private void reset() {
+        reader = null;
+        inputStream = null;
+        utf8Input = null;
+        byteStart = byteEnd = 0;
+        pushInput = false;
+        pushClosed = false;
+        scanStart = -1;
+        inputEncoding = null;
+        location = null;
+        bufEnd = 0;
+        pos = 0;
+        eof = false;
+        lineNumber = 1;
+        lineStart = 0;
+        eventType = START_DOCUMENT;
+        atDocumentStart = true;
+        seenRoot = false;
+        seenDocdecl = false;
+        emptyElementTag = false;
+        posStart = posEnd = 0;
+        text = null;
+        depth = 0;
+        elNsCount[0] = 0;
+        nsEnd = 0;
+        attrCount = -1;
+        entityEnd = 0;
+        entityValue = null;
+        entityRefName = null;
+        entityExpansion = 0;
+        xmlDeclVersion = null;
+        xmlDeclStandalone = null;
+        xmlDeclContent = null;
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // features, properties and input
+
+    public void setFeature(String name, boolean state) throws XmlPullParserException
+    {
+        if(name == null) throw new IllegalArgumentException("feature name should not be null");
+        if(FEATURE_PROCESS_NAMESPACES.equals(name)) {
+            if(eventType != START_DOCUMENT) throw new XmlPullParserException(
+                    "namespace processing feature can only be changed before parsing", this, null);
+            processNamespaces = state;
+        } else if(FEATURE_REPORT_NAMESPACE_ATTRIBUTES.equals(name)) {
+            if(eventType != START_DOCUMENT) throw new XmlPullParserException(
+                    "namespace reporting feature can only be changed before parsing", this, null);
+            reportNsAttribs = state;
+        } else if(FEATURE_NAMES_INTERNED.equals(name)) {
+            if(eventType != START_DOCUMENT) throw new XmlPullParserException(
+                    "names interning feature can only be changed before parsing", this, null);
+            sharedSymbols = state ? SymbolTable.getShared() : null;
+        } else if(state) {
+            throw new XmlPullParserException("unsupported feature "+name);
+        }
+    }
+
+    public boolean getFeature(String name)
+    {
+        if(name == null) throw new IllegalArgumentException("feature name should not be null");
+        if(FEATURE_PROCESS_NAMESPACES.equals(name)) {
+            return processNamespaces;
+        } else if(FEATURE_REPORT_NAMESPACE_ATTRIBUTES.equals(name)) {
+            return reportNsAttribs;
+        } else if(FEATURE_NAMES_INTERNED.equals(name)) {
+            return sharedSymbols != null;
+        }
+        return false;
+    }
+
+    public void setProperty(String name, Object value) throws XmlPullParserException
+    {
+        if(PROPERTY_LOCATION.equals(name)) {
+            location = (String) value;
+        } else if(PROPERTY_BUFFER_SIZE.equals(name)) {
+            if(!(value instanceof Integer)) throw new XmlPullParserException(
+                    "buffer size must be Integer and not "+value);
+            trim(((Integer) value).intValue());
+        } else if(PROPERTY_ENTITY_EXPANSION_LIMIT.equals(name)) {
+            if(!(value instanceof Integer)) throw new XmlPullParserException(
+                    "entity expansion limit must be Integer and not "+value);
+            maxEntityExpansion = ((Integer) value).intValue();
+        } else {
+            throw new XmlPullParserException("unsupported property: '"+name+"'");
+        }
+    }
+
+    public Object getProperty(String name)
+    {
+        if(name == null) throw new IllegalArgumentException("property name should not be null");
+        if(PROPERTY_XMLDECL_VERSION.equals(name)) {
+            return xmlDeclVersion;
+        } else if(PROPERTY_XMLDECL_STANDALONE.equals(name)) {
+            return xmlDeclStandalone;
+        } else if(PROPERTY_XMLDECL_CONTENT.equals(name)) {
+            return xmlDeclContent;
+        } else if(PROPERTY_LOCATION.equals(name)) {
+            return location;
+        } else if(PROPERTY_BUFFER_SIZE.equals(name)) {
+            return new Integer(2 * buf.length + (byteBuf != null ? byteBuf.length : 0));
+        } else if(PROPERTY_ENTITY_EXPANSION_LIMIT.equals(name)) {
+            return new Integer(maxEntityExpansion);
+        }
+        return null;
+    }
+
+    /**
+     * Reset parser, forget strings from previous input and if buffers are
+     * bigger than maxSize bytes replace them with buffers of default size.
+     */
+    private void trim(int maxSize)
+    {
+        reset();
+        for (int i = 0; i < attrValue.length; i++) attrValue[i] = null;
+        for (int i = 0; i < entityName.length; i++)
+        {
+            entityName[i] = null;
+            entityReplacement[i] = null;
+        }
+        if(2 * buf.length + (byteBuf != null ? byteBuf.length : 0) > maxSize) {
+            if(buf.length > BUF_SIZE) buf = new char[BUF_SIZE];
+            if(byteBuf != null && byteBuf.length > BUF_SIZE) byteBuf = null; // created again when needed
+        }
+    }
+
+    public void setInput(Reader in) throws XmlPullParserException
+    {
+        reset();
+        reader = in;
+    }
+
+    public void setInput(InputStream inputStream, String inputEncoding)
+        throws XmlPullParserException
+    {
+        if(inputStream == null) {
+            throw new IllegalArgumentException("input stream can not be null");
+        }
+        reset();
+        if(isUtf8(inputEncoding)) {
+            utf8Input = inputStream;
+            this.inputEncoding = inputEncoding;
+        } else if(inputEncoding != null) {
+            try {
+                reader = new InputStreamReader(inputStream, inputEncoding);
+            } catch (UnsupportedEncodingException ex) {
+                throw new XmlPullParserException(
+                    "could not create reader for encoding "+inputEncoding, this, ex);
+            }
+            this.inputEncoding = inputEncoding;
+        } else {
+            // encoding is detected when input is read first time
+            this.inputStream = inputStream;
+        }
+    }
+
+    /**
+     * Prepare parser for input that will be fed in chunks with feedInput()
+     * (only UTF-8 is supported and it is used when inputEncoding is null).
+     */
+    public void setPushInput(String inputEncoding) throws XmlPullParserException
+    {
+        if(inputEncoding != null && !isUtf8(inputEncoding)
+               && !"US-ASCII".equalsIgnoreCase(inputEncoding))
+        {
+            throw new XmlPullParserException(
+                "only UTF-8 is supported for pushed input and not "+inputEncoding, this, null);
+        }
+        reset();
+        pushInput = true;
+        this.inputEncoding = inputEncoding != null ? inputEncoding : "UTF-8";
+        if(byteBuf == null) byteBuf = new byte[BUF_SIZE];
+    }
+
+    /**
+     * Give next chunk of input to parser (setPushInput() must be called first).
+     * Bytes are decoded immediately so passed array can be reused after this method returns.
+     */
+    public void feedInput(byte[] b, int off, int len) throws XmlPullParserException
+    {
+        if(!pushInput) throw new XmlPullParserException(
+                "setPushInput() must be called before input can be fed", this, null);
+        if(pushClosed) throw new XmlPullParserException(
+                "no more input can be fed after endOfInput()", this, null);
+        ensureFeedCapacity(len);
+        System.arraycopy(b, off, byteBuf, byteEnd, len);
+        byteEnd += len;
+        decodeFedInput();
+    }
+
+    /**
+     * Give remaining content of buffer to parser as next chunk of input (setPushInput()
+     * must be called first) and move buffer position to its limit.
+     * This method requires JDK 1.4 NIO (parser does not use it otherwise).
+     */
+    public void feedInput(java.nio.ByteBuffer chunk) throws XmlPullParserException
+    {
+        if(!pushInput) throw new XmlPullParserException(
+                "setPushInput() must be called before input can be fed", this, null);
+        if(pushClosed) throw new XmlPullParserException(
+                "no more input can be fed after endOfInput()", this, null);
+        final int len = chunk.remaining();
+        ensureFeedCapacity(len);
+        chunk.get(byteBuf, byteEnd, len);
+        byteEnd += len;
+        decodeFedInput();
+    }
+
+    private void ensureFeedCapacity(int len)
+    {
+        final int remaining = byteEnd - byteStart;
+        if(remaining + len > byteBuf.length) {
+            final byte[] newBuf = new byte[Math.max(byteBuf.length * 2, remaining + len)];
+            System.arraycopy(byteBuf, byteStart, newBuf, 0, remaining);
+            byteBuf = newBuf;
+        } else if(byteStart > 0) {
+            System.arraycopy(byteBuf, byteStart, byteBuf, 0, remaining);
+        }
+        byteStart = 0;
+        byteEnd = remaining;
+    }
+
+    private void decodeFedInput() throws XmlPullParserException
+    {
+        // there is never more chars than bytes so all complete sequences are decoded in one pass
+        final int needed = bufEnd + byteEnd + 1;
+        if(needed > buf.length) {
+            final char[] newBuf = new char[Math.max(buf.length * 2, needed)];
+            System.arraycopy(buf, 0, newBuf, 0, bufEnd);
+            buf = newBuf;
+        }
+        decodeUtf8();
+    }
+
+    /** Signal that all input was fed (next() will report END_DOCUMENT or error). */
+    public void endOfInput() throws XmlPullParserException
+    {
+        if(!pushInput) throw new XmlPullParserException(
+                "setPushInput() must be called before end of input", this, null);
+        pushClosed = true;
+    }
+
+    public String getInputEncoding()
+    {
+        return inputEncoding;
+    }
+
+    public void defineEntityReplacementText(String entityName, String replacementText)
+        throws XmlPullParserException
+    {
+        if(entityName == null || replacementText == null) {
+            throw new IllegalArgumentException("entity name and replacement text must be not null");
+        }
+        for (int i = 0; i < entityEnd; i++)
+        {
+            if(entityName.equals(this.entityName[i])) {
+                entityReplacement[i] = replacementText;
+                return;
+            }
+        }
+        if(entityEnd >= this.entityName.length) {
+            this.entityName = grow(this.entityName, entityEnd);
+            entityReplacement = grow(entityReplacement, entityEnd);
+        }
+        this.entityName[entityEnd] = entityName;
+        entityReplacement[entityEnd] = replacementText;
+        ++entityEnd;
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // namespaces
+
+    public int getNamespaceCount(int depth) throws XmlPullParserException
+    {
+        if(depth < 0 || depth > this.depth) {
+            throw new IllegalArgumentException(
+                "depth "+depth+" must be between 0 and current depth "+this.depth);
+        }
+        return elNsCount[depth];
+    }
+
+    public String getNamespacePrefix(int pos) throws XmlPullParserException
+    {
+        if(pos < 0 || pos >= nsEnd) {
+            throw new XmlPullParserException(
+                "namespace position "+pos+" must be less than "+nsEnd, this, null);
+        }
+        return nsPrefix[pos];
+    }
+
+    public String getNamespaceUri(int pos) throws XmlPullParserException
+    {
+        if(pos < 0 || pos >= nsEnd) {
+            throw new XmlPullParserException(
+                "namespace position "+pos+" must be less than "+nsEnd, this, null);
+        }
+        return nsUri[pos];
+    }
+
+    public String getNamespace(String prefix)
+    {
+        if(prefix != null) {
+            if("xml".equals(prefix)) {
+                return XML_URI;
+            } else if("xmlns".equals(prefix)) {
+                return XMLNS_URI;
+            }
+            for (int i = nsEnd - 1; i >= 0; i--)
+            {
+                if(prefix.equals(nsPrefix[i])) return nsUri[i];
+            }
+        } else {
+            for (int i = nsEnd - 1; i >= 0; i--)
+            {
+                if(nsPrefix[i] == null) return nsUri[i];
+            }
+        }
+        return null;
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // current event
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    public String getPositionDescription()
+    {
+        StringBuffer sb = new StringBuffer(TYPES[eventType]);
+        if(eventType == START_TAG) {
+            sb.append(" <").append(elRawName[depth]).append(emptyElementTag ? "/>" : ">");
+        } else if(eventType == END_TAG) {
+            sb.append(" </").append(elRawName[depth]).append('>');
+        } else if(eventType == ENTITY_REF) {
+            sb.append(" &").append(entityRefName).append(';');
+        }
+        sb.append(" @").append(getLineNumber()).append(':').append(getColumnNumber());
+        if(location != null) {
+            sb.append(" in ").append(location);
+        } else if(reader != null) {
+            sb.append(" in ").append(reader.toString());
+        }
+        return sb.toString();
+    }
+
+    public int getLineNumber()
+    {
+        return lineNumber;
+    }
+
+    public int getColumnNumber()
+    {
+        int column = pos - lineStart;
+        return column < 0 ? 0 : column;
+    }
+
+    public boolean isWhitespace() throws XmlPullParserException
+    {
+        if(eventType == TEXT || eventType == CDSECT) {
+            final char[] b = buf;
+            for (int i = posStart; i < posEnd; i++)
+            {
+                final char ch = b[i];
+                if(ch > ' ' || (CHAR_CLASS[ch] & WS) == 0) return false;
+            }
+            return true;
+        } else if(eventType == IGNORABLE_WHITESPACE) {
+            return true;
+        }
+        throw new XmlPullParserException(
+            "no content available to check for whitespaces", this, null);
+    }
+
+    public String getText()
+    {
+        if(eventType == START_DOCUMENT || eventType == END_DOCUMENT
+               || eventType == START_TAG || eventType == END_TAG)
+        {
+            return null;
+        } else if(eventType == ENTITY_REF) {
+            if(entityKind == ENTITY_CHAR && entityValue == null) {
+                entityValue = new String(charRef, 0, charRefLen);
+            }
+            return entityValue;
+        }
+        if(text == null) {
+            text = new String(buf, posStart, posEnd - posStart);
+        }
+        return text;
+    }
+
+    public char[] getTextCharacters(int [] holderForStartAndLength)
+    {
+        if(eventType == START_DOCUMENT || eventType == END_DOCUMENT
+               || eventType == START_TAG || eventType == END_TAG)
+        {
+            holderForStartAndLength[0] = -1;
+            holderForStartAndLength[1] = -1;
+            return null;
+        }
+        holderForStartAndLength[0] = posStart;
+        holderForStartAndLength[1] = posEnd - posStart;
+        return buf;
+    }
+
+    public String getNamespace()
+    {
+        if(eventType == START_TAG || eventType == END_TAG) {
+            return processNamespaces ? elUri[depth] : NO_NAMESPACE;
+        }
+        return null;
+    }
+
+    public String getName()
+    {
+        if(eventType == START_TAG || eventType == END_TAG) {
+            return elName[depth];
+        } else if(eventType == ENTITY_REF) {
+            return entityRefName;
+        }
+        return null;
+    }
+
+    public String getPrefix()
+    {
+        if(eventType == START_TAG || eventType == END_TAG) {
+            return elPrefix[depth];
+        }
+        return null;
+    }
+
+    public boolean isEmptyElementTag() throws XmlPullParserException
+    {
+        if(eventType != START_TAG) throw new XmlPullParserException(
+                "parser must be on START_TAG to check for empty element", this, null);
+        return emptyElementTag;
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // attributes
+
+    public int getAttributeCount()
+    {
+        if(eventType != START_TAG) return -1;
+        return attrCount;
+    }
+
+    private void checkAttributeIndex(int index) {
+        if(eventType != START_TAG) throw new IndexOutOfBoundsException(
+                "only START_TAG can have attributes");
+        if(index < 0 || index >= attrCount) throw new IndexOutOfBoundsException(
+                "attribute position must be 0.."+(attrCount-1)+" and not "+index);
+    }
+
+    public String getAttributeNamespace(int index)
+    {
+        checkAttributeIndex(index);
+        return processNamespaces ? attrUri[index] : NO_NAMESPACE;
+    }
+
+    public String getAttributeName(int index)
+    {
+        checkAttributeIndex(index);
+        return attrName[index];
+    }
+
+    public String getAttributePrefix(int index)
+    {
+        checkAttributeIndex(index);
+        return attrPrefix[index];
+    }
+
+    public String getAttributeType(int index)
+    {
+        checkAttributeIndex(index);
+        return "CDATA";
+    }
+
+    public boolean isAttributeDefault(int index)
+    {
+        checkAttributeIndex(index);
+        return false;
+    }
+
+    public String getAttributeValue(int index)
+    {
+        checkAttributeIndex(index);
+        String value = attrValue[index];
+        if(value == null) {
+            value = new String(buf, attrValueStart[index], attrValueEnd[index] - attrValueStart[index]);
+            attrValue[index] = value;
+        }
+        return value;
+    }
+
+    public String getAttributeValue(String namespace, String name)
+    {
+        if(eventType != START_TAG) throw new IndexOutOfBoundsException(
+                "only START_TAG can have attributes");
+        if(name == null) throw new IllegalArgumentException("attribute name can not be null");
+        if(processNamespaces) {
+            if(namespace == null) namespace = NO_NAMESPACE;
+            for (int i = 0; i < attrCount; i++)
+            {
+                if(name.equals(attrName[i]) && namespace.equals(attrUri[i])) {
+                    return getAttributeValue(i);
+                }
+            }
+        } else {
+            if(namespace != null && namespace.length() > 0) {
+                throw new IllegalArgumentException(
+                    "when namespaces processing is disabled attribute namespace must be null");
+            }
+            for (int i = 0; i < attrCount; i++)
+            {
+                if(name.equals(attrName[i])) {
+                    return getAttributeValue(i);
+                }
+            }
+        }
+        return null;
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // moving through events
+
+    public int getEventType() throws XmlPullParserException
+    {
+        return eventType;
+    }
+
+    public void require(int type, String namespace, String name)
+        throws XmlPullParserException, IOException
+    {
+        if(type != eventType
+               || (namespace != null && !namespace.equals(getNamespace()))
+               || (name != null && !name.equals(getName())))
+        {
+            throw new XmlPullParserException(
+                "expected event "+TYPES[type]
+                    +(name != null ? " with name '"+name+"'" : "")
+                    +(namespace != null && name != null ? " and" : "")
+                    +(namespace != null ? " with namespace '"+namespace+"'" : "")
+                    +" but got"
+                    +(type != eventType ? " "+TYPES[eventType] : "")
+                    +(name != null && getName() != null && !name.equals(getName())
+                          ? " name '"+getName()+"'" : "")
+                    +(namespace != null && getNamespace() != null
+                          && !namespace.equals(getNamespace())
+                          ? " namespace '"+getNamespace()+"'" : ""),
+                this, null);
+        }
+    }
+
+    public String nextText() throws XmlPullParserException, IOException
+    {
+        if(eventType != START_TAG) {
+            throw new XmlPullParserException(
+                "parser must be on START_TAG to read next text", this, null);
+        }
+        int event = next();
+        if(event == TEXT) {
+            final String result = getText();
+            event = next();
+            if(event != END_TAG) {
+                throw new XmlPullParserException(
+                    "TEXT must be immediately followed by END_TAG and not "+TYPES[eventType],
+                    this, null);
+            }
+            return result;
+        } else if(event == END_TAG) {
+            return "";
+        } else {
+            throw new XmlPullParserException(
+                "parser must be on START_TAG or TEXT to read text", this, null);
+        }
+    }
+
+    public int nextTag() throws XmlPullParserException, IOException
+    {
+        next();
+        if(eventType == TEXT && isWhitespace()) {
+            next();
+        }
+        if(eventType != START_TAG && eventType != END_TAG) {
+            throw new XmlPullParserException("expected START_TAG or END_TAG not "
+                                                 +TYPES[eventType], this, null);
+        }
+        return eventType;
+    }
+
+    /**
+     * Skip content of current element scanning input buffer directly: only nesting of tags,
+     * quoted attribute values, comments, CDATA sections and processing instructions are
+     * recognized so no names, attributes or text are decoded and no events are created.
+     * Skipped content is not checked for well-formedness (except for the end tag
+     * that must match current start tag). With push input whole sub tree must be fed
+     * otherwise exception is thrown and nothing is skipped so it can be called again
+     * when more input was fed.
+     */
+    public void skipSubTree() throws XmlPullParserException, IOException
+    {
+        require(START_TAG, null, null);
+        if(emptyElementTag) {
+            next();
+            return;
+        }
+        if(pushInput && !pushClosed && !isSubTreeAvailable()) {
+            throw new XmlPullParserException(
+                "whole sub tree must be fed before calling skipSubTree()", this, null);
+        }
+        int level = 1;
+        while(true) {
+            skipText();
+            if(!available(pos, 2)) throw eofInElement();
+            final char ch = buf[pos + 1];
+            if(ch == '/') {
+                if(--level == 0) break;
+                pos += 2;
+                skipTag();
+            } else if(ch == '!') {
+                if(matches(pos, "<!--")) {
+                    pos += 4;
+                    skipPast("-->");
+                } else if(matches(pos, "<![CDATA[")) {
+                    pos += 9;
+                    skipPast("]]>");
+                } else {
+                    pos += 2;
+                    skipTag();
+                }
+            } else if(ch == '?') {
+                pos += 2;
+                skipPast("?>");
+            } else {
+                ++pos;
+                if(!skipTag()) ++level;
+            }
+        }
+        // parser is on end tag of current element that is parsed as usual
+        next();
+    }
+
+    public int next() throws XmlPullParserException, IOException
+    {
+        return nextImpl(false);
+    }
+
+    public int nextToken() throws XmlPullParserException, IOException
+    {
+        return nextImpl(true);
+    }
+
+    private int nextImpl(boolean tokenize) throws XmlPullParserException, IOException
+    {
+        if(reader == null && utf8Input == null && inputStream == null && !pushInput) {
+            throw new XmlPullParserException("setInput() must be called before parsing", this, null);
+        }
+        if(eventType == END_DOCUMENT) {
+            return eventType;
+        }
+        if(pushInput && !pushClosed && !(eventType == START_TAG && emptyElementTag)
+               && !isEventAvailable(tokenize))
+        {
+            return NEED_MORE_INPUT;
+        }
+        scanStart = -1;
+        text = null;
+        if(eventType == END_TAG) {
+            --depth;
+            nsEnd = elNsCount[depth];
+        } else if(eventType == START_TAG && emptyElementTag) {
+            emptyElementTag = false;
+            return eventType = END_TAG;
+        }
+        compact();
+        if(depth > 0) {
+            return eventType = tokenize ? parseContentToken() : parseContent();
+        }
+        return eventType = parseOutsideRoot(tokenize);
+    }
+
+    /**
+     * Check that input fed so far contains whole next event so it can be parsed as usual
+     * without waiting for more input. When input is malformed it may return true as parsing
+     * will report error anyway. Parser state is not changed except for state of this scan
+     * that is kept when more input is needed so next call continues where this one stopped
+     * (every fed character is scanned only once even if event is fed in many chunks).
+     */
+    private boolean isEventAvailable(boolean tokenize)
+    {
+        final char[] b = buf;
+        final int end = bufEnd;
+        final int level = eventType == END_TAG ? depth - 1 : depth;
+        if(scanStart != pos || scanTokenize != tokenize) {
+            int p = pos;
+            scanXmlDecl = false;
+            if(level == 0 && atDocumentStart) {
+                if(p < end && b[p] == '\uFEFF') ++p;
+                if(end - p < 6) return false;
+                scanXmlDecl = b[p] == '<' && b[p + 1] == '?' && b[p + 2] == 'x' && b[p + 3] == 'm'
+                    && b[p + 4] == 'l' && b[p + 5] <= ' ';
+            }
+            scanStart = pos;
+            scanTokenize = tokenize;
+            scanPos = p;
+            scanSeenText = false;
+            scanMarkup = -1;
+            if(scanXmlDecl) startScanMarkup(p);
+        }
+        int p = scanPos;
+        boolean seenText = scanSeenText;
+        while(true) {
+            if(scanMarkup >= 0) {
+                final int markup = scanMarkup;
+                final int markupEnd = scanMarkupEnd(b, end);
+                if(markupEnd == -2) return true; // malformed reference
+                if(markupEnd < 0) {
+                    scanPos = markup;
+                    scanSeenText = seenText;
+                    return false;
+                }
+                scanMarkup = -1;
+                p = markupEnd;
+                if(scanXmlDecl) {
+                    scanXmlDecl = false;
+                    continue;
+                }
+                final char next = b[markup + 1];
+                if(b[markup] == '&') {
+                    if(tokenize) return true;
+                    seenText = true;
+                } else {
+                    if(tokenize || (next != '!' && next != '?')) return true;
+                    if(level > 0 && next == '!' && b[p - 1] == '>' && b[p - 2] == ']') {
+                        seenText = true; // CDATA
+                    }
+                }
+                continue;
+            }
+            if(p == end) {
+                scanPos = p;
+                scanSeenText = seenText;
+                return false;
+            }
+            final char ch = b[p];
+            if(level == 0) {
+                if(ch <= ' ' && (CHAR_CLASS[ch] & WS) != 0) {
+                    while(p < end && b[p] <= ' ' && (CHAR_CLASS[b[p]] & WS) != 0) ++p;
+                    if(p == end) continue;
+                    if(tokenize) return true;
+                    continue;
+                }
+                if(ch != '<') return true;
+                startScanMarkup(p);
+            } else if(ch == '<') {
+                if(seenText && tokenize) return true;
+                if(p + 1 == end) {
+                    scanPos = p;
+                    scanSeenText = seenText;
+                    return false;
+                }
+                final char next = b[p + 1];
+                if(seenText && next != '!' && next != '?') return true;
+                startScanMarkup(p);
+            } else if(ch == '&') {
+                if(seenText && tokenize) return true;
+                startScanMarkup(p);
+            } else {
+                while(p < end && b[p] != '<' && b[p] != '&') ++p;
+                seenText = true;
+            }
+        }
+    }
+
+    private void startScanMarkup(int p)
+    {
+        scanMarkup = p;
+        scanMarkupPos = p;
+        scanQuote = 0;
+        scanBrackets = 0;
+        scanNested = 0;
+    }
+
+    /**
+     * Return position after markup (or reference) that starts at scanMarkup, -1 if it is not
+     * complete (where to continue is kept in scan state) or -2 if reference is malformed.
+     */
+    private int scanMarkupEnd(char[] b, int end)
+    {
+        final int p = scanMarkup;
+        int i = scanMarkupPos;
+        if(b[p] == '&') {
+            if(i == p) ++i;
+            while(i < end && b[i] != ';') {
+                // reference can not contain markup or whitespace so error will be reported
+                if(b[i] <= ' ' || b[i] == '<' || b[i] == '&') return -2;
+                ++i;
+            }
+            scanMarkupPos = i;
+            return i == end ? -1 : i + 1;
+        }
+        if(p + 1 >= end) return -1;
+        final char next = b[p + 1];
+        if(next == '/') {
+            return scanPast(b, Math.max(i, p + 2), end, ">");
+        } else if(next == '?') {
+            return scanPast(b, Math.max(i, p + 2), end, "?>");
+        } else if(next == '!') {
+            if(startsWith(b, p, end, "<!--")) {
+                return end - p < 4 ? -1 : scanPast(b, Math.max(i, p + 4), end, "-->");
+            } else if(startsWith(b, p, end, "<![CDATA[")) {
+                return end - p < 9 ? -1 : scanPast(b, Math.max(i, p + 9), end, "]]>");
+            } else if(startsWith(b, p, end, "<!DOCTYPE")) {
+                return end - p < 9 ? -1 : scanDocdeclEnd(b, Math.max(i, p + 9), end);
+            } else if(end - p < 9) {
+                return -1;
+            }
+            return p + 2;
+        }
+        // start tag: '>' may be inside of attribute values
+        char quote = scanQuote;
+        for (i = Math.max(i, p + 1); i < end; i++)
+        {
+            final char ch = b[i];
+            if(quote != 0) {
+                if(ch == quote) quote = 0;
+            } else if(ch == '"' || ch == '\'') {
+                quote = ch;
+            } else if(ch == '>') {
+                return i + 1;
+            }
+        }
+        scanMarkupPos = i;
+        scanQuote = quote;
+        return -1;
+    }
+
+    /** Return position after terminator s searched from i or -1 (and keep where to continue). */
+    private int scanPast(char[] b, int i, int end, String s)
+    {
+        final int found = indexOf(b, i, end, s);
+        if(found >= 0) return found + s.length();
+        // terminator may start in last characters
+        scanMarkupPos = Math.max(i, end - s.length() + 1);
+        return -1;
+    }
+
+    private int scanDocdeclEnd(char[] b, int i, int end)
+    {
+        int brackets = scanBrackets;
+        char quote = scanQuote;
+        int nested = scanNested;
+        while(i < end) {
+            if(nested != 0) {
+                final String terminator = nested == 1 ? "-->" : "?>";
+                final int found = indexOf(b, i, end, terminator);
+                if(found < 0) {
+                    i = Math.max(i, end - terminator.length() + 1);
+                    break;
+                }
+                i = found + terminator.length();
+                nested = 0;
+                continue;
+            }
+            final char ch = b[i];
+            if(quote != 0) {
+                if(ch == quote) quote = 0;
+            } else if(ch == '"' || ch == '\'') {
+                quote = ch;
+            } else if(ch == '[') {
+                ++brackets;
+            } else if(ch == ']') {
+                --brackets;
+            } else if(ch == '>' && brackets == 0) {
+                return i + 1;
+            } else if(ch == '<' && brackets > 0) {
+                if(startsWith(b, i, end, "<!--")) {
+                    if(end - i < 4) break;
+                    nested = 1;
+                    i += 4;
+                    continue;
+                } else if(startsWith(b, i, end, "<?")) {
+                    if(end - i < 2) break;
+                    nested = 2;
+                    i += 2;
+                    continue;
+                }
+            }
+            ++i;
+        }
+        scanMarkupPos = i;
+        scanBrackets = brackets;
+        scanQuote = quote;
+        scanNested = nested;
+        return -1;
+    }
+
+    /**
+     * Return true if b at p starts with s (or with part of s when end is reached
+     * so more input may be needed - caller must check that enough chars are available).
+     */
+    private static boolean startsWith(char[] b, int p, int end, String s)
+    {
+        final int len = s.length();
+        for (int i = 0; i < len && p + i < end; i++)
+        {
+            if(b[p + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(char[] b, int p, int end, String s)
+    {
+        final char first = s.charAt(0);
+        final int len = s.length();
+        for (int i = p; i <= end - len; i++)
+        {
+            if(b[i] == first) {
+                int j = 1;
+                while(j < len && b[i + j] == s.charAt(j)) ++j;
+                if(j == len) return i;
+            }
+        }
+        return -1;
+    }
+
+    private int parseContentToken() throws XmlPullParserException, IOException
+    {
+        if(pos == bufEnd && !fill()) throw eofInElement();
+        final char ch = buf[pos];
+        if(ch == '<') {
+            if(!available(pos, 2)) throw eofInElement();
+            final char next = buf[pos + 1];
+            if(next == '/') {
+                pos += 2;
+                return parseEndTag();
+            } else if(next == '?') {
+                pos += 2;
+                parsePI(true);
+                return PROCESSING_INSTRUCTION;
+            } else if(next == '!') {
+                if(matches(pos + 2, "--")) {
+                    pos += 4;
+                    parseComment(true);
+                    return COMMENT;
+                } else if(matches(pos + 2, "[CDATA[")) {
+                    pos += 9;
+                    posStart = pos;
+                    posEnd = parseCData(pos);
+                    return CDSECT;
+                }
+                throw new XmlPullParserException("unexpected markup <!", this, null);
+            }
+            ++pos;
+            return parseStartTag();
+        } else if(ch == '&') {
+            parseEntityRef();
+            posStart = entityNameStart;
+            posEnd = entityNameEnd;
+            return ENTITY_REF;
+        }
+        posStart = pos;
+        posEnd = parseCharData(pos);
+        return TEXT;
+    }
+
+    private int parseContent() throws XmlPullParserException, IOException
+    {
+        // write position for text (-1 when no text was seen yet), it may be behind pos
+        // when text is normalized or merged from multiple tokens
+        int w = -1;
+        while(true) {
+            if(pos == bufEnd && !fill()) throw eofInElement();
+            final char ch = buf[pos];
+            if(ch == '<') {
+                if(!available(pos, 2)) throw eofInElement();
+                final char next = buf[pos + 1];
+                if(next == '!') {
+                    if(matches(pos + 2, "--")) {
+                        pos += 4;
+                        parseComment(false);
+                        continue;
+                    } else if(matches(pos + 2, "[CDATA[")) {
+                        pos += 9;
+                        if(w < 0) posStart = w = pos;
+                        w = parseCData(w);
+                        continue;
+                    }
+                    throw new XmlPullParserException("unexpected markup <!", this, null);
+                } else if(next == '?') {
+                    pos += 2;
+                    parsePI(false);
+                    continue;
+                }
+                if(w >= 0) {
+                    posEnd = w;
+                    return TEXT;
+                }
+                if(next == '/') {
+                    pos += 2;
+                    return parseEndTag();
+                }
+                ++pos;
+                return parseStartTag();
+            }
+            if(w < 0) posStart = w = pos;
+            if(ch == '&') {
+                final int kind = parseEntityRef();
+                if(kind == ENTITY_UNRESOLVED) {
+                    throw new XmlPullParserException(
+                        "could not resolve entity named '"+entityRefName+"'", this, null);
+                }
+                w = writeEntity(w, kind);
+            } else {
+                w = parseCharData(w);
+            }
+        }
+    }
+
+    private int parseOutsideRoot(boolean tokenize) throws XmlPullParserException, IOException
+    {
+        if(atDocumentStart) {
+            atDocumentStart = false;
+            if(pos == bufEnd) fill();
+            if(pos < bufEnd && buf[pos] == '\uFEFF') ++pos;
+            if(matches(pos, "<?xml") && available(pos, 6)
+                   && buf[pos + 5] <= ' ' && (CHAR_CLASS[buf[pos + 5]] & WS) != 0)
+            {
+                pos += 5;
+                parseXmlDecl();
+            }
+        }
+        while(true) {
+            if(pos == bufEnd && !fill()) {
+                if(!seenRoot) throw new XmlPullParserException(
+                        "expected start tag of root element and not end of input", this, null);
+                return END_DOCUMENT;
+            }
+            final char ch = buf[pos];
+            if(ch <= ' ' && (CHAR_CLASS[ch] & WS) != 0) {
+                posStart = pos;
+                posEnd = parseWhitespace(tokenize);
+                if(tokenize) return IGNORABLE_WHITESPACE;
+                continue;
+            }
+            if(ch != '<') {
+                throw new XmlPullParserException(
+                    "only whitespace content allowed "+(seenRoot ? "after" : "before")
+                        +" root element and not "+printable(ch), this, null);
+            }
+            if(!available(pos, 2)) throw eof();
+            final char next = buf[pos + 1];
+            if(next == '?') {
+                pos += 2;
+                parsePI(tokenize);
+                if(tokenize) return PROCESSING_INSTRUCTION;
+            } else if(next == '!') {
+                if(matches(pos + 2, "--")) {
+                    pos += 4;
+                    parseComment(tokenize);
+                    if(tokenize) return COMMENT;
+                } else if(!seenRoot && !seenDocdecl && matches(pos + 2, "DOCTYPE")) {
+                    pos += 9;
+                    seenDocdecl = true;
+                    parseDocdecl();
+                    if(tokenize) return DOCDECL;
+                } else {
+                    throw new XmlPullParserException(
+                        "unexpected markup <!"+(seenRoot ? " after" : " before")+" root element",
+                        this, null);
+                }
+            } else if(next == '/') {
+                throw new XmlPullParserException(
+                    "end tag not allowed "+(seenRoot ? "after" : "before")+" root element",
+                    this, null);
+            } else if(seenRoot) {
+                throw new XmlPullParserException(
+                    "only one root element allowed in XML document", this, null);
+            } else {
+                ++pos;
+                seenRoot = true;
+                return parseStartTag();
+            }
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // tags
+
+    private int parseStartTag() throws XmlPullParserException, IOException
+    {
+        // pos is just after '<'
+        final int nameStart = pos;
+        scanName();
+        final String rawName = symbol(buf, nameStart, pos - nameStart, nameHash);
+        if(++depth >= elRawName.length) ensureElementCapacity();
+        elRawName[depth] = rawName;
+        attrCount = 0;
+        emptyElementTag = false;
+        while(true) {
+            final boolean seenSpace = skipS();
+            if(pos == bufEnd && !fill()) throw eof();
+            char ch = buf[pos];
+            if(ch == '>') {
+                ++pos;
+                break;
+            } else if(ch == '/') {
+                if(!available(pos, 2)) throw eof();
+                if(buf[pos + 1] != '>') throw new XmlPullParserException(
+                        "expected > to finish empty element tag and not "+printable(buf[pos + 1]),
+                        this, null);
+                pos += 2;
+                emptyElementTag = true;
+                break;
+            }
+            if(!seenSpace) throw new XmlPullParserException(
+                    "expected whitespace before attribute name and not "+printable(ch), this, null);
+            final int aStart = pos;
+            scanName();
+            final String aRawName = symbol(buf, aStart, pos - aStart, nameHash);
+            skipS();
+            if(pos == bufEnd && !fill()) throw eof();
+            if(buf[pos] != '=') throw new XmlPullParserException(
+                    "expected = after attribute name "+aRawName+" and not "+printable(buf[pos]),
+                    this, null);
+            ++pos;
+            skipS();
+            if(pos == bufEnd && !fill()) throw eof();
+            final char quote = buf[pos];
+            if(quote != '"' && quote != '\'') throw new XmlPullParserException(
+                    "attribute value must start with quotation or apostrophe and not "
+                        +printable(quote), this, null);
+            ++pos;
+            if(attrCount >= attrRawName.length) ensureAttributeCapacity();
+            attrRawName[attrCount] = aRawName;
+            attrNameStart[attrCount] = aStart;
+            attrValueStart[attrCount] = pos;
+            attrValueEnd[attrCount] = parseAttributeValue(quote);
+            attrValue[attrCount] = null;
+            ++attrCount;
+        }
+        for (int i = 1; i < attrCount; i++)
+        {
+            final String name = attrRawName[i];
+            for (int j = 0; j < i; j++)
+            {
+                if(name == attrRawName[j] || name.equals(attrRawName[j])) {
+                    throw new XmlPullParserException(
+                        "duplicated attributes "+name, this, null);
+                }
+            }
+        }
+        if(processNamespaces) {
+            processNamespaces(nameStart, rawName);
+        } else {
+            elName[depth] = rawName;
+            elPrefix[depth] = null;
+            elUri[depth] = NO_NAMESPACE;
+            elNsCount[depth] = 0;
+            for (int i = 0; i < attrCount; i++)
+            {
+                attrName[i] = attrRawName[i];
+                attrPrefix[i] = null;
+                attrUri[i] = NO_NAMESPACE;
+            }
+        }
+        return START_TAG;
+    }
+
+    private void processNamespaces(int nameStart, String rawName) throws XmlPullParserException
+    {
+        // first declare all namespaces as they are in scope for element and all its attributes
+        int declared = 0;
+        for (int i = 0; i < attrCount; i++)
+        {
+            final String name = attrRawName[i];
+            attrUri[i] = null; // may be left from previous start tag
+            if(!name.startsWith("xmlns")) continue;
+            String prefix;
+            if(name.length() == 5) {
+                prefix = null;
+            } else if(name.charAt(5) == ':') {
+                final int start = attrNameStart[i] + 6;
+                final int len = name.length() - 6;
+                if(len == 0) throw new XmlPullParserException(
+                        "namespace prefix can not be empty", this, null);
+                prefix = symbol(buf, start, len, hash(buf, start, len));
+            } else {
+                continue;
+            }
+            final int vStart = attrValueStart[i];
+            final int vLen = attrValueEnd[i] - vStart;
+            final String uri = symbol(buf, vStart, vLen, hash(buf, vStart, vLen));
+            if(prefix != null) {
+                if(vLen == 0) throw new XmlPullParserException(
+                        "non-default namespace can not be declared to be empty string", this, null);
+                if("xmlns".equals(prefix)) throw new XmlPullParserException(
+                        "xmlns prefix can not be declared", this, null);
+                if("xml".equals(prefix)) {
+                    if(!XML_URI.equals(uri)) throw new XmlPullParserException(
+                            "xml prefix can only be bound to "+XML_URI, this, null);
+                    attrUri[i] = XMLNS_URI;
+                    continue;
+                }
+            }
+            if(nsEnd >= nsPrefix.length) ensureNamespaceCapacity();
+            nsPrefix[nsEnd] = prefix;
+            nsUri[nsEnd] = uri;
+            ++nsEnd;
+            attrUri[i] = XMLNS_URI; // marks declaration
+            ++declared;
+        }
+        elNsCount[depth] = nsEnd;
+
+        // resolve element name
+        final int colon = rawName.indexOf(':');
+        if(colon == -1) {
+            elPrefix[depth] = null;
+            elName[depth] = rawName;
+            final String uri = getNamespace(null);
+            elUri[depth] = uri != null ? uri : NO_NAMESPACE;
+        } else {
+            final String prefix = prefixSymbol(rawName, nameStart, colon);
+            elPrefix[depth] = prefix;
+            elName[depth] = localSymbol(rawName, nameStart, colon);
+            final String uri = getNamespace(prefix);
+            if(uri == null) throw new XmlPullParserException(
+                    "could not determine namespace bound to element prefix "+prefix, this, null);
+            elUri[depth] = uri;
+        }
+
+        // resolve attributes and remove namespace declarations if they are not reported
+        int count = 0;
+        for (int i = 0; i < attrCount; i++)
+        {
+            final String name = attrRawName[i];
+            String prefix;
+            String localName;
+            String uri;
+            if(attrUri[i] == XMLNS_URI && (name.length() == 5 || name.charAt(5) == ':')) {
+                attrUri[i] = null;
+                if(!reportNsAttribs) continue;
+                if(name.length() == 5) {
+                    prefix = null;
+                    localName = name;
+                    uri = NO_NAMESPACE;
+                } else {
+                    prefix = "xmlns";
+                    localName = localSymbol(name, attrNameStart[i], 5);
+                    uri = XMLNS_URI;
+                }
+            } else {
+                final int colonPos = name.indexOf(':');
+                if(colonPos == -1) {
+                    prefix = null;
+                    localName = name;
+                    uri = NO_NAMESPACE;
+                } else {
+                    prefix = prefixSymbol(name, attrNameStart[i], colonPos);
+                    localName = localSymbol(name, attrNameStart[i], colonPos);
+                    uri = getNamespace(prefix);
+                    if(uri == null) throw new XmlPullParserException(
+                            "could not determine namespace bound to attribute prefix "+prefix,
+                            this, null);
+                }
+            }
+            if(count != i) {
+                attrRawName[count] = name;
+                attrNameStart[count] = attrNameStart[i];
+                attrValueStart[count] = attrValueStart[i];
+                attrValueEnd[count] = attrValueEnd[i];
+            }
+            attrPrefix[count] = prefix;
+            attrName[count] = localName;
+            attrUri[count] = uri;
+            ++count;
+        }
+        attrCount = count;
+        for (int i = 1; i < attrCount; i++)
+        {
+            final String name = attrName[i];
+            final String uri = attrUri[i];
+            for (int j = 0; j < i; j++)
+            {
+                if((name == attrName[j] || name.equals(attrName[j]))
+                       && (uri == attrUri[j] || uri.equals(attrUri[j])))
+                {
+                    throw new XmlPullParserException(
+                        "duplicated attributes {"+uri+"}"+name, this, null);
+                }
+            }
+        }
+    }
+
+    private String prefixSymbol(String rawName, int start, int colon) throws XmlPullParserException
+    {
+        if(colon == 0) throw new XmlPullParserException(
+                "name can not start with colon: "+rawName, this, null);
+        return symbol(buf, start, colon, hash(buf, start, colon));
+    }
+
+    private String localSymbol(String rawName, int start, int colon) throws XmlPullParserException
+    {
+        final int len = rawName.length() - colon - 1;
+        if(len == 0 || rawName.indexOf(':', colon + 1) != -1) throw new XmlPullParserException(
+                "name must have local part and no more than one colon: "+rawName, this, null);
+        return symbol(buf, start + colon + 1, len, hash(buf, start + colon + 1, len));
+    }
+
+    private int parseEndTag() throws XmlPullParserException, IOException
+    {
+        // pos is just after '</'
+        final String rawName = elRawName[depth];
+        final int len = rawName.length();
+        boolean match = available(pos, len + 1);
+        if(match) {
+            final char[] b = buf;
+            for (int i = 0; i < len; i++)
+            {
+                if(b[pos + i] != rawName.charAt(i)) {
+                    match = false;
+                    break;
+                }
+            }
+            final char ch = b[pos + len];
+            if(match && (ch >= 128 || (CHAR_CLASS[ch] & NAME) != 0)) match = false;
+        }
+        if(!match) {
+            final int start = pos;
+            scanName();
+            throw new XmlPullParserException(
+                "expected end tag </"+rawName+"> and not </"+new String(buf, start, pos - start)+">",
+                this, null);
+        }
+        pos += len;
+        skipS();
+        if(pos == bufEnd && !fill()) throw eof();
+        if(buf[pos] != '>') throw new XmlPullParserException(
+                "expected > to finish end tag and not "+printable(buf[pos]), this, null);
+        ++pos;
+        return END_TAG;
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // character data
+
+    /**
+     * Scan characters until '&lt;' or '&amp;' (or end of input) normalizing end of lines
+     * and writing result starting at w. Returns new write position.
+     */
+    private int parseCharData(int w) throws XmlPullParserException, IOException
+    {
+        char[] b = buf;
+        int p = pos;
+        int end = bufEnd;
+        while(true) {
+            if(p == end) {
+                pos = p;
+                if(!fill()) return w;
+                b = buf;
+                end = bufEnd;
+            }
+            char ch = b[p];
+            if(ch > ']' || (ch > '<' && ch < ']') || (ch > '&' && ch < '<')
+                   || (ch < '&' && ch != '\n' && ch != '\r'))
+            {
+                if(w != p) b[w] = ch;
+                ++w;
+                ++p;
+                continue;
+            }
+            if(ch == '<' || ch == '&') {
+                pos = p;
+                return w;
+            } else if(ch == ']') {
+                pos = p;
+                if(available(p, 3) && buf[p + 1] == ']' && buf[p + 2] == '>') {
+                    throw new XmlPullParserException(
+                        "characters ]]> are not allowed in content", this, null);
+                }
+                b = buf;
+                end = bufEnd;
+            } else if(ch == '\r') {
+                ++lineNumber;
+                ch = '\n';
+                pos = p;
+                if(available(p, 2) && buf[p + 1] == '\n') ++p;
+                b = buf;
+                end = bufEnd;
+                lineStart = p + 1;
+            } else { // '\n'
+                ++lineNumber;
+                lineStart = p + 1;
+            }
+            b[w++] = ch;
+            ++p;
+        }
+    }
+
+    /**
+     * Parse CDATA section content (pos is just after &lt;![CDATA[)
+     * writing normalized content at w. Returns new write position.
+     */
+    private int parseCData(int w) throws XmlPullParserException, IOException
+    {
+        char[] b = buf;
+        int p = pos;
+        int end = bufEnd;
+        while(true) {
+            if(p == end) {
+                pos = p;
+                if(!fill()) throw eof();
+                b = buf;
+                end = bufEnd;
+            }
+            char ch = b[p];
+            if(ch == ']') {
+                pos = p;
+                if(available(p, 3) && buf[p + 1] == ']' && buf[p + 2] == '>') {
+                    pos = p + 3;
+                    return w;
+                }
+                b = buf;
+                end = bufEnd;
+            } else if(ch == '\r') {
+                ++lineNumber;
+                ch = '\n';
+                pos = p;
+                if(available(p, 2) && buf[p + 1] == '\n') ++p;
+                b = buf;
+                end = bufEnd;
+                lineStart = p + 1;
+            } else if(ch == '\n') {
+                ++lineNumber;
+                lineStart = p + 1;
+            }
+            b[w++] = ch;
+            ++p;
+        }
+    }
+
+    /**
+     * Parse attribute value (pos is just after opening quote) normalizing it in place.
+     * Returns end position of value, pos is moved after closing quote.
+     */
+    private int parseAttributeValue(char quote) throws XmlPullParserException, IOException
+    {
+        char[] b = buf;
+        int p = pos;
+        int w = p;
+        int end = bufEnd;
+        while(true) {
+            if(p == end) {
+                pos = p;
+                if(!fill()) throw eof();
+                b = buf;
+                end = bufEnd;
+            }
+            char ch = b[p];
+            if(ch == quote) {
+                pos = p + 1;
+                return w;
+            } else if(ch == '&') {
+                pos = p;
+                final int kind = parseEntityRef();
+                if(kind == ENTITY_UNRESOLVED) {
+                    throw new XmlPullParserException(
+                        "could not resolve entity named '"+entityRefName+"'", this, null);
+                }
+                w = writeEntity(w, kind);
+                b = buf;
+                p = pos;
+                end = bufEnd;
+                continue;
+            } else if(ch == '<') {
+                throw new XmlPullParserException(
+                    "character < is not allowed in attribute value", this, null);
+            } else if(ch < ' ') {
+                if(ch == '\r') {
+                    ++lineNumber;
+                    pos = p;
+                    if(available(p, 2) && buf[p + 1] == '\n') ++p;
+                    b = buf;
+                    end = bufEnd;
+                    lineStart = p + 1;
+                } else if(ch == '\n') {
+                    ++lineNumber;
+                    lineStart = p + 1;
+                }
+                ch = ' ';
+            }
+            b[w++] = ch;
+            ++p;
+        }
+    }
+
+    /**
+     * Skip or report (normalized in place) whitespace outside of root element.
+     */
+    private int parseWhitespace(boolean report) throws XmlPullParserException, IOException
+    {
+        int w = pos;
+        while(pos < bufEnd || fill()) {
+            char ch = buf[pos];
+            if(ch > ' ' || (CHAR_CLASS[ch] & WS) == 0) break;
+            if(ch == '\r') {
+                ++lineNumber;
+                ch = '\n';
+                if(available(pos, 2) && buf[pos + 1] == '\n') ++pos;
+                lineStart = pos + 1;
+            } else if(ch == '\n') {
+                ++lineNumber;
+                lineStart = pos + 1;
+            }
+            if(report) buf[w] = ch;
+            ++w;
+            ++pos;
+        }
+        return w;
+    }
+
+    private void parseComment(boolean report) throws XmlPullParserException, IOException
+    {
+        // pos is just after <!--
+        final int start = pos;
+        int w = start;
+        while(true) {
+            if(pos == bufEnd && !fill()) throw eof();
+            char ch = buf[pos];
+            if(ch == '-' && available(pos, 2) && buf[pos + 1] == '-') {
+                if(!available(pos, 3) || buf[pos + 2] != '>') {
+                    throw new XmlPullParserException(
+                        "in comment after two dashes (--) next character must be > not "
+                            +(available(pos, 3) ? printable(buf[pos + 2]) : "end of input"),
+                        this, null);
+                }
+                pos += 3;
+                break;
+            } else if(ch == '\r') {
+                ++lineNumber;
+                ch = '\n';
+                if(available(pos, 2) && buf[pos + 1] == '\n') ++pos;
+                lineStart = pos + 1;
+            } else if(ch == '\n') {
+                ++lineNumber;
+                lineStart = pos + 1;
+            }
+            if(report) buf[w] = ch;
+            ++w;
+            ++pos;
+        }
+        if(report) {
+            posStart = start;
+            posEnd = w;
+        }
+    }
+
+    private void parsePI(boolean report) throws XmlPullParserException, IOException
+    {
+        // pos is just after <?
+        final int start = pos;
+        if(pos == bufEnd && !fill()) throw eof();
+        if(!isNameStartChar(buf[pos])) throw new XmlPullParserException(
+                "processing instruction must start with target name and not "
+                    +printable(buf[pos]), this, null);
+        scanName();
+        if(pos - start == 3
+               && (buf[start] == 'x' || buf[start] == 'X')
+               && (buf[start + 1] == 'm' || buf[start + 1] == 'M')
+               && (buf[start + 2] == 'l' || buf[start + 2] == 'L'))
+        {
+            throw new XmlPullParserException(
+                "processing instruction can not have PITarget with reserved xml name", this, null);
+        }
+        int w = pos;
+        boolean first = true;
+        while(true) {
+            if(pos == bufEnd && !fill()) throw eof();
+            char ch = buf[pos];
+            if(ch == '?' && available(pos, 2) && buf[pos + 1] == '>') {
+                pos += 2;
+                break;
+            }
+            if(first && (ch > ' ' || (CHAR_CLASS[ch] & WS) == 0)) {
+                throw new XmlPullParserException(
+                    "processing instruction target must be followed by whitespace and not "
+                        +printable(ch), this, null);
+            }
+            first = false;
+            if(ch == '\r') {
+                ++lineNumber;
+                ch = '\n';
+                if(available(pos, 2) && buf[pos + 1] == '\n') ++pos;
+                lineStart = pos + 1;
+            } else if(ch == '\n') {
+                ++lineNumber;
+                lineStart = pos + 1;
+            }
+            if(report) buf[w] = ch;
+            ++w;
+            ++pos;
+        }
+        if(report) {
+            posStart = start;
+            posEnd = w;
+        }
+    }
+
+    private void parseDocdecl() throws XmlPullParserException, IOException
+    {
+        // pos is just after <!DOCTYPE
+        final int start = pos;
+        int w = start;
+        int bracketLevel = 0;
+        char quote = 0;
+        while(true) {
+            if(pos == bufEnd && !fill()) throw eof();
+            char ch = buf[pos];
+            if(quote != 0) {
+                if(ch == quote) quote = 0;
+            } else if(ch == '"' || ch == '\'') {
+                quote = ch;
+            } else if(ch == '[') {
+                ++bracketLevel;
+            } else if(ch == ']') {
+                --bracketLevel;
+            } else if(ch == '>' && bracketLevel == 0) {
+                ++pos;
+                break;
+            } else if(ch == '<' && bracketLevel > 0 && matches(pos + 1, "!--")) {
+                // comments may contain quotes and brackets
+                while(!matches(pos, "-->")) {
+                    if(pos == bufEnd && !fill()) throw eof();
+                    ch = buf[pos];
+                    if(ch == '\n' || (ch == '\r' && !matches(pos + 1, "\n"))) {
+                        ++lineNumber;
+                        lineStart = pos + 1;
+                    }
+                    buf[w++] = ch;
+                    ++pos;
+                }
+                ch = '-';
+                buf[w++] = ch;
+                buf[w++] = ch;
+                pos += 2;
+                ch = '>';
+            } else if(ch == '<' && bracketLevel > 0 && matches(pos + 1, "?")) {
+                while(!matches(pos, "?>")) {
+                    if(pos == bufEnd && !fill()) throw eof();
+                    ch = buf[pos];
+                    if(ch == '\n' || (ch == '\r' && !matches(pos + 1, "\n"))) {
+                        ++lineNumber;
+                        lineStart = pos + 1;
+                    }
+                    buf[w++] = ch;
+                    ++pos;
+                }
+                buf[w++] = '?';
+                ++pos;
+                ch = '>';
+            }
+            if(ch == '\r') {
+                ++lineNumber;
+                ch = '\n';
+                if(available(pos, 2) && buf[pos + 1] == '\n') ++pos;
+                lineStart = pos + 1;
+            } else if(ch == '\n') {
+                ++lineNumber;
+                lineStart = pos + 1;
+            }
+            buf[w++] = ch;
+            ++pos;
+        }
+        posStart = start;
+        posEnd = w;
+    }
+
+    private void parseXmlDecl() throws XmlPullParserException, IOException
+    {
+        // pos is just after <?xml
+        final int start = pos;
+        while(!matches(pos, "?>")) {
+            if(pos == bufEnd && !fill()) throw eof();
+            final char ch = buf[pos];
+            if(ch == '\n' || (ch == '\r' && !matches(pos + 1, "\n"))) {
+                ++lineNumber;
+                lineStart = pos + 1;
+            }
+            ++pos;
+        }
+        final int end = pos;
+        pos += 2;
+        xmlDeclContent = new String(buf, start, end - start);
+
+        // pseudo attributes must be in order: version, encoding, standalone
+        int p = start;
+        int step = 0;
+        while(true) {
+            final int wsStart = p;
+            while(p < end && buf[p] <= ' ' && (CHAR_CLASS[buf[p]] & WS) != 0) ++p;
+            if(p == end) break;
+            if(p == wsStart) throw new XmlPullParserException(
+                    "expected whitespace in XML declaration", this, null);
+            final int nameStart = p;
+            while(p < end && buf[p] != '=' && buf[p] > ' ') ++p;
+            final String name = new String(buf, nameStart, p - nameStart);
+            while(p < end && buf[p] <= ' ') ++p;
+            if(p == end || buf[p] != '=') throw new XmlPullParserException(
+                    "expected = after "+name+" in XML declaration", this, null);
+            ++p;
+            while(p < end && buf[p] <= ' ') ++p;
+            if(p == end || (buf[p] != '"' && buf[p] != '\'')) throw new XmlPullParserException(
+                    "expected quotation or apostrophe for "+name+" in XML declaration", this, null);
+            final char quote = buf[p++];
+            final int valueStart = p;
+            while(p < end && buf[p] != quote) ++p;
+            if(p == end) throw new XmlPullParserException(
+                    "unfinished value of "+name+" in XML declaration", this, null);
+            final String value = new String(buf, valueStart, p - valueStart);
+            ++p;
+            if(step == 0 && "version".equals(name)) {
+                xmlDeclVersion = value;
+                step = 1;
+            } else if(step == 1 && "encoding".equals(name)) {
+                step = 2;
+            } else if(step >= 1 && step < 3 && "standalone".equals(name)) {
+                if("yes".equals(value)) {
+                    xmlDeclStandalone = Boolean.TRUE;
+                } else if("no".equals(value)) {
+                    xmlDeclStandalone = Boolean.FALSE;
+                } else {
+                    throw new XmlPullParserException(
+                        "standalone in XML declaration must be yes or no and not "+value, this, null);
+                }
+                step = 3;
+            } else {
+                throw new XmlPullParserException(
+                    "unexpected "+name+" in XML declaration"
+                        +(step == 0 ? " (version is required first)" : ""), this, null);
+            }
+        }
+        if(step == 0) throw new XmlPullParserException(
+                "XML declaration must contain version", this, null);
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // entities
+
+    private int entityNameStart;
+    private int entityNameEnd;
+
+    /**
+     * Parse entity reference (pos is on '&amp;') and leave pos after ';'.
+     * Sets entityRefName, entityValue and charRef depending on kind of entity returned.
+     */
+    private int parseEntityRef() throws XmlPullParserException, IOException
+    {
+        ++pos;
+        entityNameStart = pos;
+        entityValue = null;
+        if(pos == bufEnd && !fill()) throw eof();
+        if(buf[pos] == '#') {
+            ++pos;
+            if(pos == bufEnd && !fill()) throw eof();
+            int radix = 10;
+            if(buf[pos] == 'x') {
+                radix = 16;
+                ++pos;
+            }
+            int code = 0;
+            final int digitsStart = pos;
+            while(true) {
+                if(pos == bufEnd && !fill()) throw eof();
+                final char ch = buf[pos];
+                if(ch == ';') break;
+                final int digit = Character.digit(ch, radix);
+                if(digit < 0) throw new XmlPullParserException(
+                        "character reference must have only "+(radix == 16 ? "hex " : "")
+                            +"digits and not "+printable(ch), this, null);
+                code = code * radix + digit;
+                if(code > 0x10FFFF) throw new XmlPullParserException(
+                        "character reference value too big", this, null);
+                ++pos;
+            }
+            if(pos == digitsStart) throw new XmlPullParserException(
+                    "character reference must have digits", this, null);
+            entityNameEnd = pos;
+            ++pos;
+            entityRefName = symbol(buf, entityNameStart, entityNameEnd - entityNameStart,
+                                   hash(buf, entityNameStart, entityNameEnd - entityNameStart));
+            if((code < 0x20 && code != '\t' && code != '\n' && code != '\r')
+                   || (code >= 0xD800 && code <= 0xDFFF) || code == 0xFFFE || code == 0xFFFF)
+            {
+                throw new XmlPullParserException(
+                    "character reference &"+entityRefName+"; is not allowed XML character",
+                    this, null);
+            }
+            if(code < 0x10000) {
+                charRef[0] = (char) code;
+                charRefLen = 1;
+            } else {
+                code -= 0x10000;
+                charRef[0] = (char) ((code >> 10) + 0xD800);
+                charRef[1] = (char) ((code & 0x3FF) + 0xDC00);
+                charRefLen = 2;
+            }
+            return entityKind = ENTITY_CHAR;
+        }
+        scanName();
+        entityNameEnd = pos;
+        if(pos == bufEnd && !fill()) throw eof();
+        if(buf[pos] != ';') throw new XmlPullParserException(
+                "entity reference must end with ; and not "+printable(buf[pos]), this, null);
+        ++pos;
+        final int start = entityNameStart;
+        final int len = entityNameEnd - start;
+        entityRefName = symbol(buf, start, len, nameHash);
+        final char[] b = buf;
+        charRefLen = 1;
+        if(len == 2 && b[start + 1] == 't') {
+            if(b[start] == 'l') {
+                charRef[0] = '<';
+                entityValue = "<";
+                return entityKind = ENTITY_CHAR;
+            } else if(b[start] == 'g') {
+                charRef[0] = '>';
+                entityValue = ">";
+                return entityKind = ENTITY_CHAR;
+            }
+        } else if(len == 3 && b[start] == 'a' && b[start + 1] == 'm' && b[start + 2] == 'p') {
+            charRef[0] = '&';
+            entityValue = "&";
+            return entityKind = ENTITY_CHAR;
+        } else if(len == 4 && b[start] == 'a' && b[start + 1] == 'p'
+                      && b[start + 2] == 'o' && b[start + 3] == 's')
+        {
+            charRef[0] = '\'';
+            entityValue = "'";
+            return entityKind = ENTITY_CHAR;
+        } else if(len == 4 && b[start] == 'q' && b[start + 1] == 'u'
+                      && b[start + 2] == 'o' && b[start + 3] == 't')
+        {
+            charRef[0] = '"';
+            entityValue = "\"";
+            return entityKind = ENTITY_CHAR;
+        }
+        for (int i = 0; i < entityEnd; i++)
+        {
+            if(entityName[i].length() == len && matches(entityName[i], b, start, len)) {
+                entityValue = entityReplacement[i];
+                entityExpansion += entityValue.length();
+                if(maxEntityExpansion >= 0 && entityExpansion > maxEntityExpansion) {
+                    throw new XmlPullParserException(
+                        "references to entities replaced with more than "+maxEntityExpansion
+                            +" characters in document", this, null);
+                }
+                return entityKind = ENTITY_TEXT;
+            }
+        }
+        return entityKind = ENTITY_UNRESOLVED;
+    }
+
+    /**
+     * Write value of entity just parsed at w. If replacement text is longer than
+     * entity reference then input is moved to make place for it.
+     */
+    private int writeEntity(int w, int kind)
+    {
+        if(kind == ENTITY_CHAR) {
+            buf[w++] = charRef[0];
+            if(charRefLen == 2) buf[w++] = charRef[1];
+            return w;
+        }
+        final String value = entityValue;
+        final int len = value.length();
+        final int delta = len - (pos - w);
+        if(delta > 0) {
+            if(bufEnd + delta > buf.length) {
+                final char[] newBuf = new char[Math.max(buf.length * 2, bufEnd + delta)];
+                System.arraycopy(buf, 0, newBuf, 0, bufEnd);
+                buf = newBuf;
+            }
+            System.arraycopy(buf, pos, buf, pos + delta, bufEnd - pos);
+            bufEnd += delta;
+            pos += delta;
+            lineStart += delta;
+        }
+        value.getChars(0, len, buf, w);
+        return w + len;
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // skipping sub tree (input before pos is not needed and is discarded when buffer is read)
+
+    /**
+     * Check that input fed so far contains content and end tag of current element
+     * (it is scanned the same way as by skipSubTree() but parser state is not changed).
+     */
+    private boolean isSubTreeAvailable()
+    {
+        final char[] b = buf;
+        final int end = bufEnd;
+        int p = pos;
+        int level = 1;
+        while(true) {
+            while(p < end && b[p] != '<') ++p;
+            if(end - p < 4) return false;
+            final char ch = b[p + 1];
+            if(ch == '/') {
+                p = scanTagEnd(b, p + 2, end);
+                if(p >= 0 && --level == 0) return true;
+            } else if(ch == '!') {
+                if(b[p + 2] == '-' && b[p + 3] == '-') {
+                    p = indexAfter(b, p + 4, end, "-->");
+                } else if(b[p + 2] == '[') {
+                    if(end - p < 9) return false;
+                    p = startsWith(b, p, end, "<![CDATA[")
+                        ? indexAfter(b, p + 9, end, "]]>") : scanTagEnd(b, p + 2, end);
+                } else {
+                    p = scanTagEnd(b, p + 2, end);
+                }
+            } else if(ch == '?') {
+                p = indexAfter(b, p + 2, end, "?>");
+            } else {
+                p = scanTagEnd(b, p + 1, end);
+                if(p >= 0 && b[p - 2] != '/') ++level;
+            }
+            if(p < 0) return false;
+        }
+    }
+
+    /** Return index after '>' that ends tag or -1 if it is not in buffer. */
+    private static int scanTagEnd(char[] b, int p, int end)
+    {
+        char quote = 0;
+        for (; p < end; ++p)
+        {
+            final char ch = b[p];
+            if(quote != 0) {
+                if(ch == quote) quote = 0;
+            } else if(ch == '"' || ch == '\'') {
+                quote = ch;
+            } else if(ch == '>') {
+                return p + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Return index after first occurrence of s or -1 if it is not in buffer. */
+    private static int indexAfter(char[] b, int p, int end, String s)
+    {
+        final int found = indexOf(b, p, end, s);
+        return found >= 0 ? found + s.length() : -1;
+    }
+
+    /** Move pos to next '<' counting lines. */
+    private void skipText() throws XmlPullParserException, IOException
+    {
+        while(true) {
+            if(pos == bufEnd) {
+                compact();
+                if(!fill()) throw eofInElement();
+            }
+            final char[] b = buf;
+            final int end = bufEnd;
+            int p = pos;
+            char ch = 0;
+            while(p < end && (ch = b[p]) != '<' && ch != '\n' && ch != '\r') ++p;
+            pos = p;
+            if(p == end) continue;
+            if(ch == '<') return;
+            skipLineEnd();
+        }
+    }
+
+    /**
+     * Move pos after '>' that ends tag (quoted attribute values may contain '>').
+     * Return true if it was empty element tag.
+     */
+    private boolean skipTag() throws XmlPullParserException, IOException
+    {
+        char quote = 0;
+        char prev = 0;
+        while(true) {
+            if(pos == bufEnd) {
+                compact();
+                if(!fill()) throw eofInElement();
+            }
+            final char ch = buf[pos];
+            if(ch == '\n' || ch == '\r') {
+                skipLineEnd();
+                prev = ' ';
+                continue;
+            }
+            ++pos;
+            if(quote != 0) {
+                if(ch == quote) quote = 0;
+            } else if(ch == '"' || ch == '\'') {
+                quote = ch;
+            } else if(ch == '>') {
+                return prev == '/';
+            }
+            prev = ch;
+        }
+    }
+
+    /** Move pos after first occurrence of s (that does not start with line end) counting lines. */
+    private void skipPast(String s) throws XmlPullParserException, IOException
+    {
+        final char first = s.charAt(0);
+        while(true) {
+            if(pos == bufEnd) {
+                compact();
+                if(!fill()) throw eofInElement();
+            }
+            final char ch = buf[pos];
+            if(ch == first && matches(pos, s)) {
+                pos += s.length();
+                return;
+            }
+            if(ch == '\n' || ch == '\r') {
+                skipLineEnd();
+            } else {
+                ++pos;
+            }
+        }
+    }
+
+    /** Move pos after line end (CR, LF or CR LF) at pos. */
+    private void skipLineEnd() throws XmlPullParserException, IOException
+    {
+        if(buf[pos] == '\r' && available(pos, 2) && buf[pos + 1] == '\n') ++pos;
+        ++pos;
+        ++lineNumber;
+        lineStart = pos;
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // low level input
+
+    /**
+     * Move unread input to start of buffer. It is only called between events
+     * as positions of current event point into buffer.
+     */
+    private void compact() {
+        if(pos == bufEnd) {
+            lineStart -= pos;
+            pos = bufEnd = 0;
+        } else if(pos > buf.length - (buf.length >> 2)) {
+            System.arraycopy(buf, pos, buf, 0, bufEnd - pos);
+            lineStart -= pos;
+            bufEnd -= pos;
+            pos = 0;
+        }
+    }
+
+    /**
+     * Read more input to the end of buffer (that is enlarged if full).
+     * Data already in buffer is never moved so all positions remain valid.
+     * Returns false if there is no more input.
+     */
+    private boolean fill() throws IOException, XmlPullParserException
+    {
+        if(eof) return false;
+        if(pushInput) {
+            // all fed input was already decoded
+            if(pushClosed) {
+                if(byteEnd > byteStart) throw new XmlPullParserException(
+                        "incomplete UTF-8 byte sequence at end of input", this, null);
+                eof = true;
+            }
+            return false;
+        }
+        if(reader == null && utf8Input == null) {
+            openStream();
+        }
+        // at least two chars of space are needed to decode surrogate pair
+        if(buf.length - bufEnd < 2) {
+            final char[] newBuf = new char[buf.length * 2];
+            System.arraycopy(buf, 0, newBuf, 0, bufEnd);
+            buf = newBuf;
+        }
+        if(utf8Input != null) {
+            return fillUtf8();
+        }
+        int len;
+        do {
+            len = reader.read(buf, bufEnd, buf.length - bufEnd);
+        } while(len == 0);
+        if(len < 0) {
+            eof = true;
+            return false;
+        }
+        bufEnd += len;
+        return true;
+    }
+
+    /**
+     * Read more UTF-8 bytes and decode them directly into free space at the end of buffer.
+     */
+    private boolean fillUtf8() throws IOException, XmlPullParserException
+    {
+        if(byteBuf == null) byteBuf = new byte[BUF_SIZE];
+        while(true) {
+            final int oldEnd = bufEnd;
+            decodeUtf8();
+            if(bufEnd > oldEnd) return true;
+            // keep bytes of incomplete sequence and read more
+            if(byteStart > 0) {
+                System.arraycopy(byteBuf, byteStart, byteBuf, 0, byteEnd - byteStart);
+                byteEnd -= byteStart;
+                byteStart = 0;
+            }
+            int len;
+            do {
+                len = utf8Input.read(byteBuf, byteEnd, byteBuf.length - byteEnd);
+            } while(len == 0);
+            if(len < 0) {
+                if(byteEnd > byteStart) throw new XmlPullParserException(
+                        "incomplete UTF-8 byte sequence at end of input", this, null);
+                eof = true;
+                return false;
+            }
+            byteEnd += len;
+        }
+    }
+
+    /**
+     * Decode bytes from byteBuf into free space at the end of buffer.
+     * Bytes of incomplete sequence at end of byte buffer are left for later.
+     */
+    private void decodeUtf8() throws XmlPullParserException
+    {
+        final byte[] in = byteBuf;
+        final char[] b = buf;
+        final int ce = b.length;
+        int bp = byteStart;
+        final int be = byteEnd;
+        int cp = bufEnd;
+        while(bp < be && cp < ce) {
+            int c = in[bp];
+            if(c >= 0) {
+                b[cp++] = (char) c;
+                ++bp;
+                continue;
+            }
+            c &= 0xFF;
+            int more;
+            int code;
+            if(c >= 0xC2 && c <= 0xDF) {
+                more = 1;
+                code = c & 0x1F;
+            } else if(c >= 0xE0 && c <= 0xEF) {
+                more = 2;
+                code = c & 0x0F;
+            } else if(c >= 0xF0 && c <= 0xF4) {
+                more = 3;
+                code = c & 0x07;
+            } else {
+                throw invalidUtf8(c);
+            }
+            if(bp + more >= be) break;
+            if(more == 3 && cp + 1 >= ce) break;
+            for (int i = 1; i <= more; i++)
+            {
+                final int cc = in[bp + i] & 0xFF;
+                if((cc & 0xC0) != 0x80) throw invalidUtf8(cc);
+                code = (code << 6) | (cc & 0x3F);
+            }
+            if(more == 2) {
+                if(code < 0x800 || (code >= 0xD800 && code <= 0xDFFF)) throw invalidUtf8(c);
+                b[cp++] = (char) code;
+            } else if(more == 3) {
+                if(code < 0x10000 || code > 0x10FFFF) throw invalidUtf8(c);
+                code -= 0x10000;
+                b[cp++] = (char) ((code >> 10) + 0xD800);
+                b[cp++] = (char) ((code & 0x3FF) + 0xDC00);
+            } else {
+                b[cp++] = (char) code;
+            }
+            bp += more + 1;
+        }
+        byteStart = bp;
+        bufEnd = cp;
+    }
+
+    private XmlPullParserException invalidUtf8(int b) {
+        return new XmlPullParserException(
+            "invalid byte 0x"+Integer.toHexString(b)+" in UTF-8 input", this, null);
+    }
+
+    static boolean isUtf8(String encoding) {
+        return "UTF-8".equalsIgnoreCase(encoding) || "UTF8".equalsIgnoreCase(encoding);
+    }
+
+    /** Makes sure that at least n chars are available at position p. */
+    private boolean available(int p, int n) throws IOException, XmlPullParserException
+    {
+        while(bufEnd - p < n) {
+            if(!fill()) return false;
+        }
+        return true;
+    }
+
+    private boolean matches(int p, String s) throws IOException, XmlPullParserException
+    {
+        final int len = s.length();
+        if(!available(p, len)) return false;
+        for (int i = 0; i < len; i++)
+        {
+            if(buf[p + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Detect encoding of input stream (BOM or XML declaration) and create reader for it
+     * (or decode it directly if it is UTF-8).
+     */
+    private void openStream() throws IOException, XmlPullParserException
+    {
+        final InputStream is = inputStream;
+        inputStream = null;
+        final byte[] head = new byte[256];
+        int n = 0;
+        while(n < 4) {
+            final int b = is.read();
+            if(b < 0) break;
+            head[n++] = (byte) b;
+        }
+        final int b0 = n > 0 ? head[0] & 0xFF : -1;
+        final int b1 = n > 1 ? head[1] & 0xFF : -1;
+        final int b2 = n > 2 ? head[2] & 0xFF : -1;
+        final int b3 = n > 3 ? head[3] & 0xFF : -1;
+        String enc = "UTF-8";
+        int skip = 0;
+        if(b0 == 0xFE && b1 == 0xFF) {
+            enc = "UTF-16BE";
+            skip = 2;
+        } else if(b0 == 0xFF && b1 == 0xFE) {
+            enc = "UTF-16LE";
+            skip = 2;
+        } else if(b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            skip = 3;
+        } else if(b0 == 0 && b1 == '<' && b2 == 0 && b3 == '?') {
+            enc = "UTF-16BE";
+        } else if(b0 == '<' && b1 == 0 && b2 == '?' && b3 == 0) {
+            enc = "UTF-16LE";
+        } else if(b0 == '<' && b1 == '?' && b2 == 'x' && b3 == 'm') {
+            // read XML declaration to find declared encoding
+            while(n < head.length) {
+                final int b = is.read();
+                if(b < 0) break;
+                head[n++] = (byte) b;
+                if(b == '>') break;
+            }
+            final String decl = new String(head, 0, n, "ISO-8859-1");
+            int i = decl.indexOf("encoding");
+            if(i != -1) {
+                i += 8;
+                while(i < n && decl.charAt(i) <= ' ') ++i;
+                if(i < n && decl.charAt(i) == '=') {
+                    ++i;
+                    while(i < n && decl.charAt(i) <= ' ') ++i;
+                    if(i < n) {
+                        final char quote = decl.charAt(i);
+                        final int end = decl.indexOf(quote, i + 1);
+                        if((quote == '"' || quote == '\'') && end != -1) {
+                            enc = decl.substring(i + 1, end);
+                        }
+                    }
+                }
+            }
+        }
+        inputEncoding = enc;
+        if(isUtf8(enc)) {
+            if(byteBuf == null) byteBuf = new byte[BUF_SIZE];
+            System.arraycopy(head, skip, byteBuf, 0, n - skip);
+            byteStart = 0;
+            byteEnd = n - skip;
+            utf8Input = is;
+            return;
+        }
+        InputStream in = is;
+        if(n > skip) {
+            in = new SequenceInputStream(new ByteArrayInputStream(head, skip, n - skip), is);
+        }
+        try {
+            reader = new InputStreamReader(in, enc);
+        } catch (UnsupportedEncodingException ex) {
+            throw new XmlPullParserException("unsupported input encoding "+enc, this, ex);
+        }
+    }
+
+    private boolean skipS() throws IOException, XmlPullParserException
+    {
+        boolean seen = false;
+        while(pos < bufEnd || fill()) {
+            final char ch = buf[pos];
+            if(ch > ' ' || (CHAR_CLASS[ch] & WS) == 0) break;
+            if(ch == '\n') {
+                if(pos == 0 || buf[pos - 1] != '\r') ++lineNumber;
+                lineStart = pos + 1;
+            } else if(ch == '\r') {
+                ++lineNumber;
+                lineStart = pos + 1;
+            }
+            seen = true;
+            ++pos;
+        }
+        return seen;
+    }
+
+    /** Scan name starting at pos and compute its hash in nameHash. */
+    private void scanName() throws IOException, XmlPullParserException
+    {
+        if(pos == bufEnd && !fill()) throw eof();
+        char ch = buf[pos];
+        if(!isNameStartChar(ch)) throw new XmlPullParserException(
+                "name expected and not "+printable(ch), this, null);
+        int h = ch;
+        ++pos;
+        char[] b = buf;
+        int p = pos;
+        int end = bufEnd;
+        while(true) {
+            if(p == end) {
+                pos = p;
+                if(!fill()) break;
+                b = buf;
+                end = bufEnd;
+            }
+            ch = b[p];
+            if(ch < 128 ? (CHAR_CLASS[ch] & NAME) == 0 : !isNameChar(ch)) break;
+            h = 31 * h + ch;
+            ++p;
+        }
+        pos = p;
+        nameHash = h;
+    }
+
+    private static boolean isNameStartChar(char ch) {
+        return ch < 128 ? (CHAR_CLASS[ch] & NAME_START) != 0 : isNameChar(ch);
+    }
+
+    private static boolean isNameChar(char ch) {
+        return ch >= 128 ? (ch != '\u00A0' && ch != '\uFEFF' && ch < '\uFFFE')
+            : (CHAR_CLASS[ch] & NAME) != 0;
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // symbol table
+
+    private static int hash(char[] b, int start, int len) {
+        int h = 0;
+        for (int i = start; i < start + len; i++) h = 31 * h + b[i];
+        return h;
+    }
+
+    private static boolean matches(String s, char[] b, int start, int len) {
+        for (int i = 0; i < len; i++)
+        {
+            if(s.charAt(i) != b[start + i]) return false;
+        }
+        return true;
+    }
+
+    /** Return String for characters in buffer reusing instances already seen by this parser. */
+    private String symbol(char[] b, int start, int len, int h) {
+        if(sharedSymbols != null) return sharedSymbols.symbol(b, start, len, h);
+        final String[] table = symbols;
+        final int mask = table.length - 1;
+        int i = h & mask;
+        String s;
+        while((s = table[i]) != null) {
+            if(symbolHashes[i] == h && s.length() == len && matches(s, b, start, len)) {
+                return s;
+            }
+            i = (i + 1) & mask;
+        }
+        s = new String(b, start, len);
+        if(symbolCount < MAX_SYMBOLS) {
+            table[i] = s;
+            symbolHashes[i] = h;
+            if(++symbolCount * 2 > table.length) rehashSymbols();
+        }
+        return s;
+    }
+
+    private void rehashSymbols() {
+        final String[] oldSymbols = symbols;
+        final int[] oldHashes = symbolHashes;
+        final int size = oldSymbols.length * 2;
+        final int mask = size - 1;
+        symbols = new String[size];
+        symbolHashes = new int[size];
+        for (int j = 0; j < oldSymbols.length; j++)
+        {
+            if(oldSymbols[j] == null) continue;
+            int i = oldHashes[j] & mask;
+            while(symbols[i] != null) i = (i + 1) & mask;
+            symbols[i] = oldSymbols[j];
+            symbolHashes[i] = oldHashes[j];
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------
+    // utilities
+
+    private void ensureElementCapacity() {
+        final int size = elRawName.length * 2;
+        elRawName = grow(elRawName, size);
+        elName = grow(elName, size);
+        elPrefix = grow(elPrefix, size);
+        elUri = grow(elUri, size);
+        final int[] newNsCount = new int[size];
+        System.arraycopy(elNsCount, 0, newNsCount, 0, elNsCount.length);
+        elNsCount = newNsCount;
+    }
+
+    private void ensureNamespaceCapacity() {
+        final int size = nsPrefix.length * 2;
+        nsPrefix = grow(nsPrefix, size);
+        nsUri = grow(nsUri, size);
+    }
+
+    private void ensureAttributeCapacity() {
+        final int size = attrRawName.length * 2;
+        attrRawName = grow(attrRawName, size);
+        attrName = grow(attrName, size);
+        attrPrefix = grow(attrPrefix, size);
+        attrUri = grow(attrUri, size);
+        attrValue = grow(attrValue, size);
+        attrNameStart = grow(attrNameStart, size);
+        attrValueStart = grow(attrValueStart, size);
+        attrValueEnd = grow(attrValueEnd, size);
+    }
+
+    private static String[] grow(String[] arr, int size) {
+        if(size <= arr.length) size = arr.length * 2;
+        final String[] newArr = new String[size];
+        System.arraycopy(arr, 0, newArr, 0, arr.length);
+        return newArr;
+    }
+
+    private static int[] grow(int[] arr, int size) {
+        final int[] newArr = new int[size];
+        System.arraycopy(arr, 0, newArr, 0, arr.length);
+        return newArr;
+    }
+
+    private XmlPullParserException eof() {
+        return new XmlPullParserException("unexpected end of input", this, null);
+    }
+
+    private XmlPullParserException eofInElement() {
+        return new XmlPullParserException(
+            "unexpected end of input, expected end tag </"+elRawName[depth]+">", this, null);
+    }
+
+    private static String printable(char ch) {
+        if(ch == '\n') {
+            return "\\n";
+        } else if(ch == '\r') {
+            return "\\r";
+        } else if(ch == '\t') {
+            return "\\t";
+        } else if(ch == '\'') {
+            return "\\'";
+        } else if(ch > 127 || ch < 32) {
+            return "\\u"+Integer.toHexString((int)ch);
+        }
+        return "'"+ch+"'";
+    }
+
+    public String toString() {
+        return getClass().getName()+" "+getPositionDescription();
+    }
+}
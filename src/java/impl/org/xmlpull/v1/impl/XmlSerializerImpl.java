@@ -0,0 +1,575 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license please see accompanying LICENSE.txt file (available also at http://www.xmlpull.org/)
+
+package org.xmlpull.v1.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.xmlpull.v1.XmlSerializer;
+
+/**
+ * Reference implementation of XmlSerializer that accompanies {@link XmlPullParserImpl}.
+ *
+ * <p>Output is written directly to Writer (start tag is closed lazily when
+ * content or next tag is written) and namespace prefixes are declared
+ * automatically when needed. No optional features or properties are supported.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class XmlSerializerImpl implements XmlSerializer
+{
+    private final static String XML_URI = "http://www.w3.org/XML/1998/namespace";
+    private final static String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+    private Writer out;
+    private boolean startTagIncomplete;
+    private int autoDeclaredPrefixes;
+
+    // element stack
+    private int depth;
+    private String[] elName = new String[16];
+    private String[] elNamespace = new String[16];
+    private String[] elPrefix = new String[16];
+    // number of namespaces in scope after start tag at given depth was written
+    private int[] elNamespaceCount = new int[16];
+
+    // namespace stack
+    private int namespaceEnd;
+    private String[] namespacePrefix = new String[8];
+    private String[] namespaceUri = new String[8];
+
+    public XmlSerializerImpl() {
+        reset();
+    }
+
+    private void reset() {
+        out = null;
+        startTagIncomplete = false;
+        autoDeclaredPrefixes = 0;
+        depth = 0;
+        elName[0] = null;
+        elNamespace[0] = null;
+        elPrefix[0] = null;
+        namespacePrefix[0] = "xml";
+        namespaceUri[0] = XML_URI;
+        namespacePrefix[1] = "xmlns";
+        namespaceUri[1] = XMLNS_URI;
+        namespaceEnd = 2;
+        elNamespaceCount[0] = namespaceEnd;
+    }
+
+    public void setFeature(String name, boolean state)
+        throws IllegalArgumentException, IllegalStateException
+    {
+        if(name == null) throw new IllegalArgumentException("feature name can not be null");
+        throw new IllegalStateException("unsupported feature "+name);
+    }
+
+    public boolean getFeature(String name)
+    {
+        if(name == null) throw new IllegalArgumentException("feature name can not be null");
+        return false;
+    }
+
+    public void setProperty(String name, Object value)
+        throws IllegalArgumentException, IllegalStateException
+    {
+        if(name == null) throw new IllegalArgumentException("property name can not be null");
+        throw new IllegalStateException("unsupported property "+name);
+    }
+
+    public Object getProperty(String name)
+    {
+        if(name == null) throw new IllegalArgumentException("property name can not be null");
+        return null;
+    }
+
+    public void setOutput(Writer writer)
+    {
+        reset();
+        out = writer;
+    }
+
+    public void setOutput(OutputStream os, String encoding) throws IOException
+    {
+        if(os == null) throw new IllegalArgumentException("output stream can not be null");
+        reset();
+        out = encoding != null ? new OutputStreamWriter(os, encoding) : new OutputStreamWriter(os);
+    }
+
+    public void startDocument(String encoding, Boolean standalone) throws IOException
+    {
+        final Writer out = writer();
+        out.write("<?xml version='1.0'");
+        if(encoding != null) {
+            out.write(" encoding='");
+            out.write(encoding);
+            out.write('\'');
+        }
+        if(standalone != null) {
+            out.write(standalone.booleanValue() ? " standalone='yes'" : " standalone='no'");
+        }
+        out.write("?>");
+    }
+
+    public void endDocument() throws IOException
+    {
+        writer();
+        while(depth > 0) {
+            endTag(elNamespace[depth], elName[depth]);
+        }
+        out.flush();
+    }
+
+    public void setPrefix(String prefix, String namespace) throws IOException
+    {
+        if(startTagIncomplete) closeStartTag();
+        if(prefix == null) prefix = "";
+        if(namespace == null) throw new IllegalArgumentException(
+                "namespace bound to prefix '"+prefix+"' can not be null");
+        if("xml".equals(prefix) || "xmlns".equals(prefix)) {
+            if(namespace.equals(getNamespace(prefix))) return;
+            throw new IllegalArgumentException("prefix "+prefix+" can not be redeclared");
+        }
+        if(prefix.length() > 0 && namespace.length() == 0) throw new IllegalArgumentException(
+                "non-default prefix '"+prefix+"' can not be bound to empty namespace");
+        // redundant declaration is not written
+        if(namespace.equals(getNamespace(prefix))) return;
+        pushNamespace(prefix, namespace);
+    }
+
+    public String getPrefix(String namespace, boolean generatePrefix)
+    {
+        return getPrefix(namespace, generatePrefix, false);
+    }
+
+    private String getPrefix(String namespace, boolean generatePrefix, boolean nonEmpty)
+    {
+        if(namespace == null) throw new IllegalArgumentException("namespace can not be null");
+        if(namespace.length() == 0) throw new IllegalArgumentException(
+                "default namespace can not have prefix");
+        for (int i = namespaceEnd - 1; i >= 0; i--)
+        {
+            if(namespace.equals(namespaceUri[i])) {
+                final String prefix = namespacePrefix[i];
+                if(nonEmpty && prefix.length() == 0) continue;
+                if(isEffective(i)) return prefix;
+            }
+        }
+        if(!generatePrefix) return null;
+        return generatePrefix(namespace);
+    }
+
+    private String generatePrefix(String namespace)
+    {
+        String prefix;
+        do {
+            prefix = "n"+autoDeclaredPrefixes;
+            ++autoDeclaredPrefixes;
+        } while(getNamespace(prefix) != null);
+        declare(prefix, namespace);
+        return prefix;
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    public String getNamespace()
+    {
+        return elNamespace[depth];
+    }
+
+    public String getName()
+    {
+        return elName[depth];
+    }
+
+    public XmlSerializer startTag(String namespace, String name) throws IOException
+    {
+        return startTag(null, namespace, name);
+    }
+
+    public XmlSerializer startTag(String prefix, String namespace, String name) throws IOException
+    {
+        if(name == null) throw new IllegalArgumentException("element name can not be null");
+        final Writer out = writer();
+        if(startTagIncomplete) closeStartTag();
+        if(++depth >= elName.length) ensureElementCapacity();
+        final int pendingStart = elNamespaceCount[depth - 1];
+        if(prefix != null) {
+            if(namespace == null) throw new IllegalStateException(
+                    "prefix '"+prefix+"' can not be used for element without namespace");
+            if(!namespace.equals(getNamespace(prefix))) {
+                checkPending(prefix, namespace, pendingStart);
+                pushNamespace(prefix, namespace);
+            }
+        } else if(namespace == null) {
+            prefix = "";
+        } else if(namespace.length() == 0) {
+            prefix = "";
+            final String defaultNs = getNamespace("");
+            if(defaultNs != null && defaultNs.length() > 0) {
+                for (int i = namespaceEnd - 1; i >= pendingStart; i--)
+                {
+                    if(namespacePrefix[i].length() == 0) throw new IllegalStateException(
+                            "default namespace is already bound to '"+defaultNs
+                                +"' and can not be used for element '"+name+"' without namespace");
+                }
+                pushNamespace("", "");
+            }
+        } else {
+            prefix = getPrefix(namespace, false, false);
+            if(prefix == null) {
+                prefix = "n"+autoDeclaredPrefixes;
+                ++autoDeclaredPrefixes;
+                while(getNamespace(prefix) != null) {
+                    prefix = "n"+autoDeclaredPrefixes;
+                    ++autoDeclaredPrefixes;
+                }
+                pushNamespace(prefix, namespace);
+            }
+        }
+        elName[depth] = name;
+        elNamespace[depth] = namespace;
+        elPrefix[depth] = prefix;
+        out.write('<');
+        if(prefix.length() > 0) {
+            out.write(prefix);
+            out.write(':');
+        }
+        out.write(name);
+        for (int i = pendingStart; i < namespaceEnd; i++)
+        {
+            writeNamespaceDeclaration(namespacePrefix[i], namespaceUri[i]);
+        }
+        startTagIncomplete = true;
+        return this;
+    }
+
+    public XmlSerializer attribute(String namespace, String name, String value) throws IOException
+    {
+        return attribute(null, namespace, name, value);
+    }
+
+    public XmlSerializer attribute(String prefix, String namespace, String name, String value)
+        throws IOException
+    {
+        if(!startTagIncomplete) throw new IllegalStateException(
+                "startTag() must be called before attribute()");
+        if(name == null) throw new IllegalArgumentException("attribute name can not be null");
+        if(value == null) throw new IllegalArgumentException(
+                "value of attribute '"+name+"' can not be null");
+        if(prefix != null) {
+            if(namespace == null) throw new IllegalStateException(
+                    "prefix '"+prefix+"' can not be used for attribute without namespace");
+            if(prefix.length() == 0) {
+                if(namespace.length() > 0) throw new IllegalArgumentException(
+                        "attribute '"+name+"' in namespace can not use default namespace prefix");
+            } else if(!namespace.equals(getNamespace(prefix))) {
+                checkPending(prefix, namespace, elNamespaceCount[depth - 1]);
+                declare(prefix, namespace);
+            }
+        } else if(namespace == null || namespace.length() == 0) {
+            prefix = "";
+        } else {
+            prefix = getPrefix(namespace, true, true);
+        }
+        out.write(' ');
+        if(prefix.length() > 0) {
+            out.write(prefix);
+            out.write(':');
+        }
+        out.write(name);
+        out.write("=\"");
+        writeAttributeValue(value);
+        out.write('"');
+        return this;
+    }
+
+    public XmlSerializer endTag(String namespace, String name) throws IOException
+    {
+        return endTag(null, namespace, name);
+    }
+
+    public XmlSerializer endTag(String prefix, String namespace, String name) throws IOException
+    {
+        final Writer out = writer();
+        if(depth == 0) throw new IllegalStateException("no element to close for endTag()");
+        if(namespace != null && !namespace.equals(elNamespace[depth])) {
+            throw new IllegalArgumentException(
+                "expected element namespace '"+elNamespace[depth]+"' and not '"+namespace+"'");
+        }
+        if(name == null || !name.equals(elName[depth])) {
+            throw new IllegalArgumentException(
+                "expected element name '"+elName[depth]+"' and not '"+name+"'");
+        }
+        if(prefix != null && !prefix.equals(elPrefix[depth])) {
+            throw new IllegalArgumentException(
+                "expected element prefix '"+elPrefix[depth]+"' and not '"+prefix+"'");
+        }
+        if(startTagIncomplete) {
+            out.write(" />");
+            startTagIncomplete = false;
+        } else {
+            out.write("</");
+            final String elementPrefix = elPrefix[depth];
+            if(elementPrefix.length() > 0) {
+                out.write(elementPrefix);
+                out.write(':');
+            }
+            out.write(name);
+            out.write('>');
+        }
+        elName[depth] = null;
+        elNamespace[depth] = null;
+        elPrefix[depth] = null;
+        --depth;
+        namespaceEnd = elNamespaceCount[depth];
+        return this;
+    }
+
+    public XmlSerializer text(String text) throws IOException
+    {
+        final Writer out = writer();
+        if(startTagIncomplete) closeStartTag();
+        final int len = text.length();
+        int start = 0;
+        for (int i = 0; i < len; i++)
+        {
+            final char ch = text.charAt(i);
+            final String replacement = textReplacement(ch);
+            if(replacement != null) {
+                if(i > start) out.write(text, start, i - start);
+                out.write(replacement);
+                start = i + 1;
+            }
+        }
+        if(len > start) out.write(text, start, len - start);
+        return this;
+    }
+
+    public XmlSerializer text(char[] buf, int start, int len) throws IOException
+    {
+        final Writer out = writer();
+        if(startTagIncomplete) closeStartTag();
+        final int end = start + len;
+        int pos = start;
+        for (int i = start; i < end; i++)
+        {
+            final String replacement = textReplacement(buf[i]);
+            if(replacement != null) {
+                if(i > pos) out.write(buf, pos, i - pos);
+                out.write(replacement);
+                pos = i + 1;
+            }
+        }
+        if(end > pos) out.write(buf, pos, end - pos);
+        return this;
+    }
+
+    public void cdsect(String text) throws IOException
+    {
+        writeMarkup("<![CDATA[", text, "]]>");
+    }
+
+    public void entityRef(String text) throws IOException
+    {
+        writeMarkup("&", text, ";");
+    }
+
+    public void processingInstruction(String text) throws IOException
+    {
+        writeMarkup("<?", text, "?>");
+    }
+
+    public void comment(String text) throws IOException
+    {
+        writeMarkup("<!--", text, "-->");
+    }
+
+    public void docdecl(String text) throws IOException
+    {
+        writeMarkup("<!DOCTYPE", text, ">");
+    }
+
+    public void ignorableWhitespace(String text) throws IOException
+    {
+        writeMarkup("", text, "");
+    }
+
+    public void flush() throws IOException
+    {
+        final Writer out = writer();
+        if(startTagIncomplete) closeStartTag();
+        out.flush();
+    }
+
+    // -----------------------------------------------------------------------------------------
+
+    private Writer writer() {
+        if(out == null) throw new IllegalStateException("setOutput() must be called first");
+        return out;
+    }
+
+    private void closeStartTag() throws IOException
+    {
+        out.write('>');
+        startTagIncomplete = false;
+        elNamespaceCount[depth] = namespaceEnd;
+    }
+
+    private void writeMarkup(String start, String text, String end) throws IOException
+    {
+        final Writer out = writer();
+        if(startTagIncomplete) closeStartTag();
+        out.write(start);
+        out.write(text);
+        out.write(end);
+    }
+
+    /** Declare namespace for current start tag (written immediately) or next start tag. */
+    private void declare(String prefix, String namespace)
+    {
+        pushNamespace(prefix, namespace);
+        if(startTagIncomplete) {
+            try {
+                writeNamespaceDeclaration(prefix, namespace);
+            } catch (IOException ex) {
+                throw new IllegalStateException("could not write namespace declaration: "+ex);
+            }
+        }
+    }
+
+    private void pushNamespace(String prefix, String namespace)
+    {
+        if(namespaceEnd >= namespacePrefix.length) {
+            final int size = namespaceEnd * 2;
+            namespacePrefix = grow(namespacePrefix, size);
+            namespaceUri = grow(namespaceUri, size);
+        }
+        namespacePrefix[namespaceEnd] = prefix;
+        namespaceUri[namespaceEnd] = namespace;
+        ++namespaceEnd;
+    }
+
+    private void checkPending(String prefix, String namespace, int pendingStart)
+    {
+        for (int i = namespaceEnd - 1; i >= pendingStart; i--)
+        {
+            if(prefix.equals(namespacePrefix[i])) throw new IllegalStateException(
+                    "prefix '"+prefix+"' is already bound to '"+namespaceUri[i]
+                        +"' in this start tag and can not be bound to '"+namespace+"'");
+        }
+    }
+
+    /** Namespace currently bound to prefix ("" for default namespace) or null. */
+    private String getNamespace(String prefix)
+    {
+        for (int i = namespaceEnd - 1; i >= 0; i--)
+        {
+            if(prefix.equals(namespacePrefix[i])) return namespaceUri[i];
+        }
+        return null;
+    }
+
+    /** Check that prefix declared at position i was not redeclared later. */
+    private boolean isEffective(int i)
+    {
+        final String prefix = namespacePrefix[i];
+        for (int j = namespaceEnd - 1; j > i; j--)
+        {
+            if(prefix.equals(namespacePrefix[j])) return false;
+        }
+        return true;
+    }
+
+    private void writeNamespaceDeclaration(String prefix, String namespace) throws IOException
+    {
+        if(prefix.length() > 0) {
+            out.write(" xmlns:");
+            out.write(prefix);
+            out.write("=\"");
+        } else {
+            out.write(" xmlns=\"");
+        }
+        writeAttributeValue(namespace);
+        out.write('"');
+    }
+
+    private void writeAttributeValue(String value) throws IOException
+    {
+        final int len = value.length();
+        int start = 0;
+        for (int i = 0; i < len; i++)
+        {
+            final char ch = value.charAt(i);
+            String replacement;
+            if(ch == '&') {
+                replacement = "&amp;";
+            } else if(ch == '<') {
+                replacement = "&lt;";
+            } else if(ch == '>') {
+                replacement = "&gt;";
+            } else if(ch == '"') {
+                replacement = "&quot;";
+            } else if(ch < ' ') {
+                if(ch == '\t') {
+                    replacement = "&#9;";
+                } else if(ch == '\n') {
+                    replacement = "&#10;";
+                } else if(ch == '\r') {
+                    replacement = "&#13;";
+                } else {
+                    throw new IllegalArgumentException(
+                        "character \\u"+Integer.toHexString(ch)+" is not allowed in XML");
+                }
+            } else {
+                continue;
+            }
+            if(i > start) out.write(value, start, i - start);
+            out.write(replacement);
+            start = i + 1;
+        }
+        if(len > start) out.write(value, start, len - start);
+    }
+
+    private static String textReplacement(char ch)
+    {
+        if(ch > '>') {
+            return null;
+        } else if(ch == '&') {
+            return "&amp;";
+        } else if(ch == '<') {
+            return "&lt;";
+        } else if(ch == '>') {
+            return "&gt;";
+        } else if(ch < ' ' && ch != '\t' && ch != '\n' && ch != '\r') {
+            throw new IllegalArgumentException(
+                "character \\u"+Integer.toHexString(ch)+" is not allowed in XML");
+        }
+        return null;
+    }
+
+    private void ensureElementCapacity()
+    {
+        final int size = elName.length * 2;
+        elName = grow(elName, size);
+        elNamespace = grow(elNamespace, size);
+        elPrefix = grow(elPrefix, size);
+        final int[] newCount = new int[size];
+        System.arraycopy(elNamespaceCount, 0, newCount, 0, elNamespaceCount.length);
+        elNamespaceCount = newCount;
+    }
+
+    private static String[] grow(String[] arr, int size)
+    {
+        final String[] newArr = new String[size];
+        System.arraycopy(arr, 0, newArr, 0, arr.length);
+        return newArr;
+    }
+}
@@ -0,0 +1,30 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.impl.tests;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests of classes of implementation module (org.xmlpull.v1.impl) that are not covered by
+ * API tests in {@link org.xmlpull.v1.tests.PackageTests} (they can run with any implementation).
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class ImplTests {
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite("XmlPull V1 IMPLEMENTATION TESTS");
+
+        suite.addTestSuite(TestPushInput.class);
+        suite.addTestSuite(TestParallelRecordParser.class);
+        return suite;
+    }
+
+    public static void main (String[] args) {
+        if(!TestRunner.run(suite()).wasSuccessful()) System.exit(1);
+    }
+}
+
@@ -0,0 +1,358 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.impl.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Hashtable;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import junit.framework.TestSuite;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+import org.xmlpull.v1.impl.ParallelRecordParser;
+import org.xmlpull.v1.impl.RecordHandler;
+import org.xmlpull.v1.tests.UtilTestCase;
+
+/**
+ * Tests of ParallelRecordParser: order of results, namespaces of root element available
+ * in records, errors in records and outside of them, stopping of parsing, executor
+ * with single thread and file mapped in windows smaller than records.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class TestParallelRecordParser extends UtilTestCase {
+    private final static int RECORDS = 200;
+
+    private XmlPullParserFactory factory;
+    private CountingExecutor executor;
+
+    public TestParallelRecordParser(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws XmlPullParserException {
+        factory = XmlPullParserFactory.newInstance(
+            "org.xmlpull.v1.impl.XmlPullParserImpl", null);
+        factory.setNamespaceAware(true);
+        executor = new CountingExecutor();
+    }
+
+    protected void tearDown() throws InterruptedException {
+        executor.awaitIdle();
+    }
+
+    public void testOrdered() throws Exception {
+        final ParallelRecordParser prp = new ParallelRecordParser(factory, 4, new NameHandler(), executor);
+        // executor threads are reused for next input
+        for (int round = 0; round < 2; round++) {
+            prp.setInput(records(RECORDS), null, true);
+            for (int i = 0; i < RECORDS; i++) {
+                assertTrue(prp.hasNextResult());
+                assertEquals("{urn:p}rec "+i, prp.nextResult());
+            }
+            assertTrue(!prp.hasNextResult());
+            try {
+                prp.nextResult();
+                fail("expected no more records");
+            } catch(NoSuchElementException ex) {
+            }
+            executor.awaitIdle();
+        }
+    }
+
+    public void testUnordered() throws Exception {
+        final Object lock = new Object();
+        final boolean[] firstPulled = new boolean[1];
+        final ParallelRecordParser prp = new ParallelRecordParser(factory, 2, new NameHandler() {
+                public Object processRecord(XmlPullParser pp) throws XmlPullParserException, IOException {
+                    if("0".equals(pp.getAttributeValue(null, "n"))) {
+                        // first record is finished only after result of other record was pulled
+                        synchronized(lock) {
+                            final long end = System.currentTimeMillis() + 10000;
+                            while(!firstPulled[0] && System.currentTimeMillis() < end) {
+                                try {
+                                    lock.wait(100);
+                                } catch(InterruptedException ex) {
+                                    throw new IOException("interrupted");
+                                }
+                            }
+                        }
+                    }
+                    return super.processRecord(pp);
+                }
+            }, executor);
+        prp.setInput(records(RECORDS), null, false);
+        final Hashtable seen = new Hashtable();
+        for (int i = 0; i < RECORDS; i++) {
+            assertTrue(prp.hasNextResult());
+            final Object result = prp.nextResult();
+            if(i == 0) {
+                assertTrue("slow first record returned first", !"{urn:p}rec 0".equals(result));
+                synchronized(lock) {
+                    firstPulled[0] = true;
+                    lock.notifyAll();
+                }
+            }
+            assertNull("result returned twice "+result, seen.put(result, result));
+        }
+        for (int i = 0; i < RECORDS; i++) {
+            assertNotNull("missing record "+i, seen.get("{urn:p}rec "+i));
+        }
+        assertTrue(!prp.hasNextResult());
+    }
+
+    public void testNamespacesOfRoot() throws Exception {
+        final String doc = "<?xml version='1.0'?>\n<!-- prolog -->\n"
+            +"<r:root xmlns:r='urn:root' xmlns='urn:default' xmlns:p=\"urn:p\" ignored='x'>\n"
+            +"  <item p:a='1'><p:child/></item>\n"
+            +"  <p:item xmlns:p='urn:other' p:a='2'/>\n"
+            +"  <r:item xmlns=''>text</r:item>\n"
+            +"</r:root>";
+        final ParallelRecordParser prp = new ParallelRecordParser(factory, 2, new RecordHandler() {
+                public Object processRecord(XmlPullParser pp) throws XmlPullParserException, IOException {
+                    assertEquals(2, pp.getDepth());
+                    assertEquals(0, pp.getNamespaceCount(0));
+                    assertEquals("urn:root", pp.getNamespace("r"));
+                    // root attributes that are not namespace declarations are not copied
+                    assertEquals(3, pp.getNamespaceCount(1));
+                    final StringBuffer buf = new StringBuffer();
+                    buf.append('{').append(pp.getNamespace()).append('}').append(pp.getName());
+                    for (int i = 0; i < pp.getAttributeCount(); i++) {
+                        buf.append(" {").append(pp.getAttributeNamespace(i)).append('}');
+                        buf.append(pp.getAttributeName(i)).append('=').append(pp.getAttributeValue(i));
+                    }
+                    if(pp.next() == XmlPullParser.START_TAG) {
+                        buf.append(" {").append(pp.getNamespace()).append('}').append(pp.getName());
+                    }
+                    return buf.toString();
+                }
+            }, executor);
+        prp.setInput(ByteBuffer.wrap(doc.getBytes("UTF-8")), "UTF-8", true);
+        assertEquals("{urn:default}item {urn:p}a=1 {urn:p}child", prp.nextResult());
+        assertEquals("{urn:other}item {urn:other}a=2", prp.nextResult());
+        assertEquals("{urn:root}item", prp.nextResult());
+        assertTrue(!prp.hasNextResult());
+    }
+
+    public void testRecordErrors() throws Exception {
+        final String doc = "<root xmlns:p='urn:p'><p:rec n='0'/><p:rec n='1' n='1'/>"
+            +"<p:rec n='fail'/><p:rec n='runtime'/><p:rec n='4'>ok</p:rec></root>";
+        final ParallelRecordParser prp = new ParallelRecordParser(factory, 2, new NameHandler() {
+                public Object processRecord(XmlPullParser pp) throws XmlPullParserException, IOException {
+                    final String n = pp.getAttributeValue(null, "n");
+                    if("fail".equals(n)) throw new XmlPullParserException("handler failed");
+                    if("runtime".equals(n)) throw new IllegalStateException("handler bug");
+                    return super.processRecord(pp);
+                }
+            }, executor);
+        prp.setInput(ByteBuffer.wrap(doc.getBytes("UTF-8")), null, true);
+        assertEquals("{urn:p}rec 0", prp.nextResult());
+        try {
+            prp.nextResult();
+            fail("duplicated attribute must be reported");
+        } catch(XmlPullParserException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("record 1") != -1);
+            assertNotNull(ex.getDetail());
+        }
+        try {
+            prp.nextResult();
+            fail("handler exception must be reported");
+        } catch(XmlPullParserException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("record 2") != -1);
+        }
+        try {
+            prp.nextResult();
+            fail("handler runtime exception must be rethrown");
+        } catch(IllegalStateException ex) {
+        }
+        // records after failed records are still parsed
+        assertEquals("{urn:p}rec 4", prp.nextResult());
+        assertTrue(!prp.hasNextResult());
+    }
+
+    public void testSplitError() throws Exception {
+        final String doc = "<root><rec n='0'/><rec n='1'>unfinished";
+        final ParallelRecordParser prp = new ParallelRecordParser(factory, 2, new NameHandler(), executor);
+        prp.setInput(ByteBuffer.wrap(doc.getBytes("UTF-8")), null, true);
+        assertEquals("{}rec 0", prp.nextResult());
+        // error after last record is returned after results of records before it
+        assertTrue(prp.hasNextResult());
+        try {
+            prp.nextResult();
+            fail("unfinished record must be reported");
+        } catch(XmlPullParserException ex) {
+        }
+        assertTrue(!prp.hasNextResult());
+
+        try {
+            prp.setInput(ByteBuffer.wrap("<r/>".getBytes("UTF-8")), "UTF-16", true);
+            fail("records can not be found in UTF-16");
+        } catch(XmlPullParserException ex) {
+        }
+    }
+
+    public void testCloseEarly() throws Exception {
+        final ParallelRecordParser prp = new ParallelRecordParser(factory, 3, new NameHandler(), executor);
+        prp.setInput(records(10 * RECORDS), null, true);
+        assertEquals("{urn:p}rec 0", prp.nextResult());
+        prp.close();
+        assertTrue(!prp.hasNextResult());
+        try {
+            prp.nextResult();
+            fail("parsing was stopped");
+        } catch(NoSuchElementException ex) {
+        }
+        // splitter waiting for results to be pulled and idle workers finish
+        executor.awaitIdle();
+
+        // setInput stops parsing of previous input
+        prp.setInput(records(10 * RECORDS), null, false);
+        prp.nextResult();
+        prp.setInput(records(3), null, true);
+        for (int i = 0; i < 3; i++) assertEquals("{urn:p}rec "+i, prp.nextResult());
+        assertTrue(!prp.hasNextResult());
+        executor.awaitIdle();
+    }
+
+    public void testNewThreads() throws Exception {
+        final ParallelRecordParser prp = new ParallelRecordParser(factory, 2, new NameHandler());
+        prp.setInput(records(RECORDS), null, true);
+        for (int i = 0; i < RECORDS; i++) assertEquals("{urn:p}rec "+i, prp.nextResult());
+        assertTrue(!prp.hasNextResult());
+    }
+
+    public void testSingleThreadExecutor() throws Exception {
+        // splitter and workers are never waiting in executor so one thread is enough
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            final ParallelRecordParser prp = new ParallelRecordParser(factory, 4, new NameHandler(), single);
+            for (int round = 0; round < 2; round++) {
+                final boolean ordered = round == 0;
+                // more records than can wait to be pulled so splitter is paused and started again
+                prp.setInput(records(10 * RECORDS), null, ordered);
+                final Hashtable seen = new Hashtable();
+                for (int i = 0; i < 10 * RECORDS; i++) {
+                    final Object result = prp.nextResult();
+                    if(ordered) assertEquals("{urn:p}rec "+i, result);
+                    assertNull("result returned twice "+result, seen.put(result, result));
+                }
+                assertTrue(!prp.hasNextResult());
+            }
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    public void testFileWindows() throws Exception {
+        final byte[] doc = records(RECORDS).array();
+        final File file = File.createTempFile("records", ".xml");
+        try {
+            // document is region of file between other bytes
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write("garbage".getBytes("UTF-8"));
+            out.write(doc);
+            out.write("<garbage>".getBytes("UTF-8"));
+            out.close();
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = raf.getChannel();
+                final ParallelRecordParser prp = new ParallelRecordParser(factory, 3, new NameHandler(), executor);
+                // records and tags cross ends of small windows
+                final int[] windows = { 1, 17, 64, 1024 * 1024 };
+                for (int w = 0; w < windows.length; w++) {
+                    prp.setWindowSize(windows[w]);
+                    prp.setInput(channel, 7, doc.length, null, true);
+                    for (int i = 0; i < RECORDS; i++) {
+                        assertEquals("window "+windows[w], "{urn:p}rec "+i, prp.nextResult());
+                    }
+                    assertTrue(!prp.hasNextResult());
+                }
+                // byte offset of error is offset in file
+                prp.setWindowSize(64);
+                prp.setInput(channel, 7, doc.length - 10, null, true);
+                for (int i = 0; i < RECORDS - 1; i++) assertEquals("{urn:p}rec "+i, prp.nextResult());
+                try {
+                    prp.nextResult();
+                    fail("record cut by end of region must be reported");
+                } catch(XmlPullParserException ex) {
+                    assertTrue(ex.getMessage(), ex.getMessage().indexOf("unexpected end of input") != -1);
+                }
+                try {
+                    prp.setInput(channel, 7, doc.length + 10, null, true);
+                    fail("region outside of file");
+                } catch(IllegalArgumentException ex) {
+                }
+                executor.awaitIdle();
+            } finally {
+                raf.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static ByteBuffer records(int count) throws IOException {
+        final StringBuffer doc = new StringBuffer();
+        doc.append("<?xml version='1.0' encoding='UTF-8'?>\n<!DOCTYPE root [<!ELEMENT root ANY>]>\n");
+        doc.append("<root xmlns:p='urn:p' id='r'>\n");
+        for (int i = 0; i < count; i++) {
+            doc.append("  <p:rec n='").append(i).append("' s='a>b'><p:v>").append(i).append("</p:v>");
+            doc.append("<!-- </p:rec> --><![CDATA[<p:rec>]]></p:rec>");
+            if(i % 7 == 0) doc.append("text<?pi <p:rec>?><!-- comment -->");
+            doc.append('\n');
+        }
+        doc.append("</root>\n");
+        return ByteBuffer.wrap(doc.toString().getBytes("UTF-8"));
+    }
+
+    private static class NameHandler implements RecordHandler {
+        public Object processRecord(XmlPullParser pp) throws XmlPullParserException, IOException {
+            return "{"+pp.getNamespace()+"}"+pp.getName()+" "+pp.getAttributeValue(null, "n");
+        }
+    }
+
+    private static class CountingExecutor implements Executor {
+        int started;
+        private int running;
+
+        public void execute(final Runnable task) {
+            synchronized(this) {
+                ++started;
+                ++running;
+            }
+            new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            task.run();
+                        } finally {
+                            synchronized(CountingExecutor.this) {
+                                --running;
+                                CountingExecutor.this.notifyAll();
+                            }
+                        }
+                    }
+                }).start();
+        }
+
+        synchronized void awaitIdle() throws InterruptedException {
+            final long end = System.currentTimeMillis() + 10000;
+            while(running > 0 && System.currentTimeMillis() < end) wait(100);
+            assertEquals("tasks did not finish", 0, running);
+        }
+    }
+
+    public static void main (String[] args) {
+        junit.textui.TestRunner.run (new TestSuite(TestParallelRecordParser.class));
+    }
+}
+
@@ -0,0 +1,236 @@
+/* -*-             c-basic-offset: 4; indent-tabs-mode: nil; -*-  //------100-columns-wide------>|*/
+// for license see accompanying LICENSE_TESTS.txt file (available also at http://www.xmlpull.org)
+
+package org.xmlpull.v1.impl.tests;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import junit.framework.TestSuite;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.impl.XmlPullParserImpl;
+import org.xmlpull.v1.tests.UtilTestCase;
+
+/**
+ * Push input of XmlPullParserImpl must give the same events (including line and column numbers)
+ * as the same input that is pulled from stream, for any size of fed chunks.
+ *
+ * @author <a href="http://www.extreme.indiana.edu/~aslom/">Aleksander Slominski</a>
+ */
+public class TestPushInput extends UtilTestCase {
+
+    private final static int[] CHUNK_SIZES = { 1, 2, 3, 7, 64, 1024 };
+
+    private final static String[] DOCUMENTS = {
+        TEST_XML,
+        "<?xml version='1.0' encoding='UTF-8'?>\n"
+            +"<!DOCTYPE root [\n"
+            +"  <!ENTITY ent 'replacement'>\n"
+            +"  <!-- comment with ]> inside -->\n"
+            +"  <?pi with > inside?>\n"
+            +"]>\n"
+            +"<root a='1 &gt; 0' b=\"x>y\">text &amp; more &#x41;&#66;"
+            +"<![CDATA[cdata with <markup> and ]] inside]]>tail<!-- c - > --><?pi data?>"
+            +"<empty/><p:child xmlns:p='urn:p' p:att='v'>\r\n line\r second</p:child></root>\n"
+            +"<!-- after root -->\n",
+        "\uFEFF<doc>caf\u00E9 \u4E2D\u6587 \uD83D\uDE00<n a='\u00E9\u00E9'/></doc>",
+        "<a><b><c>deep</c></b><b/><b>  </b></a>",
+    };
+
+    public TestPushInput(String name) {
+        super(name);
+    }
+
+    public void testPushSameAsPull() throws Exception {
+        for (int i = 0; i < DOCUMENTS.length; i++) {
+            final byte[] bytes = DOCUMENTS[i].getBytes("UTF-8");
+            for (int ns = 0; ns < 2; ns++) {
+                for (int tokenize = 0; tokenize < 2; tokenize++) {
+                    final String expected = pull(bytes, ns == 1, tokenize == 1);
+                    for (int j = 0; j < CHUNK_SIZES.length; j++) {
+                        assertEquals("document "+i+" namespaces="+(ns == 1)+" tokenize="+(tokenize == 1)
+                                         +" chunk="+CHUNK_SIZES[j],
+                                     expected, push(bytes, CHUNK_SIZES[j], ns == 1, tokenize == 1));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testPushByteBuffer() throws Exception {
+        final byte[] bytes = DOCUMENTS[1].getBytes("UTF-8");
+        final String expected = pull(bytes, true, true);
+        for (int direct = 0; direct < 2; direct++) {
+            final XmlPullParserImpl pp = new XmlPullParserImpl();
+            pp.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            pp.setPushInput(null);
+            final StringBuffer events = new StringBuffer();
+            int fed = 0;
+            while(true) {
+                final int type = pp.nextToken();
+                if(type == XmlPullParserImpl.NEED_MORE_INPUT) {
+                    if(fed == bytes.length) {
+                        pp.endOfInput();
+                        continue;
+                    }
+                    final int len = Math.min(5, bytes.length - fed);
+                    final ByteBuffer chunk = direct == 1
+                        ? ByteBuffer.allocateDirect(len) : ByteBuffer.allocate(len + 2);
+                    if(direct == 0) chunk.position(1); // array offset is not zero
+                    chunk.put(bytes, fed, len);
+                    chunk.position(chunk.position() - len);
+                    chunk.limit(chunk.position() + len);
+                    pp.feedInput(chunk);
+                    assertEquals(0, chunk.remaining());
+                    fed += len;
+                    continue;
+                }
+                record(pp, type, events);
+                if(type == XmlPullParser.END_DOCUMENT) break;
+            }
+            assertEquals("direct="+(direct == 1), expected, events.toString());
+        }
+    }
+
+    public void testPushMalformed() throws Exception {
+        final byte[] bytes = "<a><b></a>".getBytes("UTF-8");
+        for (int j = 0; j < CHUNK_SIZES.length; j++) {
+            try {
+                push(bytes, CHUNK_SIZES[j], false, false);
+                fail("expected error for mismatched end tag with chunk "+CHUNK_SIZES[j]);
+            } catch(XmlPullParserException ex) {
+            }
+        }
+    }
+
+    public void testPushSkipSubTree() throws Exception {
+        final String doc = "<root><skip a='>'><x/><!-- </skip> --><![CDATA[</skip>]]><?pi </skip>?>"
+            +"<skip>text</skip></skip><next/></root>";
+        final byte[] bytes = doc.getBytes("UTF-8");
+        final int afterStart = doc.indexOf("<x/>");
+        final int afterSkip = doc.indexOf("<next/>");
+        // sub tree is skipped only when whole sub tree with its end tag was fed
+        for (int cut = afterStart; cut <= afterSkip; cut++) {
+            final XmlPullParserImpl pp = new XmlPullParserImpl();
+            pp.setPushInput(null);
+            pp.feedInput(bytes, 0, afterStart);
+            assertEquals(XmlPullParser.START_TAG, pp.next());
+            assertEquals(XmlPullParser.START_TAG, pp.next());
+            pp.require(XmlPullParser.START_TAG, null, "skip");
+            pp.feedInput(bytes, afterStart, cut - afterStart);
+            if(cut < afterSkip) {
+                try {
+                    pp.skipSubTree();
+                    fail("incomplete sub tree must not be skipped when "+cut+" bytes were fed");
+                } catch(XmlPullParserException ex) {
+                }
+                // nothing was consumed so skipping continues when rest is fed
+                pp.require(XmlPullParser.START_TAG, null, "skip");
+                assertEquals(2, pp.getDepth());
+                assertEquals(">", pp.getAttributeValue(null, "a"));
+                pp.feedInput(bytes, cut, afterSkip - cut);
+            }
+            pp.skipSubTree();
+            pp.require(XmlPullParser.END_TAG, null, "skip");
+            assertEquals(XmlPullParserImpl.NEED_MORE_INPUT, pp.next());
+            pp.feedInput(bytes, afterSkip, bytes.length - afterSkip);
+            pp.endOfInput();
+            assertEquals(XmlPullParser.START_TAG, pp.next());
+            pp.require(XmlPullParser.START_TAG, null, "next");
+        }
+
+        // after end of input incomplete sub tree is reported as usual
+        final XmlPullParserImpl pp = new XmlPullParserImpl();
+        pp.setPushInput(null);
+        pp.feedInput(bytes, 0, afterSkip - 3);
+        pp.endOfInput();
+        pp.next();
+        pp.next();
+        try {
+            pp.skipSubTree();
+            fail("end of input in skipped sub tree must be reported");
+        } catch(XmlPullParserException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("</skip>") != -1);
+        }
+    }
+
+    public void testPushLargeText() throws Exception {
+        // text much bigger than chunks must be scanned once (it used to be rescanned for every chunk)
+        final StringBuffer doc = new StringBuffer("<doc>");
+        for (int i = 0; i < 256 * 1024; i++) doc.append((char) ('a' + i % 26));
+        doc.append("<!--").append(doc.toString().substring(5, 64 * 1024)).append("--></doc>");
+        final byte[] bytes = doc.toString().getBytes("UTF-8");
+        assertEquals(pull(bytes, false, true), push(bytes, 1024, false, true));
+    }
+
+    private String pull(byte[] bytes, boolean namespaces, boolean tokenize) throws Exception {
+        final XmlPullParserImpl pp = new XmlPullParserImpl();
+        pp.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, namespaces);
+        pp.setInput(new ByteArrayInputStream(bytes), "UTF-8");
+        final StringBuffer events = new StringBuffer();
+        while(true) {
+            final int type = tokenize ? pp.nextToken() : pp.next();
+            record(pp, type, events);
+            if(type == XmlPullParser.END_DOCUMENT) break;
+        }
+        return events.toString();
+    }
+
+    private String push(byte[] bytes, int chunk, boolean namespaces, boolean tokenize)
+        throws Exception
+    {
+        final XmlPullParserImpl pp = new XmlPullParserImpl();
+        pp.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, namespaces);
+        pp.setPushInput(null);
+        final StringBuffer events = new StringBuffer();
+        int fed = 0;
+        boolean closed = false;
+        while(true) {
+            final int type = tokenize ? pp.nextToken() : pp.next();
+            if(type == XmlPullParserImpl.NEED_MORE_INPUT) {
+                if(fed < bytes.length) {
+                    final int len = Math.min(chunk, bytes.length - fed);
+                    pp.feedInput(bytes, fed, len);
+                    fed += len;
+                } else {
+                    assertTrue("more input requested after end of input", !closed);
+                    pp.endOfInput();
+                    closed = true;
+                }
+                continue;
+            }
+            record(pp, type, events);
+            if(type == XmlPullParser.END_DOCUMENT) break;
+        }
+        return events.toString();
+    }
+
+    private void record(XmlPullParser pp, int type, StringBuffer events)
+        throws XmlPullParserException
+    {
+        events.append(XmlPullParser.TYPES[type]);
+        events.append(' ').append(pp.getLineNumber()).append(':').append(pp.getColumnNumber());
+        events.append(" depth=").append(pp.getDepth());
+        if(type == XmlPullParser.START_TAG || type == XmlPullParser.END_TAG) {
+            events.append(" {").append(pp.getNamespace()).append('}').append(pp.getName());
+            events.append(" prefix=").append(pp.getPrefix());
+        }
+        if(type == XmlPullParser.START_TAG) {
+            events.append(" empty=").append(pp.isEmptyElementTag());
+            for (int i = 0; i < pp.getAttributeCount(); i++) {
+                events.append(" {").append(pp.getAttributeNamespace(i)).append('}');
+                events.append(pp.getAttributeName(i)).append("='");
+                events.append(pp.getAttributeValue(i)).append('\'');
+            }
+        } else if(type != XmlPullParser.END_DOCUMENT) {
+            events.append(" text=").append(printable(pp.getText()));
+        }
+        events.append('\n');
+    }
+
+    public static void main (String[] args) {
+        junit.textui.TestRunner.run (new TestSuite(TestPushInput.class));
+    }
+}
+
@@ -147,6 +147,43 @@ public class TestEntityReplacement extends UtilTestCase {
         
     }
     
+    public void testEntityExpansionLimit() throws IOException, XmlPullParserException
+    {
+        final String PROPERTY_ENTITY_EXPANSION_LIMIT =
+            "http://xmlpull.org/v1/doc/properties.html#entity-expansion-limit";
+        XmlPullParser pp = factory.newPullParser();
+        try {
+            pp.setProperty(PROPERTY_ENTITY_EXPANSION_LIMIT, new Integer(10));
+        } catch(XmlPullParserException ex) {
+            // skip test if parser does not support limit
+            return;
+        }
+        PackageTests.addNote("* optional property "+PROPERTY_ENTITY_EXPANSION_LIMIT+" is supported\n");
+        assertEquals(new Integer(10), pp.getProperty(PROPERTY_ENTITY_EXPANSION_LIMIT));
+        // limit is counted for whole document (in text and attribute values)
+        pp.setInput(new StringReader( "<t a='&e;'>&e; &amp;&amp;&amp; &e;</t>" ) );
+        pp.defineEntityReplacementText("e", "four");
+        pp.next();
+        assertEquals("four", pp.getAttributeValue(null, "a"));
+        try {
+            pp.next();
+            fail("expected error when entities are replaced with more than 10 characters");
+        } catch(XmlPullParserException ex) {
+        }
+        
+        // limit is kept for next input
+        pp.setInput(new StringReader( "<t>&e;&e;</t>" ) );
+        pp.defineEntityReplacementText("e", "four");
+        pp.next();
+        assertEquals("fourfour", pp.nextText());
+        
+        pp.setProperty(PROPERTY_ENTITY_EXPANSION_LIMIT, new Integer(-1));
+        pp.setInput(new StringReader( "<t>&e;&e;&e;&e;</t>" ) );
+        pp.defineEntityReplacementText("e", "four");
+        pp.next();
+        assertEquals("fourfourfourfour", pp.nextText());
+    }
+    
     public static void main (String[] args) {
         junit.textui.TestRunner.run (new TestSuite(TestEntityReplacement.class));
     }
@@ -3,9 +3,19 @@
 
 package org.xmlpull.v1.tests;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Vector;
 import junit.framework.TestSuite;
 
 import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
 /**
@@ -47,6 +57,214 @@ public class TestFactory extends UtilTestCase {
 
     }
 
+    public void testFactorySnapshot() throws Exception {
+        XmlPullParserFactory factory = factoryNewInstance();
+        factory.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        XmlPullParserFactory snapshot = factory.snapshot();
+        assertSame(snapshot, snapshot.snapshot());
+        assertEquals(true, snapshot.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+        assertEquals(true, snapshot.isNamespaceAware());
+        XmlPullParser xpp = snapshot.newPullParser();
+        assertEquals(true, xpp.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+
+        // later changes to factory must not be visible in snapshot
+        factory.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        assertEquals(true, snapshot.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+        xpp = snapshot.newPullParser();
+        assertEquals(true, xpp.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+
+        try {
+            snapshot.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            fail("snapshot of factory must not allow to change features");
+        } catch(XmlPullParserException ex) {
+        }
+        try {
+            snapshot.setNamespaceAware(false);
+            fail("snapshot of factory must not allow to change namespace awareness");
+        } catch(IllegalStateException ex) {
+        }
+        assertEquals(true, snapshot.getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+    }
+
+    /** Factory implementation that changes features Hashtable directly. */
+    private static class DirectFeaturesFactory extends XmlPullParserFactory {
+        DirectFeaturesFactory(Class parserClass) {
+            parserClasses = new Vector();
+            parserClasses.addElement(parserClass);
+        }
+
+        void putFeature(String name, boolean state) {
+            features.put(name, new Boolean(state));
+        }
+
+        void replaceFeatures() {
+            features = new Hashtable();
+        }
+
+        Hashtable getFeatures() {
+            return features;
+        }
+
+        void forgetParserClasses() {
+            parserClasses = null;
+        }
+    }
+
+    public void testFactoryFeaturesChangedDirectly() throws Exception {
+        XmlPullParserFactory factory = factoryNewInstance();
+        DirectFeaturesFactory direct = new DirectFeaturesFactory(factory.newPullParser().getClass());
+        assertEquals(false, direct.newPullParser().getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+        direct.putFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        assertEquals(true, direct.newPullParser().getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+        direct.putFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        assertEquals(false, direct.newPullParser().getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+
+        // features Hashtable replaced by factory implementation
+        direct.replaceFeatures();
+        direct.putFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        assertEquals(true, direct.newPullParser().getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+        direct.putFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        assertEquals(false, direct.newPullParser().getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+    }
+
+    public void testFactoryFeaturesChangedThroughViews() throws Exception {
+        final String NS = XmlPullParser.FEATURE_PROCESS_NAMESPACES;
+        XmlPullParserFactory factory = factoryNewInstance();
+        DirectFeaturesFactory direct = new DirectFeaturesFactory(factory.newPullParser().getClass());
+        direct.putFeature(NS, true);
+        assertEquals(true, direct.newPullParser().getFeature(NS));
+
+        // removed by iterator of keys
+        Iterator it = direct.getFeatures().keySet().iterator();
+        it.next();
+        it.remove();
+        assertEquals(false, direct.newPullParser().getFeature(NS));
+
+        // value of entry changed
+        direct.putFeature(NS, false);
+        assertEquals(false, direct.newPullParser().getFeature(NS));
+        Map.Entry entry = (Map.Entry) direct.getFeatures().entrySet().iterator().next();
+        entry.setValue(Boolean.TRUE);
+        assertEquals(true, direct.newPullParser().getFeature(NS));
+
+        // removed through values
+        assertTrue(direct.getFeatures().values().remove(Boolean.TRUE));
+        assertEquals(false, direct.newPullParser().getFeature(NS));
+
+        // removed through set of entries
+        direct.putFeature(NS, true);
+        assertEquals(true, direct.newPullParser().getFeature(NS));
+        direct.getFeatures().entrySet().clear();
+        assertEquals(false, direct.newPullParser().getFeature(NS));
+    }
+
+    public void testFactoryIncompleteAfterParserWasCreated() throws Exception {
+        XmlPullParserFactory factory = factoryNewInstance();
+        DirectFeaturesFactory direct = new DirectFeaturesFactory(factory.newPullParser().getClass());
+        assertNotNull(direct.newPullParser());
+        direct.forgetParserClasses();
+        try {
+            direct.newPullParser();
+            fail("factory without parser classes must not create parser");
+        } catch(XmlPullParserException ex) {
+        }
+    }
+
+    /** Factory listed in resource of ServicesLoader that counts its instances. */
+    public static class CountingFactory extends XmlPullParserFactory {
+        static int created;
+
+        public CountingFactory() {
+            ++created;
+        }
+    }
+
+    /** Class defined by ServicesLoader and passed as context to newInstance(). */
+    public static class Context {
+    }
+
+    /**
+     * Class loader with its own Context class and META-INF/services resource
+     * that lists CountingFactory and given parser class, it counts reads of resource.
+     */
+    private static class ServicesLoader extends ClassLoader {
+        final Class context;
+        final String classNames;
+        int resourceReads;
+
+        ServicesLoader(String parserClassName) throws IOException {
+            super(TestFactory.class.getClassLoader());
+            classNames = CountingFactory.class.getName()+","+parserClassName;
+            final InputStream in = TestFactory.class.getResourceAsStream("TestFactory$Context.class");
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buf = new byte[4096];
+            int len;
+            while ((len = in.read(buf)) > 0) bytes.write(buf, 0, len);
+            in.close();
+            final byte[] b = bytes.toByteArray();
+            context = defineClass(Context.class.getName(), b, 0, b.length);
+        }
+
+        public InputStream getResourceAsStream(String name) {
+            if (!name.endsWith("META-INF/services/"+XmlPullParserFactory.PROPERTY_NAME)) {
+                return super.getResourceAsStream(name);
+            }
+            ++resourceReads;
+            return new ByteArrayInputStream(classNames.getBytes());
+        }
+    }
+
+    private String parserClassName() throws Exception {
+        return factoryNewInstance().newPullParser().getClass().getName();
+    }
+
+    public void testFactoryCache() throws Exception {
+        final ServicesLoader loader = new ServicesLoader(parserClassName());
+        assertTrue(loader.context != Context.class);
+        XmlPullParserFactory.newInstance(null, loader.context);
+        assertEquals(1, loader.resourceReads);
+        // second call uses classes resolved before
+        final XmlPullParserFactory f1 = XmlPullParserFactory.newInstance(null, loader.context);
+        final XmlPullParserFactory f2 = XmlPullParserFactory.newInstance(null, loader.context);
+        assertEquals(1, loader.resourceReads);
+        assertEquals(f1.newPullParser().getClass(), f2.newPullParser().getClass());
+
+        XmlPullParserFactory.clearCache(loader.context);
+        XmlPullParserFactory.newInstance(null, loader.context);
+        assertEquals(2, loader.resourceReads);
+        XmlPullParserFactory.clearCache();
+        XmlPullParserFactory.newInstance(null, loader.context);
+        assertEquals(3, loader.resourceReads);
+    }
+
+    public void testFactoryClassInstantiatedForEveryCall() throws Exception {
+        final ServicesLoader loader = new ServicesLoader(parserClassName());
+        final XmlPullParserFactory f1 = XmlPullParserFactory.newInstance(null, loader.context);
+        final int created = CountingFactory.created;
+        final XmlPullParserFactory f2 = XmlPullParserFactory.newInstance(null, loader.context);
+        assertEquals(1, loader.resourceReads);
+        assertTrue(f1 instanceof CountingFactory);
+        assertTrue(f2 instanceof CountingFactory);
+        assertNotSame(f1, f2);
+        assertEquals(created + 1, CountingFactory.created);
+        // factories do not share features
+        f1.setNamespaceAware(true);
+        assertEquals(false, f2.isNamespaceAware());
+        assertEquals(true, f1.newPullParser().getFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES));
+    }
+
+    public void testFactoryCacheDoesNotKeepClassLoader() throws Exception {
+        ServicesLoader loader = new ServicesLoader(parserClassName());
+        XmlPullParserFactory.newInstance(null, loader.context);
+        final WeakReference ref = new WeakReference(loader);
+        loader = null;
+        for (int i = 0; i < 100 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("class loader of context class is kept by factory cache", ref.get());
+    }
+
     public static void main (String[] args) {
         junit.textui.TestRunner.run (new TestSuite(TestFactory.class));
     }
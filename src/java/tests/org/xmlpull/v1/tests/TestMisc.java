@@ -524,6 +524,14 @@ public class TestMisc extends UtilTestCase {
         checkAttribNs(pp, 6, "n", "Some-Other-URI","b","d");
         checkAttribNs(pp, 7, "n", "Some-Other-URI","x","e");
         checkAttribNs(pp, 8, "xml", "http://www.w3.org/XML/1998/namespace", "lang", "en");
+
+        // attribute in place of reported declaration of previous start tag
+        pp.setInput(new StringReader("<p:a xmlns:p='urn:p' p:x='1'><p:b p:y='2'/></p:a>"));
+        pp.next();
+        checkAttribNs(pp, 0, "xmlns", "http://www.w3.org/2000/xmlns/","p","urn:p");
+        pp.next();
+        assertEquals(1, pp.getAttributeCount());
+        checkAttribNs(pp, 0, "p", "urn:p", "y", "2");
     }
 
 
@@ -585,6 +593,105 @@ public class TestMisc extends UtilTestCase {
         pp.require( XmlPullParser.END_TAG, null, "root");
     }
 
+    public void testSkipSubTree() throws Exception {
+        final String INPUT_XML =
+            "<root><skip a='>' b=\"/>\">\r\n"+
+            "<skip><skip/><!-- </skip> --><![CDATA[</skip>]]><?pi </skip>?>text</skip>\n"+
+            "<x:y xmlns:x='urn:x'>&amp;<z/></x:y></skip>"+
+            "<next attr='v'>text</next><empty/></root>";
+        XmlPullParser pp = factory.newPullParser();
+        pp.setInput( new StringReader( INPUT_XML ) );
+        pp.next();
+        pp.require( XmlPullParser.START_TAG, null, "root");
+        pp.next();
+        pp.require( XmlPullParser.START_TAG, null, "skip");
+        pp.skipSubTree();
+        pp.require( XmlPullParser.END_TAG, null, "skip");
+        assertEquals(2, pp.getDepth());
+        pp.next();
+        pp.require( XmlPullParser.START_TAG, null, "next");
+        assertEquals(2, pp.getDepth());
+        assertEquals("v", pp.getAttributeValue(null, "attr"));
+        pp.skipSubTree();
+        pp.require( XmlPullParser.END_TAG, null, "next");
+        pp.next();
+        pp.require( XmlPullParser.START_TAG, null, "empty");
+        pp.skipSubTree();
+        pp.require( XmlPullParser.END_TAG, null, "empty");
+        pp.next();
+        pp.require( XmlPullParser.END_TAG, null, "root");
+        pp.next();
+        pp.require( XmlPullParser.END_DOCUMENT, null, null);
+
+        // end tag must still match start tag
+        pp.setInput( new StringReader( "<root><a><b></b></c></root>" ) );
+        pp.next();
+        pp.next();
+        pp.require( XmlPullParser.START_TAG, null, "a");
+        try {
+            pp.skipSubTree();
+            fail("end tag that does not match start tag must be reported");
+        } catch(XmlPullParserException ex) {}
+
+        pp.setInput( new StringReader( "<root><a><b></b>" ) );
+        pp.next();
+        pp.next();
+        try {
+            pp.skipSubTree();
+            fail("end of input in skipped sub tree must be reported");
+        } catch(XmlPullParserException ex) {}
+    }
+
+    public void testNamesInterned() throws Exception {
+        final String FEATURE_NAMES_INTERNED =
+            "http://xmlpull.org/v1/doc/features.html#names-interned";
+        XmlPullParser pp = factory.newPullParser();
+        try {
+            pp.setFeature(FEATURE_NAMES_INTERNED, true);
+        }catch(XmlPullParserException ex) {
+            // skip rest of test if parser does not support interning
+            return;
+        }
+        PackageTests.addNote("* optional feature  "+FEATURE_NAMES_INTERNED+" is supported\n");
+        assertEquals(true, pp.getFeature(FEATURE_NAMES_INTERNED));
+        final String XML =
+            "<n:root xmlns:n='urn:test' xmlns='urn:default'><foo n:attr='v' attr='w'/></n:root>";
+        pp.setInput(new StringReader(XML));
+        pp.next();
+        pp.require( XmlPullParser.START_TAG, "urn:test", "root");
+        assertTrue(pp.getName() == "root");
+        assertTrue(pp.getPrefix() == "n");
+        assertTrue(pp.getNamespace() == "urn:test");
+        assertTrue(pp.getNamespace("n") == "urn:test");
+        assertTrue(pp.getNamespace(null) == "urn:default");
+        assertTrue(pp.getNamespacePrefix(0) == "n");
+        assertTrue(pp.getNamespaceUri(1) == "urn:default");
+        pp.next();
+        pp.require( XmlPullParser.START_TAG, "urn:default", "foo");
+        assertTrue(pp.getName() == "foo");
+        assertTrue(pp.getNamespace() == "urn:default");
+        assertTrue(pp.getAttributeName(0) == "attr");
+        assertTrue(pp.getAttributePrefix(0) == "n");
+        assertTrue(pp.getAttributeNamespace(0) == "urn:test");
+        assertTrue(pp.getAttributeNamespace(1) == "");
+        assertTrue(pp.getAttributeType(0) == "CDATA");
+
+        // names from different parser instance must be the same objects too
+        XmlPullParser pp2 = factory.newPullParser();
+        pp2.setFeature(FEATURE_NAMES_INTERNED, true);
+        pp2.setInput(new StringReader("<foo xmlns='urn:default'/>"));
+        pp2.next();
+        assertTrue(pp2.getName() == pp.getName());
+        assertTrue(pp2.getNamespace() == pp.getNamespace());
+
+        pp.next();
+        pp.require( XmlPullParser.END_TAG, "urn:default", "foo");
+        assertTrue(pp.getName() == "foo");
+        pp.next();
+        pp.require( XmlPullParser.END_TAG, "urn:test", "root");
+        assertTrue(pp.getName() == "root");
+    }
+
     public static void main (String[] args) {
         junit.textui.TestRunner.run (new TestSuite(TestMisc.class));
     }